@@ -0,0 +1,294 @@
+package org.goplanit.gtfs.converter;
+
+import org.goplanit.utils.exceptions.PlanItRunTimeException;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.OperatingSystemMXBean;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Logger;
+
+/**
+ * Structured timing and throughput metrics per processing phase of a GTFS converter (reader), e.g., parsing routes, trips, stop times, stops.
+ * For each phase the wall-clock time, CPU time of the whole process during the phase, the number of rows and (uncompressed) bytes read,
+ * and the peak heap usage are tracked. Phases are expected to be executed one after the other, not nested.
+ * <p>
+ *   The CPU time is measured on the process, not on the threads executing the phase. It therefore includes any other activity in the JVM
+ *   during the phase (garbage collection, JIT compilation, unrelated work of the caller) and is not attributable to the phase alone.
+ * </p>
+ * <p>
+ *   The peak heap usage is obtained by sampling the used heap every {@link #HEAP_SAMPLING_INTERVAL_MS} ms during the phase, as well as at its start
+ *   and completion. Short-lived peaks between samples are therefore missed, i.e., the value is a lower bound of the actual peak.
+ * </p>
+ * <p>
+ *   The metrics can be accessed programmatically, logged, or dumped as JSON to track performance across feed versions
+ * </p>
+ *
+ * @author markr
+ */
+public class GtfsConverterPhaseMetrics {
+
+  /** logger to use */
+  private static final Logger LOGGER = Logger.getLogger(GtfsConverterPhaseMetrics.class.getCanonicalName());
+
+  /** interval in ms at which the used heap is sampled during a phase */
+  public static final long HEAP_SAMPLING_INTERVAL_MS = 50;
+
+  /** shared daemon thread sampling the used heap of running phases */
+  private static final ScheduledExecutorService HEAP_SAMPLER = Executors.newSingleThreadScheduledExecutor(runnable -> {
+    var thread = new Thread(runnable, "gtfs-phase-heap-sampler");
+    thread.setDaemon(true);
+    return thread;
+  });
+
+  /** metrics of a single phase */
+  public static class Phase {
+
+    /** name of phase */
+    private final String name;
+
+    /** start wall clock time in ns */
+    private final long startWallNanos;
+
+    /** CPU time of the whole process in ns at the start of the phase, negative when not supported */
+    private final long startCpuNanos;
+
+    /** peak used heap in bytes sampled so far */
+    private final AtomicLong sampledPeakHeapBytes = new AtomicLong(0);
+
+    /** periodic heap sampling task, cancelled upon completion */
+    private final ScheduledFuture<?> heapSampling;
+
+    /** wall-clock duration in ns, negative when not yet completed */
+    private long wallNanos = -1;
+
+    /** CPU time of the whole process in ns during the phase, negative when not supported or not yet completed */
+    private long cpuNanos = -1;
+
+    /** rows read */
+    private long rows = 0;
+
+    /** bytes read */
+    private long bytes = 0;
+
+    /** peak heap in bytes sampled during the phase */
+    private long peakHeapBytes = 0;
+
+    /**
+     * Constructor
+     *
+     * @param name of the phase
+     */
+    private Phase(String name){
+      this.name = name;
+      sampleHeapUsage();
+      this.heapSampling = HEAP_SAMPLER.scheduleAtFixedRate(
+          this::sampleHeapUsage, HEAP_SAMPLING_INTERVAL_MS, HEAP_SAMPLING_INTERVAL_MS, TimeUnit.MILLISECONDS);
+      this.startCpuNanos = processCpuNanos();
+      this.startWallNanos = System.nanoTime();
+    }
+
+    /**
+     * Sample the currently used heap and retain it when it exceeds the peak sampled so far
+     */
+    private void sampleHeapUsage(){
+      long usedHeapBytes = ManagementFactory.getMemoryMXBean().getHeapMemoryUsage().getUsed();
+      sampledPeakHeapBytes.accumulateAndGet(usedHeapBytes, Math::max);
+    }
+
+    /**
+     * Complete the phase without any rows or bytes read
+     */
+    public void complete(){
+      complete(0, 0);
+    }
+
+    /**
+     * Complete the phase
+     *
+     * @param rows read during the phase
+     * @param bytes read during the phase
+     */
+    public void complete(long rows, long bytes){
+      this.wallNanos = System.nanoTime() - startWallNanos;
+      long endCpuNanos = processCpuNanos();
+      this.cpuNanos = (startCpuNanos < 0 || endCpuNanos < 0) ? -1 : endCpuNanos - startCpuNanos;
+      this.rows = rows;
+      this.bytes = bytes;
+      heapSampling.cancel(false);
+      sampleHeapUsage();
+      this.peakHeapBytes = sampledPeakHeapBytes.get();
+    }
+
+    /**
+     * @return name of the phase
+     */
+    public String getName() {
+      return name;
+    }
+
+    /**
+     * @return true when phase is completed, false otherwise
+     */
+    public boolean isCompleted(){
+      return wallNanos >= 0;
+    }
+
+    /**
+     * @return wall-clock time in ms
+     */
+    public double getWallTimeMs() {
+      return wallNanos / 1e6;
+    }
+
+    /**
+     * @return CPU time of the whole process (all threads) in ms during the phase, negative when not supported by the JVM
+     */
+    public double getProcessCpuTimeMs() {
+      return cpuNanos < 0 ? -1 : cpuNanos / 1e6;
+    }
+
+    /**
+     * @return number of rows read
+     */
+    public long getRows() {
+      return rows;
+    }
+
+    /**
+     * @return number of (uncompressed) bytes read
+     */
+    public long getBytes() {
+      return bytes;
+    }
+
+    /**
+     * @return rows read per second of wall-clock time, zero when no time elapsed
+     */
+    public double getRowsPerSecond() {
+      return wallNanos <= 0 ? 0 : rows / (wallNanos / 1e9);
+    }
+
+    /**
+     * @return peak heap usage sampled during phase in bytes, a lower bound of the actual peak
+     */
+    public long getPeakHeapBytes() {
+      return peakHeapBytes;
+    }
+  }
+
+  /** registered phases in order of starting them */
+  private final List<Phase> phases = new ArrayList<>();
+
+  /**
+   * CPU time of the process (all threads) if supported
+   *
+   * @return CPU time in ns, negative if not supported
+   */
+  private static long processCpuNanos(){
+    OperatingSystemMXBean osBean = ManagementFactory.getOperatingSystemMXBean();
+    if(osBean instanceof com.sun.management.OperatingSystemMXBean){
+      return ((com.sun.management.OperatingSystemMXBean) osBean).getProcessCpuTime();
+    }
+    return -1;
+  }
+
+  /**
+   * Escape string for JSON
+   *
+   * @param value to escape
+   * @return escaped value
+   */
+  private static String escapeJson(String value){
+    return value.replace("\\", "\\\\").replace("\"", "\\\"");
+  }
+
+  /**
+   * Start a new phase, to be completed by the caller via {@link Phase#complete(long, long)}
+   *
+   * @param name of the phase
+   * @return started phase
+   */
+  public Phase startPhase(String name){
+    var phase = new Phase(name);
+    phases.add(phase);
+    return phase;
+  }
+
+  /**
+   * Registered phases in order of starting them
+   *
+   * @return unmodifiable list of phases
+   */
+  public List<Phase> getPhases(){
+    return Collections.unmodifiableList(phases);
+  }
+
+  /**
+   * Collect first phase with the given name
+   *
+   * @param name of the phase
+   * @return phase, null if not present
+   */
+  public Phase getPhase(String name){
+    return phases.stream().filter(p -> p.getName().equals(name)).findFirst().orElse(null);
+  }
+
+  /**
+   * Log completed phases
+   */
+  public void logPhaseStats(){
+    phases.stream().filter(Phase::isCompleted).forEach(p -> LOGGER.info(String.format(
+        "[STATS] phase %s: wall %.1f ms, process cpu %.1f ms, %d rows (%.0f rows/s), %d bytes, peak heap %d MB",
+        p.getName(), p.getWallTimeMs(), p.getProcessCpuTimeMs(), p.getRows(), p.getRowsPerSecond(), p.getBytes(), p.getPeakHeapBytes() / (1024 * 1024))));
+  }
+
+  /**
+   * Create JSON representation of the completed phases
+   *
+   * @return JSON string
+   */
+  public String toJson(){
+    var sb = new StringBuilder("{\"phases\":[");
+    var completedPhases = phases.stream().filter(Phase::isCompleted).iterator();
+    while(completedPhases.hasNext()){
+      var p = completedPhases.next();
+      sb.append(String.format(Locale.ROOT,
+          "{\"name\":\"%s\",\"wallMs\":%.3f,\"processCpuMs\":%.3f,\"rows\":%d,\"rowsPerSecond\":%.1f,\"bytes\":%d,\"peakHeapBytes\":%d}",
+          escapeJson(p.getName()), p.getWallTimeMs(), p.getProcessCpuTimeMs(), p.getRows(), p.getRowsPerSecond(), p.getBytes(), p.getPeakHeapBytes()));
+      if(completedPhases.hasNext()){
+        sb.append(",");
+      }
+    }
+    return sb.append("]}").toString();
+  }
+
+  /**
+   * Write JSON representation of completed phases to file
+   *
+   * @param jsonFile to write to
+   */
+  public void writeJson(Path jsonFile){
+    try {
+      Files.writeString(jsonFile, toJson(), StandardCharsets.UTF_8);
+    } catch (IOException e) {
+      throw new PlanItRunTimeException(String.format("Unable to write GTFS phase metrics to %s", jsonFile), e);
+    }
+  }
+
+  /**
+   * Remove all phases, stop sampling the heap for phases that were not completed
+   */
+  public void reset(){
+    phases.forEach(p -> p.heapSampling.cancel(false));
+    phases.clear();
+  }
+}
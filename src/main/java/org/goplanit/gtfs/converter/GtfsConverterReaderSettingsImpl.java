@@ -4,6 +4,7 @@ import org.goplanit.utils.exceptions.PlanItRunTimeException;
 import org.goplanit.utils.misc.UrlUtils;
 
 import java.net.URL;
+import java.nio.file.Path;
 import java.util.logging.Logger;
 
 /**
@@ -25,6 +26,9 @@ public class GtfsConverterReaderSettingsImpl implements GtfsConverterReaderSetti
   /** Country name to use to initialise OSM defaults for */
   private final String countryName;
 
+  /** when set, the phase metrics of the reader are dumped as JSON to this file after reading */
+  private Path phaseMetricsJsonFile = null;
+
   /** Constructor with user defined source locale
    * @param countryName to base source locale on
    */
@@ -88,6 +92,24 @@ public class GtfsConverterReaderSettingsImpl implements GtfsConverterReaderSetti
   }
 
 
+  /**
+   * File to dump the phase metrics (timings, throughput) of the reader to as JSON after reading, if any
+   *
+   * @return file, null if not set
+   */
+  public Path getPhaseMetricsJsonFile() {
+    return phaseMetricsJsonFile;
+  }
+
+  /**
+   * Set file to dump the phase metrics (timings, throughput) of the reader to as JSON after reading
+   *
+   * @param phaseMetricsJsonFile to use, null to not dump metrics
+   */
+  public void setPhaseMetricsJsonFile(Path phaseMetricsJsonFile) {
+    this.phaseMetricsJsonFile = phaseMetricsJsonFile;
+  }
+
   /**
    * {@inheritDoc}
    */
@@ -95,6 +117,9 @@ public class GtfsConverterReaderSettingsImpl implements GtfsConverterReaderSetti
   public void logSettings() {
     LOGGER.info(String.format("GTFS input source: %s", getInputSource()));
     LOGGER.info(String.format("Country: %s", getCountryName()));
+    if(getPhaseMetricsJsonFile() != null){
+      LOGGER.info(String.format("Phase metrics dumped to: %s", getPhaseMetricsJsonFile()));
+    }
   }
 
 }
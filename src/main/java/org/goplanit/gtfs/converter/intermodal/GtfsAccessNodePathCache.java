@@ -0,0 +1,183 @@
+package org.goplanit.gtfs.converter.intermodal;
+
+import org.goplanit.utils.exceptions.PlanItRunTimeException;
+import org.goplanit.utils.graph.directed.EdgeSegment;
+import org.goplanit.utils.mode.Mode;
+import org.goplanit.utils.network.layer.physical.Node;
+import org.goplanit.utils.path.SimpleDirectedPath;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Size bounded cache of physical paths found between an upstream access node and a downstream access link segment for a given mode (and u-turn ban), such that
+ * service leg segments sharing the same access points (e.g. multiple routes serving the same stops) do not require another path search. When the
+ * cache is full, the least recently used path is evicted. Paths that could not be found are cached as well.
+ * <p>
+ *   Instances are thread safe.
+ * </p>
+ *
+ * @author markr
+ */
+public class GtfsAccessNodePathCache {
+
+  /**
+   * Key of a cached path
+   */
+  private static final class PathKey {
+
+    /** id of upstream access node */
+    private final long upstreamAccessNodeId;
+
+    /** id of upstream access link segment, only relevant (otherwise -1) when u-turn is banned as its opposite direction is banned */
+    private final long upstreamAccessLinkSegmentId;
+
+    /** id of downstream access link segment */
+    private final long downstreamAccessLinkSegmentId;
+
+    /** id of mode */
+    private final long modeId;
+
+    /** flag indicating if u-turn at upstream access node was banned */
+    private final boolean banInitialUTurn;
+
+    /**
+     * Constructor
+     *
+     * @param upstreamAccessNode to use
+     * @param upstreamAccessLinkSegment to use
+     * @param downstreamAccessLinkSegment to use
+     * @param mode to use
+     * @param banInitialUTurn to use
+     */
+    private PathKey(Node upstreamAccessNode, EdgeSegment upstreamAccessLinkSegment, EdgeSegment downstreamAccessLinkSegment, Mode mode, boolean banInitialUTurn) {
+      this.upstreamAccessNodeId = upstreamAccessNode.getId();
+      this.upstreamAccessLinkSegmentId = banInitialUTurn ? upstreamAccessLinkSegment.getId() : -1;
+      this.downstreamAccessLinkSegmentId = downstreamAccessLinkSegment.getId();
+      this.modeId = mode.getId();
+      this.banInitialUTurn = banInitialUTurn;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean equals(Object o) {
+      if (this == o) {
+        return true;
+      }
+      if (!(o instanceof PathKey)) {
+        return false;
+      }
+      PathKey other = (PathKey) o;
+      return upstreamAccessNodeId == other.upstreamAccessNodeId && upstreamAccessLinkSegmentId == other.upstreamAccessLinkSegmentId &&
+          downstreamAccessLinkSegmentId == other.downstreamAccessLinkSegmentId &&
+          modeId == other.modeId && banInitialUTurn == other.banInitialUTurn;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int hashCode() {
+      return Objects.hash(upstreamAccessNodeId, upstreamAccessLinkSegmentId, downstreamAccessLinkSegmentId, modeId, banInitialUTurn);
+    }
+  }
+
+  /** maximum number of cached paths */
+  private final int maxSize;
+
+  /** cached paths in access order, null values represent paths that could not be found */
+  private final LinkedHashMap<PathKey, SimpleDirectedPath> paths;
+
+  /** number of lookups served from the cache */
+  private final LongAdder hits = new LongAdder();
+
+  /** number of lookups not served from the cache */
+  private final LongAdder misses = new LongAdder();
+
+  /**
+   * Constructor
+   *
+   * @param maxSize maximum number of cached paths (must be positive)
+   */
+  public GtfsAccessNodePathCache(int maxSize) {
+    PlanItRunTimeException.throwIf(maxSize <= 0, String.format("Maximum size of access node path cache must be positive, found %d", maxSize));
+    this.maxSize = maxSize;
+    this.paths = new LinkedHashMap<>(16, 0.75f, true){
+      @Override
+      protected boolean removeEldestEntry(Map.Entry<PathKey, SimpleDirectedPath> eldest) {
+        return size() > GtfsAccessNodePathCache.this.maxSize;
+      }
+    };
+  }
+
+  /**
+   * Collect a cached path (or its absence). Updates the hit/miss counters
+   *
+   * @param upstreamAccessNode of the path
+   * @param upstreamAccessLinkSegment of the upstream connectoid, its opposite direction is banned when u-turns are banned
+   * @param downstreamAccessLinkSegment of the path
+   * @param mode of the path
+   * @param banInitialUTurn whether u-turn at upstream access node is banned
+   * @return cached path, empty when cached as not found, null when not cached
+   */
+  public synchronized Optional<SimpleDirectedPath> find(
+      Node upstreamAccessNode, EdgeSegment upstreamAccessLinkSegment, EdgeSegment downstreamAccessLinkSegment, Mode mode, boolean banInitialUTurn) {
+    var key = new PathKey(upstreamAccessNode, upstreamAccessLinkSegment, downstreamAccessLinkSegment, mode, banInitialUTurn);
+    if(!paths.containsKey(key)){
+      misses.increment();
+      return null;
+    }
+    hits.increment();
+    return Optional.ofNullable(paths.get(key));
+  }
+
+  /**
+   * Register a found path
+   *
+   * @param upstreamAccessNode of the path
+   * @param upstreamAccessLinkSegment of the upstream connectoid, its opposite direction is banned when u-turns are banned
+   * @param downstreamAccessLinkSegment of the path
+   * @param mode of the path
+   * @param banInitialUTurn whether u-turn at upstream access node is banned
+   * @param path found, null if no path could be found
+   */
+  public synchronized void register(
+      Node upstreamAccessNode, EdgeSegment upstreamAccessLinkSegment, EdgeSegment downstreamAccessLinkSegment, Mode mode, boolean banInitialUTurn, SimpleDirectedPath path) {
+    paths.put(new PathKey(upstreamAccessNode, upstreamAccessLinkSegment, downstreamAccessLinkSegment, mode, banInitialUTurn), path);
+  }
+
+  /**
+   * @return number of lookups served from the cache
+   */
+  public long getNumberOfHits() {
+    return hits.longValue();
+  }
+
+  /**
+   * @return number of lookups not served from the cache
+   */
+  public long getNumberOfMisses() {
+    return misses.longValue();
+  }
+
+  /**
+   * @return number of cached paths
+   */
+  public synchronized int size() {
+    return paths.size();
+  }
+
+  /**
+   * Remove all cached paths and reset counters
+   */
+  public synchronized void clear() {
+    paths.clear();
+    hits.reset();
+    misses.reset();
+  }
+}
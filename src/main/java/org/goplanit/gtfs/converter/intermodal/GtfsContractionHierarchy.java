@@ -0,0 +1,811 @@
+package org.goplanit.gtfs.converter.intermodal;
+
+import org.goplanit.path.SimpleDirectedPathFactoryImpl;
+import org.goplanit.utils.exceptions.PlanItRunTimeException;
+import org.goplanit.utils.graph.directed.DirectedVertex;
+import org.goplanit.utils.graph.directed.EdgeSegment;
+import org.goplanit.utils.network.layer.MacroscopicNetworkLayer;
+import org.goplanit.utils.path.SimpleDirectedPath;
+
+import java.io.*;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.logging.Logger;
+
+/**
+ * Contraction hierarchy over the link segments of a physical network layer for a given mode (link segment costs), to answer point-to-point shortest path
+ * queries with a bidirectional search on the hierarchy rather than a search on the full network. Link segments with infinite cost, i.e., not permitted
+ * for the mode, are not part of the hierarchy.
+ * <p>
+ *   Building the hierarchy is expensive, so it can be persisted and reloaded for the same network and costs, which is verified by means of a fingerprint.
+ *   Once built, queries are thread safe. Banned link segments leaving the origin or entering the destination, e.g., banned initial u-turns, are honoured
+ *   within the query by starting the search from the permitted link segments of the origin (destination) rather than the origin (destination) itself.
+ *   Other banned link segments cannot be honoured within shortcuts, so paths containing a banned link segment are not returned, such that the caller can
+ *   resort to a regular search for those.
+ * </p>
+ *
+ * @author markr
+ */
+public class GtfsContractionHierarchy {
+
+  /** Logger to use */
+  private static final Logger LOGGER = Logger.getLogger(GtfsContractionHierarchy.class.getCanonicalName());
+
+  /** identifies persisted hierarchy files and their format version */
+  private static final long FILE_FORMAT_MAGIC = 0x504c414e43480001L;
+
+  /** maximum number of nodes settled during a witness search, beyond which a shortcut is added regardless (which is safe, but not minimal) */
+  private static final int MAX_WITNESS_SETTLED_NODES = 500;
+
+  /**
+   * Entry in priority queues, ties broken by node index so results are deterministic
+   */
+  private static final class QueueEntry implements Comparable<QueueEntry> {
+
+    /** key of the entry, i.e., cost or priority */
+    private final double key;
+
+    /** node index */
+    private final int node;
+
+    /**
+     * Constructor
+     *
+     * @param key to use
+     * @param node to use
+     */
+    private QueueEntry(double key, int node) {
+      this.key = key;
+      this.node = node;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int compareTo(QueueEntry other) {
+      int result = Double.compare(key, other.key);
+      return result != 0 ? result : Integer.compare(node, other.node);
+    }
+  }
+
+  /**
+   * Edge indices by node stored in primitive arrays, grown when shortcuts are added, used while contracting
+   */
+  private static final class Adjacency {
+
+    /** edge indices by node, only the first {@link #sizes} entries per node are in use */
+    private final int[][] edges;
+
+    /** number of edges by node */
+    private final int[] sizes;
+
+    /**
+     * Constructor
+     *
+     * @param degrees initial number of edges by node, used as initial capacity
+     */
+    private Adjacency(int[] degrees) {
+      this.edges = new int[degrees.length][];
+      this.sizes = new int[degrees.length];
+      for(int node = 0; node < degrees.length; ++node){
+        edges[node] = new int[degrees[node]];
+      }
+    }
+
+    /**
+     * Add edge to node
+     *
+     * @param node to add edge to
+     * @param edge to add
+     */
+    private void add(int node, int edge){
+      if(sizes[node] == edges[node].length){
+        edges[node] = Arrays.copyOf(edges[node], Math.max(4, 2 * sizes[node]));
+      }
+      edges[node][sizes[node]++] = edge;
+    }
+
+    /**
+     * @param node to collect number of edges for
+     * @return number of edges of node
+     */
+    private int size(int node){
+      return sizes[node];
+    }
+
+    /**
+     * @param node to collect edge for
+     * @param index of the edge for the node
+     * @return edge
+     */
+    private int get(int node, int index){
+      return edges[node][index];
+    }
+  }
+
+  /** vertices by node index */
+  private final DirectedVertex[] vertices;
+
+  /** node index by vertex id */
+  private final Map<Long, Integer> nodeIndexByVertexId;
+
+  /** fingerprint of the network and costs the hierarchy is built for */
+  private final long fingerprint;
+
+  /** number of original edges, i.e., link segments, shortcuts are stored after the original edges */
+  private final int numberOfOriginalEdges;
+
+  /** contraction order by node index, higher is more important */
+  private final int[] rank;
+
+  /** number of edges (original and shortcuts) */
+  private int numberOfEdges;
+
+  /** upstream node index by edge */
+  private int[] edgeFrom;
+
+  /** downstream node index by edge */
+  private int[] edgeTo;
+
+  /** cost by edge */
+  private double[] edgeCost;
+
+  /** first (upstream) edge replaced by shortcut, -1 for original edges */
+  private int[] edgeChildFirst;
+
+  /** second (downstream) edge replaced by shortcut, -1 for original edges */
+  private int[] edgeChildSecond;
+
+  /** link segment of original edges */
+  private final EdgeSegment[] edgeSegments;
+
+  /** per node start position in {@link #upwardOutEdges}, for the forward search */
+  private int[] upwardOutStart;
+
+  /** edges towards higher ranked nodes grouped by upstream node */
+  private int[] upwardOutEdges;
+
+  /** per node start position in {@link #upwardInEdges}, for the backward search */
+  private int[] upwardInStart;
+
+  /** edges from higher ranked nodes grouped by downstream node */
+  private int[] upwardInEdges;
+
+  /** per node start position in {@link #originalOutEdges} */
+  private final int[] originalOutStart;
+
+  /** original edges grouped by upstream node */
+  private final int[] originalOutEdges;
+
+  /** per node start position in {@link #originalInEdges} */
+  private final int[] originalInStart;
+
+  /** original edges grouped by downstream node */
+  private final int[] originalInEdges;
+
+  /**
+   * Add an edge
+   *
+   * @param from upstream node index
+   * @param to downstream node index
+   * @param cost of the edge
+   * @param childFirst first replaced edge, -1 if original
+   * @param childSecond second replaced edge, -1 if original
+   * @return edge index
+   */
+  private int addEdge(int from, int to, double cost, int childFirst, int childSecond){
+    if(numberOfEdges == edgeFrom.length){
+      int capacity = Math.max(16, 2 * numberOfEdges);
+      edgeFrom = Arrays.copyOf(edgeFrom, capacity);
+      edgeTo = Arrays.copyOf(edgeTo, capacity);
+      edgeCost = Arrays.copyOf(edgeCost, capacity);
+      edgeChildFirst = Arrays.copyOf(edgeChildFirst, capacity);
+      edgeChildSecond = Arrays.copyOf(edgeChildSecond, capacity);
+    }
+    edgeFrom[numberOfEdges] = from;
+    edgeTo[numberOfEdges] = to;
+    edgeCost[numberOfEdges] = cost;
+    edgeChildFirst[numberOfEdges] = childFirst;
+    edgeChildSecond[numberOfEdges] = childSecond;
+    return numberOfEdges++;
+  }
+
+  /**
+   * Create adjacency lists of all current edges by node
+   *
+   * @param outgoing when true group by upstream node, otherwise by downstream node
+   * @return edge indices by node
+   */
+  private Adjacency createAdjacency(boolean outgoing){
+    int[] degrees = new int[vertices.length];
+    for(int edge = 0; edge < numberOfEdges; ++edge){
+      ++degrees[outgoing ? edgeFrom[edge] : edgeTo[edge]];
+    }
+    var adjacency = new Adjacency(degrees);
+    for(int edge = 0; edge < numberOfEdges; ++edge){
+      adjacency.add(outgoing ? edgeFrom[edge] : edgeTo[edge], edge);
+    }
+    return adjacency;
+  }
+
+  /**
+   * Group the original edges by node in a compact (CSR) layout
+   *
+   * @param outgoing when true group by upstream node, otherwise by downstream node
+   * @param start per node start position in the result, populated by this method (length number of nodes + 1)
+   * @return original edge indices grouped by node
+   */
+  private int[] groupOriginalEdgesByNode(boolean outgoing, int[] start){
+    for(int edge = 0; edge < numberOfOriginalEdges; ++edge){
+      ++start[(outgoing ? edgeFrom[edge] : edgeTo[edge]) + 1];
+    }
+    for(int node = 0; node < vertices.length; ++node){
+      start[node + 1] += start[node];
+    }
+    int[] edges = new int[numberOfOriginalEdges];
+    int[] position = Arrays.copyOf(start, vertices.length);
+    for(int edge = 0; edge < numberOfOriginalEdges; ++edge){
+      edges[position[outgoing ? edgeFrom[edge] : edgeTo[edge]]++] = edge;
+    }
+    return edges;
+  }
+
+  /**
+   * Check if any of the original edges of a node is banned
+   *
+   * @param node to check
+   * @param start per node start position in the edges
+   * @param edges original edges grouped by node
+   * @param bannedEdgeSegments to check against
+   * @return true when at least one is banned, false otherwise
+   */
+  private boolean hasBannedOriginalEdge(int node, int[] start, int[] edges, Set<? extends EdgeSegment> bannedEdgeSegments){
+    for(int index = start[node]; index < start[node + 1]; ++index){
+      if(bannedEdgeSegments.contains(edgeSegments[edges[index]])){
+        return true;
+      }
+    }
+    return false;
+  }
+
+  /**
+   * Initialise one direction of the bidirectional search. Either from the node itself, or, when one of its original edges is banned, from the
+   * neighbours reached by its permitted original edges, with the cost of that edge, such that banned edges of the node are never used
+   *
+   * @param node to start direction from, i.e., origin for forward direction and destination for backward direction
+   * @param forward true for forward direction
+   * @param bannedEdgeSegments not to use
+   * @param queue of the direction
+   * @param costs of the direction
+   * @param predecessors of the direction (edge by node)
+   * @return true when initialised from the permitted edges of the node, false when initialised from the node itself
+   */
+  private boolean initialiseDirection(
+      int node, boolean forward, Set<? extends EdgeSegment> bannedEdgeSegments, PriorityQueue<QueueEntry> queue, Map<Integer, Double> costs, Map<Integer, Integer> predecessors){
+    int[] start = forward ? originalOutStart : originalInStart;
+    int[] edges = forward ? originalOutEdges : originalInEdges;
+    if(bannedEdgeSegments == null || bannedEdgeSegments.isEmpty() || !hasBannedOriginalEdge(node, start, edges, bannedEdgeSegments)){
+      costs.put(node, 0.0);
+      queue.add(new QueueEntry(0.0, node));
+      return false;
+    }
+
+    for(int index = start[node]; index < start[node + 1]; ++index){
+      int edge = edges[index];
+      if(bannedEdgeSegments.contains(edgeSegments[edge])){
+        continue;
+      }
+      int next = forward ? edgeTo[edge] : edgeFrom[edge];
+      var current = costs.get(next);
+      if(current == null || edgeCost[edge] < current){
+        costs.put(next, edgeCost[edge]);
+        predecessors.put(next, edge);
+        queue.add(new QueueEntry(edgeCost[edge], next));
+      }
+    }
+    return true;
+  }
+
+  /**
+   * Cheapest edge per uncontracted neighbour of a node
+   *
+   * @param adjacency edges by node
+   * @param node to collect cheapest edges for
+   * @param outgoing when true the neighbour is the downstream node, otherwise the upstream node
+   * @param contracted flags by node index
+   * @return cheapest edge by neighbour, in order of first appearance
+   */
+  private Map<Integer, Integer> findCheapestEdgeByNeighbour(Adjacency adjacency, int node, boolean outgoing, boolean[] contracted){
+    Map<Integer, Integer> cheapestEdgeByNeighbour = new LinkedHashMap<>();
+    for(int index = 0; index < adjacency.size(node); ++index){
+      int edge = adjacency.get(node, index);
+      int neighbour = outgoing ? edgeTo[edge] : edgeFrom[edge];
+      if(contracted[neighbour]){
+        continue;
+      }
+      var current = cheapestEdgeByNeighbour.get(neighbour);
+      if(current == null || edgeCost[edge] < edgeCost[current]){
+        cheapestEdgeByNeighbour.put(neighbour, edge);
+      }
+    }
+    return cheapestEdgeByNeighbour;
+  }
+
+  /**
+   * Local Dijkstra search among uncontracted nodes, avoiding the node being contracted, to find witnesses that make shortcuts redundant
+   *
+   * @param source node index
+   * @param avoid node index to avoid, i.e., node being contracted
+   * @param maxCost beyond which searching is pointless
+   * @param outAdjacency outgoing edges by node
+   * @param contracted flags by node index
+   * @return cost by reached node index
+   */
+  private Map<Integer, Double> witnessSearch(int source, int avoid, double maxCost, Adjacency outAdjacency, boolean[] contracted){
+    Map<Integer, Double> costs = new HashMap<>();
+    Set<Integer> settled = new HashSet<>();
+    PriorityQueue<QueueEntry> queue = new PriorityQueue<>();
+    costs.put(source, 0.0);
+    queue.add(new QueueEntry(0.0, source));
+    while(!queue.isEmpty() && settled.size() < MAX_WITNESS_SETTLED_NODES){
+      var entry = queue.poll();
+      if(entry.key > maxCost){
+        break;
+      }
+      if(!settled.add(entry.node)){
+        continue;
+      }
+      for(int index = 0; index < outAdjacency.size(entry.node); ++index){
+        int edge = outAdjacency.get(entry.node, index);
+        int to = edgeTo[edge];
+        if(to == avoid || contracted[to]){
+          continue;
+        }
+        double cost = entry.key + edgeCost[edge];
+        var current = costs.get(to);
+        if(current == null || cost < current){
+          costs.put(to, cost);
+          queue.add(new QueueEntry(cost, to));
+        }
+      }
+    }
+    return costs;
+  }
+
+  /**
+   * Find (and optionally add) the shortcuts required when contracting the node
+   *
+   * @param node to contract
+   * @param add when true shortcuts are added, otherwise only counted
+   * @param outAdjacency outgoing edges by node
+   * @param inAdjacency incoming edges by node
+   * @param contracted flags by node index
+   * @return number of shortcuts
+   */
+  private int findShortcuts(int node, boolean add, Adjacency outAdjacency, Adjacency inAdjacency, boolean[] contracted){
+    var cheapestIn = findCheapestEdgeByNeighbour(inAdjacency, node, false, contracted);
+    var cheapestOut = findCheapestEdgeByNeighbour(outAdjacency, node, true, contracted);
+    if(cheapestIn.isEmpty() || cheapestOut.isEmpty()){
+      return 0;
+    }
+    double maxOutCost = cheapestOut.values().stream().mapToDouble(e -> edgeCost[e]).max().getAsDouble();
+
+    int numberOfShortcuts = 0;
+    for(var inEntry : cheapestIn.entrySet()){
+      int from = inEntry.getKey();
+      int inEdge = inEntry.getValue();
+      var witnessCosts = witnessSearch(from, node, edgeCost[inEdge] + maxOutCost, outAdjacency, contracted);
+      for(var outEntry : cheapestOut.entrySet()){
+        int to = outEntry.getKey();
+        if(to == from){
+          continue;
+        }
+        int outEdge = outEntry.getValue();
+        double shortcutCost = edgeCost[inEdge] + edgeCost[outEdge];
+        var witnessCost = witnessCosts.get(to);
+        if(witnessCost != null && witnessCost <= shortcutCost){
+          continue;
+        }
+        ++numberOfShortcuts;
+        if(add){
+          int shortcut = addEdge(from, to, shortcutCost, inEdge, outEdge);
+          outAdjacency.add(from, shortcut);
+          inAdjacency.add(to, shortcut);
+        }
+      }
+    }
+    return numberOfShortcuts;
+  }
+
+  /**
+   * Contraction priority of a node, i.e., edge difference plus number of contracted neighbours, lower is contracted first
+   *
+   * @param node to compute priority for
+   * @param outAdjacency outgoing edges by node
+   * @param inAdjacency incoming edges by node
+   * @param contracted flags by node index
+   * @param contractedNeighbours number of contracted neighbours by node index
+   * @return priority
+   */
+  private int computePriority(int node, Adjacency outAdjacency, Adjacency inAdjacency, boolean[] contracted, int[] contractedNeighbours){
+    int numberOfShortcuts = findShortcuts(node, false, outAdjacency, inAdjacency, contracted);
+    int numberOfRemovedEdges =
+        findCheapestEdgeByNeighbour(inAdjacency, node, false, contracted).size() + findCheapestEdgeByNeighbour(outAdjacency, node, true, contracted).size();
+    return numberOfShortcuts - numberOfRemovedEdges + contractedNeighbours[node];
+  }
+
+  /**
+   * Contract all nodes in order of priority, adding shortcuts and determining the rank of each node
+   */
+  private void contract(){
+    var outAdjacency = createAdjacency(true);
+    var inAdjacency = createAdjacency(false);
+    boolean[] contracted = new boolean[vertices.length];
+    int[] contractedNeighbours = new int[vertices.length];
+    int[] priority = new int[vertices.length];
+
+    PriorityQueue<QueueEntry> queue = new PriorityQueue<>();
+    for(int node = 0; node < vertices.length; ++node){
+      priority[node] = computePriority(node, outAdjacency, inAdjacency, contracted, contractedNeighbours);
+      queue.add(new QueueEntry(priority[node], node));
+    }
+
+    int nextRank = 0;
+    while(!queue.isEmpty()){
+      var entry = queue.poll();
+      int node = entry.node;
+      if(contracted[node] || entry.key != priority[node]){
+        continue;
+      }
+      /* lazy update, contract only when priority is still current */
+      int currentPriority = computePriority(node, outAdjacency, inAdjacency, contracted, contractedNeighbours);
+      if(currentPriority != priority[node]){
+        priority[node] = currentPriority;
+        queue.add(new QueueEntry(currentPriority, node));
+        continue;
+      }
+
+      findShortcuts(node, true, outAdjacency, inAdjacency, contracted);
+      contracted[node] = true;
+      rank[node] = nextRank++;
+
+      Set<Integer> neighbours = new TreeSet<>();
+      for(int index = 0; index < outAdjacency.size(node); ++index){
+        neighbours.add(edgeTo[outAdjacency.get(node, index)]);
+      }
+      for(int index = 0; index < inAdjacency.size(node); ++index){
+        neighbours.add(edgeFrom[inAdjacency.get(node, index)]);
+      }
+      for(int neighbour : neighbours){
+        if(contracted[neighbour]){
+          continue;
+        }
+        ++contractedNeighbours[neighbour];
+        priority[neighbour] = computePriority(neighbour, outAdjacency, inAdjacency, contracted, contractedNeighbours);
+        queue.add(new QueueEntry(priority[neighbour], neighbour));
+      }
+    }
+  }
+
+  /**
+   * Build the compact upward graphs used by the bidirectional query
+   */
+  private void buildSearchGraph(){
+    upwardOutStart = new int[vertices.length + 1];
+    upwardInStart = new int[vertices.length + 1];
+    for(int edge = 0; edge < numberOfEdges; ++edge){
+      if(rank[edgeTo[edge]] > rank[edgeFrom[edge]]){
+        ++upwardOutStart[edgeFrom[edge] + 1];
+      }else{
+        ++upwardInStart[edgeTo[edge] + 1];
+      }
+    }
+    for(int node = 0; node < vertices.length; ++node){
+      upwardOutStart[node + 1] += upwardOutStart[node];
+      upwardInStart[node + 1] += upwardInStart[node];
+    }
+    upwardOutEdges = new int[upwardOutStart[vertices.length]];
+    upwardInEdges = new int[upwardInStart[vertices.length]];
+    int[] outPosition = Arrays.copyOf(upwardOutStart, vertices.length);
+    int[] inPosition = Arrays.copyOf(upwardInStart, vertices.length);
+    for(int edge = 0; edge < numberOfEdges; ++edge){
+      if(rank[edgeTo[edge]] > rank[edgeFrom[edge]]){
+        upwardOutEdges[outPosition[edgeFrom[edge]]++] = edge;
+      }else{
+        upwardInEdges[inPosition[edgeTo[edge]]++] = edge;
+      }
+    }
+  }
+
+  /**
+   * Unpack an edge into the link segments it represents
+   *
+   * @param edge to unpack
+   * @param result to append link segments to
+   */
+  private void unpack(int edge, Deque<EdgeSegment> result){
+    Deque<Integer> stack = new ArrayDeque<>();
+    stack.push(edge);
+    while(!stack.isEmpty()){
+      int current = stack.pop();
+      if(edgeChildFirst[current] < 0){
+        result.addLast(edgeSegments[current]);
+      }else{
+        stack.push(edgeChildSecond[current]);
+        stack.push(edgeChildFirst[current]);
+      }
+    }
+  }
+
+  /**
+   * Settle the next node of one direction of the bidirectional search
+   *
+   * @param queue of the direction
+   * @param costs of the direction
+   * @param predecessors of the direction (edge by node)
+   * @param settled of the direction
+   * @param start of the upward edges of the direction
+   * @param edges the upward edges of the direction
+   * @param forward true for forward direction
+   */
+  private void settleNext(
+      PriorityQueue<QueueEntry> queue, Map<Integer, Double> costs, Map<Integer, Integer> predecessors, Set<Integer> settled, int[] start, int[] edges, boolean forward){
+    var entry = queue.poll();
+    if(!settled.add(entry.node) || entry.key > costs.get(entry.node)){
+      return;
+    }
+    for(int index = start[entry.node]; index < start[entry.node + 1]; ++index){
+      int edge = edges[index];
+      int next = forward ? edgeTo[edge] : edgeFrom[edge];
+      double cost = entry.key + edgeCost[edge];
+      var current = costs.get(next);
+      if(current == null || cost < current){
+        costs.put(next, cost);
+        predecessors.put(next, edge);
+        queue.add(new QueueEntry(cost, next));
+      }
+    }
+  }
+
+  /**
+   * Constructor
+   *
+   * @param layer to build hierarchy for
+   * @param linkSegmentCosts by link segment id
+   */
+  private GtfsContractionHierarchy(MacroscopicNetworkLayer layer, double[] linkSegmentCosts){
+    this.nodeIndexByVertexId = new HashMap<>();
+    List<DirectedVertex> vertexList = new ArrayList<>();
+    for(var node : layer.getNodes()){
+      nodeIndexByVertexId.put(node.getId(), vertexList.size());
+      vertexList.add(node);
+    }
+    this.vertices = vertexList.toArray(new DirectedVertex[0]);
+    this.rank = new int[vertices.length];
+
+    this.edgeFrom = new int[0];
+    this.edgeTo = new int[0];
+    this.edgeCost = new double[0];
+    this.edgeChildFirst = new int[0];
+    this.edgeChildSecond = new int[0];
+
+    /* original edges, fingerprint covers topology and costs */
+    List<EdgeSegment> segmentList = new ArrayList<>();
+    long hash = 1125899906842597L;
+    for(var linkSegment : layer.getLinkSegments()){
+      double cost = linkSegmentCosts[(int) linkSegment.getId()];
+      if(Double.isInfinite(cost) || Double.isNaN(cost) || linkSegment.getUpstreamVertex() == linkSegment.getDownstreamVertex()){
+        continue;
+      }
+      int from = nodeIndexByVertexId.get(linkSegment.getUpstreamVertex().getId());
+      int to = nodeIndexByVertexId.get(linkSegment.getDownstreamVertex().getId());
+      addEdge(from, to, cost, -1, -1);
+      segmentList.add(linkSegment);
+      hash = 31 * hash + linkSegment.getId();
+      hash = 31 * hash + linkSegment.getUpstreamVertex().getId();
+      hash = 31 * hash + linkSegment.getDownstreamVertex().getId();
+      hash = 31 * hash + Double.doubleToLongBits(cost);
+    }
+    this.numberOfOriginalEdges = numberOfEdges;
+    this.edgeSegments = segmentList.toArray(new EdgeSegment[0]);
+    this.originalOutStart = new int[vertices.length + 1];
+    this.originalOutEdges = groupOriginalEdgesByNode(true, originalOutStart);
+    this.originalInStart = new int[vertices.length + 1];
+    this.originalInEdges = groupOriginalEdgesByNode(false, originalInStart);
+    this.fingerprint = 31 * hash + vertices.length;
+  }
+
+  /**
+   * Create a contraction hierarchy for the given layer and costs, reusing a persisted hierarchy if available and built for the same network and costs
+   *
+   * @param layer to build hierarchy for
+   * @param linkSegmentCosts by link segment id, infinite costs are excluded
+   * @param hierarchyFile to load from and persist to, may be null
+   * @return created hierarchy
+   */
+  public static GtfsContractionHierarchy create(MacroscopicNetworkLayer layer, double[] linkSegmentCosts, Path hierarchyFile){
+    PlanItRunTimeException.throwIfNull(layer, "Network layer to create contraction hierarchy for is null");
+    var hierarchy = new GtfsContractionHierarchy(layer, linkSegmentCosts);
+    if(hierarchyFile != null && Files.exists(hierarchyFile) && hierarchy.load(hierarchyFile)){
+      hierarchy.buildSearchGraph();
+      return hierarchy;
+    }
+
+    long startTime = System.currentTimeMillis();
+    hierarchy.contract();
+    hierarchy.buildSearchGraph();
+    LOGGER.info(String.format("Built contraction hierarchy over %d nodes, %d link segments with %d shortcuts in %d ms",
+        hierarchy.vertices.length, hierarchy.numberOfOriginalEdges, hierarchy.numberOfEdges - hierarchy.numberOfOriginalEdges, System.currentTimeMillis() - startTime));
+
+    if(hierarchyFile != null){
+      hierarchy.save(hierarchyFile);
+    }
+    return hierarchy;
+  }
+
+  /**
+   * Load ranks and shortcuts from file, only when built for the same network and costs
+   *
+   * @param hierarchyFile to load from
+   * @return true when loaded, false otherwise
+   */
+  private boolean load(Path hierarchyFile){
+    try(var in = new DataInputStream(new BufferedInputStream(Files.newInputStream(hierarchyFile)))){
+      if(in.readLong() != FILE_FORMAT_MAGIC || in.readLong() != fingerprint || in.readInt() != vertices.length){
+        LOGGER.info(String.format("Contraction hierarchy %s built for different network or costs, rebuilding", hierarchyFile));
+        return false;
+      }
+      for(int node = 0; node < vertices.length; ++node){
+        rank[node] = in.readInt();
+      }
+      int numberOfShortcuts = in.readInt();
+      for(int index = 0; index < numberOfShortcuts; ++index){
+        addEdge(in.readInt(), in.readInt(), in.readDouble(), in.readInt(), in.readInt());
+      }
+    } catch (IOException e) {
+      LOGGER.warning(String.format("Unable to load contraction hierarchy from %s (%s), rebuilding", hierarchyFile, e.getMessage()));
+      numberOfEdges = numberOfOriginalEdges;
+      return false;
+    }
+    LOGGER.info(String.format("Loaded contraction hierarchy with %d shortcuts from %s", numberOfEdges - numberOfOriginalEdges, hierarchyFile));
+    return true;
+  }
+
+  /**
+   * Persist ranks and shortcuts to file
+   *
+   * @param hierarchyFile to save to
+   */
+  public void save(Path hierarchyFile){
+    try(var out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(hierarchyFile)))){
+      out.writeLong(FILE_FORMAT_MAGIC);
+      out.writeLong(fingerprint);
+      out.writeInt(vertices.length);
+      for(int node = 0; node < vertices.length; ++node){
+        out.writeInt(rank[node]);
+      }
+      out.writeInt(numberOfEdges - numberOfOriginalEdges);
+      for(int edge = numberOfOriginalEdges; edge < numberOfEdges; ++edge){
+        out.writeInt(edgeFrom[edge]);
+        out.writeInt(edgeTo[edge]);
+        out.writeDouble(edgeCost[edge]);
+        out.writeInt(edgeChildFirst[edge]);
+        out.writeInt(edgeChildSecond[edge]);
+      }
+    } catch (IOException e) {
+      throw new PlanItRunTimeException(String.format("Unable to write contraction hierarchy to %s", hierarchyFile), e);
+    }
+  }
+
+  /**
+   * Find the shortest path between origin and destination
+   *
+   * @param origin to start from
+   * @param destination to end at
+   * @param bannedEdgeSegments link segments not to use, only honoured within the query when leaving the origin or entering the destination
+   * @return shortest path (empty when origin is destination), null when not found or when it contains a banned link segment, the latter only occurs
+   * for banned link segments elsewhere, or when the only cheaper alternative would return to the origin (destination) to use a banned link segment
+   */
+  public SimpleDirectedPath findPath(DirectedVertex origin, DirectedVertex destination, Set<? extends EdgeSegment> bannedEdgeSegments){
+    int source = findNodeIndex(origin);
+    int target = findNodeIndex(destination);
+    if(source < 0 || target < 0){
+      return null;
+    }
+
+    Map<Integer, Double> forwardCosts = new HashMap<>();
+    Map<Integer, Double> backwardCosts = new HashMap<>();
+    Map<Integer, Integer> forwardPredecessors = new HashMap<>();
+    Map<Integer, Integer> backwardPredecessors = new HashMap<>();
+    Set<Integer> forwardSettled = new HashSet<>();
+    Set<Integer> backwardSettled = new HashSet<>();
+    PriorityQueue<QueueEntry> forwardQueue = new PriorityQueue<>();
+    PriorityQueue<QueueEntry> backwardQueue = new PriorityQueue<>();
+    double bestCost = Double.POSITIVE_INFINITY;
+    int meetingNode = -1;
+    int directEdge = -1;
+    if(source == target){
+      forwardCosts.put(source, 0.0);
+      backwardCosts.put(target, 0.0);
+      forwardQueue.add(new QueueEntry(0.0, source));
+      backwardQueue.add(new QueueEntry(0.0, target));
+    }else{
+      boolean forwardFromEdges = initialiseDirection(source, true, bannedEdgeSegments, forwardQueue, forwardCosts, forwardPredecessors);
+      boolean backwardFromEdges = initialiseDirection(target, false, bannedEdgeSegments, backwardQueue, backwardCosts, backwardPredecessors);
+      if(forwardFromEdges && backwardFromEdges){
+        /* neither direction contains the origin nor the destination itself, so they cannot meet on a permitted edge from origin to destination */
+        for(int index = originalOutStart[source]; index < originalOutStart[source + 1]; ++index){
+          int edge = originalOutEdges[index];
+          if(edgeTo[edge] == target && edgeCost[edge] < bestCost && !bannedEdgeSegments.contains(edgeSegments[edge])){
+            bestCost = edgeCost[edge];
+            directEdge = edge;
+          }
+        }
+      }
+    }
+
+    while(true){
+      boolean forwardActive = !forwardQueue.isEmpty() && forwardQueue.peek().key < bestCost;
+      boolean backwardActive = !backwardQueue.isEmpty() && backwardQueue.peek().key < bestCost;
+      if(!forwardActive && !backwardActive){
+        break;
+      }
+      boolean forward = forwardActive && (!backwardActive || forwardQueue.peek().key <= backwardQueue.peek().key);
+      int node = forward ? forwardQueue.peek().node : backwardQueue.peek().node;
+      if(forward){
+        settleNext(forwardQueue, forwardCosts, forwardPredecessors, forwardSettled, upwardOutStart, upwardOutEdges, true);
+      }else{
+        settleNext(backwardQueue, backwardCosts, backwardPredecessors, backwardSettled, upwardInStart, upwardInEdges, false);
+      }
+      var forwardCost = forwardCosts.get(node);
+      var backwardCost = backwardCosts.get(node);
+      if(forwardCost != null && backwardCost != null && forwardCost + backwardCost < bestCost){
+        bestCost = forwardCost + backwardCost;
+        meetingNode = node;
+        directEdge = -1;
+      }
+    }
+    if(directEdge >= 0){
+      return new SimpleDirectedPathFactoryImpl().createNew(new ArrayDeque<>(List.of(edgeSegments[directEdge])));
+    }
+    if(meetingNode < 0){
+      return null;
+    }
+
+    /* forward part in reverse, then backward part */
+    Deque<Integer> forwardEdges = new ArrayDeque<>();
+    for(int node = meetingNode; node != source; node = edgeFrom[forwardPredecessors.get(node)]){
+      forwardEdges.addFirst(forwardPredecessors.get(node));
+    }
+    Deque<EdgeSegment> pathSegments = new ArrayDeque<>();
+    forwardEdges.forEach(e -> unpack(e, pathSegments));
+    for(int node = meetingNode; node != target; node = edgeTo[backwardPredecessors.get(node)]){
+      unpack(backwardPredecessors.get(node), pathSegments);
+    }
+
+    if(bannedEdgeSegments != null && !bannedEdgeSegments.isEmpty() && pathSegments.stream().anyMatch(bannedEdgeSegments::contains)){
+      return null;
+    }
+    return new SimpleDirectedPathFactoryImpl().createNew(pathSegments);
+  }
+
+  /**
+   * Node index of a vertex
+   *
+   * @param vertex to find
+   * @return index, -1 if not part of the hierarchy
+   */
+  private int findNodeIndex(DirectedVertex vertex){
+    var index = nodeIndexByVertexId.get(vertex.getId());
+    return index == null ? -1 : index;
+  }
+
+  /**
+   * @return number of shortcuts added to the network
+   */
+  public int getNumberOfShortcuts(){
+    return numberOfEdges - numberOfOriginalEdges;
+  }
+}
@@ -5,6 +5,13 @@ import org.goplanit.converter.intermodal.IntermodalReader;
 import org.goplanit.gtfs.converter.service.GtfsServicesReader;
 import org.goplanit.gtfs.converter.service.GtfsServicesReaderFactory;
 import org.goplanit.gtfs.converter.zoning.GtfsZoningReaderFactory;
+import org.goplanit.gtfs.entity.GtfsStop;
+import org.goplanit.gtfs.enums.GtfsFileType;
+import org.goplanit.gtfs.enums.GtfsKeyType;
+import org.goplanit.gtfs.handler.GtfsFileHandlerStops;
+import org.goplanit.gtfs.reader.GtfsFileReaderStops;
+import org.goplanit.gtfs.reader.GtfsReaderFactory;
+import org.goplanit.gtfs.scheme.GtfsFileSchemeFactory;
 import org.goplanit.gtfs.util.GtfsRoutedServicesModifierUtils;
 import org.goplanit.network.MacroscopicNetwork;
 import org.goplanit.network.ServiceNetwork;
@@ -13,16 +20,22 @@ import org.goplanit.service.routed.modifier.event.handler.SyncDeparturesXmlIdToI
 import org.goplanit.service.routed.modifier.event.handler.SyncRoutedServicesXmlIdToIdHandler;
 import org.goplanit.service.routed.modifier.event.handler.SyncRoutedTripsXmlIdToIdHandler;
 import org.goplanit.utils.exceptions.PlanItException;
+import org.goplanit.utils.geo.PlanitJtsCrsUtils;
+import org.goplanit.utils.geo.PlanitJtsUtils;
 import org.goplanit.utils.id.IdGroupingToken;
 import org.goplanit.utils.misc.LoggingUtils;
 import org.goplanit.utils.misc.Pair;
 import org.goplanit.utils.misc.Quadruple;
+import org.goplanit.utils.misc.StringUtils;
 import org.goplanit.utils.mode.TrackModeType;
 import org.goplanit.utils.service.routed.modifier.RoutedServicesModifierListener;
 import org.goplanit.zoning.Zoning;
 import org.hsqldb.persist.Log;
 
+import java.nio.charset.StandardCharsets;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
 import java.util.logging.Logger;
 import java.util.stream.Collectors;
 
@@ -72,6 +85,65 @@ public class GtfsIntermodalReader implements IntermodalReader<ServiceNetwork, Ro
     }
   }
 
+  /**
+   * Pre-pass over the GTFS stops to identify all stops that may be mapped to the network, i.e., stops for which the largest search envelope used when
+   * mapping them intersects the bounding box of the network. Stops without a location or with a user overwritten mapping are always included
+   *
+   * @return ids of GTFS stops within the pre-clipped area, null if no bounding box could be determined for the network
+   */
+  private Set<String> collectPreClipGtfsStopIds(){
+    var networkBoundingBox = parentNetwork.createBoundingBox();
+    if(networkBoundingBox == null){
+      LOGGER.warning("Unable to pre-clip GTFS services, no bounding box could be created for network, likely network is empty");
+      return null;
+    }
+
+    final var zoningSettings = getSettings().getZoningSettings();
+    final double searchRadiusMeters =
+        Math.max(zoningSettings.getGtfsStopToTransferZoneSearchRadiusMeters(), zoningSettings.getGtfsStopToLinkSearchRadiusMeters());
+    final var geoTools = new PlanitJtsCrsUtils(PlanitJtsCrsUtils.DEFAULT_GEOGRAPHIC_CRS);
+    final var crsTransform = PlanitJtsUtils.findMathTransform(PlanitJtsCrsUtils.DEFAULT_GEOGRAPHIC_CRS, parentNetwork.getCoordinateReferenceSystem());
+
+    final Set<String> preClipGtfsStopIds = new HashSet<>();
+    var preClipHandler = new GtfsFileHandlerStops(){
+      @Override
+      public void handle(GtfsStop gtfsStop) {
+        var stopId = gtfsStop.getStopId();
+        if(zoningSettings.isOverwrittenGtfsStopTransferZoneMapping(stopId) || zoningSettings.hasOverwrittenGtfsStopToLinkMapping(stopId)){
+          preClipGtfsStopIds.add(stopId);
+          return;
+        }
+        if(zoningSettings.isOverwrittenGtfsStopLocation(stopId)){
+          gtfsStop.setLocationAsCoord(zoningSettings.getOverwrittenGtfsStopLocation(stopId));
+        }
+        if(StringUtils.isNullOrBlank(gtfsStop.getStopLongitude()) || StringUtils.isNullOrBlank(gtfsStop.getStopLatitude())){
+          preClipGtfsStopIds.add(stopId);
+          return;
+        }
+
+        var location = gtfsStop.getLocationAsCoord();
+        var searchEnvelope = PlanitJtsUtils.transformEnvelope(
+            geoTools.createBoundingBox(location.x, location.y, searchRadiusMeters), crsTransform);
+        if(searchEnvelope.intersects(networkBoundingBox)){
+          preClipGtfsStopIds.add(stopId);
+        }
+      }
+    };
+
+    GtfsFileReaderStops stopsFileReader = (GtfsFileReaderStops) GtfsReaderFactory.createFileReader(
+        GtfsFileSchemeFactory.create(GtfsFileType.STOPS), getSettings().getInputSource());
+    stopsFileReader.addHandler(preClipHandler);
+    stopsFileReader.getSettings().excludeColumns(GtfsKeyType.STOP_CODE);
+    stopsFileReader.getSettings().excludeColumns(GtfsKeyType.STOP_URL);
+    stopsFileReader.getSettings().excludeColumns(GtfsKeyType.STOP_TIMEZONE);
+    stopsFileReader.getSettings().excludeColumns(GtfsKeyType.WHEELCHAIR_BOARDING);
+    stopsFileReader.read(StandardCharsets.UTF_8);
+
+    LOGGER.info(String.format("Pre-clipped GTFS services to %d of %d GTFS stops within network bounding box",
+        preClipGtfsStopIds.size(), stopsFileReader.getNumberOfRecordsRead()));
+    return preClipGtfsStopIds;
+  }
+
   /** Constructor where settings are directly provided such that input information can be extracted from it
    *
    * @param idToken to use for the routed services and service network ids
@@ -167,8 +239,12 @@ public class GtfsIntermodalReader implements IntermodalReader<ServiceNetwork, Ro
     }
 
     /* SERVICES without geo filter (since locations are currently only parsed when considering GTFS stops via (transfer) zoning reader), hence
-    *  all routes/services are initially mapped to PLANit equivalents but without mapping to physical network yet*/
+    *  all routes/services are initially mapped to PLANit equivalents but without mapping to physical network yet, unless pre-clipping is activated
+    *  in which case trips that would be truncated entirely afterwards are not mapped at all */
     GtfsServicesReader servicesReader = GtfsServicesReaderFactory.create(parentNetwork, getSettings().getServiceSettings());
+    if(getSettings().isPreClipToNetworkBoundingBox()){
+      servicesReader.setPreClipGtfsStopIds(collectPreClipGtfsStopIds());
+    }
     Pair<ServiceNetwork,RoutedServices> servicesResult = servicesReader.read();
 
     /* ZONING (PT stops as transfer zones) this parses GTFS stops and their locations, parsed GTFS stops are constrained to bounding box of underlying physical network*/
@@ -189,6 +265,13 @@ public class GtfsIntermodalReader implements IntermodalReader<ServiceNetwork, Ro
         servicesResult.second(),
         servicesReader.getServiceNodeToGtfsStopIdMapping(),
         zoningReader.getGtfsStopIdToTransferZoneMapping());
+    if(getSettings().isShapeGuidedPathSearch()){
+      final var shapeIdMapping = servicesReader.getServiceLegSegmentToGtfsShapeIdMapping();
+      final var shapeGeometries = GtfsShapeGeometries.create(
+          getSettings().getInputSource(), servicesReader.getGtfsShapeIdsInUse(), parentNetwork.getCoordinateReferenceSystem());
+      integrator.setServiceLegSegmentToShapeMapping(legSegment -> shapeGeometries.getGeometry(shapeIdMapping.apply(legSegment)));
+      integrator.setGtfsStopIdToLocationMapping(zoningReader.getGtfsStopIdToLocationMapping());
+    }
     integrator.execute();
 
     /* SERVICE NETWORK CLEAN-UP */
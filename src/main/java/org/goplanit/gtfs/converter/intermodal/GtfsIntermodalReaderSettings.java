@@ -9,7 +9,9 @@ import org.goplanit.utils.exceptions.PlanItRunTimeException;
 import org.goplanit.utils.misc.UrlUtils;
 
 import java.net.URL;
+import java.nio.file.Path;
 import java.time.DayOfWeek;
+import java.util.logging.Logger;
 
 /**
  * Settings of GtfsIntermodalReader
@@ -19,6 +21,51 @@ import java.time.DayOfWeek;
  */
 public class GtfsIntermodalReaderSettings implements ConverterReaderSettings {
 
+  /** logger to use */
+  private static final Logger LOGGER = Logger.getLogger(GtfsIntermodalReaderSettings.class.getCanonicalName());
+
+  /** default for pre-clipping GTFS services to the bounding box of the network */
+  public static final boolean DEFAULT_PRE_CLIP_TO_NETWORK_BOUNDING_BOX = false;
+
+  /** default number of threads used for mapping service leg segments to physical paths, one means paths are mapped sequentially */
+  public static final int DEFAULT_PARALLEL_PATH_MAPPING_THREADS = 1;
+
+  /** default maximum number of physical paths between access nodes that are cached for reuse across service leg segments */
+  public static final int DEFAULT_PATH_CACHE_SIZE = 10000;
+
+  /** default for extracting paths leaving the same access node from a single one-to-many search rather than a search per path */
+  public static final boolean DEFAULT_ONE_TO_MANY_PATH_SEARCH = false;
+
+  /** default maximum number of one-to-many path trees retained, least recently used trees are discarded beyond this number */
+  public static final int DEFAULT_MAX_RETAINED_PATH_TREES = 1000;
+
+  /** default factor applied to the straight-line cost between access nodes beyond which a one-to-many path tree is not grown */
+  public static final double DEFAULT_PATH_TREE_DETOUR_FACTOR = 3.0;
+
+  /** default for answering path searches between access nodes by means of a contraction hierarchy per mode */
+  public static final boolean DEFAULT_CONTRACTION_HIERARCHY_PATH_SEARCH = false;
+
+  /** default directory to persist contraction hierarchies to and reuse them from, none */
+  public static final Path DEFAULT_CONTRACTION_HIERARCHY_DIRECTORY = null;
+
+  /** default for guiding the mapping of service leg segments to physical paths by the GTFS shapes of the trips using them */
+  public static final boolean DEFAULT_SHAPE_GUIDED_PATH_SEARCH = false;
+
+  /** default distance from a GTFS shape within which physical link segments are considered when searching shape guided paths */
+  public static final double DEFAULT_SHAPE_CORRIDOR_WIDTH_METERS = 30;
+
+  /** default for searching paths between access nodes with a landmark (ALT) heuristic rather than a straight line A* heuristic */
+  public static final boolean DEFAULT_LANDMARK_PATH_SEARCH = false;
+
+  /** default number of landmarks per mode used by the landmark (ALT) heuristic */
+  public static final int DEFAULT_NUMBER_OF_LANDMARKS = 8;
+
+  /** default for searching from both ends simultaneously when landmark path search is activated */
+  public static final boolean DEFAULT_BIDIRECTIONAL_PATH_SEARCH = true;
+
+  /** default file to persist paths between access nodes to and reuse them from across runs, none */
+  public static final Path DEFAULT_PERSISTED_PATH_CACHE_FILE = null;
+
   /** default search for cheapest paths is based on free flow approach */
   public final String DEFAULT_STOP_TO_STOP_COST_APPROACH = PhysicalCost.FREEFLOW;
   
@@ -30,6 +77,48 @@ public class GtfsIntermodalReaderSettings implements ConverterReaderSettings {
 
   private final String stopToStopPathSearchPhysicalCostApproach = DEFAULT_STOP_TO_STOP_COST_APPROACH;
 
+  /** flag indicating if GTFS services are pre-clipped to the bounding box of the network */
+  private boolean preClipToNetworkBoundingBox = DEFAULT_PRE_CLIP_TO_NETWORK_BOUNDING_BOX;
+
+  /** number of threads used to find physical paths for service leg segments */
+  private int parallelPathMappingThreads = DEFAULT_PARALLEL_PATH_MAPPING_THREADS;
+
+  /** maximum number of physical paths between access nodes that are cached per physical layer, zero means no caching */
+  private int pathCacheSize = DEFAULT_PATH_CACHE_SIZE;
+
+  /** flag indicating if paths leaving the same access node are extracted from a single one-to-many search */
+  private boolean oneToManyPathSearch = DEFAULT_ONE_TO_MANY_PATH_SEARCH;
+
+  /** maximum number of one-to-many path trees retained per path searching thread */
+  private int maxRetainedPathTrees = DEFAULT_MAX_RETAINED_PATH_TREES;
+
+  /** factor applied to the straight-line cost between access nodes beyond which a one-to-many path tree is not grown */
+  private double pathTreeDetourFactor = DEFAULT_PATH_TREE_DETOUR_FACTOR;
+
+  /** flag indicating if paths between access nodes are searched by means of a contraction hierarchy */
+  private boolean contractionHierarchyPathSearch = DEFAULT_CONTRACTION_HIERARCHY_PATH_SEARCH;
+
+  /** directory contraction hierarchies are persisted to and reused from, null when not persisted */
+  private Path contractionHierarchyDirectory = DEFAULT_CONTRACTION_HIERARCHY_DIRECTORY;
+
+  /** flag indicating if paths of service leg segments are guided by GTFS shapes */
+  private boolean shapeGuidedPathSearch = DEFAULT_SHAPE_GUIDED_PATH_SEARCH;
+
+  /** distance from a GTFS shape within which physical link segments are considered for shape guided paths */
+  private double shapeCorridorWidthMeters = DEFAULT_SHAPE_CORRIDOR_WIDTH_METERS;
+
+  /** flag indicating if paths between access nodes are searched with a landmark (ALT) heuristic */
+  private boolean landmarkPathSearch = DEFAULT_LANDMARK_PATH_SEARCH;
+
+  /** number of landmarks per mode used by the landmark (ALT) heuristic */
+  private int numberOfLandmarks = DEFAULT_NUMBER_OF_LANDMARKS;
+
+  /** flag indicating if landmark path searches are bidirectional */
+  private boolean bidirectionalPathSearch = DEFAULT_BIDIRECTIONAL_PATH_SEARCH;
+
+  /** file paths between access nodes are persisted to and reused from across runs, null when not persisted */
+  private Path persistedPathCacheFile = DEFAULT_PERSISTED_PATH_CACHE_FILE;
+
   /** Constructor with user defined source locale, input source the current directory, and EXTENDED RouteTypeChoice applied
    *
    * @param countryName to base source locale on
@@ -82,6 +171,20 @@ public class GtfsIntermodalReaderSettings implements ConverterReaderSettings {
   public void reset() {
     getServiceSettings().reset();
     getZoningSettings().reset();
+    setPreClipToNetworkBoundingBox(DEFAULT_PRE_CLIP_TO_NETWORK_BOUNDING_BOX);
+    setParallelPathMappingThreads(DEFAULT_PARALLEL_PATH_MAPPING_THREADS);
+    setPathCacheSize(DEFAULT_PATH_CACHE_SIZE);
+    setOneToManyPathSearch(DEFAULT_ONE_TO_MANY_PATH_SEARCH);
+    setMaxRetainedPathTrees(DEFAULT_MAX_RETAINED_PATH_TREES);
+    setPathTreeDetourFactor(DEFAULT_PATH_TREE_DETOUR_FACTOR);
+    setContractionHierarchyPathSearch(DEFAULT_CONTRACTION_HIERARCHY_PATH_SEARCH);
+    setContractionHierarchyDirectory(DEFAULT_CONTRACTION_HIERARCHY_DIRECTORY);
+    setShapeGuidedPathSearch(DEFAULT_SHAPE_GUIDED_PATH_SEARCH);
+    setShapeCorridorWidthMeters(DEFAULT_SHAPE_CORRIDOR_WIDTH_METERS);
+    setLandmarkPathSearch(DEFAULT_LANDMARK_PATH_SEARCH);
+    setNumberOfLandmarks(DEFAULT_NUMBER_OF_LANDMARKS);
+    setBidirectionalPathSearch(DEFAULT_BIDIRECTIONAL_PATH_SEARCH);
+    setPersistedPathCacheFile(DEFAULT_PERSISTED_PATH_CACHE_FILE);
   }
 
   /**
@@ -91,6 +194,31 @@ public class GtfsIntermodalReaderSettings implements ConverterReaderSettings {
   public void logSettings() {
     getServiceSettings().logSettings();
     getZoningSettings().logSettings();
+    if(isPreClipToNetworkBoundingBox()) {
+      LOGGER.info("GTFS services pre-clipped to network bounding box");
+    }
+    if(getParallelPathMappingThreads() > 1) {
+      LOGGER.info(String.format("Parallel GTFS service leg segment path mapping activated (threads: %d)", getParallelPathMappingThreads()));
+    }
+    LOGGER.info(String.format("GTFS access node path cache size: %d", getPathCacheSize()));
+    if(isOneToManyPathSearch()) {
+      LOGGER.info(String.format("GTFS service leg segment paths extracted from one-to-many search per access node (retained trees: %d, detour factor: %.1f)",
+          getMaxRetainedPathTrees(), getPathTreeDetourFactor()));
+    }
+    if(isContractionHierarchyPathSearch()) {
+      LOGGER.info(String.format("GTFS service leg segment paths searched by contraction hierarchy (persisted in: %s)",
+          getContractionHierarchyDirectory() != null ? getContractionHierarchyDirectory() : "-"));
+    }
+    if(isShapeGuidedPathSearch()) {
+      LOGGER.info(String.format("GTFS service leg segment paths guided by GTFS shapes (corridor width: %.1fm)", getShapeCorridorWidthMeters()));
+    }
+    if(isLandmarkPathSearch()) {
+      LOGGER.info(String.format("GTFS service leg segment paths searched with landmark heuristic (landmarks: %d, bidirectional: %s)",
+          getNumberOfLandmarks(), isBidirectionalPathSearch()));
+    }
+    if(getPersistedPathCacheFile() != null) {
+      LOGGER.info(String.format("GTFS access node path cache persisted in: %s", getPersistedPathCacheFile()));
+    }
   }
 
   /** provide access to the service reader settings
@@ -143,4 +271,261 @@ public class GtfsIntermodalReaderSettings implements ConverterReaderSettings {
     return stopToStopPathSearchPhysicalCostApproach;
   }
 
+  /**
+   * @return true when GTFS services are pre-clipped to the bounding box of the network, false otherwise
+   */
+  public boolean isPreClipToNetworkBoundingBox() {
+    return preClipToNetworkBoundingBox;
+  }
+
+  /**
+   * Set whether GTFS services are pre-clipped to the bounding box of the network. When active, GTFS stops are read up front to identify those within
+   * (search distance of) the network's bounding box, after which GTFS trips without consecutive stops in this area are discarded before they are
+   * converted, rather than truncated after conversion
+   *
+   * @param preClipToNetworkBoundingBox flag to set
+   */
+  public void setPreClipToNetworkBoundingBox(boolean preClipToNetworkBoundingBox) {
+    this.preClipToNetworkBoundingBox = preClipToNetworkBoundingBox;
+  }
+
+  /**
+   * @return number of threads used to find physical paths for service leg segments
+   */
+  public int getParallelPathMappingThreads() {
+    return parallelPathMappingThreads;
+  }
+
+  /**
+   * Set number of threads used to find physical paths for service leg segments. When more than one, paths are searched in parallel with a shortest path
+   * algorithm instance per thread on the (read-only) physical network. Leg segments sharing a service node are searched in successive waves and paths are
+   * assigned to the service leg segments in the order of the sequential run, so the result is identical to the sequential run. When one, but there is
+   * more than one service layer, each service layer is mapped on its own thread instead
+   *
+   * @param parallelPathMappingThreads to use (must be positive)
+   */
+  public void setParallelPathMappingThreads(int parallelPathMappingThreads) {
+    PlanItRunTimeException.throwIf(parallelPathMappingThreads <= 0,
+        String.format("Number of GTFS path mapping threads must be positive, found %d", parallelPathMappingThreads));
+    this.parallelPathMappingThreads = parallelPathMappingThreads;
+  }
+
+  /**
+   * @return maximum number of physical paths between access nodes that are cached per physical layer, zero means no caching
+   */
+  public int getPathCacheSize() {
+    return pathCacheSize;
+  }
+
+  /**
+   * Set maximum number of physical paths between access nodes that are cached per physical layer. Service leg segments sharing the same upstream access
+   * node, downstream access link segment and mode reuse the cached path rather than searching it again. When full, the least recently used path of
+   * the layer is evicted
+   *
+   * @param pathCacheSize to use, zero to deactivate caching (must not be negative)
+   */
+  public void setPathCacheSize(int pathCacheSize) {
+    PlanItRunTimeException.throwIf(pathCacheSize < 0, String.format("GTFS path cache size must not be negative, found %d", pathCacheSize));
+    this.pathCacheSize = pathCacheSize;
+  }
+
+  /**
+   * @return true when paths leaving the same access node are extracted from a single one-to-many search, false otherwise
+   */
+  public boolean isOneToManyPathSearch() {
+    return oneToManyPathSearch;
+  }
+
+  /**
+   * Set whether paths leaving the same access node (for a given mode) are extracted from a single one-to-many (Dijkstra) search, grown only as far as needed
+   * to reach the requested access nodes, rather than conducting a point-to-point search per path
+   *
+   * @param oneToManyPathSearch flag to set
+   */
+  public void setOneToManyPathSearch(boolean oneToManyPathSearch) {
+    this.oneToManyPathSearch = oneToManyPathSearch;
+  }
+
+  /**
+   * @return maximum number of one-to-many path trees retained per path searching thread
+   */
+  public int getMaxRetainedPathTrees() {
+    return maxRetainedPathTrees;
+  }
+
+  /**
+   * Set maximum number of one-to-many path trees retained per path searching thread, only relevant when one-to-many path search is activated. When
+   * exceeded, the least recently used tree of the thread is discarded
+   *
+   * @param maxRetainedPathTrees to use (must be positive)
+   */
+  public void setMaxRetainedPathTrees(int maxRetainedPathTrees) {
+    PlanItRunTimeException.throwIf(maxRetainedPathTrees <= 0,
+        String.format("Maximum number of retained GTFS path trees must be positive, found %d", maxRetainedPathTrees));
+    this.maxRetainedPathTrees = maxRetainedPathTrees;
+  }
+
+  /**
+   * @return factor applied to the straight-line cost between access nodes beyond which a one-to-many path tree is not grown
+   */
+  public double getPathTreeDetourFactor() {
+    return pathTreeDetourFactor;
+  }
+
+  /**
+   * Set the factor applied to the lowest possible cost of the straight-line distance between access nodes (given the maximum speed of the mode),
+   * only relevant when one-to-many path search is activated. A one-to-many path tree is not grown beyond this cost for a path, in which case the
+   * path is searched point-to-point instead, so a distant or unreachable access node does not cause the tree to grow across the entire network
+   *
+   * @param pathTreeDetourFactor to use (must be at least one)
+   */
+  public void setPathTreeDetourFactor(double pathTreeDetourFactor) {
+    PlanItRunTimeException.throwIf(pathTreeDetourFactor < 1,
+        String.format("GTFS path tree detour factor must be at least one, found %.2f", pathTreeDetourFactor));
+    this.pathTreeDetourFactor = pathTreeDetourFactor;
+  }
+
+  /**
+   * @return true when paths between access nodes are searched by means of a contraction hierarchy, false otherwise
+   */
+  public boolean isContractionHierarchyPathSearch() {
+    return contractionHierarchyPathSearch;
+  }
+
+  /**
+   * Set whether paths between access nodes are searched by means of a contraction hierarchy built per mode over the physical network. Building the
+   * hierarchy takes time, but subsequent searches are considerably faster, which pays off for large networks and/or many services
+   *
+   * @param contractionHierarchyPathSearch flag to set
+   */
+  public void setContractionHierarchyPathSearch(boolean contractionHierarchyPathSearch) {
+    this.contractionHierarchyPathSearch = contractionHierarchyPathSearch;
+  }
+
+  /**
+   * @return directory contraction hierarchies are persisted to and reused from, null when not persisted
+   */
+  public Path getContractionHierarchyDirectory() {
+    return contractionHierarchyDirectory;
+  }
+
+  /**
+   * Set directory to persist contraction hierarchies to (one file per mode), so subsequent runs on the same network and costs reuse them rather than
+   * building them again. Only relevant when contraction hierarchy path search is activated
+   *
+   * @param contractionHierarchyDirectory to use, null to not persist
+   */
+  public void setContractionHierarchyDirectory(Path contractionHierarchyDirectory) {
+    this.contractionHierarchyDirectory = contractionHierarchyDirectory;
+  }
+
+  /**
+   * @return true when paths of service leg segments are guided by GTFS shapes, false otherwise
+   */
+  public boolean isShapeGuidedPathSearch() {
+    return shapeGuidedPathSearch;
+  }
+
+  /**
+   * Set whether paths of service leg segments are guided by the GTFS shape (shapes.txt) of the trips using them. Paths are then searched within a corridor
+   * around the shape and, when multiple candidates exist, chosen based on their geometric fit with the shape rather than their length. Service leg
+   * segments without a shape, or without a path within the corridor, resort to the regular search
+   *
+   * @param shapeGuidedPathSearch flag to set
+   */
+  public void setShapeGuidedPathSearch(boolean shapeGuidedPathSearch) {
+    this.shapeGuidedPathSearch = shapeGuidedPathSearch;
+  }
+
+  /**
+   * @return distance from a GTFS shape within which physical link segments are considered for shape guided paths
+   */
+  public double getShapeCorridorWidthMeters() {
+    return shapeCorridorWidthMeters;
+  }
+
+  /**
+   * Set distance from a GTFS shape within which physical link segments are considered for shape guided paths. Only relevant when shape guided path
+   * search is activated
+   *
+   * @param shapeCorridorWidthMeters to use (must be positive)
+   */
+  public void setShapeCorridorWidthMeters(double shapeCorridorWidthMeters) {
+    PlanItRunTimeException.throwIf(!(shapeCorridorWidthMeters > 0),
+        String.format("GTFS shape corridor width must be positive, found %.2f", shapeCorridorWidthMeters));
+    this.shapeCorridorWidthMeters = shapeCorridorWidthMeters;
+  }
+
+  /**
+   * @return true when paths between access nodes are searched with a landmark (ALT) heuristic, false otherwise
+   */
+  public boolean isLandmarkPathSearch() {
+    return landmarkPathSearch;
+  }
+
+  /**
+   * Set whether paths between access nodes are searched with a landmark (ALT) heuristic rather than the straight line heuristic of A*. Distances to and
+   * from a number of landmarks are computed per mode upfront, after which their triangle inequality bounds typically direct the search far better,
+   * especially on sparse rail networks and one-way road grids
+   *
+   * @param landmarkPathSearch flag to set
+   */
+  public void setLandmarkPathSearch(boolean landmarkPathSearch) {
+    this.landmarkPathSearch = landmarkPathSearch;
+  }
+
+  /**
+   * @return number of landmarks per mode used by the landmark (ALT) heuristic
+   */
+  public int getNumberOfLandmarks() {
+    return numberOfLandmarks;
+  }
+
+  /**
+   * Set number of landmarks per mode used by the landmark (ALT) heuristic. More landmarks yield tighter bounds at the expense of memory (two distances
+   * per node per landmark) and preprocessing time. Zero landmarks reduces the search to Dijkstra, which can be used as a baseline when comparing the
+   * number of explored nodes. Only relevant when landmark path search is activated
+   *
+   * @param numberOfLandmarks to use (must be non-negative)
+   */
+  public void setNumberOfLandmarks(int numberOfLandmarks) {
+    PlanItRunTimeException.throwIf(numberOfLandmarks < 0, String.format("Number of landmarks must be non-negative, found %d", numberOfLandmarks));
+    this.numberOfLandmarks = numberOfLandmarks;
+  }
+
+  /**
+   * @return true when landmark path searches are bidirectional, false otherwise
+   */
+  public boolean isBidirectionalPathSearch() {
+    return bidirectionalPathSearch;
+  }
+
+  /**
+   * Set whether landmark path searches expand from both the origin and the destination simultaneously rather than from the origin only. Only relevant when
+   * landmark path search is activated
+   *
+   * @param bidirectionalPathSearch flag to set
+   */
+  public void setBidirectionalPathSearch(boolean bidirectionalPathSearch) {
+    this.bidirectionalPathSearch = bidirectionalPathSearch;
+  }
+
+  /**
+   * @return file paths between access nodes are persisted to and reused from across runs, null when not persisted
+   */
+  public Path getPersistedPathCacheFile() {
+    return persistedPathCacheFile;
+  }
+
+  /**
+   * Set file to persist paths between access nodes to across runs. When the file exists, cached paths whose access points, link segments and costs
+   * are unchanged are reused rather than searched again, which pays off when only the GTFS feed is refreshed on an otherwise unchanged network. Reused
+   * paths are not verified against cheaper alternatives elsewhere in the network. After integration, the paths of this run are written to the file
+   *
+   * @param persistedPathCacheFile to use, null to not persist
+   */
+  public void setPersistedPathCacheFile(Path persistedPathCacheFile) {
+    this.persistedPathCacheFile = persistedPathCacheFile;
+  }
+
 }
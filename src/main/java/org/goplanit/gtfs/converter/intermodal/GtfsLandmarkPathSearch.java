@@ -0,0 +1,599 @@
+package org.goplanit.gtfs.converter.intermodal;
+
+import org.goplanit.path.SimpleDirectedPathFactoryImpl;
+import org.goplanit.utils.exceptions.PlanItRunTimeException;
+import org.goplanit.utils.graph.directed.DirectedVertex;
+import org.goplanit.utils.graph.directed.EdgeSegment;
+import org.goplanit.utils.network.layer.MacroscopicNetworkLayer;
+import org.goplanit.utils.path.SimpleDirectedPath;
+
+import java.util.*;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.IntToDoubleFunction;
+import java.util.logging.Logger;
+
+/**
+ * Point-to-point shortest path search over the link segments of a physical network layer for a given mode (link segment costs), directed by a landmark
+ * (ALT) heuristic. Costs to and from a small number of landmarks are computed upfront and stored per landmark in primitive arrays by node index, after
+ * which the triangle inequality provides lower bounds on the remaining cost that, unlike a straight line bound, account for the actual network. Searches
+ * are either unidirectional or bidirectional, link segments with infinite cost, i.e., not permitted for the mode, are never traversed.
+ * <p>
+ *   Banned link segments are honoured exactly. Once created, searches are thread safe. Each searching thread retains its own search state in primitive
+ *   arrays by node index, which is invalidated per search by means of a stamp rather than cleared. The number of explored (settled) nodes is tracked across
+ *   searches to allow for comparing configurations, e.g., zero landmarks (Dijkstra) versus some landmarks, or unidirectional versus bidirectional.
+ * </p>
+ *
+ * @author markr
+ */
+public class GtfsLandmarkPathSearch {
+
+  /** Logger to use */
+  private static final Logger LOGGER = Logger.getLogger(GtfsLandmarkPathSearch.class.getCanonicalName());
+
+  /**
+   * Entry in priority queues, ties broken by node index so results are deterministic
+   */
+  private static final class QueueEntry implements Comparable<QueueEntry> {
+
+    /** key of the entry, i.e., cost plus potential */
+    private final double key;
+
+    /** cost to reach the node */
+    private final double cost;
+
+    /** node index */
+    private final int node;
+
+    /**
+     * Constructor
+     *
+     * @param key to use
+     * @param cost to use
+     * @param node to use
+     */
+    private QueueEntry(double key, double cost, int node) {
+      this.key = key;
+      this.cost = cost;
+      this.node = node;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int compareTo(QueueEntry other) {
+      int result = Double.compare(key, other.key);
+      return result != 0 ? result : Integer.compare(node, other.node);
+    }
+  }
+
+  /**
+   * State of a single search direction by node index, only valid for a node when its stamp equals the stamp of the current search
+   */
+  private static final class SearchDirection {
+
+    /** cost to reach the node */
+    private final double[] costs;
+
+    /** edge the node was reached by */
+    private final int[] edges;
+
+    /** stamp of the search that last reached the node */
+    private final int[] reachedStamps;
+
+    /** stamp of the search that last settled the node */
+    private final int[] settledStamps;
+
+    /**
+     * Constructor
+     *
+     * @param numberOfNodes to accommodate
+     */
+    private SearchDirection(int numberOfNodes) {
+      this.costs = new double[numberOfNodes];
+      this.edges = new int[numberOfNodes];
+      this.reachedStamps = new int[numberOfNodes];
+      this.settledStamps = new int[numberOfNodes];
+    }
+
+    /**
+     * @param node to verify
+     * @param stamp of the current search
+     * @return true when reached in the current search
+     */
+    private boolean isReached(int node, int stamp){
+      return reachedStamps[node] == stamp;
+    }
+
+    /**
+     * @param node to verify
+     * @param stamp of the current search
+     * @return true when settled in the current search
+     */
+    private boolean isSettled(int node, int stamp){
+      return settledStamps[node] == stamp;
+    }
+
+    /**
+     * Register the node as reached in the current search
+     *
+     * @param node reached
+     * @param cost to reach the node
+     * @param edge the node was reached by, negative for the node the search started from
+     * @param stamp of the current search
+     */
+    private void reach(int node, double cost, int edge, int stamp){
+      costs[node] = cost;
+      edges[node] = edge;
+      reachedStamps[node] = stamp;
+    }
+  }
+
+  /**
+   * Search state of a thread, reused across its searches
+   */
+  private static final class SearchState {
+
+    /** forward (index 0) and backward (index 1) search directions */
+    private final SearchDirection[] directions;
+
+    /** potential by node index, NaN when the landmarks prove the node is not on any path */
+    private final double[] potentials;
+
+    /** stamp of the search that last computed the node's potential */
+    private final int[] potentialStamps;
+
+    /** stamp of the current search */
+    private int stamp = 0;
+
+    /**
+     * Constructor
+     *
+     * @param numberOfNodes to accommodate
+     */
+    private SearchState(int numberOfNodes) {
+      this.directions = new SearchDirection[]{new SearchDirection(numberOfNodes), new SearchDirection(numberOfNodes)};
+      this.potentials = new double[numberOfNodes];
+      this.potentialStamps = new int[numberOfNodes];
+    }
+
+    /**
+     * Start a new search, invalidating all state of previous searches
+     *
+     * @return stamp of the new search
+     */
+    private int startSearch(){
+      if(stamp == Integer.MAX_VALUE){
+        for(var direction : directions){
+          Arrays.fill(direction.reachedStamps, 0);
+          Arrays.fill(direction.settledStamps, 0);
+        }
+        Arrays.fill(potentialStamps, 0);
+        stamp = 0;
+      }
+      return ++stamp;
+    }
+  }
+
+  /** node index by vertex id */
+  private final Map<Long, Integer> nodeIndexByVertexId;
+
+  /** number of nodes */
+  private final int numberOfNodes;
+
+  /** downstream node index by edge */
+  private final int[] edgeTo;
+
+  /** upstream node index by edge */
+  private final int[] edgeFrom;
+
+  /** cost by edge */
+  private final double[] edgeCost;
+
+  /** link segment by edge */
+  private final EdgeSegment[] edgeSegments;
+
+  /** per node start position in {@link #outEdges} */
+  private final int[] outStart;
+
+  /** edges grouped by upstream node */
+  private final int[] outEdges;
+
+  /** per node start position in {@link #inEdges} */
+  private final int[] inStart;
+
+  /** edges grouped by downstream node */
+  private final int[] inEdges;
+
+  /** node index of each landmark */
+  private int[] landmarks;
+
+  /** cost from each landmark by node index, infinite when unreachable */
+  private double[][] costFromLandmark;
+
+  /** cost to each landmark by node index, infinite when unreachable */
+  private double[][] costToLandmark;
+
+  /** search state per searching thread, created on first search of a thread */
+  private final ThreadLocal<SearchState> searchStates = ThreadLocal.withInitial(() -> new SearchState(this.numberOfNodes));
+
+  /** number of searches conducted */
+  private final AtomicLong numberOfSearches = new AtomicLong();
+
+  /** number of explored (settled) nodes across all searches */
+  private final AtomicLong numberOfExploredNodes = new AtomicLong();
+
+  /**
+   * Group edges by node in compact form
+   *
+   * @param edgeNode node of each edge to group by
+   * @param start to populate with the start position per node (size number of nodes plus one)
+   * @return edges grouped by node
+   */
+  private int[] groupEdgesByNode(int[] edgeNode, int[] start){
+    for(int node : edgeNode){
+      ++start[node + 1];
+    }
+    for(int node = 0; node < numberOfNodes; ++node){
+      start[node + 1] += start[node];
+    }
+    int[] edges = new int[edgeNode.length];
+    int[] position = Arrays.copyOf(start, numberOfNodes);
+    for(int edge = 0; edge < edgeNode.length; ++edge){
+      edges[position[edgeNode[edge]]++] = edge;
+    }
+    return edges;
+  }
+
+  /**
+   * Full Dijkstra search from (or towards) a single node
+   *
+   * @param source node index
+   * @param forward when true costs from the source, otherwise costs towards the source
+   * @return cost by node index, infinite when unreachable
+   */
+  private double[] computeCosts(int source, boolean forward){
+    double[] costs = new double[numberOfNodes];
+    Arrays.fill(costs, Double.POSITIVE_INFINITY);
+    costs[source] = 0;
+    PriorityQueue<QueueEntry> queue = new PriorityQueue<>();
+    queue.add(new QueueEntry(0, 0, source));
+    while(!queue.isEmpty()){
+      var entry = queue.poll();
+      if(entry.cost > costs[entry.node]){
+        continue;
+      }
+      int[] start = forward ? outStart : inStart;
+      int[] edges = forward ? outEdges : inEdges;
+      for(int index = start[entry.node]; index < start[entry.node + 1]; ++index){
+        int edge = edges[index];
+        int next = forward ? edgeTo[edge] : edgeFrom[edge];
+        double cost = entry.cost + edgeCost[edge];
+        if(cost < costs[next]){
+          costs[next] = cost;
+          queue.add(new QueueEntry(cost, cost, next));
+        }
+      }
+    }
+    return costs;
+  }
+
+  /**
+   * Select landmarks by farthest selection, i.e., each next landmark is the node with the largest cost from its closest landmark selected so far, and
+   * compute costs to and from each of them
+   *
+   * @param numberOfLandmarks to select
+   */
+  private void selectLandmarks(int numberOfLandmarks){
+    List<Integer> selected = new ArrayList<>();
+    List<double[]> costsFrom = new ArrayList<>();
+    List<double[]> costsTo = new ArrayList<>();
+
+    /* start from the node farthest away from an arbitrary (first) node */
+    double[] minCostFromSelected = numberOfNodes > 0 && numberOfLandmarks > 0 ? computeCosts(0, true) : new double[0];
+    while(selected.size() < numberOfLandmarks){
+      int farthest = -1;
+      for(int node = 0; node < numberOfNodes; ++node){
+        if(Double.isFinite(minCostFromSelected[node]) && minCostFromSelected[node] > 0 &&
+            (farthest < 0 || minCostFromSelected[node] > minCostFromSelected[farthest])){
+          farthest = node;
+        }
+      }
+      if(farthest < 0){
+        break;
+      }
+      selected.add(farthest);
+      var costs = computeCosts(farthest, true);
+      costsFrom.add(costs);
+      costsTo.add(computeCosts(farthest, false));
+      for(int node = 0; node < numberOfNodes; ++node){
+        minCostFromSelected[node] = Math.min(minCostFromSelected[node], costs[node]);
+      }
+    }
+
+    this.landmarks = selected.stream().mapToInt(Integer::intValue).toArray();
+    this.costFromLandmark = costsFrom.toArray(new double[0][]);
+    this.costToLandmark = costsTo.toArray(new double[0][]);
+  }
+
+  /**
+   * Lower bound on the cost from one node to another based on the triangle inequality with each landmark
+   *
+   * @param from node index
+   * @param to node index
+   * @return lower bound, zero when no bound is available, infinite when the landmarks prove the node cannot be reached
+   */
+  private double computeLowerBound(int from, int to){
+    double bound = 0;
+    for(int landmark = 0; landmark < landmarks.length; ++landmark){
+      /* cost(from, to) >= cost(from, L) - cost(to, L), infinite when L is reachable from to but not from from */
+      double viaTo = costToLandmark[landmark][from] - costToLandmark[landmark][to];
+      /* cost(from, to) >= cost(L, to) - cost(L, from), infinite when from is reachable from L but to is not */
+      double viaFrom = costFromLandmark[landmark][to] - costFromLandmark[landmark][from];
+      if(viaTo == Double.POSITIVE_INFINITY || viaFrom == Double.POSITIVE_INFINITY){
+        return Double.POSITIVE_INFINITY;
+      }
+      /* unbounded (undefined or negative infinite) terms carry no information */
+      if(Double.isFinite(viaTo) && viaTo > bound){
+        bound = viaTo;
+      }
+      if(Double.isFinite(viaFrom) && viaFrom > bound){
+        bound = viaFrom;
+      }
+    }
+    return bound;
+  }
+
+  /**
+   * Construct path from the edges in order
+   *
+   * @param edges in order
+   * @return created path
+   */
+  private SimpleDirectedPath createPath(Deque<Integer> edges){
+    Deque<EdgeSegment> pathEdgeSegments = new ArrayDeque<>(edges.size());
+    edges.forEach(edge -> pathEdgeSegments.addLast(edgeSegments[edge]));
+    return new SimpleDirectedPathFactoryImpl().createNew(pathEdgeSegments);
+  }
+
+  /**
+   * Unidirectional search with the landmark heuristic as potential
+   *
+   * @param origin node index
+   * @param destination node index
+   * @param bannedEdgeSegments never traversed
+   * @return shortest path, null when not found
+   */
+  private SimpleDirectedPath findUnidirectionalPath(int origin, int destination, Set<? extends EdgeSegment> bannedEdgeSegments){
+    double originBound = computeLowerBound(origin, destination);
+    if(originBound == Double.POSITIVE_INFINITY){
+      return null;
+    }
+    var state = searchStates.get();
+    final int stamp = state.startSearch();
+    var search = state.directions[0];
+    PriorityQueue<QueueEntry> queue = new PriorityQueue<>();
+    search.reach(origin, 0.0, -1, stamp);
+    queue.add(new QueueEntry(originBound, 0, origin));
+    int numberOfSettled = 0;
+    while(!queue.isEmpty() && !search.isSettled(destination, stamp)){
+      var entry = queue.poll();
+      if(entry.cost > search.costs[entry.node] || search.isSettled(entry.node, stamp)){
+        continue;
+      }
+      search.settledStamps[entry.node] = stamp;
+      ++numberOfSettled;
+      for(int index = outStart[entry.node]; index < outStart[entry.node + 1]; ++index){
+        int edge = outEdges[index];
+        if(bannedEdgeSegments.contains(edgeSegments[edge])){
+          continue;
+        }
+        int next = edgeTo[edge];
+        double cost = entry.cost + edgeCost[edge];
+        if(!search.isReached(next, stamp) || cost < search.costs[next]){
+          double bound = computeLowerBound(next, destination);
+          if(bound == Double.POSITIVE_INFINITY){
+            /* destination not reachable via this node */
+            continue;
+          }
+          search.reach(next, cost, edge, stamp);
+          queue.add(new QueueEntry(cost + bound, cost, next));
+        }
+      }
+    }
+    numberOfExploredNodes.addAndGet(numberOfSettled);
+    if(!search.isSettled(destination, stamp)){
+      return null;
+    }
+
+    Deque<Integer> edges = new ArrayDeque<>();
+    for(int node = destination; node != origin; node = edgeFrom[edges.getFirst()]){
+      edges.addFirst(search.edges[node]);
+    }
+    return createPath(edges);
+  }
+
+  /**
+   * Bidirectional search with the average of the forward and backward landmark potentials, such that both directions use consistent reduced costs and
+   * the search can stop as soon as the smallest keys of both directions combined reach the cost of the best path found so far. Nodes the landmarks prove
+   * not to be on any path between origin and destination are not expanded
+   *
+   * @param origin node index
+   * @param destination node index
+   * @param bannedEdgeSegments never traversed
+   * @return shortest path, null when not found
+   */
+  private SimpleDirectedPath findBidirectionalPath(int origin, int destination, Set<? extends EdgeSegment> bannedEdgeSegments){
+    var state = searchStates.get();
+    final int stamp = state.startSearch();
+    IntToDoubleFunction forwardPotential = node -> {
+      if(state.potentialStamps[node] != stamp){
+        double potential = (computeLowerBound(node, destination) - computeLowerBound(origin, node)) / 2;
+        state.potentials[node] = Double.isFinite(potential) ? potential : Double.NaN;
+        state.potentialStamps[node] = stamp;
+      }
+      return state.potentials[node];
+    };
+    if(Double.isNaN(forwardPotential.applyAsDouble(origin))){
+      return null;
+    }
+
+    var searches = state.directions;
+    @SuppressWarnings("unchecked") PriorityQueue<QueueEntry>[] queues = new PriorityQueue[]{new PriorityQueue<>(), new PriorityQueue<>()};
+    searches[0].reach(origin, 0.0, -1, stamp);
+    searches[1].reach(destination, 0.0, -1, stamp);
+    queues[0].add(new QueueEntry(forwardPotential.applyAsDouble(origin), 0, origin));
+    queues[1].add(new QueueEntry(-forwardPotential.applyAsDouble(destination), 0, destination));
+
+    double bestCost = Double.POSITIVE_INFINITY;
+    int meetingNode = -1;
+    int numberOfSettled = 0;
+    while(!queues[0].isEmpty() && !queues[1].isEmpty() && queues[0].peek().key + queues[1].peek().key < bestCost){
+      int direction = queues[0].peek().key <= queues[1].peek().key ? 0 : 1;
+      boolean forward = direction == 0;
+      var entry = queues[direction].poll();
+      var search = searches[direction];
+      if(entry.cost > search.costs[entry.node] || search.isSettled(entry.node, stamp)){
+        continue;
+      }
+      search.settledStamps[entry.node] = stamp;
+      ++numberOfSettled;
+      int[] start = forward ? outStart : inStart;
+      int[] edges = forward ? outEdges : inEdges;
+      for(int index = start[entry.node]; index < start[entry.node + 1]; ++index){
+        int edge = edges[index];
+        if(bannedEdgeSegments.contains(edgeSegments[edge])){
+          continue;
+        }
+        int next = forward ? edgeTo[edge] : edgeFrom[edge];
+        double potential = forwardPotential.applyAsDouble(next);
+        if(Double.isNaN(potential)){
+          continue;
+        }
+        double cost = entry.cost + edgeCost[edge];
+        if(!search.isReached(next, stamp) || cost < search.costs[next]){
+          search.reach(next, cost, edge, stamp);
+          queues[direction].add(new QueueEntry(cost + (forward ? potential : -potential), cost, next));
+        }
+        var opposite = searches[1 - direction];
+        if(opposite.isReached(next, stamp) && cost + opposite.costs[next] < bestCost){
+          bestCost = cost + opposite.costs[next];
+          meetingNode = next;
+        }
+      }
+    }
+    numberOfExploredNodes.addAndGet(numberOfSettled);
+    if(meetingNode < 0){
+      return null;
+    }
+
+    Deque<Integer> pathEdges = new ArrayDeque<>();
+    for(int node = meetingNode; node != origin; node = edgeFrom[pathEdges.getFirst()]){
+      pathEdges.addFirst(searches[0].edges[node]);
+    }
+    for(int node = meetingNode; node != destination; node = edgeTo[pathEdges.getLast()]){
+      pathEdges.addLast(searches[1].edges[node]);
+    }
+    return createPath(pathEdges);
+  }
+
+  /**
+   * Constructor
+   *
+   * @param layer to search paths on
+   * @param linkSegmentCosts by link segment id
+   */
+  private GtfsLandmarkPathSearch(MacroscopicNetworkLayer layer, double[] linkSegmentCosts){
+    this.nodeIndexByVertexId = new HashMap<>();
+    for(var node : layer.getNodes()){
+      nodeIndexByVertexId.put(node.getId(), nodeIndexByVertexId.size());
+    }
+    this.numberOfNodes = nodeIndexByVertexId.size();
+
+    List<EdgeSegment> segmentList = new ArrayList<>();
+    for(var linkSegment : layer.getLinkSegments()){
+      double cost = linkSegmentCosts[(int) linkSegment.getId()];
+      if(Double.isInfinite(cost) || Double.isNaN(cost)){
+        continue;
+      }
+      segmentList.add(linkSegment);
+    }
+    this.edgeSegments = segmentList.toArray(new EdgeSegment[0]);
+    this.edgeFrom = new int[edgeSegments.length];
+    this.edgeTo = new int[edgeSegments.length];
+    this.edgeCost = new double[edgeSegments.length];
+    for(int edge = 0; edge < edgeSegments.length; ++edge){
+      edgeFrom[edge] = nodeIndexByVertexId.get(edgeSegments[edge].getUpstreamVertex().getId());
+      edgeTo[edge] = nodeIndexByVertexId.get(edgeSegments[edge].getDownstreamVertex().getId());
+      edgeCost[edge] = linkSegmentCosts[(int) edgeSegments[edge].getId()];
+    }
+
+    this.outStart = new int[numberOfNodes + 1];
+    this.outEdges = groupEdgesByNode(edgeFrom, outStart);
+    this.inStart = new int[numberOfNodes + 1];
+    this.inEdges = groupEdgesByNode(edgeTo, inStart);
+  }
+
+  /**
+   * Create a landmark path search for the given layer and costs, selecting the landmarks and computing their costs
+   *
+   * @param layer to search paths on
+   * @param linkSegmentCosts by link segment id, infinite costs are not traversed
+   * @param numberOfLandmarks to select, zero reduces searches to Dijkstra
+   * @return created path search
+   */
+  public static GtfsLandmarkPathSearch create(MacroscopicNetworkLayer layer, double[] linkSegmentCosts, int numberOfLandmarks){
+    PlanItRunTimeException.throwIfNull(layer, "Network layer to create landmark path search for is null");
+    PlanItRunTimeException.throwIf(numberOfLandmarks < 0, String.format("Number of landmarks must be non-negative, found %d", numberOfLandmarks));
+
+    long startTime = System.currentTimeMillis();
+    var pathSearch = new GtfsLandmarkPathSearch(layer, linkSegmentCosts);
+    pathSearch.selectLandmarks(numberOfLandmarks);
+    LOGGER.info(String.format("Selected %d landmarks over %d nodes, %d link segments in %d ms",
+        pathSearch.landmarks.length, pathSearch.numberOfNodes, pathSearch.edgeSegments.length, System.currentTimeMillis() - startTime));
+    return pathSearch;
+  }
+
+  /**
+   * Find the shortest path between origin and destination
+   *
+   * @param origin to start from
+   * @param destination to end at
+   * @param bannedEdgeSegments never traversed
+   * @param bidirectional when true search from both ends simultaneously, otherwise from the origin only
+   * @return shortest path (empty when origin is destination), null when not found
+   */
+  public SimpleDirectedPath findPath(DirectedVertex origin, DirectedVertex destination, Set<? extends EdgeSegment> bannedEdgeSegments, boolean bidirectional){
+    var originIndex = nodeIndexByVertexId.get(origin.getId());
+    var destinationIndex = nodeIndexByVertexId.get(destination.getId());
+    if(originIndex == null || destinationIndex == null){
+      return null;
+    }
+    numberOfSearches.incrementAndGet();
+    if(bidirectional && !originIndex.equals(destinationIndex)){
+      return findBidirectionalPath(originIndex, destinationIndex, bannedEdgeSegments);
+    }
+    return findUnidirectionalPath(originIndex, destinationIndex, bannedEdgeSegments);
+  }
+
+  /**
+   * @return number of selected landmarks
+   */
+  public int getNumberOfLandmarks(){
+    return landmarks.length;
+  }
+
+  /**
+   * @return number of searches conducted so far
+   */
+  public long getNumberOfSearches(){
+    return numberOfSearches.get();
+  }
+
+  /**
+   * @return number of explored (settled) nodes across all searches so far
+   */
+  public long getNumberOfExploredNodes(){
+    return numberOfExploredNodes.get();
+  }
+}
@@ -0,0 +1,155 @@
+package org.goplanit.gtfs.converter.intermodal;
+
+import org.goplanit.path.SimpleDirectedPathFactoryImpl;
+import org.goplanit.utils.graph.directed.DirectedVertex;
+import org.goplanit.utils.graph.directed.EdgeSegment;
+import org.goplanit.utils.path.SimpleDirectedPath;
+
+import java.util.*;
+
+/**
+ * Lazily grown one-to-many shortest path (Dijkstra) tree rooted at a single source vertex. Rather than searching the full network, the tree is only
+ * extended until a requested target is settled, after which paths to all settled vertices are available without further searching. This allows all
+ * paths leaving the same access node (for a given mode) to be extracted from a single search. Each request provides a maximum cost beyond which the tree is not
+ * grown, so a distant or unreachable target does not cause the tree to cover the entire network. Such a request yields no path, while the tree remains
+ * valid and may still be grown further by later requests with a higher maximum cost. A target settled beyond the maximum cost of a request (by an earlier
+ * request) yields no path either, so the result of a request does not depend on the requests made before it.
+ * <p>
+ *   Instances are thread safe, growing and querying the tree is synchronised.
+ * </p>
+ *
+ * @author markr
+ */
+public class GtfsOneToManyPathTree {
+
+  /**
+   * Entry in the priority queue of vertices to settle
+   */
+  private static final class QueueEntry {
+
+    /** cost to reach the vertex */
+    private final double cost;
+
+    /** vertex reached */
+    private final DirectedVertex vertex;
+
+    /**
+     * Constructor
+     *
+     * @param cost to reach vertex
+     * @param vertex reached
+     */
+    private QueueEntry(double cost, DirectedVertex vertex) {
+      this.cost = cost;
+      this.vertex = vertex;
+    }
+  }
+
+  /** source vertex of the tree */
+  private final DirectedVertex source;
+
+  /** edge segment costs (by edge segment id) to search with */
+  private final double[] edgeSegmentCosts;
+
+  /** edge segment that is never traversed, e.g. a banned initial u-turn, may be null */
+  private final EdgeSegment bannedEdgeSegment;
+
+  /** lowest cost found so far by vertex */
+  private final Map<DirectedVertex, Double> costByVertex = new HashMap<>();
+
+  /** incoming edge segment of the lowest cost found so far by vertex */
+  private final Map<DirectedVertex, EdgeSegment> predecessorByVertex = new HashMap<>();
+
+  /** vertices of which the lowest cost is final */
+  private final Set<DirectedVertex> settled = new HashSet<>();
+
+  /** vertices to settle, ties broken by vertex id so the tree is deterministic */
+  private final PriorityQueue<QueueEntry> queue = new PriorityQueue<>(
+      Comparator.comparingDouble((QueueEntry e) -> e.cost).thenComparingLong(e -> e.vertex.getId()));
+
+  /**
+   * Grow the tree until the target is settled, no more vertices can be reached, or all remaining vertices exceed the maximum cost
+   *
+   * @param target to settle
+   * @param maxCost beyond which vertices are not settled
+   */
+  private void growUntilSettled(DirectedVertex target, double maxCost){
+    while(!settled.contains(target) && !queue.isEmpty() && queue.peek().cost <= maxCost){
+      var entry = queue.poll();
+      if(settled.contains(entry.vertex) || entry.cost > costByVertex.get(entry.vertex)){
+        /* outdated entry */
+        continue;
+      }
+      settled.add(entry.vertex);
+
+      for(var edgeSegment : entry.vertex.getExitEdgeSegments()){
+        if(edgeSegment == bannedEdgeSegment){
+          continue;
+        }
+        double edgeSegmentCost = edgeSegmentCosts[(int) edgeSegment.getId()];
+        if(edgeSegmentCost == Double.POSITIVE_INFINITY){
+          continue;
+        }
+        var downstreamVertex = edgeSegment.getDownstreamVertex();
+        double cost = entry.cost + edgeSegmentCost;
+        var currentCost = costByVertex.get(downstreamVertex);
+        if(currentCost == null || cost < currentCost){
+          costByVertex.put(downstreamVertex, cost);
+          predecessorByVertex.put(downstreamVertex, edgeSegment);
+          queue.add(new QueueEntry(cost, downstreamVertex));
+        }
+      }
+    }
+  }
+
+  /**
+   * Constructor
+   *
+   * @param source vertex to root tree at
+   * @param edgeSegmentCosts to use (by edge segment id), infinite costs are not traversed
+   * @param bannedEdgeSegment never traversed, may be null
+   */
+  public GtfsOneToManyPathTree(DirectedVertex source, double[] edgeSegmentCosts, EdgeSegment bannedEdgeSegment) {
+    this.source = source;
+    this.edgeSegmentCosts = edgeSegmentCosts;
+    this.bannedEdgeSegment = bannedEdgeSegment;
+
+    costByVertex.put(source, 0.0);
+    queue.add(new QueueEntry(0.0, source));
+  }
+
+  /**
+   * Find the shortest path from the source to the target, growing the tree when needed
+   *
+   * @param target to find path to
+   * @param excludedFinalEdgeSegment when the shortest path ends with this edge segment no path is returned, may be null
+   * @param maxCost beyond which the tree is not grown to reach the target
+   * @return shortest path (empty when target is the source), null when target cannot be reached within the maximum cost or path ends with excluded
+   * edge segment
+   */
+  public synchronized SimpleDirectedPath findPath(DirectedVertex target, EdgeSegment excludedFinalEdgeSegment, double maxCost){
+    growUntilSettled(target, maxCost);
+    if(!settled.contains(target) || costByVertex.get(target) > maxCost){
+      return null;
+    }
+    if(excludedFinalEdgeSegment != null && target != source && predecessorByVertex.get(target) == excludedFinalEdgeSegment){
+      return null;
+    }
+
+    Deque<EdgeSegment> edgeSegments = new ArrayDeque<>();
+    var vertex = target;
+    while(vertex != source){
+      var edgeSegment = predecessorByVertex.get(vertex);
+      edgeSegments.addFirst(edgeSegment);
+      vertex = edgeSegment.getUpstreamVertex();
+    }
+    return new SimpleDirectedPathFactoryImpl().createNew(edgeSegments);
+  }
+
+  /**
+   * @return number of settled vertices, i.e., size of the tree
+   */
+  public synchronized int getNumberOfSettledVertices(){
+    return settled.size();
+  }
+}
@@ -0,0 +1,340 @@
+package org.goplanit.gtfs.converter.intermodal;
+
+import org.goplanit.gtfs.util.GtfsPersistedCacheUtils;
+import org.goplanit.path.SimpleDirectedPathFactoryImpl;
+import org.goplanit.utils.graph.directed.EdgeSegment;
+import org.goplanit.utils.mode.Mode;
+import org.goplanit.utils.network.layer.MacroscopicNetworkLayer;
+import org.goplanit.utils.network.layer.physical.LinkSegment;
+import org.goplanit.utils.network.layer.physical.Node;
+import org.goplanit.utils.path.SimpleDirectedPath;
+
+import java.nio.file.Path;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.logging.Logger;
+
+import static org.goplanit.gtfs.util.GtfsPersistedCacheUtils.FNV_OFFSET_BASIS;
+import static org.goplanit.gtfs.util.GtfsPersistedCacheUtils.fold;
+
+/**
+ * Persisted cache of physical paths between an upstream access node and a downstream access link segment (for a given mode and u-turn ban) across
+ * intermodal runs. Each entry is keyed by the XML ids of the access node and access link segments of the upstream and downstream connectoids and the
+ * mode, and holds the XML ids of the path's link segments as well as a fingerprint of those link segments (topology and costs for the mode) at the time
+ * the path was found. In addition, per mode, a fingerprint of its entire layer (all link segments, their nodes and costs for the mode) is persisted.
+ * <p>
+ *   When the layer fingerprint of a mode differs from the persisted one, all cached paths of that mode are discarded, as any change in the network
+ *   might yield a cheaper path. Otherwise, a cached path is reused when all its link segments still exist, it still connects the access points, avoids
+ *   banned link segments, and its fingerprint is unchanged. Only entries encountered during a run are persisted again, so paths no longer used are
+ *   dropped from the cache.
+ * </p>
+ * <p>
+ *   Instances are thread safe. Entries are kept per mode, and therefore per layer, each with its own lock, so layers mapped concurrently do not wait on
+ *   one another.
+ * </p>
+ *
+ * @author markr
+ */
+public class GtfsPersistedPathCache {
+
+  /** Logger to use */
+  private static final Logger LOGGER = Logger.getLogger(GtfsPersistedPathCache.class.getCanonicalName());
+
+  /** columns of the persisted cache */
+  private static final String[] COLUMNS = {"key", "fingerprint", "link_segment_xml_ids"};
+
+  /** separator used for multi-valued columns and key components */
+  private static final String VALUE_SEPARATOR = "|";
+
+  /** key prefix of the records holding a layer fingerprint (per mode), cannot clash with path keys as those start with a node XML id */
+  private static final String LAYER_FINGERPRINT_KEY_PREFIX = "#layer" + VALUE_SEPARATOR;
+
+  /**
+   * Cached path
+   */
+  private static final class Entry {
+
+    /** fingerprint of the path's link segments */
+    private final long fingerprint;
+
+    /** XML ids of the path's link segments in order */
+    private final List<String> linkSegmentXmlIds;
+
+    /**
+     * Constructor
+     *
+     * @param fingerprint of the path's link segments
+     * @param linkSegmentXmlIds of the path in order
+     */
+    private Entry(long fingerprint, List<String> linkSegmentXmlIds) {
+      this.fingerprint = fingerprint;
+      this.linkSegmentXmlIds = linkSegmentXmlIds;
+    }
+  }
+
+  /**
+   * Cached paths of a single mode, guarded by its own lock
+   */
+  private static final class ModeEntries {
+
+    /** entries loaded from a previous run */
+    private final Map<String, Entry> loadedEntries = new HashMap<>();
+
+    /** entries registered during this run, these are persisted */
+    private final Map<String, Entry> registeredEntries = new HashMap<>();
+
+    /** layer fingerprint loaded from a previous run, null if absent */
+    private Long loadedLayerFingerprint;
+
+    /** layer fingerprint of this run, null until first use of the mode */
+    private Long layerFingerprint;
+
+    /** link segments of the mode's layer by XML id, null until first use of the mode */
+    private Map<String, LinkSegment> linkSegmentsByXmlId;
+  }
+
+  /** cached paths by mode XML id */
+  private final Map<String, ModeEntries> entriesByModeXmlId = new ConcurrentHashMap<>();
+
+  /** number of cache hits */
+  private final LongAdder numHits = new LongAdder();
+
+  /** number of cache misses, including invalidated paths */
+  private final LongAdder numMisses = new LongAdder();
+
+  /**
+   * Create key of a path
+   *
+   * @param upstreamAccessNode of the path
+   * @param upstreamAccessLinkSegment of the upstream connectoid, only part of the key when u-turns are banned
+   * @param downstreamAccessLinkSegment of the path
+   * @param mode of the path
+   * @param banInitialUTurn whether u-turn at upstream access node is banned
+   * @return key
+   */
+  private static String createKey(
+      Node upstreamAccessNode, EdgeSegment upstreamAccessLinkSegment, EdgeSegment downstreamAccessLinkSegment, Mode mode, boolean banInitialUTurn){
+    return String.join(VALUE_SEPARATOR,
+        upstreamAccessNode.getXmlId(),
+        banInitialUTurn ? ((LinkSegment) upstreamAccessLinkSegment).getXmlId() : "",
+        ((LinkSegment) downstreamAccessLinkSegment).getXmlId(),
+        mode.getXmlId(),
+        Boolean.toString(banInitialUTurn));
+  }
+
+  /**
+   * Extract the mode XML id from a path key, i.e., the second to last component
+   *
+   * @param key to extract from
+   * @return mode XML id
+   */
+  private static String extractModeXmlId(String key){
+    int banIndex = key.lastIndexOf(VALUE_SEPARATOR);
+    int modeIndex = key.lastIndexOf(VALUE_SEPARATOR, banIndex - 1);
+    if(banIndex < 0 || modeIndex < 0){
+      throw new IllegalArgumentException(String.format("Malformed GTFS path cache key %s", key));
+    }
+    return key.substring(modeIndex + 1, banIndex);
+  }
+
+  /**
+   * Create fingerprint of the link segments of a path, i.e., their XML ids, the XML ids of their nodes and their costs
+   *
+   * @param linkSegments of the path in order
+   * @param linkSegmentCosts by link segment id
+   * @return fingerprint
+   */
+  private static long createFingerprint(Iterable<? extends EdgeSegment> linkSegments, double[] linkSegmentCosts){
+    long hash = FNV_OFFSET_BASIS;
+    for(var edgeSegment : linkSegments){
+      var linkSegment = (LinkSegment) edgeSegment;
+      hash = fold(hash, linkSegment.getXmlId());
+      hash = fold(hash, linkSegment.getUpstreamNode().getXmlId());
+      hash = fold(hash, linkSegment.getDownstreamNode().getXmlId());
+      hash = fold(hash, Double.doubleToLongBits(linkSegmentCosts[(int) linkSegment.getId()]));
+    }
+    return hash;
+  }
+
+  /**
+   * Create fingerprint of a layer for a mode, i.e., the XML ids of all its link segments, the XML ids of their nodes and their costs for the mode
+   *
+   * @param layer to create fingerprint for
+   * @param mode the costs apply to
+   * @param linkSegmentCosts of the mode by link segment id
+   * @return fingerprint
+   */
+  private static long createLayerFingerprint(MacroscopicNetworkLayer layer, Mode mode, double[] linkSegmentCosts){
+    long hash = fold(FNV_OFFSET_BASIS, mode.getXmlId());
+    hash = fold(hash, layer.getXmlId());
+    hash = fold(hash, layer.getLinkSegments().size());
+    return fold(hash, createFingerprint(layer.getLinkSegments(), linkSegmentCosts));
+  }
+
+  /**
+   * Initialise the entries of the mode on first use, i.e., create its layer fingerprint and, when it differs from the persisted one, discard all loaded
+   * paths of the mode. Callers must hold the lock of the entries
+   *
+   * @param modeEntries to initialise
+   * @param layer of the mode
+   * @param mode to collect entries for
+   * @param linkSegmentCosts of the mode by link segment id
+   */
+  private static void initialiseModeEntries(ModeEntries modeEntries, MacroscopicNetworkLayer layer, Mode mode, double[] linkSegmentCosts){
+    if(modeEntries.layerFingerprint != null){
+      return;
+    }
+    modeEntries.layerFingerprint = createLayerFingerprint(layer, mode, linkSegmentCosts);
+    if(!modeEntries.layerFingerprint.equals(modeEntries.loadedLayerFingerprint) && !modeEntries.loadedEntries.isEmpty()){
+      LOGGER.info(String.format("Layer of mode %s changed since GTFS path cache was persisted, discarded %d cached paths",
+          mode.getName(), modeEntries.loadedEntries.size()));
+      modeEntries.loadedEntries.clear();
+    }
+    modeEntries.linkSegmentsByXmlId = new HashMap<>();
+    layer.getLinkSegments().forEach(ls -> modeEntries.linkSegmentsByXmlId.put(ls.getXmlId(), ls));
+  }
+
+  /**
+   * Load cache from file, when the file does not exist, an empty cache is created
+   *
+   * @param cacheFile to load from
+   * @return loaded cache
+   */
+  public static GtfsPersistedPathCache load(Path cacheFile){
+    var cache = new GtfsPersistedPathCache();
+    boolean loaded = GtfsPersistedCacheUtils.readCsv(cacheFile, record -> {
+      var key = record.get("key");
+      if(key.startsWith(LAYER_FINGERPRINT_KEY_PREFIX)){
+        cache.entriesByModeXmlId.computeIfAbsent(key.substring(LAYER_FINGERPRINT_KEY_PREFIX.length()), m -> new ModeEntries())
+            .loadedLayerFingerprint = Long.parseUnsignedLong(record.get("fingerprint"), 16);
+        return;
+      }
+      var linkSegmentXmlIds = record.get("link_segment_xml_ids");
+      cache.entriesByModeXmlId.computeIfAbsent(extractModeXmlId(key), m -> new ModeEntries()).loadedEntries.put(key, new Entry(
+          Long.parseUnsignedLong(record.get("fingerprint"), 16),
+          linkSegmentXmlIds.isEmpty() ? List.of() : List.of(linkSegmentXmlIds.split("\\" + VALUE_SEPARATOR))));
+    }, "GTFS path cache");
+    if(!loaded){
+      cache.entriesByModeXmlId.clear();
+    }
+    LOGGER.info(String.format("Loaded %d cached GTFS access node paths from %s",
+        cache.entriesByModeXmlId.values().stream().mapToInt(e -> e.loadedEntries.size()).sum(), cacheFile));
+    return cache;
+  }
+
+  /**
+   * Find the cached path, only when it is still valid on the given layer and the layer is unchanged for the mode
+   *
+   * @param upstreamAccessNode of the path
+   * @param upstreamAccessLinkSegment of the upstream connectoid, its opposite direction is banned when u-turns are banned
+   * @param downstreamAccessLinkSegment the path ends with
+   * @param mode of the path
+   * @param banInitialUTurn whether u-turn at upstream access node is banned
+   * @param bannedLinkSegments the path may not contain
+   * @param layer the path resides on
+   * @param linkSegmentCosts of the mode by link segment id
+   * @return cached path, null if not present or no longer valid
+   */
+  public SimpleDirectedPath find(
+      Node upstreamAccessNode, EdgeSegment upstreamAccessLinkSegment, EdgeSegment downstreamAccessLinkSegment, Mode mode, boolean banInitialUTurn,
+      Set<? extends EdgeSegment> bannedLinkSegments, MacroscopicNetworkLayer layer, double[] linkSegmentCosts){
+    var modeEntries = entriesByModeXmlId.computeIfAbsent(mode.getXmlId(), m -> new ModeEntries());
+    synchronized (modeEntries) {
+      initialiseModeEntries(modeEntries, layer, mode, linkSegmentCosts);
+      var entry = modeEntries.loadedEntries.get(createKey(upstreamAccessNode, upstreamAccessLinkSegment, downstreamAccessLinkSegment, mode, banInitialUTurn));
+      if (entry == null || entry.linkSegmentXmlIds.isEmpty()) {
+        numMisses.increment();
+        return null;
+      }
+
+      /* resolve and validate: existing, permitted, not banned, connected from access node to downstream access link segment */
+      Deque<EdgeSegment> linkSegments = new ArrayDeque<>(entry.linkSegmentXmlIds.size());
+      EdgeSegment previous = null;
+      for (var xmlId : entry.linkSegmentXmlIds) {
+        var linkSegment = modeEntries.linkSegmentsByXmlId.get(xmlId);
+        if (linkSegment == null || linkSegmentCosts[(int) linkSegment.getId()] == Double.POSITIVE_INFINITY || bannedLinkSegments.contains(linkSegment) ||
+            (previous == null ? linkSegment.getUpstreamVertex() != upstreamAccessNode : previous.getDownstreamVertex() != linkSegment.getUpstreamVertex())) {
+          numMisses.increment();
+          return null;
+        }
+        linkSegments.addLast(linkSegment);
+        previous = linkSegment;
+      }
+      if (previous != downstreamAccessLinkSegment || createFingerprint(linkSegments, linkSegmentCosts) != entry.fingerprint) {
+        numMisses.increment();
+        return null;
+      }
+      numHits.increment();
+      return new SimpleDirectedPathFactoryImpl().createNew(linkSegments);
+    }
+  }
+
+  /**
+   * Register a found path, so it is persisted
+   *
+   * @param upstreamAccessNode of the path
+   * @param upstreamAccessLinkSegment of the upstream connectoid, its opposite direction is banned when u-turns are banned
+   * @param downstreamAccessLinkSegment the path ends with
+   * @param mode of the path
+   * @param banInitialUTurn whether u-turn at upstream access node is banned
+   * @param path found
+   * @param layer the path resides on
+   * @param linkSegmentCosts of the mode by link segment id
+   */
+  public void register(
+      Node upstreamAccessNode, EdgeSegment upstreamAccessLinkSegment, EdgeSegment downstreamAccessLinkSegment, Mode mode, boolean banInitialUTurn,
+      SimpleDirectedPath path, MacroscopicNetworkLayer layer, double[] linkSegmentCosts){
+    List<String> linkSegmentXmlIds = new ArrayList<>();
+    path.forEach(edgeSegment -> linkSegmentXmlIds.add(((LinkSegment) edgeSegment).getXmlId()));
+    var entry = new Entry(createFingerprint(path, linkSegmentCosts), linkSegmentXmlIds);
+
+    var modeEntries = entriesByModeXmlId.computeIfAbsent(mode.getXmlId(), m -> new ModeEntries());
+    synchronized (modeEntries) {
+      initialiseModeEntries(modeEntries, layer, mode, linkSegmentCosts);
+      modeEntries.registeredEntries.put(createKey(upstreamAccessNode, upstreamAccessLinkSegment, downstreamAccessLinkSegment, mode, banInitialUTurn), entry);
+    }
+  }
+
+  /**
+   * Persist the layer fingerprints and all entries registered during this run to file, ordered by mode and key so the file does not depend on the order
+   * paths were found in. Not to be invoked while paths are still being found or registered
+   *
+   * @param cacheFile to save to
+   */
+  public void save(Path cacheFile){
+    var usedModeEntries = new TreeMap<String, ModeEntries>();
+    entriesByModeXmlId.forEach((modeXmlId, modeEntries) -> {
+      if(modeEntries.layerFingerprint != null){
+        usedModeEntries.put(modeXmlId, modeEntries);
+      }
+    });
+    GtfsPersistedCacheUtils.writeCsv(cacheFile, COLUMNS, csvPrinter -> {
+      for(var modeEntries : usedModeEntries.entrySet()){
+        csvPrinter.printRecord(LAYER_FINGERPRINT_KEY_PREFIX + modeEntries.getKey(), Long.toHexString(modeEntries.getValue().layerFingerprint), "");
+        for(var entry : new TreeMap<>(modeEntries.getValue().registeredEntries).entrySet()){
+          csvPrinter.printRecord(
+              entry.getKey(),
+              Long.toHexString(entry.getValue().fingerprint),
+              String.join(VALUE_SEPARATOR, entry.getValue().linkSegmentXmlIds));
+        }
+      }
+    }, "GTFS path cache");
+    LOGGER.info(String.format("Saved %d GTFS access node paths to cache %s (hits: %d, misses: %d)",
+        usedModeEntries.values().stream().mapToInt(e -> e.registeredEntries.size()).sum(), cacheFile, numHits.longValue(), numMisses.longValue()));
+  }
+
+  /**
+   * @return number of cache hits so far
+   */
+  public long getNumberOfHits() {
+    return numHits.longValue();
+  }
+
+  /**
+   * @return number of cache misses so far
+   */
+  public long getNumberOfMisses() {
+    return numMisses.longValue();
+  }
+}
@@ -41,6 +41,15 @@ public class GtfsServicesAndZoningIntegratorData {
   /** shortest path algorithm used specific to each mode (and its link segment costs) */
   private Map<Mode, ShortestPathAStar> shortestPathAlgoByMode;
 
+  /** link segment costs specific to each mode, shared (read-only) by all shortest path algorithm instances of that mode */
+  private Map<Mode, double[]> modalLinkSegmentCostsByMode;
+
+  /** A* heuristic multiplier specific to each mode */
+  private Map<Mode, Double> heuristicMultiplierByMode;
+
+  /** number of vertices across all layers, i.e., size of the shortest path search space */
+  private int numberOfVerticesAllLayers;
+
   /** track the expected mode to be used for a given service leg (before physical link segments have been attached), based on
    * the routed services that traverse it (which do have a mode) */
   private Map<ServiceLeg, Mode> serviceLegToModeMapping;
@@ -65,9 +74,10 @@ public class GtfsServicesAndZoningIntegratorData {
     /* populate based on cost configuration and underlying physical network's link segments and connectoids */
     double[]  modalLinkSegmentCosts = CostUtils.createAndPopulateModalSegmentCost(mode, physicalCostApproach, network);
 
-    int numberOfVerticesAllLayers = TransportModelNetwork.getNumberOfVerticesAllLayers(network, this.zoning);
     double heuristicMultiplier = Math.min(1.0/mode.getMaximumSpeedKmH(),network.getLayerByMode(mode).findMaximumPaceHKm(mode));
-    this.shortestPathAlgoByMode.put(mode, new ShortestPathAStar(modalLinkSegmentCosts, numberOfVerticesAllLayers,  network.getCoordinateReferenceSystem(), heuristicMultiplier));
+    this.modalLinkSegmentCostsByMode.put(mode, modalLinkSegmentCosts);
+    this.heuristicMultiplierByMode.put(mode, heuristicMultiplier);
+    this.shortestPathAlgoByMode.put(mode, createShortestPathAlgo(mode));
   }
 
 
@@ -104,6 +114,9 @@ public class GtfsServicesAndZoningIntegratorData {
     }
 
     /* prep shortest path algorithm (costs) per mode across network link segments for path searching, since costs are fixed, we can do this beforehand and reuse */
+    this.numberOfVerticesAllLayers = TransportModelNetwork.getNumberOfVerticesAllLayers(getServiceNetwork().getParentNetwork(), this.zoning);
+    this.modalLinkSegmentCostsByMode = new HashMap<>();
+    this.heuristicMultiplierByMode = new HashMap<>();
     this.shortestPathAlgoByMode = new HashMap<>();
     for(var mode : eligibleServiceModes) {
       initialiseShortestPathAlgorithmForMode(mode);
@@ -207,8 +220,48 @@ public class GtfsServicesAndZoningIntegratorData {
     return shortestPathAlgoByMode.get(mode);
   }
 
+  /**
+   * Create a new shortest path algorithm instance initialised with the costs for the given mode per link segment. Instances are not thread safe, but
+   * share the (read-only) costs, so each thread searching paths in parallel can use its own instance, requires {@link #initialise()} to be invoked beforehand
+   *
+   * @param mode to create shortest path algorithm for
+   * @return created algo, null if mode is not eligible
+   */
+  public ShortestPathAStar createShortestPathAlgo(Mode mode) {
+    var modalLinkSegmentCosts = modalLinkSegmentCostsByMode.get(mode);
+    if(modalLinkSegmentCosts == null){
+      return null;
+    }
+    return new ShortestPathAStar(
+        modalLinkSegmentCosts, numberOfVerticesAllLayers, getServiceNetwork().getParentNetwork().getCoordinateReferenceSystem(), heuristicMultiplierByMode.get(mode));
+  }
+
+  /**
+   * Lowest possible cost per kilometre for the given mode, i.e., the multiplier of the straight-line distance used by the A* heuristic, requires
+   * {@link #initialise()} to be invoked beforehand
+   *
+   * @param mode to get multiplier for
+   * @return heuristic multiplier, null if mode is not eligible
+   */
+  public Double getHeuristicMultiplier(Mode mode) {
+    return heuristicMultiplierByMode.get(mode);
+  }
+
+  /**
+   * Link segment costs for the given mode (by link segment id), shared by all shortest path searches for this mode and therefore not to be modified,
+   * requires {@link #initialise()} to be invoked beforehand
+   *
+   * @param mode to get costs for
+   * @return costs, null if mode is not eligible
+   */
+  public double[] getModalLinkSegmentCosts(Mode mode) {
+    return modalLinkSegmentCostsByMode.get(mode);
+  }
+
   public void reset() {
     this.connectoidsByAccessZone = null;
     this.shortestPathAlgoByMode = null;
+    this.modalLinkSegmentCostsByMode = null;
+    this.heuristicMultiplierByMode = null;
   }
 }
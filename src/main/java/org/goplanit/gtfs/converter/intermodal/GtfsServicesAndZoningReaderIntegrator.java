@@ -12,8 +12,10 @@ import org.goplanit.utils.geo.PlanitJtsCrsUtils;
 import org.goplanit.utils.geo.PlanitJtsUtils;
 import org.goplanit.utils.graph.directed.EdgeSegment;
 import org.goplanit.utils.misc.IterableUtils;
+import org.goplanit.utils.misc.Pair;
 import org.goplanit.utils.mode.Mode;
 import org.goplanit.utils.mode.TrackModeType;
+import org.goplanit.utils.network.layer.MacroscopicNetworkLayer;
 import org.goplanit.utils.network.layer.ServiceNetworkLayer;
 import org.goplanit.utils.network.layer.physical.Node;
 import org.goplanit.utils.network.layer.service.ServiceLegSegment;
@@ -22,8 +24,15 @@ import org.goplanit.utils.path.SimpleDirectedPath;
 import org.goplanit.utils.zoning.DirectedConnectoid;
 import org.goplanit.utils.zoning.TransferZone;
 import org.goplanit.zoning.Zoning;
+import org.locationtech.jts.geom.LineString;
+import org.locationtech.jts.geom.Point;
 
+import java.io.IOException;
+import java.nio.file.Files;
 import java.util.*;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.function.Function;
 import java.util.logging.Logger;
 import java.util.stream.Collectors;
@@ -45,11 +54,285 @@ public class GtfsServicesAndZoningReaderIntegrator {
 
   private final Function<String, TransferZone> gtfsStopIdToTransferZoneMapping;
 
+  /** cache of paths found between access nodes per physical layer, so layers mapped concurrently neither contend for nor evict each other's paths,
+   * null when caching is not activated */
+  private Map<MacroscopicNetworkLayer, GtfsAccessNodePathCache> pathCaches;
+
+  /** cache of paths between access nodes persisted across runs, null when not used */
+  private GtfsPersistedPathCache persistedPathCache;
+
+  /** one-to-many path trees by source access node, mode, and banned initial u-turn, each path searching thread retains its own trees so threads never
+   * wait on one another growing a tree, null when one-to-many search is not activated */
+  private ThreadLocal<Map<String, GtfsOneToManyPathTree>> pathTrees;
+
+  /** GTFS shape geometry (network CRS) by service leg segment, null when shape guided path search is not activated */
+  private Function<ServiceLegSegment, LineString> serviceLegSegmentToShapeMapping;
+
+  /** location (network CRS) by GTFS stop id, used to position stops along their shape, null when not available */
+  private Function<String, Point> gtfsStopIdToLocationMapping;
+
+  /** geo tools are not thread safe, each path searching thread uses its own */
+  private ThreadLocal<PlanitJtsCrsUtils> geoTools;
+
+  /** contraction hierarchy by mode, null when contraction hierarchy search is not activated */
+  private Map<Mode, GtfsContractionHierarchy> contractionHierarchies;
+
+  /** landmark (ALT) path search by mode, null when landmark path search is not activated */
+  private Map<Mode, GtfsLandmarkPathSearch> landmarkPathSearches;
+
+  /**
+   * Build (or load) the contraction hierarchy for each eligible mode
+   */
+  private void initialiseContractionHierarchies(){
+    this.contractionHierarchies = new HashMap<>();
+    var network = data.getServiceNetwork().getParentNetwork();
+    var directory = data.getSettings().getContractionHierarchyDirectory();
+    if(directory != null){
+      try {
+        Files.createDirectories(directory);
+      } catch (IOException e) {
+        throw new PlanItRunTimeException(String.format("Unable to create contraction hierarchy directory %s", directory), e);
+      }
+    }
+    for(var mode : data.getActivatedPlanitModes()){
+      var modalLinkSegmentCosts = data.getModalLinkSegmentCosts(mode);
+      if(modalLinkSegmentCosts == null){
+        continue;
+      }
+      var hierarchyFile = directory != null ? directory.resolve(String.format("contraction_hierarchy_mode_%d.bin", mode.getId())) : null;
+      contractionHierarchies.put(mode, GtfsContractionHierarchy.create(network.getLayerByMode(mode), modalLinkSegmentCosts, hierarchyFile));
+    }
+  }
+
+  /**
+   * Select landmarks and compute their costs for each eligible mode
+   */
+  private void initialiseLandmarkPathSearches(){
+    this.landmarkPathSearches = new HashMap<>();
+    var network = data.getServiceNetwork().getParentNetwork();
+    for(var mode : data.getActivatedPlanitModes()){
+      var modalLinkSegmentCosts = data.getModalLinkSegmentCosts(mode);
+      if(modalLinkSegmentCosts == null){
+        continue;
+      }
+      landmarkPathSearches.put(mode,
+          GtfsLandmarkPathSearch.create(network.getLayerByMode(mode), modalLinkSegmentCosts, data.getSettings().getNumberOfLandmarks()));
+    }
+  }
+
   /**
    * Initialise some local indices that are to be used
    */
   private void initialise(){
     data.initialise();
+    int pathCacheSize = data.getSettings().getPathCacheSize();
+    this.pathCaches = null;
+    if(pathCacheSize > 0){
+      this.pathCaches = new HashMap<>();
+      data.getServiceNetwork().getParentNetwork().getTransportLayers().forEach(l -> pathCaches.put(l, new GtfsAccessNodePathCache(pathCacheSize)));
+    }
+    var persistedPathCacheFile = data.getSettings().getPersistedPathCacheFile();
+    this.persistedPathCache = persistedPathCacheFile != null ? GtfsPersistedPathCache.load(persistedPathCacheFile) : null;
+    final int maxRetainedPathTrees = data.getSettings().getMaxRetainedPathTrees();
+    this.pathTrees = data.getSettings().isOneToManyPathSearch() ? ThreadLocal.withInitial(() -> new LinkedHashMap<>(16, 0.75f, true){
+      @Override
+      protected boolean removeEldestEntry(Map.Entry<String, GtfsOneToManyPathTree> eldest) {
+        return size() > maxRetainedPathTrees;
+      }
+    }) : null;
+    final var crs = data.getServiceNetwork().getParentNetwork().getCoordinateReferenceSystem();
+    this.geoTools = ThreadLocal.withInitial(() -> new PlanitJtsCrsUtils(crs));
+    this.contractionHierarchies = null;
+    if(data.getSettings().isContractionHierarchyPathSearch()){
+      initialiseContractionHierarchies();
+    }
+    this.landmarkPathSearches = null;
+    if(data.getSettings().isLandmarkPathSearch()){
+      initialiseLandmarkPathSearches();
+    }
+  }
+
+  /**
+   * Find the shortest path from the upstream access node to the upstream node of the downstream access link segment by means of the one-to-many
+   * path tree of the upstream access node. Since a tree cannot ban the opposite direction of each downstream access link segment, paths ending with
+   * that segment are not extracted from the tree. The tree is not grown beyond the lowest possible cost of the straight-line distance multiplied by the
+   * detour factor, paths exceeding this cost are not extracted from the tree either
+   *
+   * @param physicalLayer the path resides on
+   * @param mode to find path for
+   * @param upstreamAccessNode to start from
+   * @param downstreamAccessLinkSegment to end with
+   * @param bannedUpstreamSegment segment banned throughout, may be null
+   * @return found path, null if it cannot be extracted from the tree
+   */
+  private SimpleDirectedPathImpl findPathInTree(
+      MacroscopicNetworkLayer physicalLayer, Mode mode, Node upstreamAccessNode, EdgeSegment downstreamAccessLinkSegment, EdgeSegment bannedUpstreamSegment){
+    var treeKey = physicalLayer.getId() + "_" + upstreamAccessNode.getId() + "_" +
+        (bannedUpstreamSegment != null ? bannedUpstreamSegment.getId() : "") + "_" + mode.getId();
+    var tree = pathTrees.get().computeIfAbsent(
+        treeKey, k -> new GtfsOneToManyPathTree(upstreamAccessNode, data.getModalLinkSegmentCosts(mode), bannedUpstreamSegment));
+
+    var target = downstreamAccessLinkSegment.getUpstreamNode();
+    double straightLineKm = geoTools.get().getDistanceInMetres(
+        upstreamAccessNode.getPosition().getCoordinate(), target.getPosition().getCoordinate()) / 1000;
+    double maxCost = straightLineKm * data.getHeuristicMultiplier(mode) * data.getSettings().getPathTreeDetourFactor();
+    return (SimpleDirectedPathImpl) tree.findPath(target, downstreamAccessLinkSegment.getOppositeDirectionSegment(), maxCost);
+  }
+
+  /**
+   * Link segments banned when searching a path between access nodes, i.e., the opposite direction of the downstream access link segment and, when u-turns
+   * are banned, of the upstream access link segment
+   *
+   * @param upstreamAccessLinkSegment of the upstream connectoid
+   * @param downstreamAccessLinkSegment to end with
+   * @param banInitialUTurn when true, u-turn onto the opposite direction of the upstream access link segment is banned
+   * @return banned link segments
+   */
+  private static Set<EdgeSegment> createBannedLinkSegments(
+      EdgeSegment upstreamAccessLinkSegment, EdgeSegment downstreamAccessLinkSegment, boolean banInitialUTurn){
+    // todo if ever we support turn bans, then we must make the below more sophisticated
+    Set<EdgeSegment> bannedLinkSegments = new HashSet<>();
+    if(upstreamAccessLinkSegment.getOppositeDirectionSegment() != null && banInitialUTurn){
+      bannedLinkSegments.add(upstreamAccessLinkSegment.getOppositeDirectionSegment());
+    }
+    if( downstreamAccessLinkSegment.getOppositeDirectionSegment() != null){
+      bannedLinkSegments.add( downstreamAccessLinkSegment.getOppositeDirectionSegment());
+    }
+    return bannedLinkSegments;
+  }
+
+  /**
+   * Find the location of a GTFS stop, i.e., its own location when available, otherwise the centroid of the transfer zone it is mapped to
+   *
+   * @param gtfsStopId to find location for
+   * @param transferZone the GTFS stop is mapped to
+   * @return location of the GTFS stop
+   */
+  private Point findGtfsStopLocation(String gtfsStopId, TransferZone transferZone){
+    Point location = gtfsStopIdToLocationMapping != null ? gtfsStopIdToLocationMapping.apply(gtfsStopId) : null;
+    return location != null ? location : (Point) transferZone.getGeometry(true).getCentroid();
+  }
+
+  /**
+   * Create the corridor around the GTFS shape of the service leg segment between the two GTFS stops
+   *
+   * @param serviceLegSegment to create corridor for
+   * @param gtfsStopIdUpstream the upstream GTFS stop
+   * @param transferZoneUpstream of the upstream GTFS stop
+   * @param gtfsStopIdDownstream the downstream GTFS stop
+   * @param transferZoneDownstream of the downstream GTFS stop
+   * @return created corridor, null when not activated or no (usable) shape is available
+   */
+  private GtfsShapeCorridor createShapeCorridor(
+      ServiceLegSegment serviceLegSegment, String gtfsStopIdUpstream, TransferZone transferZoneUpstream, String gtfsStopIdDownstream, TransferZone transferZoneDownstream){
+    if(serviceLegSegmentToShapeMapping == null){
+      return null;
+    }
+    var shape = serviceLegSegmentToShapeMapping.apply(serviceLegSegment);
+    if(shape == null){
+      return null;
+    }
+    return GtfsShapeCorridor.create(
+        shape,
+        findGtfsStopLocation(gtfsStopIdUpstream, transferZoneUpstream),
+        findGtfsStopLocation(gtfsStopIdDownstream, transferZoneDownstream),
+        data.getSettings().getShapeCorridorWidthMeters(),
+        geoTools.get());
+  }
+
+  /**
+   * Find the shortest path between the upstream access node and the downstream access link segment (included) within the corridor around the GTFS shape.
+   * Such paths are specific to the shape and therefore not cached
+   *
+   * @param mode to find path for
+   * @param upstreamAccessNode to start from
+   * @param upstreamAccessLinkSegment of the upstream connectoid
+   * @param downstreamAccessLinkSegment to end with
+   * @param banInitialUTurn when true, u-turn onto the opposite direction of the upstream access link segment is banned
+   * @param corridor to search within
+   * @return found path, null if no path within the corridor could be found
+   */
+  private SimpleDirectedPath findShapeGuidedPathBetweenAccessNodes(
+      Mode mode, Node upstreamAccessNode, EdgeSegment upstreamAccessLinkSegment, EdgeSegment downstreamAccessLinkSegment, boolean banInitialUTurn,
+      GtfsShapeCorridor corridor){
+    var path = (SimpleDirectedPathImpl) corridor.findPath(
+        upstreamAccessNode,
+        downstreamAccessLinkSegment.getUpstreamNode(),
+        data.getModalLinkSegmentCosts(mode),
+        createBannedLinkSegments(upstreamAccessLinkSegment, downstreamAccessLinkSegment, banInitialUTurn));
+    if(path == null){
+      return null;
+    }
+    path.append(downstreamAccessLinkSegment);
+    return path;
+  }
+
+  /**
+   * Find the shortest path between the upstream access node and the downstream access link segment (included), served from the cache when available
+   *
+   * @param mode to find path for
+   * @param upstreamAccessNode to start from
+   * @param upstreamAccessLinkSegment of the upstream connectoid
+   * @param downstreamAccessLinkSegment to end with
+   * @param banInitialUTurn when true, u-turn onto the opposite direction of the upstream access link segment is banned
+   * @param shortestPathAlgo to use
+   * @return found path, null if no path could be found
+   */
+  private SimpleDirectedPath findShortestPathBetweenAccessNodes(
+      Mode mode, Node upstreamAccessNode, EdgeSegment upstreamAccessLinkSegment, EdgeSegment downstreamAccessLinkSegment, boolean banInitialUTurn,
+      ShortestPathAStar shortestPathAlgo){
+    var physicalLayer = data.getServiceNetwork().getParentNetwork().getLayerByMode(mode);
+    var pathCache = pathCaches != null ? pathCaches.get(physicalLayer) : null;
+    if(pathCache != null){
+      var cachedPath = pathCache.find(upstreamAccessNode, upstreamAccessLinkSegment, downstreamAccessLinkSegment, mode, banInitialUTurn);
+      if(cachedPath != null){
+        return cachedPath.orElse(null);
+      }
+    }
+
+    var bannedLinkSegments = createBannedLinkSegments(upstreamAccessLinkSegment, downstreamAccessLinkSegment, banInitialUTurn);
+    SimpleDirectedPath foundPath = persistedPathCache != null ? persistedPathCache.find(
+        upstreamAccessNode, upstreamAccessLinkSegment, downstreamAccessLinkSegment, mode, banInitialUTurn, bannedLinkSegments,
+        physicalLayer, data.getModalLinkSegmentCosts(mode)) : null;
+    if(foundPath == null) {
+      try {
+        /* extract from one-to-many tree or contraction hierarchy if possible, otherwise execute shortest path (landmark based when activated) */
+        var path = pathTrees != null ?
+            findPathInTree(physicalLayer, mode, upstreamAccessNode, downstreamAccessLinkSegment, banInitialUTurn ? upstreamAccessLinkSegment.getOppositeDirectionSegment() : null) : null;
+        if(path == null && contractionHierarchies != null && contractionHierarchies.containsKey(mode)){
+          path = (SimpleDirectedPathImpl) contractionHierarchies.get(mode).findPath(
+              upstreamAccessNode, downstreamAccessLinkSegment.getUpstreamNode(), bannedLinkSegments);
+        }
+        var landmarkPathSearch = landmarkPathSearches != null ? landmarkPathSearches.get(mode) : null;
+        if(path == null && landmarkPathSearch != null){
+          /* bans are honoured, so no path means there is none */
+          path = (SimpleDirectedPathImpl) landmarkPathSearch.findPath(
+              upstreamAccessNode, downstreamAccessLinkSegment.getUpstreamNode(), bannedLinkSegments, data.getSettings().isBidirectionalPathSearch());
+        }else if(path == null) {
+          ShortestPathResult result = shortestPathAlgo.executeOneToOne(
+              upstreamAccessNode, downstreamAccessLinkSegment.getUpstreamNode(), bannedLinkSegments);
+          path = (SimpleDirectedPathImpl) result.createPath(new SimpleDirectedPathFactoryImpl(), upstreamAccessNode, downstreamAccessLinkSegment.getUpstreamNode());
+        }
+
+        if(path != null) {
+          path.append(downstreamAccessLinkSegment);
+          foundPath = path;
+        }
+      } catch (PlanItRunTimeException e) {
+        /* when no path can be found this means we have a problem OR in case of multiple access nodes per transfer zone, e.g., station platform with tracks on either side
+           it can still be fine. We therefore do not report a problem if no path between upstream access node and used downstream access node can be found */
+      }
+    }
+
+    if(pathCache != null){
+      pathCache.register(upstreamAccessNode, upstreamAccessLinkSegment, downstreamAccessLinkSegment, mode, banInitialUTurn, foundPath);
+    }
+    if(persistedPathCache != null && foundPath != null){
+      persistedPathCache.register(
+          upstreamAccessNode, upstreamAccessLinkSegment, downstreamAccessLinkSegment, mode, banInitialUTurn, foundPath, physicalLayer,
+          data.getModalLinkSegmentCosts(mode));
+    }
+    return foundPath;
   }
 
   /**
@@ -85,10 +368,11 @@ public class GtfsServicesAndZoningReaderIntegrator {
    * @param layer to use for the physical network
    * @param serviceLegSegment to find physical path for
    * @param mode to find path for as layer might support multiple modes and available connectoids might as well
+   * @param shortestPathAlgoByMode shortest path algorithm to use for a given mode
    * @return found most likely physical path (if any, can be null)
    */
   private SimpleDirectedPath findMostLikelyPathBetweenGtfsStopServiceNodes(
-      ServiceNetworkLayer layer, ServiceLegSegment serviceLegSegment, Mode mode) {
+      ServiceNetworkLayer layer, ServiceLegSegment serviceLegSegment, Mode mode, Function<Mode, ShortestPathAStar> shortestPathAlgoByMode) {
 
     var gtfsStopIdUpstream = serviceNodeToGtfsStopIdMapping.apply(serviceLegSegment.getUpstreamServiceNode());
     TransferZone transferZoneUpstream = gtfsStopIdToTransferZoneMapping.apply(gtfsStopIdUpstream);
@@ -116,7 +400,7 @@ public class GtfsServicesAndZoningReaderIntegrator {
       LOGGER.severe(String.format("Service layer does not seem to support the mode (%s), the service leg is attributed to, this shouldn't happen", mode.getName()));
       return null;
     }
-    var shortestPathAlgo = data.getShortestPathAlgoByMode(mode);
+    var shortestPathAlgo = shortestPathAlgoByMode.apply(mode);
 
     /* prune to connectoids that are mode compatible */
     upstreamConnectoidsByAccessNode.values().forEach(cList -> cList.removeIf( c -> !c.isModeAllowed(transferZoneUpstream, mode)));
@@ -130,6 +414,9 @@ public class GtfsServicesAndZoningReaderIntegrator {
       return null;
     }
 
+    /* corridor around GTFS shape (if any) restricting the search and guiding the choice between candidate paths */
+    final var shapeCorridor = createShapeCorridor(serviceLegSegment, gtfsStopIdUpstream, transferZoneUpstream, gtfsStopIdDownstream, transferZoneDownstream);
+
     final var finalDownstreamConnectoidsByAccessNode = downstreamConnectoidsByAccessNode;
     final var allLegSegmentPathOptions = new TreeSet<SimpleDirectedPath>(Comparator.comparing(Object::hashCode));
 
@@ -152,7 +439,8 @@ public class GtfsServicesAndZoningReaderIntegrator {
                 transferZoneUpstream,
                 downstreamEntry.getValue(),
                 transferZoneDownstream,
-                shortestPathAlgo);
+                shortestPathAlgo,
+                shapeCorridor);
         allLegSegmentPathOptions.addAll(accessNodePathOptions);
       });
     });
@@ -174,7 +462,11 @@ public class GtfsServicesAndZoningReaderIntegrator {
       //  RULE --> use rule of thumb where we use the shortest path (this will eliminate crossing paths most likely (switches), we then
       //  might still choose the wrong platform/track but this is not a big issue.
       LOGGER.fine(String.format("Multiple paths possible between two GTFS stops (%s, %s) for mode %s, due to GTFS stop having multiple possible access points to physical network, e.g., train platform, choosing first", gtfsStopIdUpstream, gtfsStopIdDownstream, mode.getName()));
-      chosenPath = allLegSegmentPathOptions.stream().min(Comparator.comparingDouble(p -> p.computeLengthKm())).get();
+      //  When the GTFS shape is available, the path that best fits the shape is chosen instead
+      chosenPath = shapeCorridor != null ?
+          allLegSegmentPathOptions.stream().min(
+              Comparator.comparingDouble((SimpleDirectedPath p) -> shapeCorridor.computeMisfit(p)).thenComparingDouble(p -> p.computeLengthKm())).get() :
+          allLegSegmentPathOptions.stream().min(Comparator.comparingDouble(p -> p.computeLengthKm())).get();
     }
 
     // print all subsequent (OSM) node external ids of each chosen path for visualisation/error checking purposes
@@ -187,7 +479,7 @@ public class GtfsServicesAndZoningReaderIntegrator {
           List<DirectedConnectoid> upstreamAccessNodeConnectoids,
           TransferZone transferZoneUpstream,
           List<DirectedConnectoid> downstreamAccessNodeConnectoids,
-          TransferZone transferZoneDownstream, ShortestPathAStar shortestPathAlgo) {
+          TransferZone transferZoneDownstream, ShortestPathAStar shortestPathAlgo, GtfsShapeCorridor shapeCorridor) {
 
     Set<SimpleDirectedPath> createdPaths = new HashSet<>();
     for(var upstreamConnectoid : upstreamAccessNodeConnectoids) {
@@ -201,31 +493,20 @@ public class GtfsServicesAndZoningReaderIntegrator {
 
         /* find shortest path using the upstream access node and downstream access link segment upstream node to ensure that we use both access link segments in the final path
            we then supplement the found path with the two access link segments which we know are mode compatible */
-        try {
-
-          /* ban direct u-turn around access link segments, unless it is a water/rail mode where this can be acceptable */
-          boolean banInitialUTurn = !(mode.hasPhysicalFeatures() && mode.getPhysicalFeatures().getTrackType() != TrackModeType.ROAD);
-
-          // todo if ever we support turn bans, then we must make the below more sophisticated
-          Set<EdgeSegment> bannedLinkSegments = new HashSet<>();
-          if(upstreamConnectoid.getAccessLinkSegment().getOppositeDirectionSegment() != null && banInitialUTurn){
-            bannedLinkSegments.add(upstreamConnectoid.getAccessLinkSegment().getOppositeDirectionSegment());
-          }
-          if( downstreamConnectoid.getAccessLinkSegment().getOppositeDirectionSegment() != null){
-            bannedLinkSegments.add( downstreamConnectoid.getAccessLinkSegment().getOppositeDirectionSegment());
-          }
 
-          /* execute shortest path */
-          ShortestPathResult result = shortestPathAlgo.executeOneToOne(
-              upstreamConnectoid.getAccessNode(), downstreamConnectoid.getAccessLinkSegment().getUpstreamNode(), bannedLinkSegments);
-          var foundPath = (SimpleDirectedPathImpl) result.createPath(new SimpleDirectedPathFactoryImpl(), upstreamConnectoid.getAccessNode(), downstreamConnectoid.getAccessLinkSegment().getUpstreamNode());
+        /* ban direct u-turn around access link segments, unless it is a water/rail mode where this can be acceptable */
+        boolean banInitialUTurn = !(mode.hasPhysicalFeatures() && mode.getPhysicalFeatures().getTrackType() != TrackModeType.ROAD);
 
-          foundPath.append(downstreamConnectoid.getAccessLinkSegment());
+        /* shape guided when possible, otherwise regular search */
+        var foundPath = shapeCorridor != null ? findShapeGuidedPathBetweenAccessNodes(
+            mode, upstreamConnectoid.getAccessNode(), upstreamConnectoid.getAccessLinkSegment(), downstreamConnectoid.getAccessLinkSegment(), banInitialUTurn, shapeCorridor) : null;
+        if(foundPath == null) {
+          foundPath = findShortestPathBetweenAccessNodes(
+              mode, upstreamConnectoid.getAccessNode(), upstreamConnectoid.getAccessLinkSegment(), downstreamConnectoid.getAccessLinkSegment(), banInitialUTurn, shortestPathAlgo);
+        }
+        if(foundPath != null) {
           createdPaths.add(foundPath);
           //LOGGER.info(StreamSupport.stream(foundPath.spliterator(), false).map( e -> e.getParent().getExternalId()).collect(Collectors.joining(", ")));
-        } catch (PlanItRunTimeException e) {
-          /* when no path can be found this means we have a problem OR in case of multiple access nodes per transfer zone, e.g., station platform with tracks on either side
-             it can still be fine. We therefore do not report a problem if no path between upstream access node and used downstream access node can be found */
         }
       }
     }
@@ -239,14 +520,78 @@ public class GtfsServicesAndZoningReaderIntegrator {
         a u-turn. This is currently accepted if there is no other way to reach the access node (to be revisited), but here it makes no sense as we already have
         a better option. Therefore, we filter such redundant options out and do not use the path.
      */
-    var iter = createdPaths.iterator();
+    removeRedundantPaths(createdPaths);
+    return createdPaths;
+  }
+
+  /**
+   * Remove paths that contain another (remaining) path as a sub-path. Rather than comparing all pairs of paths, paths are indexed by their first link
+   * segment and fingerprinted by a polynomial hash over their link segment ids, such that a path is only compared link segment by link segment with
+   * another path when it starts with that path's first link segment at some position and the hashes of the overlapping part match
+   *
+   * @param paths to prune, paths are visited in iteration order and removed when containing any other path that has not been removed
+   */
+  public static void removeRedundantPaths(Set<SimpleDirectedPath> paths){
+    if(paths.size() < 2){
+      return;
+    }
+
+    final long hashBase = 1_000_003L;
+    Map<SimpleDirectedPath, long[]> idsByPath = new IdentityHashMap<>();
+    Map<SimpleDirectedPath, Long> hashByPath = new IdentityHashMap<>();
+    Map<Long, List<SimpleDirectedPath>> pathsByFirstId = new HashMap<>();
+    int maxLength = 0;
+    for(var path : paths){
+      List<Long> idList = new ArrayList<>();
+      path.forEach(edgeSegment -> idList.add(edgeSegment.getId()));
+      long[] ids = idList.stream().mapToLong(Long::longValue).toArray();
+      long hash = 0;
+      for(long id : ids){
+        hash = hash * hashBase + id;
+      }
+      idsByPath.put(path, ids);
+      hashByPath.put(path, hash);
+      maxLength = Math.max(maxLength, ids.length);
+      if(ids.length > 0) {
+        pathsByFirstId.computeIfAbsent(ids[0], k -> new ArrayList<>()).add(path);
+      }
+    }
+    long[] powers = new long[maxLength + 1];
+    powers[0] = 1;
+    for(int index = 1; index <= maxLength; ++index){
+      powers[index] = powers[index - 1] * hashBase;
+    }
+
+    Set<SimpleDirectedPath> removed = Collections.newSetFromMap(new IdentityHashMap<>());
+    var iter = paths.iterator();
     while(iter.hasNext()){
       var currOption = iter.next();
-      if(createdPaths.stream().anyMatch(o -> o!=currOption && currOption.containsSubPath(o.iterator()))){
+      long[] ids = idsByPath.get(currOption);
+      long[] prefixHashes = new long[ids.length + 1];
+      for(int index = 0; index < ids.length; ++index){
+        prefixHashes[index + 1] = prefixHashes[index] * hashBase + ids[index];
+      }
+
+      boolean redundant = false;
+      for(int start = 0; start < ids.length && !redundant; ++start){
+        for(var candidate : pathsByFirstId.getOrDefault(ids[start], Collections.emptyList())){
+          long[] candidateIds = idsByPath.get(candidate);
+          int end = start + candidateIds.length;
+          if(candidate == currOption || removed.contains(candidate) || end > ids.length ||
+              prefixHashes[end] - prefixHashes[start] * powers[candidateIds.length] != hashByPath.get(candidate)){
+            continue;
+          }
+          if(Arrays.equals(ids, start, end, candidateIds, 0, candidateIds.length)){
+            redundant = true;
+            break;
+          }
+        }
+      }
+      if(redundant){
+        removed.add(currOption);
         iter.remove();
       }
     }
-    return createdPaths;
   }
 
   /**
@@ -258,10 +603,6 @@ public class GtfsServicesAndZoningReaderIntegrator {
     PlanItRunTimeException.throwIfNull(data.getServiceNetwork(), "serviceNetwork is null");
     PlanItRunTimeException.throwIfNull(data.getSettings(), "GTFS Intermodal reader settings is null");
     PlanItRunTimeException.throwIfNull(data.getZoning(), "zoning is null");
-
-    //todo: multiple layers should be possible to implement but at this point simply has not been done due to absence of a case where this is used
-    PlanItRunTimeException.throwIf(data.getServiceNetwork().getParentNetwork().getTransportLayers().size()>1, "Currently GTFS converter only supports physical reference networks with a single layer");
-    PlanItRunTimeException.throwIf(data.getServiceNetwork().getTransportLayers().size()>1, "Currently GTFS converter only supports service networks with a single layer");
   }
 
   /**
@@ -277,13 +618,134 @@ public class GtfsServicesAndZoningReaderIntegrator {
    * @param legSegment between two service nodes that will be populated with physical link segments (references)
    */
   private void mapServiceLegSegmentToPhysicalNetwork(ServiceNetworkLayer layer, ServiceLegSegmentImpl legSegment){
+    applyPhysicalPath(legSegment, findPhysicalPath(layer, legSegment, data::getShortestPathAlgoByMode));
+  }
 
+  /**
+   * Find the physical path for a given service layer's service leg's leg segment, without modifying the service network
+   *
+   * @param layer the segment resides in
+   * @param legSegment between two service nodes to find physical path for
+   * @param shortestPathAlgoByMode shortest path algorithm to use for a given mode
+   * @return chosen path, null if none
+   */
+  private SimpleDirectedPath findPhysicalPath(
+      ServiceNetworkLayer layer, ServiceLegSegmentImpl legSegment, Function<Mode, ShortestPathAStar> shortestPathAlgoByMode){
     Mode expectedMode = data.getExpectedModeForServiceLeg(legSegment.getParent());
-    var chosenPath = findMostLikelyPathBetweenGtfsStopServiceNodes(layer, legSegment, expectedMode);
+    return findMostLikelyPathBetweenGtfsStopServiceNodes(layer, legSegment, expectedMode, shortestPathAlgoByMode);
+  }
+
+  /**
+   * Attach the link segments of the chosen path (if any) to the service leg segment
+   *
+   * @param legSegment to populate with physical link segments (references)
+   * @param chosenPath to use, ignored when null
+   */
+  private void applyPhysicalPath(ServiceLegSegmentImpl legSegment, SimpleDirectedPath chosenPath){
     if(chosenPath != null) {
       /* now attach the link segments to the service leg segment based on the found path */
       legSegment.setPhysicalParentSegments(IterableUtils.toTypeCastList(chosenPath));
-      return;
+    }
+  }
+
+  /**
+   * Perform the integration for all service leg segments in parallel. Applying a path to a leg segment maps its service nodes to physical nodes, which in turn
+   * restricts the access nodes considered by later leg segments sharing a service node. Therefore, leg segments are scheduled in waves where each leg segment
+   * is placed in the wave after the last wave of any earlier leg segment sharing one of its service nodes. Within a wave no service nodes are shared, so paths
+   * are searched on worker threads, each with its own shortest path algorithm instances, while the service network is only read. Found paths are applied
+   * once the wave completes, so workers never observe service nodes being modified and the result is identical to the sequential run
+   *
+   * @param numberOfThreads to use
+   */
+  private void mapServiceLegSegmentsToPhysicalNetworkInParallel(int numberOfThreads){
+    var executor = Executors.newFixedThreadPool(numberOfThreads, r -> {
+      var thread = new Thread(r, "gtfs-path-mapping");
+      thread.setDaemon(true);
+      return thread;
+    });
+    try {
+      /* shortest path algorithms are not thread safe, so each thread uses its own per mode */
+      final ThreadLocal<Map<Mode, ShortestPathAStar>> threadShortestPathAlgos = ThreadLocal.withInitial(HashMap::new);
+      final Function<Mode, ShortestPathAStar> shortestPathAlgoByMode =
+          mode -> threadShortestPathAlgos.get().computeIfAbsent(mode, data::createShortestPathAlgo);
+
+      /* assign leg segments to waves in order of the sequential run */
+      final List<List<Pair<ServiceNetworkLayer, ServiceLegSegmentImpl>>> waves = new ArrayList<>();
+      final Map<ServiceNode, Integer> lastWaveByServiceNode = new HashMap<>();
+      data.getServiceNetwork().getTransportLayers().forEach(l -> l.getLegs().forEach(
+          leg -> leg.forEachSegment( legSegment -> {
+            int wave = 1 + Math.max(
+                lastWaveByServiceNode.getOrDefault(legSegment.getUpstreamServiceNode(), -1),
+                lastWaveByServiceNode.getOrDefault(legSegment.getDownstreamServiceNode(), -1));
+            lastWaveByServiceNode.put(legSegment.getUpstreamServiceNode(), wave);
+            lastWaveByServiceNode.put(legSegment.getDownstreamServiceNode(), wave);
+            if(wave == waves.size()){
+              waves.add(new ArrayList<>());
+            }
+            waves.get(wave).add(Pair.of(l, (ServiceLegSegmentImpl) legSegment));
+          })));
+
+      for(var wave : waves){
+        List<Future<SimpleDirectedPath>> futurePaths = new ArrayList<>(wave.size());
+        for(var entry : wave){
+          futurePaths.add(executor.submit(() -> findPhysicalPath(entry.first(), entry.second(), shortestPathAlgoByMode)));
+        }
+        /* apply in order of the sequential run, only once all workers of this wave are done */
+        List<SimpleDirectedPath> paths = new ArrayList<>(wave.size());
+        for(var futurePath : futurePaths){
+          paths.add(futurePath.get());
+        }
+        for(int index = 0; index < wave.size(); ++index){
+          applyPhysicalPath(wave.get(index).second(), paths.get(index));
+        }
+      }
+      LOGGER.info(String.format("Mapped GTFS service leg segments to physical network in %d parallel waves", waves.size()));
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new PlanItRunTimeException("Interrupted while mapping GTFS service leg segments to physical network", e);
+    } catch (ExecutionException e) {
+      throw new PlanItRunTimeException(String.format("Unable to map GTFS service leg segment to physical network: %s", e.getCause().getMessage()), e.getCause());
+    } finally {
+      executor.shutdownNow();
+    }
+  }
+
+  /**
+   * Perform the integration for each service layer on its own thread, since service layers are mapped against their own parent physical layer and share
+   * no mutable state: path caches are kept per physical layer, persisted paths per mode, and one-to-many path trees per thread. Within a layer, leg
+   * segments are mapped in the same order as the sequential run, so the result is identical
+   */
+  private void mapServiceLayersToPhysicalNetworkConcurrently(){
+    var layers = new ArrayList<ServiceNetworkLayer>();
+    data.getServiceNetwork().getTransportLayers().forEach(layers::add);
+    var executor = Executors.newFixedThreadPool(layers.size(), r -> {
+      var thread = new Thread(r, "gtfs-layer-path-mapping");
+      thread.setDaemon(true);
+      return thread;
+    });
+    try {
+      List<Future<?>> futures = new ArrayList<>();
+      for(var layer : layers){
+        futures.add(executor.submit(() -> {
+          /* shortest path algorithms are not thread safe, so each layer uses its own per mode */
+          final Map<Mode, ShortestPathAStar> layerShortestPathAlgos = new HashMap<>();
+          final Function<Mode, ShortestPathAStar> shortestPathAlgoByMode = mode -> layerShortestPathAlgos.computeIfAbsent(mode, data::createShortestPathAlgo);
+          layer.getLegs().forEach(leg -> leg.forEachSegment(legSegment -> {
+            final var legSegmentImpl = (ServiceLegSegmentImpl) legSegment;
+            applyPhysicalPath(legSegmentImpl, findPhysicalPath(layer, legSegmentImpl, shortestPathAlgoByMode));
+          }));
+        }));
+      }
+      for(var future : futures){
+        future.get();
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new PlanItRunTimeException("Interrupted while mapping GTFS service layers to physical network", e);
+    } catch (ExecutionException e) {
+      throw new PlanItRunTimeException(String.format("Unable to map GTFS service layer to physical network: %s", e.getCause().getMessage()), e.getCause());
+    } finally {
+      executor.shutdownNow();
     }
   }
 
@@ -313,6 +775,25 @@ public class GtfsServicesAndZoningReaderIntegrator {
     validateInputs();
   }
 
+  /**
+   * Provide the GTFS shape geometries of the service leg segments, activating shape guided path search for service leg segments with a shape
+   *
+   * @param serviceLegSegmentToShapeMapping GTFS shape geometry (network CRS) by service leg segment, null when not available, null to deactivate
+   */
+  public void setServiceLegSegmentToShapeMapping(Function<ServiceLegSegment, LineString> serviceLegSegmentToShapeMapping){
+    this.serviceLegSegmentToShapeMapping = serviceLegSegmentToShapeMapping;
+  }
+
+  /**
+   * Provide the locations of the GTFS stops, used to position the stops of a service leg segment along its GTFS shape. When absent, or a stop has no
+   * location, the centroid of its transfer zone is used instead
+   *
+   * @param gtfsStopIdToLocationMapping location (network CRS) by GTFS stop id, null when not available
+   */
+  public void setGtfsStopIdToLocationMapping(Function<String, Point> gtfsStopIdToLocationMapping){
+    this.gtfsStopIdToLocationMapping = gtfsStopIdToLocationMapping;
+  }
+
   /**
    * Perform the integration where we identify paths between each of the used GTFS stop service nodes on the physical road network and update
    * the PLANit references in the service legs accordingly
@@ -321,8 +802,39 @@ public class GtfsServicesAndZoningReaderIntegrator {
     initialise();
 
     /* process service leg segments - knowing that all leg segments are instances of ServiceLegSegmentImpl as this is how the GTFS converter has created them */
-    data.getServiceNetwork().getTransportLayers().forEach(l -> l.getLegs().forEach(
-        leg -> leg.forEachSegment( legSegment -> mapServiceLegSegmentToPhysicalNetwork(l, (ServiceLegSegmentImpl) legSegment))));
+    int numberOfThreads = data.getSettings().getParallelPathMappingThreads();
+    long numberOfServiceLayers = data.getServiceNetwork().getTransportLayers().size();
+    if(numberOfThreads > 1){
+      if(numberOfServiceLayers > 1){
+        LOGGER.info(String.format("Mapping %d GTFS service layers with %d parallel path mapping threads shared across layers, rather than a thread per layer",
+            numberOfServiceLayers, numberOfThreads));
+      }
+      mapServiceLegSegmentsToPhysicalNetworkInParallel(numberOfThreads);
+    }else if(numberOfServiceLayers > 1){
+      LOGGER.info(String.format("Mapping %d GTFS service layers concurrently, a thread per layer", numberOfServiceLayers));
+      mapServiceLayersToPhysicalNetworkConcurrently();
+    }else {
+      data.getServiceNetwork().getTransportLayers().forEach(l -> l.getLegs().forEach(
+          leg -> leg.forEachSegment(legSegment -> mapServiceLegSegmentToPhysicalNetwork(l, (ServiceLegSegmentImpl) legSegment))));
+    }
+
+    if(pathCaches != null){
+      pathCaches.forEach((layer, pathCache) -> {
+        if(pathCache.getNumberOfHits() + pathCache.getNumberOfMisses() > 0) {
+          LOGGER.info(String.format("Access node path cache [layer %s] hits: %d, misses: %d",
+              layer.getXmlId(), pathCache.getNumberOfHits(), pathCache.getNumberOfMisses()));
+        }
+      });
+    }
+    if(persistedPathCache != null){
+      persistedPathCache.save(data.getSettings().getPersistedPathCacheFile());
+    }
+    if(landmarkPathSearches != null){
+      landmarkPathSearches.forEach((mode, search) -> LOGGER.info(String.format(
+          "Landmark path searches [mode %s, landmarks: %d, bidirectional: %s]: %d, explored nodes: %d (%.1f per search)",
+          mode.getName(), search.getNumberOfLandmarks(), data.getSettings().isBidirectionalPathSearch(), search.getNumberOfSearches(),
+          search.getNumberOfExploredNodes(), search.getNumberOfSearches() > 0 ? search.getNumberOfExploredNodes() / (double) search.getNumberOfSearches() : 0.0)));
+    }
   }
 
   /**
@@ -330,5 +842,11 @@ public class GtfsServicesAndZoningReaderIntegrator {
    */
   public void reset(){
     data.reset();
+    pathCaches = null;
+    persistedPathCache = null;
+    pathTrees = null;
+    contractionHierarchies = null;
+    landmarkPathSearches = null;
+    geoTools = null;
   }
 }
@@ -0,0 +1,189 @@
+package org.goplanit.gtfs.converter.intermodal;
+
+import org.goplanit.path.SimpleDirectedPathFactoryImpl;
+import org.goplanit.utils.geo.PlanitJtsCrsUtils;
+import org.goplanit.utils.graph.directed.DirectedVertex;
+import org.goplanit.utils.graph.directed.EdgeSegment;
+import org.goplanit.utils.path.SimpleDirectedPath;
+import org.locationtech.jts.geom.Coordinate;
+import org.locationtech.jts.geom.Geometry;
+import org.locationtech.jts.geom.LineString;
+import org.locationtech.jts.geom.Point;
+import org.locationtech.jts.geom.prep.PreparedGeometry;
+import org.locationtech.jts.geom.prep.PreparedGeometryFactory;
+import org.locationtech.jts.linearref.LengthIndexedLine;
+import org.locationtech.jts.operation.distance.DistanceOp;
+
+import java.util.*;
+
+/**
+ * Corridor around the part of a GTFS shape between two consecutive stops of a service leg segment. Path searches are restricted to link segments
+ * (partly) within the corridor, i.e., they never expand beyond it, and candidate paths are scored by their geometric fit with the shape rather
+ * than by their length.
+ * <p>
+ *   Instances are created per service leg segment and are not thread safe.
+ * </p>
+ *
+ * @author markr
+ */
+public class GtfsShapeCorridor {
+
+  /** part of the shape between the stops (network CRS) */
+  private final LineString subShape;
+
+  /** corridor around the sub shape */
+  private final PreparedGeometry corridor;
+
+  /** membership of link segments (by id) to the corridor determined so far */
+  private final Map<Long, Boolean> withinCorridorByEdgeSegmentId = new HashMap<>();
+
+  /**
+   * Verify if the edge segment's geometry is (partly) within the corridor
+   *
+   * @param edgeSegment to verify
+   * @return true when within corridor, false otherwise
+   */
+  private boolean isWithinCorridor(EdgeSegment edgeSegment){
+    return withinCorridorByEdgeSegmentId.computeIfAbsent(edgeSegment.getId(), id -> {
+      var geometry = edgeSegment.getParent().getGeometry();
+      if(geometry == null){
+        return corridor.contains(edgeSegment.getUpstreamVertex().getPosition()) || corridor.contains(edgeSegment.getDownstreamVertex().getPosition());
+      }
+      return corridor.intersects(geometry);
+    });
+  }
+
+  /**
+   * Average distance of the coordinates of one geometry to another (CRS units)
+   *
+   * @param from geometry to take coordinates of
+   * @param to geometry to compute distance to
+   * @return average distance
+   */
+  private static double averageDistance(Geometry from, Geometry to){
+    var coordinates = from.getCoordinates();
+    double sum = 0;
+    for(var coordinate : coordinates){
+      sum += DistanceOp.distance(from.getFactory().createPoint(coordinate), to);
+    }
+    return coordinates.length == 0 ? 0 : sum / coordinates.length;
+  }
+
+  /**
+   * Constructor
+   *
+   * @param subShape part of the shape between the stops
+   * @param corridorWidth in CRS units
+   */
+  private GtfsShapeCorridor(LineString subShape, double corridorWidth) {
+    this.subShape = subShape;
+    this.corridor = PreparedGeometryFactory.prepare(subShape.buffer(corridorWidth));
+  }
+
+  /**
+   * Create a corridor around the part of the shape between the two stop locations. The downstream stop is located on the shape after the upstream stop,
+   * such that shapes visiting the same location more than once (loops) are supported
+   *
+   * @param shape of the trip (network CRS)
+   * @param upstreamStopLocation of the service leg segment (network CRS)
+   * @param downstreamStopLocation of the service leg segment (network CRS)
+   * @param corridorWidthMeters distance from the shape within which link segments are part of the corridor
+   * @param geoTools to convert metres to CRS units
+   * @return created corridor, null when no meaningful part of the shape could be identified between the stops
+   */
+  public static GtfsShapeCorridor create(
+      LineString shape, Point upstreamStopLocation, Point downstreamStopLocation, double corridorWidthMeters, PlanitJtsCrsUtils geoTools){
+    var indexedShape = new LengthIndexedLine(shape);
+    double startIndex = indexedShape.project(upstreamStopLocation.getCoordinate());
+    double endIndex = indexedShape.indexOfAfter(downstreamStopLocation.getCoordinate(), startIndex);
+    if(endIndex <= startIndex){
+      return null;
+    }
+    var subShape = (LineString) indexedShape.extractLine(startIndex, endIndex);
+    if(subShape.getNumPoints() < 2 || subShape.getLength() <= 0){
+      return null;
+    }
+
+    /* conservative conversion of width in metres to CRS units, i.e., based on the axis with the most metres per unit */
+    var origin = subShape.getCoordinateN(0);
+    double offset = subShape.getLength();
+    double metresPerUnit = Math.max(
+        geoTools.getDistanceInMetres(origin, new Coordinate(origin.x + offset, origin.y)),
+        geoTools.getDistanceInMetres(origin, new Coordinate(origin.x, origin.y + offset))) / offset;
+    if(!(metresPerUnit > 0)){
+      return null;
+    }
+    return new GtfsShapeCorridor(subShape, corridorWidthMeters / metresPerUnit);
+  }
+
+  /**
+   * Find the shortest path between origin and destination only using link segments within the corridor
+   *
+   * @param origin to start from
+   * @param destination to end at
+   * @param edgeSegmentCosts by edge segment id, infinite costs are not traversed
+   * @param bannedEdgeSegments never traversed
+   * @return shortest path within corridor (empty when origin is destination), null when not found
+   */
+  public SimpleDirectedPath findPath(
+      DirectedVertex origin, DirectedVertex destination, double[] edgeSegmentCosts, Set<? extends EdgeSegment> bannedEdgeSegments){
+    Map<DirectedVertex, Double> costByVertex = new HashMap<>();
+    Map<DirectedVertex, EdgeSegment> predecessorByVertex = new HashMap<>();
+    Set<DirectedVertex> settled = new HashSet<>();
+    PriorityQueue<Map.Entry<DirectedVertex, Double>> queue = new PriorityQueue<>(
+        Comparator.comparingDouble((Map.Entry<DirectedVertex, Double> e) -> e.getValue()).thenComparingLong(e -> e.getKey().getId()));
+    costByVertex.put(origin, 0.0);
+    queue.add(new AbstractMap.SimpleImmutableEntry<>(origin, 0.0));
+    while(!queue.isEmpty() && !settled.contains(destination)){
+      var entry = queue.poll();
+      var vertex = entry.getKey();
+      if(!settled.add(vertex) || entry.getValue() > costByVertex.get(vertex)){
+        continue;
+      }
+      for(var edgeSegment : vertex.getExitEdgeSegments()){
+        double edgeSegmentCost = edgeSegmentCosts[(int) edgeSegment.getId()];
+        if(edgeSegmentCost == Double.POSITIVE_INFINITY || bannedEdgeSegments.contains(edgeSegment) || !isWithinCorridor(edgeSegment)){
+          continue;
+        }
+        var downstreamVertex = edgeSegment.getDownstreamVertex();
+        double cost = entry.getValue() + edgeSegmentCost;
+        var currentCost = costByVertex.get(downstreamVertex);
+        if(currentCost == null || cost < currentCost){
+          costByVertex.put(downstreamVertex, cost);
+          predecessorByVertex.put(downstreamVertex, edgeSegment);
+          queue.add(new AbstractMap.SimpleImmutableEntry<>(downstreamVertex, cost));
+        }
+      }
+    }
+    if(!settled.contains(destination)){
+      return null;
+    }
+
+    Deque<EdgeSegment> edgeSegments = new ArrayDeque<>();
+    for(var vertex = destination; vertex != origin; vertex = edgeSegments.getFirst().getUpstreamVertex()){
+      edgeSegments.addFirst(predecessorByVertex.get(vertex));
+    }
+    return new SimpleDirectedPathFactoryImpl().createNew(edgeSegments);
+  }
+
+  /**
+   * Geometric misfit of a path with the shape, i.e., the average distance of the path's link geometries to the shape and vice versa. Lower is better
+   *
+   * @param path to score
+   * @return misfit (CRS units)
+   */
+  public double computeMisfit(SimpleDirectedPath path){
+    List<Geometry> linkGeometries = new ArrayList<>();
+    for(var edgeSegment : path){
+      var geometry = edgeSegment.getParent().getGeometry();
+      linkGeometries.add(geometry != null ? geometry :
+          subShape.getFactory().createLineString(
+              new Coordinate[]{edgeSegment.getUpstreamVertex().getPosition().getCoordinate(), edgeSegment.getDownstreamVertex().getPosition().getCoordinate()}));
+    }
+    if(linkGeometries.isEmpty()){
+      return Double.POSITIVE_INFINITY;
+    }
+    var pathGeometry = subShape.getFactory().buildGeometry(linkGeometries);
+    return (averageDistance(pathGeometry, subShape) + averageDistance(subShape, pathGeometry)) / 2;
+  }
+}
@@ -0,0 +1,127 @@
+package org.goplanit.gtfs.converter.intermodal;
+
+import org.goplanit.utils.exceptions.PlanItRunTimeException;
+import org.goplanit.utils.geo.PlanitJtsCrsUtils;
+import org.goplanit.utils.geo.PlanitJtsUtils;
+import org.locationtech.jts.geom.GeometryFactory;
+import org.locationtech.jts.geom.LineString;
+import org.opengis.referencing.crs.CoordinateReferenceSystem;
+import org.opengis.referencing.operation.MathTransform;
+
+import java.net.URL;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.logging.Logger;
+
+/**
+ * Geometries of GTFS shapes (shapes.txt) in the CRS of the PLANit network, restricted to the shapes of interest. Shape points are retained in a compact
+ * {@link GtfsShapesStore} and geometries are created (and transformed) on demand, shapes with fewer than two points are not available. The most recently
+ * used geometries are retained, since consecutive service leg segments of a trip share the same shape.
+ * <p>
+ *   Instances are thread safe.
+ * </p>
+ *
+ * @author markr
+ */
+public class GtfsShapeGeometries {
+
+  /** Logger to use */
+  private static final Logger LOGGER = Logger.getLogger(GtfsShapeGeometries.class.getCanonicalName());
+
+  /** compactly stored shape points (WGS84) */
+  private final GtfsShapesStore shapesStore;
+
+  /** transformation from WGS84 to network CRS */
+  private final MathTransform crsTransform;
+
+  /** geometry factory to use */
+  private final GeometryFactory geometryFactory = new GeometryFactory();
+
+  /** maximum number of retained geometries */
+  private static final int MAX_CACHED_GEOMETRIES = 64;
+
+  /** most recently used geometries (network CRS) by GTFS shape id, least recently used is evicted first */
+  private final Map<String, LineString> cachedGeometries = new LinkedHashMap<>(MAX_CACHED_GEOMETRIES * 2, 0.75f, true) {
+    @Override
+    protected boolean removeEldestEntry(Map.Entry<String, LineString> eldest) {
+      return size() > MAX_CACHED_GEOMETRIES;
+    }
+  };
+
+  /**
+   * Constructor
+   *
+   * @param shapesStore to use
+   * @param crsTransform to use
+   */
+  private GtfsShapeGeometries(GtfsShapesStore shapesStore, MathTransform crsTransform) {
+    this.shapesStore = shapesStore;
+    this.crsTransform = crsTransform;
+  }
+
+  /**
+   * Stream the points of the given GTFS shapes from shapes.txt (optional file) into a compact store, geometries are transformed to the CRS of the
+   * network on demand
+   *
+   * @param gtfsLocation to read shapes.txt from
+   * @param gtfsShapeIds of interest, other shapes are ignored
+   * @param networkCrs to transform geometries to
+   * @return parsed shape geometries
+   */
+  public static GtfsShapeGeometries create(URL gtfsLocation, Set<String> gtfsShapeIds, CoordinateReferenceSystem networkCrs){
+    PlanItRunTimeException.throwIfNull(gtfsShapeIds, "GTFS shape ids to parse geometries for are null");
+    var shapesStore = GtfsShapesStore.create(gtfsLocation, gtfsShapeIds::contains);
+    LOGGER.info(String.format("Parsed points of %d of %d GTFS shapes in use", shapesStore.size(), gtfsShapeIds.size()));
+    return new GtfsShapeGeometries(shapesStore, PlanitJtsUtils.findMathTransform(PlanitJtsCrsUtils.DEFAULT_GEOGRAPHIC_CRS, networkCrs));
+  }
+
+  /**
+   * Geometry of a GTFS shape, created and transformed from the stored shape points only when not recently used
+   *
+   * @param gtfsShapeId to collect geometry for
+   * @return geometry in network CRS, null if not available
+   */
+  public LineString getGeometry(String gtfsShapeId){
+    synchronized (cachedGeometries) {
+      var cachedGeometry = cachedGeometries.get(gtfsShapeId);
+      if (cachedGeometry != null) {
+        return cachedGeometry;
+      }
+    }
+
+    var geometry = createGeometry(gtfsShapeId);
+    if(geometry != null){
+      synchronized (cachedGeometries) {
+        cachedGeometries.put(gtfsShapeId, geometry);
+      }
+    }
+    return geometry;
+  }
+
+  /**
+   * Create geometry of a GTFS shape from its stored points
+   *
+   * @param gtfsShapeId to create geometry for
+   * @return geometry in network CRS, null if not available
+   */
+  private LineString createGeometry(String gtfsShapeId){
+    var geometry = shapesStore.createLineString(gtfsShapeId, geometryFactory);
+    if(geometry == null){
+      return null;
+    }
+    try {
+      return (LineString) PlanitJtsUtils.transformGeometry(geometry, crsTransform);
+    }catch (Exception e){
+      LOGGER.warning(String.format("Unable to transform GTFS shape %s to network CRS, ignored", gtfsShapeId));
+      return null;
+    }
+  }
+
+  /**
+   * @return number of available shapes
+   */
+  public int size(){
+    return shapesStore.size();
+  }
+}
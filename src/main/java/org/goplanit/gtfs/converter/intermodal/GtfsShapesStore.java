@@ -0,0 +1,372 @@
+package org.goplanit.gtfs.converter.intermodal;
+
+import org.goplanit.gtfs.entity.GtfsShape;
+import org.goplanit.gtfs.enums.GtfsColumnType;
+import org.goplanit.gtfs.enums.GtfsFileType;
+import org.goplanit.gtfs.handler.GtfsFileHandlerShapes;
+import org.goplanit.gtfs.reader.GtfsReaderFactory;
+import org.goplanit.gtfs.scheme.GtfsFileSchemeFactory;
+import org.goplanit.gtfs.util.GtfsFileConditions;
+import org.goplanit.utils.misc.StringUtils;
+import org.locationtech.jts.geom.Coordinate;
+import org.locationtech.jts.geom.GeometryFactory;
+import org.locationtech.jts.geom.LineString;
+
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.function.Predicate;
+import java.util.logging.Logger;
+import java.util.stream.IntStream;
+
+/**
+ * Compact in memory store of GTFS shapes (shapes.txt). Shapes are streamed from file and each shape's points, ordered by sequence, are stored as
+ * delta encoded sequence, fixed point latitude/longitude (and distance travelled when present) in a single byte array, indexed by shape id. This requires a
+ * fraction of the memory of retaining the parsed {@link GtfsShape} entries. Geometries are created on demand.
+ * <p>
+ *   Instances are immutable once created and therefore thread safe.
+ * </p>
+ *
+ * @author markr
+ */
+public class GtfsShapesStore {
+
+  /** Logger to use */
+  private static final Logger LOGGER = Logger.getLogger(GtfsShapesStore.class.getCanonicalName());
+
+  /** fixed point scale of latitude/longitude, i.e., 7 decimals (~1cm) */
+  public static final double COORDINATE_SCALE = 1e7;
+
+  /** fixed point scale of distance travelled, i.e., 3 decimals */
+  public static final double DISTANCE_SCALE = 1e3;
+
+  /**
+   * Points of a shape being parsed, stored as primitives until the shape is complete
+   */
+  private static final class ShapeBuilder {
+
+    /** sequence by point */
+    private int[] sequences = new int[16];
+
+    /** fixed point latitude by point */
+    private int[] latitudes = new int[16];
+
+    /** fixed point longitude by point */
+    private int[] longitudes = new int[16];
+
+    /** fixed point distance travelled by point */
+    private long[] distances = new long[16];
+
+    /** flag indicating all points have a distance travelled */
+    private boolean hasDistances = true;
+
+    /** number of points */
+    private int size = 0;
+
+    /**
+     * Add a point
+     *
+     * @param sequence of the point
+     * @param latitude fixed point
+     * @param longitude fixed point
+     * @param distance fixed point, negative if absent
+     */
+    private void add(int sequence, int latitude, int longitude, long distance){
+      if(size == sequences.length){
+        sequences = Arrays.copyOf(sequences, 2 * size);
+        latitudes = Arrays.copyOf(latitudes, 2 * size);
+        longitudes = Arrays.copyOf(longitudes, 2 * size);
+        distances = Arrays.copyOf(distances, 2 * size);
+      }
+      sequences[size] = sequence;
+      latitudes[size] = latitude;
+      longitudes[size] = longitude;
+      distances[size] = distance;
+      hasDistances &= distance >= 0;
+      ++size;
+    }
+
+    /**
+     * @return point positions ordered by sequence
+     */
+    private int[] createSequenceOrder(){
+      return IntStream.range(0, size).boxed()
+          .sorted(Comparator.comparingInt(i -> sequences[i])).mapToInt(Integer::intValue).toArray();
+    }
+  }
+
+  /** index of a shape by shape id */
+  private final Map<String, Integer> shapeIndexById = new HashMap<>();
+
+  /** offset in {@link #data} by shape index */
+  private int[] offsets = new int[16];
+
+  /** number of points by shape index */
+  private int[] numberOfPoints = new int[16];
+
+  /** flag by shape index indicating distances travelled are stored */
+  private final BitSet hasDistances = new BitSet();
+
+  /** number of stored shapes */
+  private int numberOfShapes = 0;
+
+  /** delta encoded points of all shapes */
+  private byte[] data = new byte[1024];
+
+  /** number of used bytes in {@link #data} */
+  private int dataSize = 0;
+
+  /** shape currently being parsed */
+  private String currentShapeId = null;
+
+  /** points of shape currently being parsed */
+  private ShapeBuilder currentShape = null;
+
+  /**
+   * Append a variable length (zig-zag) encoded value
+   *
+   * @param value to append
+   */
+  private void writeVarLong(long value){
+    long zigZag = (value << 1) ^ (value >> 63);
+    if(dataSize + 10 > data.length){
+      data = Arrays.copyOf(data, Math.max(2 * data.length, dataSize + 10));
+    }
+    while((zigZag & ~0x7FL) != 0){
+      data[dataSize++] = (byte) ((zigZag & 0x7F) | 0x80);
+      zigZag >>>= 7;
+    }
+    data[dataSize++] = (byte) zigZag;
+  }
+
+  /**
+   * Read a variable length (zig-zag) encoded value
+   *
+   * @param position single element array with position to read from, advanced past the value
+   * @return read value
+   */
+  private long readVarLong(int[] position){
+    long zigZag = 0;
+    int shift = 0;
+    byte current;
+    do{
+      current = data[position[0]++];
+      zigZag |= (long) (current & 0x7F) << shift;
+      shift += 7;
+    }while((current & 0x80) != 0);
+    return (zigZag >>> 1) ^ -(zigZag & 1);
+  }
+
+  /**
+   * Decode the points of a stored shape back into a builder, used when points of a shape are not contiguous in the file
+   *
+   * @param shapeIndex to decode
+   * @return builder with decoded points
+   */
+  private ShapeBuilder decode(int shapeIndex){
+    var builder = new ShapeBuilder();
+    int[] position = new int[]{offsets[shapeIndex]};
+    long sequence = 0, latitude = 0, longitude = 0, distance = 0;
+    boolean withDistances = hasDistances.get(shapeIndex);
+    for(int index = 0; index < numberOfPoints[shapeIndex]; ++index){
+      sequence += readVarLong(position);
+      latitude += readVarLong(position);
+      longitude += readVarLong(position);
+      distance += withDistances ? readVarLong(position) : 0;
+      builder.add((int) sequence, (int) latitude, (int) longitude, withDistances ? distance : -1);
+    }
+    return builder;
+  }
+
+  /**
+   * Store the shape currently being parsed
+   */
+  private void completeCurrentShape(){
+    if(currentShape == null){
+      return;
+    }
+    int shapeIndex = shapeIndexById.computeIfAbsent(currentShapeId, id -> numberOfShapes++);
+    if(shapeIndex == offsets.length){
+      offsets = Arrays.copyOf(offsets, 2 * offsets.length);
+      numberOfPoints = Arrays.copyOf(numberOfPoints, 2 * numberOfPoints.length);
+    }
+    offsets[shapeIndex] = dataSize;
+    numberOfPoints[shapeIndex] = currentShape.size;
+    hasDistances.set(shapeIndex, currentShape.hasDistances);
+
+    long sequence = 0, latitude = 0, longitude = 0, distance = 0;
+    for(int position : currentShape.createSequenceOrder()){
+      writeVarLong(currentShape.sequences[position] - sequence);
+      sequence = currentShape.sequences[position];
+      writeVarLong(currentShape.latitudes[position] - latitude);
+      writeVarLong(currentShape.longitudes[position] - longitude);
+      latitude = currentShape.latitudes[position];
+      longitude = currentShape.longitudes[position];
+      if(currentShape.hasDistances){
+        writeVarLong(currentShape.distances[position] - distance);
+        distance = currentShape.distances[position];
+      }
+    }
+    currentShape = null;
+    currentShapeId = null;
+  }
+
+  /**
+   * Add a parsed shape point
+   *
+   * @param gtfsShape to add
+   */
+  private void add(GtfsShape gtfsShape){
+    var shapeId = gtfsShape.getShapeId();
+    if(!shapeId.equals(currentShapeId)){
+      completeCurrentShape();
+      currentShapeId = shapeId;
+      /* points of a shape are expected to be contiguous, if not, continue with what was stored before (its encoded bytes are abandoned) */
+      var shapeIndex = shapeIndexById.get(shapeId);
+      currentShape = shapeIndex != null ? decode(shapeIndex) : new ShapeBuilder();
+    }
+    var distanceTravelled = gtfsShape.getShapeDistanceTravelled();
+    currentShape.add(
+        Integer.parseInt(gtfsShape.getShapePointSequence()),
+        (int) Math.round(Double.parseDouble(gtfsShape.getShapePointLatitude()) * COORDINATE_SCALE),
+        (int) Math.round(Double.parseDouble(gtfsShape.getShapePointLongitude()) * COORDINATE_SCALE),
+        StringUtils.isNullOrBlank(distanceTravelled) ? -1 : Math.round(Double.parseDouble(distanceTravelled) * DISTANCE_SCALE));
+  }
+
+  /**
+   * Constructor
+   */
+  private GtfsShapesStore() {
+  }
+
+  /**
+   * Stream shapes.txt (optional file) into a compact store
+   *
+   * @param gtfsLocation to read shapes.txt from
+   * @param shapeIdFilter only shapes passing the filter are stored
+   * @return created store
+   */
+  public static GtfsShapesStore create(URL gtfsLocation, Predicate<String> shapeIdFilter){
+    final var store = new GtfsShapesStore();
+    var shapesHandler = new GtfsFileHandlerShapes(){
+      @Override
+      public void handle(GtfsShape gtfsShape) {
+        if(gtfsShape.getShapeId() == null || !shapeIdFilter.test(gtfsShape.getShapeId())){
+          return;
+        }
+        try {
+          store.add(gtfsShape);
+        }catch (NumberFormatException e){
+          LOGGER.warning(String.format("Invalid GTFS shape point (%s), ignored", gtfsShape));
+        }
+      }
+    };
+
+    var shapesFileReader = GtfsReaderFactory.createFileReader(
+        GtfsFileSchemeFactory.create(GtfsFileType.SHAPES), gtfsLocation, GtfsColumnType.ALL_COLUMNS, GtfsFileConditions.optional());
+    shapesFileReader.addHandler(shapesHandler);
+    shapesFileReader.read(StandardCharsets.UTF_8);
+    store.completeCurrentShape();
+
+    store.data = Arrays.copyOf(store.data, store.dataSize);
+    LOGGER.info(String.format("Stored %d GTFS shapes (%d bytes)", store.size(), store.getNumberOfBytes()));
+    return store;
+  }
+
+  /**
+   * @param shapeId to verify
+   * @return true when shape is stored, false otherwise
+   */
+  public boolean contains(String shapeId){
+    return shapeId != null && shapeIndexById.containsKey(shapeId);
+  }
+
+  /**
+   * @param shapeId to collect number of points for
+   * @return number of points of the shape, zero when not stored
+   */
+  public int getNumberOfPoints(String shapeId){
+    var shapeIndex = shapeId == null ? null : shapeIndexById.get(shapeId);
+    return shapeIndex == null ? 0 : numberOfPoints[shapeIndex];
+  }
+
+  /**
+   * Longitude (x), latitude (y) of the points of a shape ordered by sequence
+   *
+   * @param shapeId to collect coordinates for
+   * @return coordinates, null when not stored
+   */
+  public Coordinate[] getCoordinates(String shapeId){
+    var shapeIndex = shapeId == null ? null : shapeIndexById.get(shapeId);
+    if(shapeIndex == null){
+      return null;
+    }
+    var coordinates = new Coordinate[numberOfPoints[shapeIndex]];
+    int[] position = new int[]{offsets[shapeIndex]};
+    long latitude = 0, longitude = 0;
+    boolean withDistances = hasDistances.get(shapeIndex);
+    for(int index = 0; index < coordinates.length; ++index){
+      readVarLong(position);
+      latitude += readVarLong(position);
+      longitude += readVarLong(position);
+      if(withDistances){
+        readVarLong(position);
+      }
+      coordinates[index] = new Coordinate(longitude / COORDINATE_SCALE, latitude / COORDINATE_SCALE);
+    }
+    return coordinates;
+  }
+
+  /**
+   * Distance travelled up to each of the points of a shape ordered by sequence
+   *
+   * @param shapeId to collect distances for
+   * @return distances travelled, null when not stored or not present for all points of the shape
+   */
+  public double[] getDistancesTravelled(String shapeId){
+    var shapeIndex = shapeId == null ? null : shapeIndexById.get(shapeId);
+    if(shapeIndex == null || !hasDistances.get(shapeIndex)){
+      return null;
+    }
+    var distances = new double[numberOfPoints[shapeIndex]];
+    int[] position = new int[]{offsets[shapeIndex]};
+    long distance = 0;
+    for(int index = 0; index < distances.length; ++index){
+      readVarLong(position);
+      readVarLong(position);
+      readVarLong(position);
+      distance += readVarLong(position);
+      distances[index] = distance / DISTANCE_SCALE;
+    }
+    return distances;
+  }
+
+  /**
+   * Create the geometry of a shape (WGS84, longitude as x, latitude as y)
+   *
+   * @param shapeId to create geometry for
+   * @param geometryFactory to use
+   * @return created geometry, null when not stored or when it has fewer than two points
+   */
+  public LineString createLineString(String shapeId, GeometryFactory geometryFactory){
+    var coordinates = getCoordinates(shapeId);
+    if(coordinates == null || coordinates.length < 2){
+      return null;
+    }
+    return geometryFactory.createLineString(coordinates);
+  }
+
+  /**
+   * @return number of stored shapes
+   */
+  public int size(){
+    return numberOfShapes;
+  }
+
+  /**
+   * @return number of bytes used to store the points of all shapes
+   */
+  public long getNumberOfBytes(){
+    return data.length;
+  }
+}
@@ -1,5 +1,6 @@
 package org.goplanit.gtfs.converter.service;
 
+import org.goplanit.gtfs.converter.GtfsConverterPhaseMetrics;
 import org.goplanit.gtfs.enums.RouteType;
 
 import java.util.HashMap;
@@ -35,6 +36,9 @@ public class GtfsServicesHandlerProfiler {
   /** track how many GTFS frequency entries were processed*/
   private LongAdder gtfsFrequencyCounter;
 
+  /** timing and throughput metrics per processing phase */
+  private final GtfsConverterPhaseMetrics phaseMetrics = new GtfsConverterPhaseMetrics();
+
   /** Initialise the profiler */
   private void initialise(){
     gtfsRoutesCounter = new HashMap<>();
@@ -63,6 +67,16 @@ public class GtfsServicesHandlerProfiler {
     LOGGER.info(String.format("[STATS] processed %d GTFS trips (scheduled)",gtfsScheduleBasedTripCounter.longValue()));
     LOGGER.info(String.format("[STATS] processed %d GTFS trip stop times",gtfsTripStopTimeCounter.longValue()));
     LOGGER.info(String.format("[STATS] processed %d GTFS trip frequency entries",gtfsFrequencyCounter.longValue()));
+    phaseMetrics.logPhaseStats();
+  }
+
+  /**
+   * Timing and throughput metrics per processing phase
+   *
+   * @return phase metrics
+   */
+  public GtfsConverterPhaseMetrics getPhaseMetrics() {
+    return phaseMetrics;
   }
 
   /**
@@ -73,6 +87,7 @@ public class GtfsServicesHandlerProfiler {
     gtfsScheduleBasedTripCounter.reset();
     gtfsTripStopTimeCounter.reset();
     gtfsFrequencyCounter.reset();
+    phaseMetrics.reset();
   }
 
   /**
@@ -1,9 +1,12 @@
 package org.goplanit.gtfs.converter.service;
 
 import org.goplanit.converter.PairConverterReader;
+import org.goplanit.gtfs.converter.GtfsConverterPhaseMetrics;
 import org.goplanit.gtfs.converter.service.handler.*;
 import org.goplanit.gtfs.entity.GtfsCalendar;
+import org.goplanit.gtfs.entity.GtfsStopTime;
 import org.goplanit.gtfs.enums.GtfsFileType;
+import org.goplanit.gtfs.handler.GtfsFileHandlerBuffered;
 import org.goplanit.gtfs.reader.*;
 import org.goplanit.gtfs.scheme.GtfsFileSchemeFactory;
 import org.goplanit.gtfs.util.GtfsConverterReaderHelper;
@@ -15,10 +18,19 @@ import org.goplanit.utils.id.IdGroupingToken;
 import org.goplanit.utils.misc.LoggingUtils;
 import org.goplanit.utils.misc.Pair;
 import org.goplanit.utils.misc.StringUtils;
+import org.goplanit.utils.network.layer.service.ServiceLegSegment;
 import org.goplanit.utils.network.layer.service.ServiceNode;
 import org.goplanit.service.routed.RoutedServices;
+import org.goplanit.utils.service.routed.RoutedTripSchedule;
 
 import java.nio.charset.StandardCharsets;
+import java.time.DayOfWeek;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.Set;
 import java.util.function.Function;
 import java.util.function.Predicate;
 import java.util.logging.Logger;
@@ -48,6 +60,18 @@ public class GtfsServicesReader implements PairConverterReader<ServiceNetwork, R
   /** id token to use */
   private IdGroupingToken idToken;
 
+  /** phase metrics of the most recent read */
+  private GtfsConverterPhaseMetrics phaseMetrics = null;
+
+  /** chosen day(s) of week each created PLANit scheduled trip is active on after the most recent read */
+  private Map<RoutedTripSchedule, Set<DayOfWeek>> activeDaysOfWeekByRoutedTrip = new IdentityHashMap<>();
+
+  /** GTFS shape id of the first GTFS trip (with a shape) using each service leg segment after the most recent read */
+  private Map<ServiceLegSegment, String> gtfsShapeIdsByServiceLegSegment = new HashMap<>();
+
+  /** when set, GTFS trips without consecutive stops among these GTFS stop ids are discarded before conversion, null when not activated */
+  private Set<String> preClipGtfsStopIds = null;
+
   /**
    * Initialise the to be populated PLANit entities
    *
@@ -74,7 +98,9 @@ public class GtfsServicesReader implements PairConverterReader<ServiceNetwork, R
     GtfsServicesHandlerProfiler handlerProfiler = new GtfsServicesHandlerProfiler();
 
     /** provide access to the service network and routed services via the file handler data tracking used throughout the parsing process */
-    return new GtfsServicesHandlerData(getSettings(), serviceNetwork, routedServices, handlerProfiler);
+    var fileHandlerData = new GtfsServicesHandlerData(getSettings(), serviceNetwork, routedServices, handlerProfiler);
+    fileHandlerData.setPreClipGtfsStopIds(preClipGtfsStopIds);
+    return fileHandlerData;
   }
 
   /**
@@ -93,25 +119,70 @@ public class GtfsServicesReader implements PairConverterReader<ServiceNetwork, R
     //todo: not yet implemented
   }
 
+  /**
+   * Create GTFS stop times file reader
+   *
+   * @return created file reader
+   */
+  private GtfsFileReaderStopTimes createStopTimesFileReader(){
+    return (GtfsFileReaderStopTimes) GtfsReaderFactory.createFileReader(
+        GtfsFileSchemeFactory.create(GtfsFileType.STOP_TIMES), getSettings().getInputSource());
+  }
+
+  /**
+   * Start reading (inflating, tokenizing) GTFS stop times on a separate thread into a bounded buffer, such that it overlaps with the processing
+   * of the other GTFS files. The buffered records are only handled once {@link #processStopTimes(GtfsServicesHandlerData, GtfsFileReaderStopTimes, GtfsFileHandlerBuffered)} is invoked
+   *
+   * @param stopTimeFileReader to read with
+   * @param bufferedHandler to buffer the read records in
+   * @return started reader thread
+   */
+  private Thread startPipelinedStopTimesRead(GtfsFileReaderStopTimes stopTimeFileReader, GtfsFileHandlerBuffered<GtfsStopTime> bufferedHandler) {
+    LOGGER.info("Processing: reading GTFS trip stop times ahead of processing...");
+    stopTimeFileReader.addHandler(bufferedHandler);
+
+    var readerThread = new Thread(() -> {
+      try {
+        stopTimeFileReader.read(StandardCharsets.UTF_8);
+      }catch (Exception e){
+        bufferedHandler.signalReadFailure(e);
+      }finally {
+        bufferedHandler.markEndOfRecords();
+      }
+    }, "gtfs-stop-times-reader");
+    readerThread.setDaemon(true);
+    readerThread.start();
+
+    return readerThread;
+  }
+
   /**
    * Process GTFS stop times of routes/trips for usage in PLANit
    *
    * @param fileHandlerData to use
+   * @param stopTimeFileReader to use, when pipelined it is already reading
+   * @param pipelinedStopTimes when non-null the stop times are drained from this buffer that is being populated in a pipelined fashion, otherwise the stop times are read directly
    */
-  private void processStopTimes(GtfsServicesHandlerData fileHandlerData) {
+  private void processStopTimes(
+      GtfsServicesHandlerData fileHandlerData, GtfsFileReaderStopTimes stopTimeFileReader, GtfsFileHandlerBuffered<GtfsStopTime> pipelinedStopTimes) {
     LOGGER.info("Processing: parsing GTFS trip stop times...");
+    var phase = fileHandlerData.getProfiler().getPhaseMetrics().startPhase(GtfsFileType.STOP_TIMES.value());
 
     /** handler that will process individual trip stop times upon ingesting */
     var tripStopTimeHandler = new GtfsPlanitFileHandlerStopTimes(
         fileHandlerData, settings.getActivatedLoggingForGtfsRoutesByShortName());
 
-    /* GTFS file reader that parses the raw GTFS data and applies the handler to each trip stop time found */
-    GtfsFileReaderStopTimes stopTimeFileReader = (GtfsFileReaderStopTimes) GtfsReaderFactory.createFileReader(
-        GtfsFileSchemeFactory.create(GtfsFileType.STOP_TIMES), getSettings().getInputSource());
-    stopTimeFileReader.addHandler(tripStopTimeHandler);
+    if(pipelinedStopTimes != null){
+      /* stop times are already being read on a separate thread, consume them now that prerequisites are met */
+      pipelinedStopTimes.drainTo(tripStopTimeHandler);
+    }else {
+      /* GTFS file reader that parses the raw GTFS data and applies the handler to each trip stop time found */
+      stopTimeFileReader.addHandler(tripStopTimeHandler);
 
-    /** execute */
-    stopTimeFileReader.read(StandardCharsets.UTF_8);
+      /** execute */
+      stopTimeFileReader.read(StandardCharsets.UTF_8);
+    }
+    phase.complete(stopTimeFileReader.getNumberOfRecordsRead(), stopTimeFileReader.getNumberOfBytesRead());
 
     /* logging in case user required bespoke tracking of GTFS stop frequented GTFS routes */
     tripStopTimeHandler.getUniqueRoutesForTrackedGtfsStops().entrySet().stream().forEach(
@@ -125,6 +196,7 @@ public class GtfsServicesReader implements PairConverterReader<ServiceNetwork, R
    */
   private void processTrips(GtfsServicesHandlerData fileHandlerData) {
     LOGGER.info("Processing: parsing GTFS trips...");
+    var phase = fileHandlerData.getProfiler().getPhaseMetrics().startPhase(GtfsFileType.TRIPS.value());
 
     /** handler that will process individual trips upon ingesting */
     var tripsHandler = new GtfsPlanitFileHandlerTrips(fileHandlerData);
@@ -136,6 +208,7 @@ public class GtfsServicesReader implements PairConverterReader<ServiceNetwork, R
 
     /** execute */
     tripsFileReader.read(StandardCharsets.UTF_8);
+    phase.complete(tripsFileReader.getNumberOfRecordsRead(), tripsFileReader.getNumberOfBytesRead());
   }
 
   /**
@@ -145,11 +218,12 @@ public class GtfsServicesReader implements PairConverterReader<ServiceNetwork, R
    */
   private void processCalendars(GtfsServicesHandlerData fileHandlerData) {
     LOGGER.info("Processing: parsing GTFS Calendar...");
+    var phase = fileHandlerData.getProfiler().getPhaseMetrics().startPhase(GtfsFileType.CALENDARS.value());
 
     /* due to overflow into the next day, we must accept all services from the preceding day as well and then determine if it matches
-     * the stop times on the day after bearing this in mind */
-    Predicate<GtfsCalendar> filterServiceIds = calRow ->
-        calRow.isActiveOn(getSettings().getDayOfWeek()) || calRow.isActiveOn(getSettings().getDayOfWeek().minus(1));
+     * the stop times on the day after bearing this in mind, this applies to each of the chosen days */
+    Predicate<GtfsCalendar> filterServiceIds = calRow -> getSettings().getDaysOfWeek().stream().anyMatch(
+        day -> calRow.isActiveOn(day) || calRow.isActiveOn(day.minus(1)));
 
     /** handler that will process individual calendar rows upon ingesting */
     var calendarHandler = new GtfsPlanitFileHandlerCalendar(fileHandlerData, filterServiceIds);
@@ -161,6 +235,7 @@ public class GtfsServicesReader implements PairConverterReader<ServiceNetwork, R
 
     /** execute */
     calendarFileReader.read(StandardCharsets.UTF_8);
+    phase.complete(calendarFileReader.getNumberOfRecordsRead(), calendarFileReader.getNumberOfBytesRead());
   }
 
   /**
@@ -171,6 +246,7 @@ public class GtfsServicesReader implements PairConverterReader<ServiceNetwork, R
    */
   private void processRoutes(GtfsServicesHandlerData fileHandlerData) {
     LOGGER.info("Processing: parsing GTFS Routes...");
+    var phase = fileHandlerData.getProfiler().getPhaseMetrics().startPhase(GtfsFileType.ROUTES.value());
 
     /** handler that will process individual routes upon ingesting */
     var routesHandler = new GtfsPlanitFileHandlerRoutes(fileHandlerData);
@@ -182,6 +258,7 @@ public class GtfsServicesReader implements PairConverterReader<ServiceNetwork, R
 
     /** execute */
     routesFileReader.read(StandardCharsets.UTF_8);
+    phase.complete(routesFileReader.getNumberOfRecordsRead(), routesFileReader.getNumberOfBytesRead());
   }
 
   /**
@@ -194,6 +271,20 @@ public class GtfsServicesReader implements PairConverterReader<ServiceNetwork, R
 
   }
 
+  /**
+   * Log the number of discarded GTFS trips per reason of removal
+   *
+   * @param fileHandlerData to extract from
+   */
+  private void logRemovedGtfsTripStats(GtfsServicesHandlerData fileHandlerData) {
+    for(var removalType : GtfsServicesHandlerData.TripRemovalType.values()){
+      long numberOfRemovedTrips = fileHandlerData.getNumberOfRemovedGtfsTrips(removalType);
+      if(numberOfRemovedTrips > 0){
+        LOGGER.info(String.format("[STATS] discarded %d GTFS trips - %s", numberOfRemovedTrips, removalType));
+      }
+    }
+  }
+
   /**
    * Execute the actual parsing
    *
@@ -203,19 +294,37 @@ public class GtfsServicesReader implements PairConverterReader<ServiceNetwork, R
 
     LOGGER.info("Processing: Identifying GTFS services, populating PLANit memory model...");
 
-    /* meta-data for routes including its mode */
-    processRoutes(fileHandlerData);
-    /* meta-data for routes including its mode */
-    processCalendars(fileHandlerData);
-    /* meta-data for grouping of instances for a route via its service id */
-    processTrips(fileHandlerData);
-    /* matching routes and trips to stops at actual times */
-    processStopTimes(fileHandlerData);
+    /* optionally start reading stop times ahead of processing, so it overlaps with processing routes, calendars, trips */
+    GtfsFileReaderStopTimes stopTimeFileReader = createStopTimesFileReader();
+    GtfsFileHandlerBuffered<GtfsStopTime> pipelinedStopTimes = null;
+    Thread stopTimesReaderThread = null;
+    if(getSettings().isPipelinedStopTimesIngest()){
+      pipelinedStopTimes = new GtfsFileHandlerBuffered<>(
+          GtfsFileSchemeFactory.create(GtfsFileType.STOP_TIMES), getSettings().getPipelinedStopTimesBufferCapacity());
+      stopTimesReaderThread = startPipelinedStopTimesRead(stopTimeFileReader, pipelinedStopTimes);
+    }
+    try {
+      /* meta-data for routes including its mode */
+      processRoutes(fileHandlerData);
+      /* meta-data for routes including its mode */
+      processCalendars(fileHandlerData);
+      /* meta-data for grouping of instances for a route via its service id */
+      processTrips(fileHandlerData);
+      /* matching routes and trips to stops at actual times */
+      processStopTimes(fileHandlerData, stopTimeFileReader, pipelinedStopTimes);
+    }finally {
+      /* release reader thread in case it is still blocked on a full buffer due to failure in processing */
+      if(stopTimesReaderThread != null && stopTimesReaderThread.isAlive()){
+        stopTimesReaderThread.interrupt();
+      }
+    }
     /* matching routes and trips to stops based on frequency information */
     processFrequencies(fileHandlerData);
 
     //TODO: option to convert schedules to frequency based approach
 
+    var postProcessingPhase = fileHandlerData.getProfiler().getPhaseMetrics().startPhase("post-processing");
+
     /* due to time period based filtering it is possible that trips have just a single valid stop, meaning no single leg. These need to be removed */
     GtfsRoutedServicesModifierUtils.removeScheduledTripsWithoutLegs(fileHandlerData.getRoutedServices());
     /* due to routed being created beforehand without knowing what trips are eligible, routes can end up without having trips in the valid time period. These need to be removed */
@@ -224,13 +333,16 @@ public class GtfsServicesReader implements PairConverterReader<ServiceNetwork, R
     GtfsRoutedServicesModifierUtils.removeEmptyRoutedServices(fileHandlerData.getRoutedServices());
 
     /* optional optimisation/processing */
-    if(getSettings().isGroupIdenticalGtfsTrips()){
+    if(getSettings().isGroupIdenticalGtfsTrips() && getSettings().hasMultipleDaysOfWeek()){
+      LOGGER.warning("Grouping of identically scheduled GTFS trips skipped, since multiple days of week are chosen and trips are tagged with the day(s) they are active on individually");
+    }else if(getSettings().isGroupIdenticalGtfsTrips()){
       LOGGER.info("Optimising: Consolidating GTFS trip departures with identical relative schedules...");
       GtfsRoutedServicesModifierUtils.groupIdenticallyScheduledPlanitTrips(fileHandlerData.getRoutedServices());
     }
 
     /* due to grouping as well as the fact that GTFS is not perfect and may contain duplicate trips, we often see duplicate departure times occurring. these need to be removed */
     GtfsRoutedServicesModifierUtils.removeDuplicateTripDepartures(fileHandlerData.getRoutedServices());
+    postProcessingPhase.complete();
 
     LOGGER.info("Processing: GTFS services Done");
   }
@@ -279,10 +391,23 @@ public class GtfsServicesReader implements PairConverterReader<ServiceNetwork, R
     /* main processing  */
     doMainProcessing(fileHandlerData);
 
+    /* retain day tagging of produced PLANit trips, relevant when multiple days of week are chosen */
+    fileHandlerData.retainActiveDaysOfWeekOfExistingRoutedTrips();
+    activeDaysOfWeekByRoutedTrip = fileHandlerData.getActiveDaysOfWeekByRoutedTrip();
+    /* retain shapes of service leg segments, relevant when shape guided mapping to the physical network is applied */
+    gtfsShapeIdsByServiceLegSegment = fileHandlerData.getGtfsShapeIdsByServiceLegSegment();
+
     /* log stats */
     fileHandlerData.getProfiler().logProcessingStats();
+    logRemovedGtfsTripStats(fileHandlerData);
     logPlanitStats(fileHandlerData);
 
+    /* timing and throughput of the read, optionally dumped for external tracking */
+    phaseMetrics = fileHandlerData.getProfiler().getPhaseMetrics();
+    if(getSettings().getPhaseMetricsJsonFile() != null){
+      phaseMetrics.writeJson(getSettings().getPhaseMetricsJsonFile());
+    }
+
     /* return parsed GTFS services in PLANit memory model form*/
     return Pair.of(fileHandlerData.getServiceNetwork(), fileHandlerData.getRoutedServices());
   }
@@ -302,6 +427,56 @@ public class GtfsServicesReader implements PairConverterReader<ServiceNetwork, R
     return GtfsServicesHandlerData.getServiceNodeToGtfsStopIdMapping();
   }
 
+  /**
+   * The chosen day(s) of week each created PLANit scheduled trip was found to be active on during the most recent read. When multiple days
+   * of week are chosen, this allows one to attribute the produced trips to each of the chosen days
+   *
+   * @return unmodifiable map of active days of week by PLANit scheduled trip
+   */
+  public Map<RoutedTripSchedule, Set<DayOfWeek>> getActiveDaysOfWeekByRoutedTrip(){
+    return Collections.unmodifiableMap(activeDaysOfWeekByRoutedTrip);
+  }
+
+  /**
+   * The GTFS shape id of the first GTFS trip (with a shape) found to use a service leg segment during the most recent read, which allows the
+   * service leg segment to be mapped to the physical network guided by the shape's geometry
+   *
+   * @return mapping from PLANit service leg segment to GTFS shape id, null when no shape is available
+   */
+  public Function<ServiceLegSegment, String> getServiceLegSegmentToGtfsShapeIdMapping(){
+    final var shapeIds = gtfsShapeIdsByServiceLegSegment;
+    return shapeIds::get;
+  }
+
+  /**
+   * The distinct GTFS shape ids of the trips using the service leg segments found during the most recent read
+   *
+   * @return GTFS shape ids in use
+   */
+  public Set<String> getGtfsShapeIdsInUse(){
+    return new HashSet<>(gtfsShapeIdsByServiceLegSegment.values());
+  }
+
+  /**
+   * Pre-clip the GTFS trips to the given GTFS stops, i.e., GTFS trips without any consecutive stops among the given stops are discarded before
+   * they are converted into PLANit entities. Typically used to restrict the services to the area of the reference network up front rather than truncating
+   * them afterwards
+   *
+   * @param preClipGtfsStopIds GTFS stop ids to pre-clip to, null to deactivate
+   */
+  public void setPreClipGtfsStopIds(Set<String> preClipGtfsStopIds){
+    this.preClipGtfsStopIds = preClipGtfsStopIds;
+  }
+
+  /**
+   * Timing and throughput metrics per processing phase of the most recent read
+   *
+   * @return phase metrics, null if not yet read
+   */
+  public GtfsConverterPhaseMetrics getPhaseMetrics(){
+    return phaseMetrics;
+  }
+
   /**
    * {@inheritDoc}
    */
@@ -323,6 +498,9 @@ public class GtfsServicesReader implements PairConverterReader<ServiceNetwork, R
    */
   @Override
   public void reset() {
+    activeDaysOfWeekByRoutedTrip = new IdentityHashMap<>();
+    gtfsShapeIdsByServiceLegSegment = new HashMap<>();
+    phaseMetrics = null;
   }
 
 }
@@ -19,6 +19,7 @@ import java.time.format.TextStyle;
 import java.util.*;
 import java.util.function.Function;
 import java.util.logging.Logger;
+import java.util.stream.Collectors;
 
 /**
  * Configurable settings for the Gtfs to PLANit routed services reader
@@ -37,12 +38,10 @@ public class GtfsServicesReaderSettings extends GtfsConverterReaderSettingsWithM
   /** when true all GTFS trips which are identical except for their departure time will be grouped into a single PLANitTripSchedule, when false they are kept separate */
   private boolean groupIdenticalGtfsTrips = DEFAULT_GROUP_IDENTICAL_GTFS_TRIPS;
 
-  /** currently the GTFS parser will only generate PLANit services and service network based on a single reference day provided. If multiple are required
-   * the parser needs to be run multiple times.
-   *
-   * todo: allow additional functionality to generate multiple results in one go
+  /** the GTFS parser generates PLANit services and service network based on the reference day(s) provided. When multiple days are
+   * chosen, stop_times are still parsed in a single pass and each GTFS trip is tagged with the day(s) it is active on within the chosen time periods
    */
-  private DayOfWeek dayOfWeek;
+  private final Set<DayOfWeek> daysOfWeek = EnumSet.noneOf(DayOfWeek.class);
 
   /** configured activated time periods, if empty, all are supported implicitly*/
   private final Set<ComparablePair<LocalTime, LocalTime>> timePeriodFilters;
@@ -65,6 +64,18 @@ public class GtfsServicesReaderSettings extends GtfsConverterReaderSettingsWithM
    */
   private final Set<String> logGtfsStopRoutes = new HashSet<>();
 
+  /** when true, stop_times are read (inflated, tokenized) on a separate thread into a bounded buffer while routes, calendars and trips are still being processed */
+  private boolean pipelinedStopTimesIngest = DEFAULT_PIPELINED_STOP_TIMES_INGEST;
+
+  /** maximum number of stop_times records buffered when pipelined ingest is activated */
+  private int pipelinedStopTimesBufferCapacity = DEFAULT_PIPELINED_STOP_TIMES_BUFFER_CAPACITY;
+
+  /** number of threads used to convert completed GTFS trips' stop times, when more than one, conversion is conducted in parallel */
+  private int parallelStopTimesConversionThreads = DEFAULT_PARALLEL_STOP_TIMES_CONVERSION_THREADS;
+
+  /** when true, GTFS side state of a trip is released as soon as its stop times are complete, bounding memory by the PLANit output rather than the GTFS input */
+  private boolean evictCompletedGtfsTrips = DEFAULT_EVICT_COMPLETED_GTFS_TRIPS;
+
   /**
    * Conduct general initialisation for any instance of this class
    *
@@ -89,11 +100,21 @@ public class GtfsServicesReaderSettings extends GtfsConverterReaderSettingsWithM
    * @return false if not valid
    */
   boolean validate() {
-    if(getDayOfWeek() == null){
+    if(daysOfWeek.isEmpty()){
       LOGGER.severe("Day of week not chosen for GTFS services reader settings, unable to continue");
       return false;
     }
 
+    if(getParallelStopTimesConversionThreads() <= 0){
+      LOGGER.severe("Number of stop_times conversion threads must be positive, unable to continue");
+      return false;
+    }
+
+    if(isPipelinedStopTimesIngest() && getPipelinedStopTimesBufferCapacity() <= 0){
+      LOGGER.severe("Pipelined stop_times ingest requires a positive buffer capacity, unable to continue");
+      return false;
+    }
+
     return true;
   }
 
@@ -103,6 +124,18 @@ public class GtfsServicesReaderSettings extends GtfsConverterReaderSettingsWithM
   /** by default, we include GTFS trips from the moment a stop falls within the eligible time period */
   public static final boolean DEFAULT_INCLUDE_PARTIAL_GTFS_TRIPS_IF_STOPS_IN_TIME_PERIOD = true;
 
+  /** by default, stop_times are not read in a pipelined fashion but after all other services related GTFS files are processed */
+  public static final boolean DEFAULT_PIPELINED_STOP_TIMES_INGEST = false;
+
+  /** default number of stop_times records that may be buffered ahead of processing when pipelined ingest is activated */
+  public static final int DEFAULT_PIPELINED_STOP_TIMES_BUFFER_CAPACITY = 100_000;
+
+  /** by default, stop times are converted sequentially on a single thread */
+  public static final int DEFAULT_PARALLEL_STOP_TIMES_CONVERSION_THREADS = 1;
+
+  /** by default, GTFS trips are retained until parsing completes */
+  public static final boolean DEFAULT_EVICT_COMPLETED_GTFS_TRIPS = false;
+
   /**
    * Provides access to how GTFS STOP IDS can be extracted from service nodes when service nodes are created using these settings
    *
@@ -151,7 +184,9 @@ public class GtfsServicesReaderSettings extends GtfsConverterReaderSettingsWithM
    */
   public GtfsServicesReaderSettings(URL inputSource, String countryName, DayOfWeek dayOfWeekFilter, RouteTypeChoice routeTypeChoice) {
     super(inputSource, countryName, routeTypeChoice);
-    this.dayOfWeek = dayOfWeekFilter;
+    if(dayOfWeekFilter != null) {
+      this.daysOfWeek.add(dayOfWeekFilter);
+    }
     this.timePeriodFilters = new TreeSet<>();
   }
 
@@ -275,20 +310,65 @@ public class GtfsServicesReaderSettings extends GtfsConverterReaderSettingsWithM
   }
 
   /**
-   * Set the day of week to filter on (mandatory to be set)
+   * Set the day of week to filter on (mandatory to be set). Replaces any previously chosen day(s) of week
    *
    * @param dayOfWeek to choose
    */
   public void setDayOfWeek(DayOfWeek dayOfWeek) {
-    this.dayOfWeek = dayOfWeek;
+    this.daysOfWeek.clear();
+    if(dayOfWeek != null) {
+      this.daysOfWeek.add(dayOfWeek);
+    }
   }
 
   /**
    * The day of week to filter on
-   * @return dayOfWeek chosen
+   *
+   * @return dayOfWeek chosen, null if none or more than one day is chosen
+   * @deprecated multiple days of week can be chosen, use {@link #getDaysOfWeek()} instead
    */
+  @Deprecated
   public DayOfWeek getDayOfWeek() {
-    return this.dayOfWeek;
+    return daysOfWeek.size() == 1 ? daysOfWeek.iterator().next() : null;
+  }
+
+  /**
+   * Add a day of week to filter on in addition to any already chosen day(s). All chosen days are extracted in a single pass over
+   * the GTFS stop times, where each GTFS trip is tagged with the chosen days it is active on
+   *
+   * @param dayOfWeek to add
+   */
+  public void addDayOfWeek(DayOfWeek dayOfWeek) {
+    PlanItRunTimeException.throwIfNull(dayOfWeek, "Day of week to add is null");
+    this.daysOfWeek.add(dayOfWeek);
+  }
+
+  /**
+   * Set the days of week to filter on, replacing any previously chosen day(s)
+   *
+   * @param daysOfWeek to choose
+   */
+  public void setDaysOfWeek(DayOfWeek... daysOfWeek) {
+    this.daysOfWeek.clear();
+    Arrays.stream(daysOfWeek).forEach(this::addDayOfWeek);
+  }
+
+  /**
+   * The days of week to filter on, in order of the week (Monday first)
+   *
+   * @return unmodifiable set of chosen days of week
+   */
+  public Set<DayOfWeek> getDaysOfWeek() {
+    return Collections.unmodifiableSet(daysOfWeek);
+  }
+
+  /**
+   * Check if more than a single day of week is chosen
+   *
+   * @return true when multiple days are chosen, false otherwise
+   */
+  public boolean hasMultipleDaysOfWeek() {
+    return daysOfWeek.size() > 1;
   }
 
   /**
@@ -297,7 +377,8 @@ public class GtfsServicesReaderSettings extends GtfsConverterReaderSettingsWithM
   public void logSettings() {
     super.logSettings();
 
-    LOGGER.info(String.format("Activated day of week: %s", dayOfWeek.getDisplayName(TextStyle.FULL, Locale.ENGLISH)));
+    LOGGER.info(String.format("Activated day(s) of week: %s",
+        daysOfWeek.stream().map(d -> d.getDisplayName(TextStyle.FULL, Locale.ENGLISH)).collect(Collectors.joining(","))));
 
     if(hasTimePeriodFilters()) {
       LOGGER.info("Activated time periods:");
@@ -316,6 +397,15 @@ public class GtfsServicesReaderSettings extends GtfsConverterReaderSettingsWithM
 
     LOGGER.info(String.format("Consolidate identical GTFS trips: %s ", String.valueOf(isGroupIdenticalGtfsTrips())));
     LOGGER.info(String.format("Including partial GTFS trips for portion within time period: %s ", String.valueOf(isIncludePartialGtfsTripsIfStopsInTimePeriod())));
+    if(isEvictCompletedGtfsTrips()) {
+      LOGGER.info("Evicting completed GTFS trips during parsing");
+    }
+    if(getParallelStopTimesConversionThreads() > 1) {
+      LOGGER.info(String.format("Parallel stop_times conversion activated (threads: %d)", getParallelStopTimesConversionThreads()));
+    }
+    if(isPipelinedStopTimesIngest()) {
+      LOGGER.info(String.format("Pipelined stop_times ingest activated (buffer capacity: %d)", getPipelinedStopTimesBufferCapacity()));
+    }
 
     for(var entry : logGtfsRouteInformationByShortName) {
       LOGGER.info(String.format("Tracking GTFS route %s information while parsing", entry));
@@ -356,6 +446,76 @@ public class GtfsServicesReaderSettings extends GtfsConverterReaderSettingsWithM
     this.includePartialGtfsTripsWithInvalidDepartureIfStopsInTimePeriod = includePartialGtfsTripsIfStopsInTimePeriod;
   }
 
+  /** check if stop_times are read in a pipelined fashion, i.e., read into a bounded buffer on a separate thread while the routes, calendars and trips
+   * are still being processed
+   *
+   * @return flag
+   */
+  public boolean isPipelinedStopTimesIngest() {
+    return pipelinedStopTimesIngest;
+  }
+
+  /** set flag indicating to read stop_times in a pipelined fashion, i.e., read into a bounded buffer on a separate thread while the routes, calendars and trips
+   * are still being processed. Hides most of the I/O and decompression cost of stop_times at the expense of an additional thread and buffer memory
+   *
+   * @param pipelinedStopTimesIngest flag to set
+   */
+  public void setPipelinedStopTimesIngest(boolean pipelinedStopTimesIngest) {
+    this.pipelinedStopTimesIngest = pipelinedStopTimesIngest;
+  }
+
+  /** maximum number of stop_times records buffered ahead of processing when pipelined ingest is activated
+   *
+   * @return capacity
+   */
+  public int getPipelinedStopTimesBufferCapacity() {
+    return pipelinedStopTimesBufferCapacity;
+  }
+
+  /** set maximum number of stop_times records buffered ahead of processing when pipelined ingest is activated
+   *
+   * @param pipelinedStopTimesBufferCapacity to use
+   */
+  public void setPipelinedStopTimesBufferCapacity(int pipelinedStopTimesBufferCapacity) {
+    this.pipelinedStopTimesBufferCapacity = pipelinedStopTimesBufferCapacity;
+  }
+
+  /** number of threads used to convert the stop times of completed GTFS trips. When more than one, the conversion of trips is conducted in parallel,
+   * i.e., parsing times and computing relative timings, while PLANit entities and schedules are still created on a single thread in file order, so results are identical to a sequential conversion
+   *
+   * @return number of threads
+   */
+  public int getParallelStopTimesConversionThreads() {
+    return parallelStopTimesConversionThreads;
+  }
+
+  /** set number of threads used to convert the stop times of completed GTFS trips. When more than one, the conversion of trips is conducted in parallel,
+   * i.e., parsing times and computing relative timings, while PLANit entities and schedules are still created on a single thread in file order, so results are identical to a sequential conversion
+   *
+   * @param parallelStopTimesConversionThreads to use
+   */
+  public void setParallelStopTimesConversionThreads(int parallelStopTimesConversionThreads) {
+    this.parallelStopTimesConversionThreads = parallelStopTimesConversionThreads;
+  }
+
+  /** check if GTFS side state of trips (GTFS trip, index of its PLANit trip, removed trip ids) is released as soon as the trip's stop times are complete
+   *
+   * @return flag
+   */
+  public boolean isEvictCompletedGtfsTrips() {
+    return evictCompletedGtfsTrips;
+  }
+
+  /** set flag to release GTFS side state of trips (GTFS trip, index of its PLANit trip, removed trip ids) as soon as the trip's stop times are complete, such
+   * that memory use during parsing is bounded by the PLANit output rather than the GTFS input. Requires stop times to be grouped by trip, any stop times of
+   * a trip encountered after the trip was completed are ignored
+   *
+   * @param evictCompletedGtfsTrips flag to set
+   */
+  public void setEvictCompletedGtfsTrips(boolean evictCompletedGtfsTrips) {
+    this.evictCompletedGtfsTrips = evictCompletedGtfsTrips;
+  }
+
   /**
    * Indicate to log the routes that stop at the given GTFS stops (within selected time period(s). Can be useful
    * for debugging purposes.
@@ -392,7 +552,11 @@ public class GtfsServicesReaderSettings extends GtfsConverterReaderSettingsWithM
   public void reset() {
     super.reset();
     this.timePeriodFilters.clear();
-    this.dayOfWeek = null;
+    this.daysOfWeek.clear();
+    this.pipelinedStopTimesIngest = DEFAULT_PIPELINED_STOP_TIMES_INGEST;
+    this.pipelinedStopTimesBufferCapacity = DEFAULT_PIPELINED_STOP_TIMES_BUFFER_CAPACITY;
+    this.parallelStopTimesConversionThreads = DEFAULT_PARALLEL_STOP_TIMES_CONVERSION_THREADS;
+    this.evictCompletedGtfsTrips = DEFAULT_EVICT_COMPLETED_GTFS_TRIPS;
     this.logGtfsStopRoutes.clear();
     this.excludeGtfsRoutesByShortName.clear();
     this.exceptionsToBlanketBlackListByShortName.clear();
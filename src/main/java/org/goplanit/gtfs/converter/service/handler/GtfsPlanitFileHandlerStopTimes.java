@@ -14,7 +14,12 @@ import org.goplanit.utils.network.layer.service.ServiceLegSegment;
 import org.goplanit.utils.network.layer.service.ServiceNode;
 import org.goplanit.utils.time.ExtendedLocalTime;
 
+import java.time.DayOfWeek;
 import java.util.*;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.logging.Logger;
 
 /**
@@ -30,6 +35,18 @@ import java.util.logging.Logger;
  *   same schedule but different departure times yet, i.e., we create a single schedule based trip with a single departure and relative timings
  *   per chain of stop times. In other words a GTFS trip will correspond 1:1 to a PLANit trip after parsing
  * </p>
+ * <p>
+ *   When parallel conversion is activated in the settings, the stop times of each completed GTFS trip are converted on worker threads, i.e., times
+ *   are parsed, duplicates filtered, eligibility determined and relative timings computed. The PLANit memory model is only ever modified on the
+ *   handler's thread, where converted trips are committed in file order: all PLANit entities (trips, departures, service nodes, legs and leg segments)
+ *   and schedules are created there, so ids are identical to the sequential run. The gain is therefore limited to the parsing and timing
+ *   computations being conducted off the handler's thread
+ * </p>
+ * <p>
+ *   When pre-clipping is activated, the stop times of each GTFS trip are collected first and the trip is discarded when it has no consecutive stops within the
+ *   area of the reference network, as such trips would be truncated entirely afterwards anyway. Consecutive stops are determined by stop sequence. Stop times
+ *   of a trip are assumed to be contiguous in the file, when a trip reappears after it has been decided upon, this is logged and the earlier decision is kept
+ * </p>
  * @author markr
  *
  */
@@ -41,6 +58,9 @@ public class GtfsPlanitFileHandlerStopTimes extends GtfsFileHandlerStopTimes {
   /** track internal data used to efficiently handle the parsing */
   private final GtfsServicesHandlerData data;
 
+  /** number of completed trips per conversion thread that may be in conversion before committing is enforced */
+  private static final int MAX_TRIPS_IN_CONVERSION_PER_THREAD = 256;
+
   /** set of tracked GTFS route short names to log information on while parsing */
   private final Set<String> activatedLoggingForGtfsRoutesByShortName;
 
@@ -58,15 +78,42 @@ public class GtfsPlanitFileHandlerStopTimes extends GtfsFileHandlerStopTimes {
    */
   private GtfsStopTime prevSameTripStopTime;
 
+  /** most recently encountered GTFS trip, used to evict completed trips when activated */
+  private GtfsTrip lastEncounteredTrip;
+
+  /** executor converting completed trips when parallel conversion is activated, null otherwise */
+  private ExecutorService conversionExecutor;
+
+  /** completed trips being converted in order of appearance, committed to the PLANit memory model in this order to obtain deterministic ids */
+  private final Deque<Future<GtfsTripStopTimesConversion>> tripsInConversion = new ArrayDeque<>();
+
+  /** maximum number of completed trips in conversion before committing is enforced, bounding memory use */
+  private int maxTripsInConversion;
+
+  /** trip of which stop times are currently being collected for parallel conversion */
+  private GtfsTrip collectingTrip;
+
+  /** stop times of trip currently being collected for parallel conversion */
+  private List<GtfsStopTime> collectingTripStopTimes;
+
+  /** trip of which stop times are currently being collected for pre-clipping, when activated */
+  private GtfsTrip preClipTrip;
+
+  /** stop times of trip currently being collected for pre-clipping, when activated */
+  private List<GtfsStopTime> preClipTripStopTimes;
+
+  /** GTFS trip ids of trips for which pre-clipping has been decided, true when retained, false when discarded, used to detect trips of which
+   * the stop times are not contiguous in the file */
+  private final Map<String, Boolean> preClipDecidedTrips = new HashMap<>();
+
+  /** GTFS trip id of the most recent non-contiguous trip found while pre-clipping, to log it only once per reappearance */
+  private String preClipNonContiguousTripId;
+
   /**
    * @return compare by ids and departure arrival time, when all equal, it is considered equal for our intents and purposes and true is returned, false otherwise
    */
   private boolean isConsideredEqual(GtfsStopTime left, GtfsStopTime right) {
-    return
-        left.getTripId().equals(right.getTripId()) &&
-        left.getStopId().equals(right.getStopId()) &&
-        left.getDepartureTime().equals(right.getDepartureTime()) &&
-        left.getArrivalTime().equals(right.getArrivalTime());
+    return GtfsTripStopTimesConversion.isConsideredEqual(left, right);
   }
 
   /**
@@ -182,6 +229,268 @@ public class GtfsPlanitFileHandlerStopTimes extends GtfsFileHandlerStopTimes {
     return serviceNetworkSegment;
   }
 
+  /**
+   * Log information on stop time of PLANit trip for tracked routes and/or stops
+   *
+   * @param gtfsStopTime the stop time
+   * @param gtfsTrip the GTFS trip
+   * @param planitTrip the PLANit trip
+   * @param planitRoutedService the PLANit routed service
+   * @param arrivalTime at stop
+   * @param departureTime at stop
+   */
+  private void logTrackedStopTime(
+      GtfsStopTime gtfsStopTime, GtfsTrip gtfsTrip, RoutedTripSchedule planitTrip, RoutedService planitRoutedService, ExtendedLocalTime arrivalTime, ExtendedLocalTime departureTime){
+    if(activatedLoggingForGtfsRoutesByShortName.contains(planitRoutedService.getName())){
+      LOGGER.info(String.format("[TRACK] stop: %s, trip: %s, route: %s (%s), arrival--departure: %s -- %s",
+          gtfsStopTime.getStopId(), planitTrip.getExternalId(), planitRoutedService.getName(), planitRoutedService.getNameDescription(), arrivalTime, departureTime));
+    }
+    if(data.getSettings().isLogGtfsStopRoute(gtfsStopTime.getStopId())){
+      uniqueRoutesForStopsIfLoggingRequired.putIfAbsent(gtfsStopTime.getStopId(), new TreeSet<>());
+      uniqueRoutesForStopsIfLoggingRequired.get(gtfsStopTime.getStopId()).add("(name: " + planitRoutedService.getName() + " id: " + gtfsTrip.getRouteId() + ")");
+    }
+  }
+
+  /**
+   * Find the GTFS trip of the stop time, unless it has been removed
+   *
+   * @param gtfsStopTime to find trip for
+   * @return GTFS trip, null when removed or not available
+   */
+  private GtfsTrip findEligibleGtfsTrip(GtfsStopTime gtfsStopTime){
+    if(data.isGtfsTripRemoved(gtfsStopTime.getTripId())) {
+      return null;
+    }
+    //LOGGER.severe(String.format("Unable to find GTFS trip %s for current GTFS stop time (stop id: %s), GTFS stop time ignored", gtfsStopTime.getTripId(), gtfsStopTime.getStopId()));
+    return data.getGtfsTripByGtfsTripId(gtfsStopTime.getTripId());
+  }
+
+  /**
+   * Collect stop time for pre-clipping. Once the trip changes the collected trip is complete and is either handled or discarded
+   *
+   * @param gtfsStopTime to collect
+   */
+  private void collectForPreClip(GtfsStopTime gtfsStopTime){
+    if(preClipTrip == null || !preClipTrip.getTripId().equals(gtfsStopTime.getTripId())){
+      var retained = preClipDecidedTrips.get(gtfsStopTime.getTripId());
+      if(retained != null){
+        /* trip reappears after its stop times were deemed complete, pre-clipping decision cannot be revisited, so retained trips continue as is
+         * and discarded trips remain discarded */
+        handleNonContiguousPreClipTrip(gtfsStopTime, retained);
+        return;
+      }
+    }
+
+    GtfsTrip gtfsTrip = findEligibleGtfsTrip(gtfsStopTime);
+    if(gtfsTrip == null){
+      return;
+    }
+    if(gtfsTrip != preClipTrip){
+      handlePreClipTrip();
+      preClipTrip = gtfsTrip;
+      preClipTripStopTimes = new ArrayList<>();
+    }
+    preClipTripStopTimes.add(gtfsStopTime);
+  }
+
+  /**
+   * Handle a stop time of a trip for which pre-clipping was already decided, i.e., the stop times of the trip are not contiguous in the file
+   *
+   * @param gtfsStopTime to handle
+   * @param retained true when the trip was retained, false when discarded
+   */
+  private void handleNonContiguousPreClipTrip(GtfsStopTime gtfsStopTime, boolean retained){
+    handlePreClipTrip();
+    if(!gtfsStopTime.getTripId().equals(preClipNonContiguousTripId)) {
+      preClipNonContiguousTripId = gtfsStopTime.getTripId();
+      LOGGER.warning(String.format("GTFS stop times of trip %s are not contiguous in file (stop %s, sequence %s), trip was already %s by pre-clipping based on its earlier stop times",
+          gtfsStopTime.getTripId(), gtfsStopTime.getStopId(), gtfsStopTime.getStopSequence(), retained ? "retained" : "discarded"));
+    }
+    if(retained){
+      handleStopTime(gtfsStopTime);
+    }
+  }
+
+  /**
+   * Sort stop times by their stop sequence (stable), when any stop sequence is absent or not numeric the file order is kept
+   *
+   * @param gtfsStopTimes to sort in place
+   */
+  private static void sortByStopSequence(List<GtfsStopTime> gtfsStopTimes){
+    var stopSequences = new HashMap<GtfsStopTime, Integer>();
+    for(var gtfsStopTime : gtfsStopTimes){
+      try {
+        stopSequences.put(gtfsStopTime, Integer.parseInt(gtfsStopTime.getStopSequence().trim()));
+      }catch (NullPointerException | NumberFormatException e){
+        return;
+      }
+    }
+    gtfsStopTimes.sort(Comparator.comparingInt(stopSequences::get));
+  }
+
+  /**
+   * Handle the trip collected for pre-clipping (if any). Only a trip with at least two consecutive stops (in stop sequence order) within the pre-clipped
+   * area can retain a leg once truncated to the reference network, so only then its stop times are handled, otherwise it is discarded before any PLANit
+   * entity is created
+   */
+  private void handlePreClipTrip(){
+    if(preClipTrip == null){
+      return;
+    }
+    final var gtfsTrip = preClipTrip;
+    final var gtfsStopTimes = preClipTripStopTimes;
+    preClipTrip = null;
+    preClipTripStopTimes = null;
+
+    sortByStopSequence(gtfsStopTimes);
+    boolean prevWithin = false;
+    boolean retain = false;
+    for(var gtfsStopTime : gtfsStopTimes){
+      boolean within = data.isGtfsStopWithinPreClip(gtfsStopTime.getStopId());
+      if(within && prevWithin){
+        retain = true;
+        break;
+      }
+      prevWithin = within;
+    }
+
+    preClipDecidedTrips.put(gtfsTrip.getTripId(), retain);
+    if(!retain){
+      data.registeredRemovedGtfsTrip(gtfsTrip, GtfsServicesHandlerData.TripRemovalType.OUTSIDE_NETWORK_BOUNDING_BOX);
+      return;
+    }
+    gtfsStopTimes.forEach(this::handleStopTime);
+  }
+
+  /**
+   * Collect stop time for parallel conversion. Once the trip changes the collected trip is complete and is submitted for conversion
+   *
+   * @param gtfsStopTime to collect
+   * @param gtfsTrip of the stop time
+   */
+  private void collectForParallelConversion(GtfsStopTime gtfsStopTime, GtfsTrip gtfsTrip){
+    if(gtfsTrip != collectingTrip){
+      submitCollectedTripForConversion();
+      collectingTrip = gtfsTrip;
+      collectingTripStopTimes = new ArrayList<>();
+    }
+    collectingTripStopTimes.add(gtfsStopTime);
+  }
+
+  /**
+   * Submit the trip currently collected (if any) for conversion on a worker thread and commit converted trips in order as far as they are
+   * available, or when the maximum number of trips in conversion is reached
+   */
+  private void submitCollectedTripForConversion(){
+    if(collectingTrip == null){
+      return;
+    }
+    final var gtfsTrip = collectingTrip;
+    final var gtfsStopTimes = collectingTripStopTimes;
+    tripsInConversion.addLast(conversionExecutor.submit(() -> GtfsTripStopTimesConversion.convert(gtfsTrip, gtfsStopTimes, data)));
+    collectingTrip = null;
+    collectingTripStopTimes = null;
+
+    while(!tripsInConversion.isEmpty() && (tripsInConversion.peekFirst().isDone() || tripsInConversion.size() > maxTripsInConversion)){
+      commitConvertedTrip(tripsInConversion.pollFirst());
+    }
+  }
+
+  /**
+   * Commit a converted trip to the PLANit memory model, waiting for its conversion to complete if needed
+   *
+   * @param conversionResult to commit
+   */
+  private void commitConvertedTrip(Future<GtfsTripStopTimesConversion> conversionResult){
+    GtfsTripStopTimesConversion convertedTrip;
+    try {
+      convertedTrip = conversionResult.get();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new PlanItRunTimeException("Interrupted while converting GTFS stop times", e);
+    } catch (ExecutionException e) {
+      throw new PlanItRunTimeException(String.format("Unable to convert GTFS stop times: %s", e.getCause().getMessage()), e.getCause());
+    }
+
+    var gtfsTrip = convertedTrip.getGtfsTrip();
+    /* profiler is not thread safe, so counts of the conversion are only registered upon commit */
+    for(int index = 0; index < convertedTrip.getNumberOfDuplicateStopTimes(); ++index){
+      data.getProfiler().incrementDuplicateStopTimeCount();
+    }
+    if(convertedTrip.isTimePeriodDiscarded()){
+      data.registeredRemovedGtfsTrip(gtfsTrip, GtfsServicesHandlerData.TripRemovalType.TIME_PERIOD_DISCARDED);
+      return;
+    }
+    if(convertedTrip.getConvertedStopTimes().isEmpty()){
+      return;
+    }
+    var planitRoutedService = data.getRoutedServiceByExternalId(gtfsTrip.getRouteId());
+    var layer = data.getServiceNetwork().getLayerByMode(planitRoutedService.getMode());
+    RoutedTripSchedule planitTrip = collectScheduledTrip(gtfsTrip, planitRoutedService);
+    if(!planitTrip.getDepartures().isEmpty()){
+      LOGGER.severe(String.format("GTFS trip's stop times not consecutive for GTFS trip %s, GTFS parser does not yet support such stop_time files, log GitHub feature request!",gtfsTrip.getTripId()));
+      return;
+    }
+    data.registerActiveDaysOfWeek(planitTrip, convertedTrip.getEligibleDays());
+
+    /* register id-bearing entities in file order, collecting the service leg segment of each converted stop time (null for the departure) */
+    var convertedStopTimes = convertedTrip.getConvertedStopTimes();
+    final List<ServiceLegSegment> serviceNetworkSegments = new ArrayList<>(convertedStopTimes.size());
+    prevSameTripStopTime = null;
+    for(var convertedStopTime : convertedStopTimes){
+      var gtfsStopTime = convertedStopTime.gtfsStopTime;
+      if(prevSameTripStopTime == null){
+        /* STOP_TIME - INITIAL DEPARTURE */
+        registerDeparture(planitTrip, gtfsStopTime, convertedStopTime.departureTime);
+        collectOrRegisterServiceNode(layer, gtfsStopTime);
+        serviceNetworkSegments.add(null);
+      }else{
+        /* STOP_TIME - INTERMEDIATE STOP */
+        var serviceNetworkSegment = collectOrRegisterNetworkServiceSegment(layer, planitRoutedService.getMode(), gtfsStopTime);
+        data.registerGtfsShapeId(serviceNetworkSegment, gtfsTrip.getShapeId());
+        serviceNetworkSegments.add(serviceNetworkSegment);
+        if(!convertedStopTime.validTiming){
+          continue;
+        }
+      }
+      prevSameTripStopTime = gtfsStopTime;
+    }
+    prevSameTripStopTime = null;
+
+    if(data.getSettings().isEvictCompletedGtfsTrips()){
+      /* committed after the trip was encountered as complete, release GTFS side state again */
+      data.evictGtfsTrip(gtfsTrip);
+    }
+
+    constructSchedule(convertedTrip, serviceNetworkSegments, planitTrip, planitRoutedService);
+  }
+
+  /**
+   * Construct the schedule of a committed trip, i.e., its relative leg segment timings based on the precomputed timings of the conversion
+   *
+   * @param convertedTrip the converted GTFS trip
+   * @param serviceNetworkSegments registered service leg segment per converted stop time, null for the departure
+   * @param planitTrip to construct schedule for
+   * @param planitRoutedService of the trip
+   */
+  private void constructSchedule(
+      GtfsTripStopTimesConversion convertedTrip, List<ServiceLegSegment> serviceNetworkSegments, RoutedTripSchedule planitTrip, RoutedService planitRoutedService){
+    var convertedStopTimes = convertedTrip.getConvertedStopTimes();
+    for(int index = 0; index < convertedStopTimes.size(); ++index){
+      var convertedStopTime = convertedStopTimes.get(index);
+      if(!convertedStopTime.validTiming){
+        continue;
+      }
+      var serviceNetworkSegment = serviceNetworkSegments.get(index);
+      if(serviceNetworkSegment != null) {
+        planitTrip.addRelativeLegSegmentTiming(serviceNetworkSegment, convertedStopTime.duration, convertedStopTime.dwellTime);
+      }
+      logTrackedStopTime(
+          convertedStopTime.gtfsStopTime, convertedTrip.getGtfsTrip(), planitTrip, planitRoutedService, convertedStopTime.arrivalTime, convertedStopTime.departureTime);
+      data.getProfiler().incrementTripStopTimeCount();
+    }
+  }
+
   /**
    * Constructor
    *
@@ -207,6 +516,16 @@ public class GtfsPlanitFileHandlerStopTimes extends GtfsFileHandlerStopTimes {
     // prerequisites
     PlanItRunTimeException.throwIf(data.getRoutedServices().getLayers().isEachLayerEmpty()==true,"No GTFS routes parsed yet, unable to parse GTFS stop times");
 
+    int numConversionThreads = data.getSettings().getParallelStopTimesConversionThreads();
+    if(numConversionThreads > 1){
+      this.conversionExecutor = Executors.newFixedThreadPool(numConversionThreads, r -> {
+        var thread = new Thread(r, "gtfs-stop-times-converter");
+        thread.setDaemon(true);
+        return thread;
+      });
+      this.maxTripsInConversion = numConversionThreads * MAX_TRIPS_IN_CONVERSION_PER_THREAD;
+    }
+
     reset();
   }
 
@@ -216,23 +535,47 @@ public class GtfsPlanitFileHandlerStopTimes extends GtfsFileHandlerStopTimes {
   @Override
   public void handle(GtfsStopTime gtfsStopTime) {
 
-    if(data.isGtfsTripRemoved(gtfsStopTime.getTripId())) {
+    if(data.isPreClipActivated()){
+      /* postpone until all stop times of the trip are known, so trips outside the pre-clipped area are never converted */
+      collectForPreClip(gtfsStopTime);
       return;
     }
+    handleStopTime(gtfsStopTime);
+  }
+
+  /**
+   * Handle a GTFS stop time for a given trip, i.e., convert it into the PLANit memory model
+   *
+   * @param gtfsStopTime to handle
+   */
+  private void handleStopTime(GtfsStopTime gtfsStopTime) {
 
     /* PREP */
-    GtfsTrip gtfsTrip = data.getGtfsTripByGtfsTripId(gtfsStopTime.getTripId());
+    GtfsTrip gtfsTrip = findEligibleGtfsTrip(gtfsStopTime);
     if(gtfsTrip == null){
-      //LOGGER.severe(String.format("Unable to find GTFS trip %s for current GTFS stop time (stop id: %s), GTFS stop time ignored", gtfsStopTime.getTripId(), gtfsStopTime.getStopId()));
       return;
     }
 
+    /* stop times are grouped by trip, so once a new trip is encountered, the previous one is complete and its GTFS state can be released. With parallel
+     * conversion the previous trip may not have been committed yet, in which case it is evicted upon commit instead */
+    if(gtfsTrip != lastEncounteredTrip){
+      if(lastEncounteredTrip != null && conversionExecutor == null && data.getSettings().isEvictCompletedGtfsTrips()){
+        data.evictGtfsTrip(lastEncounteredTrip);
+      }
+      lastEncounteredTrip = gtfsTrip;
+    }
+
     var planitRoutedService = data.getRoutedServiceByExternalId(gtfsTrip.getRouteId());
-    boolean logTrackedRoute = (activatedLoggingForGtfsRoutesByShortName.contains(planitRoutedService.getName()));
     if(planitRoutedService == null){
       LOGGER.severe(String.format("Unable to find GTFS route %s in PLANit memory model corresponding to GTFS trip %s, GTFS stop time (stop id %s) ignored", gtfsTrip.getRouteId(), gtfsTrip.getTripId(), gtfsStopTime.getStopId()));
       return;
     }
+
+    if(conversionExecutor != null){
+      /* parallel conversion, convert per completed trip on worker threads, commit to PLANit memory model in order */
+      collectForParallelConversion(gtfsStopTime, gtfsTrip);
+      return;
+    }
     var layer = data.getServiceNetwork().getLayerByMode(planitRoutedService.getMode());
 
     /* change of GTFS trip between stop times, assume current stop time is the very first stop time for the new trip */
@@ -246,13 +589,18 @@ public class GtfsPlanitFileHandlerStopTimes extends GtfsFileHandlerStopTimes {
     ExtendedLocalTime arrivalTime = GtfsUtils.parseGtfsTime(gtfsStopTime.getArrivalTime());
     ExtendedLocalTime departureTime = GtfsUtils.parseGtfsTime(gtfsStopTime.getDepartureTime());
 
-    /* verify if departure time of this trip falls within eligible time window, if not and we do not allow for partial trips, discard the trip fully */
-    if(isTripDepartureTime && !data.isDepartureTimeOfServiceIdWithinEligibleTimePeriod(gtfsTrip.getServiceId(), departureTime)){
-      /* outside time period of interest for any day the trip runs, do not parse, unless maybe later stops fall in time windows and we want to check that */
-      if(!data.getSettings().isIncludePartialGtfsTripsIfStopsInTimePeriod()) {
-        data.registeredRemovedGtfsTrip(gtfsTrip, GtfsServicesHandlerData.TripRemovalType.TIME_PERIOD_DISCARDED);
+    /* verify if departure time of this trip falls within eligible time window on any of the chosen days, if not and we do not allow for partial trips,
+     * discard the trip fully */
+    Set<DayOfWeek> eligibleDays = null;
+    if(isTripDepartureTime){
+      eligibleDays = data.getEligibleDaysOfWeekForDeparture(gtfsTrip.getServiceId(), departureTime);
+      if(eligibleDays.isEmpty()) {
+        /* outside time period of interest for any day the trip runs, do not parse, unless maybe later stops fall in time windows and we want to check that */
+        if (!data.getSettings().isIncludePartialGtfsTripsIfStopsInTimePeriod()) {
+          data.registeredRemovedGtfsTrip(gtfsTrip, GtfsServicesHandlerData.TripRemovalType.TIME_PERIOD_DISCARDED);
+        }
+        return;
       }
-      return;
     }
 
     /* GTFS may contain virtually identical entries in terms of arrival departure times for the same trip and stop. These are filtered here */
@@ -263,6 +611,13 @@ public class GtfsPlanitFileHandlerStopTimes extends GtfsFileHandlerStopTimes {
 
     /* SCHEDULED TRIP */
     RoutedTripSchedule planitTrip = collectScheduledTrip(gtfsTrip, planitRoutedService);
+    if(eligibleDays != null){
+      /* tag trip with the day(s) it is active on, so all chosen days are extracted in a single pass */
+      data.registerActiveDaysOfWeek(planitTrip, eligibleDays);
+    }else if(data.getSettings().isIncludePartialGtfsTripsIfStopsInTimePeriod()){
+      /* partial trip may enter the time period at a later stop on other chosen days than the day(s) of its departure */
+      data.registerActiveDaysOfWeek(planitTrip, data.getEligibleDaysOfWeekForDeparture(gtfsTrip.getServiceId(), departureTime));
+    }
 
     /* STOP_TIME - INITIAL DEPARTURE */
     if(planitTrip.getDepartures().isEmpty()){
@@ -279,6 +634,7 @@ public class GtfsPlanitFileHandlerStopTimes extends GtfsFileHandlerStopTimes {
 
       /* TIMING BETWEEN STOP and PREV STOP + SERVICE NETWORK UPDATE IF NEEDED (service node by GTFS_STOP_ID) */
       var serviceNetworkSegment = collectOrRegisterNetworkServiceSegment(layer, planitRoutedService.getMode(), gtfsStopTime);
+      data.registerGtfsShapeId(serviceNetworkSegment, gtfsTrip.getShapeId());
       var duration = arrivalTime.minus(GtfsUtils.parseGtfsTime(prevSameTripStopTime.getDepartureTime()));
       var dwellTime = departureTime.minus(arrivalTime);
       if(duration.exceedsSingleDay() || dwellTime.exceedsSingleDay()){
@@ -289,14 +645,7 @@ public class GtfsPlanitFileHandlerStopTimes extends GtfsFileHandlerStopTimes {
       planitTrip.addRelativeLegSegmentTiming(serviceNetworkSegment, duration.asLocalTimeBeforeMidnight(), dwellTime.asLocalTimeBeforeMidnight());
     }
 
-    if(logTrackedRoute){
-      LOGGER.info(String.format("[TRACK] stop: %s, trip: %s, route: %s (%s), arrival--departure: %s -- %s",
-          gtfsStopTime.getStopId(), planitTrip.getExternalId(), planitRoutedService.getName(), planitRoutedService.getNameDescription(), arrivalTime, departureTime));
-    }
-    if(data.getSettings().isLogGtfsStopRoute(gtfsStopTime.getStopId())){
-      uniqueRoutesForStopsIfLoggingRequired.putIfAbsent(gtfsStopTime.getStopId(), new TreeSet<>());
-      uniqueRoutesForStopsIfLoggingRequired.get(gtfsStopTime.getStopId()).add("(name: " + planitRoutedService.getName()+" id: " + gtfsTrip.getRouteId()+")");
-    }
+    logTrackedStopTime(gtfsStopTime, gtfsTrip, planitTrip, planitRoutedService, arrivalTime, departureTime);
 
     data.getProfiler().incrementTripStopTimeCount();
 
@@ -304,6 +653,41 @@ public class GtfsPlanitFileHandlerStopTimes extends GtfsFileHandlerStopTimes {
     this.prevStopTimeTrip = gtfsTrip;
   }
 
+  /**
+   * Handle the remaining trip when pre-clipping is activated and when parallel conversion is activated, convert and commit all remaining trips
+   */
+  @Override
+  public void handleComplete() {
+    handlePreClipTrip();
+    if(conversionExecutor == null){
+      releaseLastEncounteredTrip();
+      return;
+    }
+
+    try {
+      submitCollectedTripForConversion();
+      while (!tripsInConversion.isEmpty()) {
+        commitConvertedTrip(tripsInConversion.pollFirst());
+      }
+    }finally {
+      conversionExecutor.shutdownNow();
+      conversionExecutor = null;
+    }
+    releaseLastEncounteredTrip();
+  }
+
+  /**
+   * Release state of the last encountered trip, evicting it when activated
+   */
+  private void releaseLastEncounteredTrip(){
+    if(lastEncounteredTrip != null && data.getSettings().isEvictCompletedGtfsTrips()){
+      data.evictGtfsTrip(lastEncounteredTrip);
+    }
+    lastEncounteredTrip = null;
+    prevStopTimeTrip = null;
+    prevSameTripStopTime = null;
+  }
+
   /**
    * Reset
    */
@@ -311,6 +695,15 @@ public class GtfsPlanitFileHandlerStopTimes extends GtfsFileHandlerStopTimes {
   public void reset(){
     prevSameTripStopTime = null;
     prevStopTimeTrip = null;
+    lastEncounteredTrip = null;
+    collectingTrip = null;
+    collectingTripStopTimes = null;
+    preClipTrip = null;
+    preClipTripStopTimes = null;
+    preClipDecidedTrips.clear();
+    preClipNonContiguousTripId = null;
+    tripsInConversion.forEach(f -> f.cancel(true));
+    tripsInConversion.clear();
     uniqueRoutesForStopsIfLoggingRequired.clear();
   }
 
@@ -10,8 +10,10 @@ import org.goplanit.gtfs.enums.RouteType;
 import org.goplanit.network.ServiceNetwork;
 import org.goplanit.utils.misc.CustomIndexTracker;
 import org.goplanit.utils.misc.Pair;
+import org.goplanit.utils.misc.StringUtils;
 import org.goplanit.utils.mode.Mode;
 import org.goplanit.utils.network.layer.service.ServiceLeg;
+import org.goplanit.utils.network.layer.service.ServiceLegSegment;
 import org.goplanit.utils.network.layer.service.ServiceNode;
 import org.goplanit.utils.service.routed.RoutedService;
 import org.goplanit.service.routed.RoutedServices;
@@ -19,11 +21,10 @@ import org.goplanit.utils.service.routed.RoutedServicesLayer;
 import org.goplanit.utils.service.routed.RoutedTripSchedule;
 import org.goplanit.utils.time.ExtendedLocalTime;
 
+import java.time.DayOfWeek;
 import java.time.LocalTime;
-import java.util.HashMap;
-import java.util.HashSet;
-import java.util.Map;
-import java.util.Set;
+import java.util.*;
+import java.util.concurrent.atomic.LongAdder;
 import java.util.function.Function;
 import java.util.logging.Logger;
 
@@ -40,6 +41,7 @@ public class GtfsServicesHandlerData extends GtfsConverterHandlerData {
     ROUTE_MODE_INCOMPATIBLE,
     SERVICE_ID_DISCARDED,
     TIME_PERIOD_DISCARDED,
+    OUTSIDE_NETWORK_BOUNDING_BOX,
     UNKNOWN;
   }
 
@@ -63,12 +65,29 @@ public class GtfsServicesHandlerData extends GtfsConverterHandlerData {
   /** track all data mappings using a single 1:1 mapping*/
   CustomIndexTracker customIndexTracker;
 
+  /** track GTFS trip entries by trip id (GTFS TRIP_ID), kept separate from other indices as entries may be evicted once a trip is completed */
+  Map<String, GtfsTrip> gtfsTripsByTripId;
+
+  /** track PLANit scheduled trip entries by its external id (GTFS TRIP_ID), kept separate from other indices as entries may be evicted once a trip is completed */
+  Map<String, RoutedTripSchedule> planitScheduleBasedTripsByExternalId;
+
+  /** when completed GTFS trips are evicted, removed trips are no longer tracked by trip id, only their number by removal type */
+  Map<TripRemovalType, LongAdder> removedGtfsTripCounts;
+
 
   /** track which routes have been discarded and why, to ensure we do not log warnings for correctly ignored GTFS routes */
   Map<String, Pair<RouteType, RouteRemovalType>> removedRoutes;
   /** track which trips have been discarded based on discard type */
   Map<TripRemovalType, Set<String>> removedGtfsTrips;
 
+  /** track the chosen day(s) of week each created PLANit scheduled trip is active on, allowing for a single day-tagged result when multiple days are chosen. Keyed
+   * by the PLANit trip rather than the GTFS trip id, so it only grows with the produced trips and is unaffected by eviction of GTFS side state. Identity based,
+   * since ids of PLANit trips are recreated during post-processing */
+  Map<RoutedTripSchedule, Set<DayOfWeek>> activeDaysOfWeekByRoutedTrip;
+
+  /** track the GTFS shape id of the first GTFS trip (with a shape) using each service leg segment, allowing shape guided mapping to the physical network */
+  Map<ServiceLegSegment, String> gtfsShapeIdsByServiceLegSegment;
+
   /** index routed services by mode */
   Map<Mode, RoutedServicesLayer> routedServiceLayerByMode;
 
@@ -78,6 +97,9 @@ public class GtfsServicesHandlerData extends GtfsConverterHandlerData {
    */
   Map<ServiceLeg, Mode> serviceLegMapMapping;
 
+  /** when pre-clipping is activated, only GTFS stops with these ids are considered within the area of the reference network, null when not activated */
+  Set<String> preClipGtfsStopIds;
+
   // TO POPULATE
 
   /** routed service to populate (indirectly via mode indexed {@link #routedServiceLayerByMode}) */
@@ -101,15 +123,17 @@ public class GtfsServicesHandlerData extends GtfsConverterHandlerData {
     customIndexTracker = new CustomIndexTracker();
     /* track routed service entries by external id (GTFS ROUTE_ID) */
     customIndexTracker.initialiseEntityContainer(RoutedService.class, (routedService) -> routedService.getExternalId());
-    /* track GTFS trip entries by trip id (GTFS TRIP_ID) */
-    customIndexTracker.initialiseEntityContainer(GtfsTrip.class, (gtfsTrip) -> gtfsTrip.getTripId());
-    /* track PLANit scheduled trip entries by its external id (GTFS TRIP_ID) */
-    customIndexTracker.initialiseEntityContainer(RoutedTripSchedule.class, (planitScheduledTrip) -> planitScheduledTrip.getExternalId());
     /* track PLANit service nodes by external id (GTFS STOP_ID) */
     customIndexTracker.initialiseEntityContainer(ServiceNode.class, getServiceNodeToGtfsStopIdMapping());
 
     removedRoutes = new HashMap<>();
+    gtfsTripsByTripId = new HashMap<>();
+    planitScheduleBasedTripsByExternalId = new HashMap<>();
+
     removedGtfsTrips = new HashMap<>();
+    removedGtfsTripCounts = new EnumMap<>(TripRemovalType.class);
+    activeDaysOfWeekByRoutedTrip = new IdentityHashMap<>();
+    gtfsShapeIdsByServiceLegSegment = new HashMap<>();
   }
 
   /**
@@ -189,6 +213,13 @@ public class GtfsServicesHandlerData extends GtfsConverterHandlerData {
    * @param type reason for discarding
    */
   public void registeredRemovedGtfsTrip(GtfsTrip gtfsTrip, TripRemovalType type){
+    if(getSettings().isEvictCompletedGtfsTrips()){
+      /* no need to track the trip id, unindexed trips are ignored when processing stop times */
+      removedGtfsTripCounts.computeIfAbsent(type, t -> new LongAdder()).increment();
+      evictGtfsTrip(gtfsTrip);
+      return;
+    }
+
     var removedGtfsTripsByType = this.removedGtfsTrips.get(type);
     if(removedGtfsTripsByType==null){
       removedGtfsTripsByType = new HashSet<>();
@@ -206,6 +237,56 @@ public class GtfsServicesHandlerData extends GtfsConverterHandlerData {
     return this.removedGtfsTrips.entrySet().stream().filter(e -> e.getValue().contains(gtfsTripId)).findFirst().isPresent();
   }
 
+  /**
+   * Number of GTFS trips registered as removed for the given reason
+   *
+   * @param type of removal
+   * @return number of removed trips
+   */
+  public long getNumberOfRemovedGtfsTrips(TripRemovalType type){
+    var count = removedGtfsTripCounts.get(type);
+    return (count != null ? count.longValue() : 0) + removedGtfsTrips.getOrDefault(type, Collections.emptySet()).size();
+  }
+
+  /**
+   * Evict all GTFS side state of a GTFS trip, i.e., the GTFS trip itself and the index of its PLANit trip by GTFS trip id. The PLANit trip
+   * itself remains part of the routed services. Once evicted, any further GTFS stop times of this trip are ignored.
+   *
+   * @param gtfsTrip to evict
+   */
+  public void evictGtfsTrip(GtfsTrip gtfsTrip){
+    gtfsTripsByTripId.remove(gtfsTrip.getTripId());
+    planitScheduleBasedTripsByExternalId.remove(gtfsTrip.getTripId());
+  }
+
+  /**
+   * Activate pre-clipping of GTFS trips to the area of the reference network
+   *
+   * @param preClipGtfsStopIds ids of GTFS stops considered within the area of the reference network, null to deactivate
+   */
+  public void setPreClipGtfsStopIds(Set<String> preClipGtfsStopIds) {
+    this.preClipGtfsStopIds = preClipGtfsStopIds;
+  }
+
+  /**
+   * Verify if pre-clipping of GTFS trips to the area of the reference network is activated
+   *
+   * @return true when activated, false otherwise
+   */
+  public boolean isPreClipActivated() {
+    return preClipGtfsStopIds != null;
+  }
+
+  /**
+   * Verify if GTFS stop is within the pre-clipped area, always true when pre-clipping is not activated
+   *
+   * @param gtfsStopId to verify
+   * @return true when within, false otherwise
+   */
+  public boolean isGtfsStopWithinPreClip(String gtfsStopId) {
+    return preClipGtfsStopIds == null || preClipGtfsStopIds.contains(gtfsStopId);
+  }
+
   /**
    * Mark the service leg as compatible with the given mode, and this given mode only.
    * @param parentLeg to attribute mode to
@@ -257,16 +338,29 @@ public class GtfsServicesHandlerData extends GtfsConverterHandlerData {
   }
 
   /**
-   * Verify if a service id is active AND the given departure time for that service id falls within an active time period
+   * Verify if a service id is active AND the given departure time for that service id falls within an active time period on
+   * any of the chosen days
    *
    * @param serviceId to check
    * @param departureTime to check
    * @return true when deemed active on a date serviced by this service id, false otherwise
    */
   public boolean isDepartureTimeOfServiceIdWithinEligibleTimePeriod(String serviceId, ExtendedLocalTime departureTime) {
+    return !getEligibleDaysOfWeekForDeparture(serviceId, departureTime).isEmpty();
+  }
 
+  /**
+   * Collect the chosen days of week on which the given departure time of an active service id falls within an active time period. A departure
+   * that exceeds a single day is attributed to the day after the day its service id is active on.
+   *
+   * @param serviceId to check
+   * @param departureTime to check
+   * @return chosen days on which the departure is eligible, empty if none
+   */
+  public Set<DayOfWeek> getEligibleDaysOfWeekForDeparture(String serviceId, ExtendedLocalTime departureTime) {
+    var eligibleDays = EnumSet.noneOf(DayOfWeek.class);
     if(!isServiceIdActivated(serviceId)) {
-      return false;
+      return eligibleDays;
     }
 
     /* lambda function to apply once we have prepped our departure time and mapped it to the right reference day */
@@ -282,36 +376,96 @@ public class GtfsServicesHandlerData extends GtfsConverterHandlerData {
           period -> !period.first().isAfter(withinDayDepartureTime) && !period.second().isBefore(withinDayDepartureTime));
     };
 
-    /* same day regular case */
     var gtfsCalendar = activeGtfsServiceIdCalendars.get(serviceId);
-    if(gtfsCalendar.isActiveOn(getSettings().getDayOfWeek())){
-
-
-      if(departureTime.exceedsSingleDay()){
-        /* not on same day due to extended time*/
-        return false;
+    boolean exceedsSingleDay = departureTime.exceedsSingleDay();
+    for(var dayOfWeek : getSettings().getDaysOfWeek()) {
+      if(!exceedsSingleDay) {
+        /* same day regular case, check filters by looking at component before midnight */
+        if (gtfsCalendar.isActiveOn(dayOfWeek) && isEligibleDeparture.apply(departureTime.asLocalTimeBeforeMidnight())) {
+          eligibleDays.add(dayOfWeek);
+        }
+      }else{
+        /* preceding day special case, check filters by looking at component after midnight which given it is on preceding day, results in the
+         * morning of the eligible day*/
+        if (gtfsCalendar.isActiveOn(dayOfWeek.minus(1)) && isEligibleDeparture.apply(departureTime.asLocalTimeAfterMidnight())) {
+          eligibleDays.add(dayOfWeek);
+        }
       }
+    }
+    return eligibleDays;
+  }
 
-      /* check filters by looking at component before midnight */
-      return isEligibleDeparture.apply(departureTime.asLocalTimeBeforeMidnight());
+  /**
+   * Register the chosen day(s) of week a PLANit scheduled trip is active on
+   *
+   * @param planitTrip to register for
+   * @param daysOfWeek the trip is active on
+   */
+  public void registerActiveDaysOfWeek(RoutedTripSchedule planitTrip, Set<DayOfWeek> daysOfWeek) {
+    activeDaysOfWeekByRoutedTrip.computeIfAbsent(planitTrip, k -> EnumSet.noneOf(DayOfWeek.class)).addAll(daysOfWeek);
+  }
 
-    }
-    /* preceding day special case */
-    else if(gtfsCalendar.isActiveOn(getSettings().getDayOfWeek().minus(1))){
-      if(!departureTime.exceedsSingleDay()){
-        /* not on actual selected day due to extended time not overflowing*/
-        return false;
+  /**
+   * Collect the chosen day(s) of week a PLANit scheduled trip has been found to be active on
+   *
+   * @param planitTrip to collect for
+   * @return days of week, empty when not registered
+   */
+  public Set<DayOfWeek> getActiveDaysOfWeek(RoutedTripSchedule planitTrip) {
+    return Collections.unmodifiableSet(activeDaysOfWeekByRoutedTrip.getOrDefault(planitTrip, EnumSet.noneOf(DayOfWeek.class)));
+  }
+
+  /**
+   * Only retain the day(s) of week of PLANit scheduled trips that are still part of the routed services, i.e., drop those of trips removed during
+   * post-processing
+   */
+  public void retainActiveDaysOfWeekOfExistingRoutedTrips() {
+    Map<RoutedTripSchedule, Set<DayOfWeek>> retained = new IdentityHashMap<>();
+    for(var routedServicesLayer : getRoutedServices().getLayers()){
+      for(var routedModeServices : routedServicesLayer) {
+        for(var routedService : routedModeServices){
+          for(var planitTrip : routedService.getTripInfo().getScheduleBasedTrips()){
+            var daysOfWeek = activeDaysOfWeekByRoutedTrip.get(planitTrip);
+            if(daysOfWeek != null){
+              retained.put(planitTrip, daysOfWeek);
+            }
+          }
+        }
       }
+    }
+    activeDaysOfWeekByRoutedTrip = retained;
+  }
 
-      /* check filters by looking at component after midnight which given it is on preceding day, results in the morning of the eligible day*/
-      return isEligibleDeparture.apply(departureTime.asLocalTimeAfterMidnight());
+  /**
+   * Collect the chosen day(s) of week per PLANit scheduled trip for all created trips
+   *
+   * @return unmodifiable map of days of week by PLANit scheduled trip
+   */
+  public Map<RoutedTripSchedule, Set<DayOfWeek>> getActiveDaysOfWeekByRoutedTrip() {
+    return Collections.unmodifiableMap(activeDaysOfWeekByRoutedTrip);
+  }
 
-    }else{
-      LOGGER.severe("ServiceId active but GTFSCalendar entry does not match eligible active day, this should not happen");
-      return false;
+  /**
+   * Register the GTFS shape id of a GTFS trip using the service leg segment, only the first registered shape id is retained
+   *
+   * @param serviceLegSegment used by the GTFS trip
+   * @param gtfsShapeId of the GTFS trip, ignored when null or blank
+   */
+  public void registerGtfsShapeId(ServiceLegSegment serviceLegSegment, String gtfsShapeId) {
+    if(StringUtils.isNullOrBlank(gtfsShapeId)){
+      return;
     }
+    gtfsShapeIdsByServiceLegSegment.putIfAbsent(serviceLegSegment, gtfsShapeId);
   }
 
+  /**
+   * Collect the GTFS shape id per service leg segment for all service leg segments used by a GTFS trip with a shape
+   *
+   * @return unmodifiable map of GTFS shape id by service leg segment
+   */
+  public Map<ServiceLegSegment, String> getGtfsShapeIdsByServiceLegSegment() {
+    return Collections.unmodifiableMap(gtfsShapeIdsByServiceLegSegment);
+  }
 
   /**
    * Index the service node by its external id (GTFS_STOP_ID)
@@ -336,7 +490,7 @@ public class GtfsServicesHandlerData extends GtfsConverterHandlerData {
    * @param gtfsTrip to register
    */
   public void indexByGtfsTripId(GtfsTrip gtfsTrip) {
-    customIndexTracker.register(GtfsTrip.class, gtfsTrip);
+    gtfsTripsByTripId.put(gtfsTrip.getTripId(), gtfsTrip);
   }
 
   /**
@@ -346,7 +500,7 @@ public class GtfsServicesHandlerData extends GtfsConverterHandlerData {
    * @return found GTFS trip entity
    */
   public GtfsTrip getGtfsTripByGtfsTripId(String gtfsTripId) {
-    return customIndexTracker.get(GtfsTrip.class, gtfsTripId);
+    return gtfsTripsByTripId.get(gtfsTripId);
   }
 
   /**
@@ -354,7 +508,7 @@ public class GtfsServicesHandlerData extends GtfsConverterHandlerData {
    * @param planitScheduleBasedTrip to register
    */
   public void indexByExternalId(RoutedTripSchedule planitScheduleBasedTrip) {
-    customIndexTracker.register(RoutedTripSchedule.class, planitScheduleBasedTrip);
+    planitScheduleBasedTripsByExternalId.put(planitScheduleBasedTrip.getExternalId(), planitScheduleBasedTrip);
   }
 
   /**
@@ -364,7 +518,7 @@ public class GtfsServicesHandlerData extends GtfsConverterHandlerData {
    * @return found schedule based PLANit trip (null if not present)
    */
   public RoutedTripSchedule getPlanitScheduleBasedTripByExternalId(String externalId) {
-    return customIndexTracker.get(RoutedTripSchedule.class, externalId);
+    return planitScheduleBasedTripsByExternalId.get(externalId);
   }
 
   /**
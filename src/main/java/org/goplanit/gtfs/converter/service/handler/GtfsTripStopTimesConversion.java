@@ -0,0 +1,215 @@
+package org.goplanit.gtfs.converter.service.handler;
+
+import org.goplanit.gtfs.entity.GtfsStopTime;
+import org.goplanit.gtfs.entity.GtfsTrip;
+import org.goplanit.gtfs.util.GtfsUtils;
+import org.goplanit.utils.time.ExtendedLocalTime;
+
+import java.time.DayOfWeek;
+import java.time.LocalTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Set;
+import java.util.logging.Logger;
+
+/**
+ * Conversion of all GTFS stop times of a single completed GTFS trip into the information required to populate the PLANit memory model, i.e.,
+ * eligibility of the trip, accepted stop times, and relative timings between them. This conversion does not touch the PLANit memory model and only
+ * reads from the handler data, so it can be conducted on any thread. Counts for the profiler are retained in the result rather than registered directly, since
+ * the profiler is not thread safe. The result is committed to the PLANit memory model by the stop times handler in
+ * original file order, such that PLANit ids are identical to a sequential conversion.
+ *
+ * @author markr
+ */
+class GtfsTripStopTimesConversion {
+
+  /** logger to use */
+  private static final Logger LOGGER = Logger.getLogger(GtfsTripStopTimesConversion.class.getCanonicalName());
+
+  /**
+   * A stop time accepted for inclusion in the PLANit trip
+   */
+  static class ConvertedStopTime {
+
+    /** the GTFS stop time */
+    final GtfsStopTime gtfsStopTime;
+
+    /** parsed arrival time */
+    final ExtendedLocalTime arrivalTime;
+
+    /** parsed departure time */
+    final ExtendedLocalTime departureTime;
+
+    /** duration since departure at previous accepted stop, null for first stop or when invalid */
+    final LocalTime duration;
+
+    /** dwell time at stop, null for first stop or when invalid */
+    final LocalTime dwellTime;
+
+    /** when false, the stop is only used to create a service leg segment, but does not contribute timing (and is not an accepted stop) */
+    final boolean validTiming;
+
+    /**
+     * Constructor
+     *
+     * @param gtfsStopTime the GTFS stop time
+     * @param arrivalTime parsed arrival time
+     * @param departureTime parsed departure time
+     * @param duration since previous accepted stop
+     * @param dwellTime at this stop
+     * @param validTiming flag indicating valid timing
+     */
+    ConvertedStopTime(GtfsStopTime gtfsStopTime, ExtendedLocalTime arrivalTime, ExtendedLocalTime departureTime, LocalTime duration, LocalTime dwellTime, boolean validTiming) {
+      this.gtfsStopTime = gtfsStopTime;
+      this.arrivalTime = arrivalTime;
+      this.departureTime = departureTime;
+      this.duration = duration;
+      this.dwellTime = dwellTime;
+      this.validTiming = validTiming;
+    }
+  }
+
+  /** the GTFS trip converted */
+  private final GtfsTrip gtfsTrip;
+
+  /** converted stop times in order */
+  private final List<ConvertedStopTime> convertedStopTimes = new ArrayList<>();
+
+  /** the chosen days the trip is active on, including days on which only later stops of a partial trip are within the time period */
+  private Set<DayOfWeek> eligibleDays = Collections.emptySet();
+
+  /** flag indicating the trip is to be discarded because its departure is outside of the eligible time period(s) */
+  private boolean timePeriodDiscarded = false;
+
+  /** number of stop times filtered because they are considered equal to the previous accepted stop time */
+  private int numberOfDuplicateStopTimes = 0;
+
+  /**
+   * Constructor
+   *
+   * @param gtfsTrip to convert stop times for
+   */
+  private GtfsTripStopTimesConversion(GtfsTrip gtfsTrip){
+    this.gtfsTrip = gtfsTrip;
+  }
+
+  /**
+   * Compare by ids and departure arrival time, when all equal, it is considered equal for our intents and purposes
+   *
+   * @param left to compare
+   * @param right to compare
+   * @return true when considered equal, false otherwise
+   */
+  static boolean isConsideredEqual(GtfsStopTime left, GtfsStopTime right) {
+    return
+        left.getTripId().equals(right.getTripId()) &&
+        left.getStopId().equals(right.getStopId()) &&
+        left.getDepartureTime().equals(right.getDepartureTime()) &&
+        left.getArrivalTime().equals(right.getArrivalTime());
+  }
+
+  /**
+   * Convert the stop times of a completed GTFS trip applying the same rules as the sequential stop times handler
+   *
+   * @param gtfsTrip the trip
+   * @param gtfsStopTimes all stop times of the trip in file order
+   * @param data to use for eligibility checks (read only)
+   * @return conversion result
+   */
+  static GtfsTripStopTimesConversion convert(GtfsTrip gtfsTrip, List<GtfsStopTime> gtfsStopTimes, GtfsServicesHandlerData data){
+    var result = new GtfsTripStopTimesConversion(gtfsTrip);
+
+    GtfsStopTime prevAcceptedStopTime = null;
+    for(var gtfsStopTime : gtfsStopTimes){
+      ExtendedLocalTime arrivalTime = GtfsUtils.parseGtfsTime(gtfsStopTime.getArrivalTime());
+      ExtendedLocalTime departureTime = GtfsUtils.parseGtfsTime(gtfsStopTime.getDepartureTime());
+
+      /* first eligible stop time of trip is the departure */
+      if(prevAcceptedStopTime == null){
+        var eligibleDays = data.getEligibleDaysOfWeekForDeparture(gtfsTrip.getServiceId(), departureTime);
+        if(eligibleDays.isEmpty()){
+          if(!data.getSettings().isIncludePartialGtfsTripsIfStopsInTimePeriod()) {
+            result.timePeriodDiscarded = true;
+            return result;
+          }
+          continue;
+        }
+        result.eligibleDays = EnumSet.copyOf(eligibleDays);
+        result.convertedStopTimes.add(new ConvertedStopTime(gtfsStopTime, arrivalTime, departureTime, null, null, true));
+        prevAcceptedStopTime = gtfsStopTime;
+        continue;
+      }
+
+      /* GTFS may contain virtually identical entries in terms of arrival departure times for the same trip and stop */
+      if(isConsideredEqual(gtfsStopTime, prevAcceptedStopTime)){
+        ++result.numberOfDuplicateStopTimes;
+        continue;
+      }
+
+      /* partial trip may enter the time period at a later stop on other chosen days than the day(s) of its departure */
+      if(data.getSettings().isIncludePartialGtfsTripsIfStopsInTimePeriod()){
+        result.eligibleDays.addAll(data.getEligibleDaysOfWeekForDeparture(gtfsTrip.getServiceId(), departureTime));
+      }
+
+      var duration = arrivalTime.minus(GtfsUtils.parseGtfsTime(prevAcceptedStopTime.getDepartureTime()));
+      var dwellTime = departureTime.minus(arrivalTime);
+      if(duration.exceedsSingleDay() || dwellTime.exceedsSingleDay()){
+        LOGGER.severe(String.format("Duration (%s) between stops (%s, %s) and/or dwell time at stop (%s) should be less than a day, ignored",
+            duration, prevAcceptedStopTime.getStopId(), gtfsStopTime.getStopId(), dwellTime));
+        result.convertedStopTimes.add(new ConvertedStopTime(gtfsStopTime, arrivalTime, departureTime, null, null, false));
+        continue;
+      }
+      result.convertedStopTimes.add(
+          new ConvertedStopTime(gtfsStopTime, arrivalTime, departureTime, duration.asLocalTimeBeforeMidnight(), dwellTime.asLocalTimeBeforeMidnight(), true));
+      prevAcceptedStopTime = gtfsStopTime;
+    }
+    return result;
+  }
+
+  /**
+   * The converted GTFS trip
+   *
+   * @return GTFS trip
+   */
+  GtfsTrip getGtfsTrip() {
+    return gtfsTrip;
+  }
+
+  /**
+   * Converted stop times in order, first entry is the departure
+   *
+   * @return converted stop times
+   */
+  List<ConvertedStopTime> getConvertedStopTimes() {
+    return convertedStopTimes;
+  }
+
+  /**
+   * Chosen days the trip is active on
+   *
+   * @return eligible days
+   */
+  Set<DayOfWeek> getEligibleDays() {
+    return eligibleDays;
+  }
+
+  /**
+   * Number of stop times filtered because they are considered equal to the previous accepted stop time, to be registered with the profiler upon commit
+   *
+   * @return number of duplicate stop times
+   */
+  int getNumberOfDuplicateStopTimes() {
+    return numberOfDuplicateStopTimes;
+  }
+
+  /**
+   * Check if trip is to be discarded as a whole due to its departure time being outside the eligible time period(s)
+   *
+   * @return true when discarded, false otherwise
+   */
+  boolean isTimePeriodDiscarded() {
+    return timePeriodDiscarded;
+  }
+}
@@ -0,0 +1,246 @@
+package org.goplanit.gtfs.converter.zoning;
+
+import org.goplanit.gtfs.converter.zoning.handler.GtfsZoningHandlerData;
+import org.goplanit.utils.exceptions.PlanItRunTimeException;
+import org.goplanit.utils.geo.PlanitJtsCrsUtils;
+import org.goplanit.utils.misc.Pair;
+import org.goplanit.utils.network.layer.service.ServiceNode;
+import org.goplanit.utils.zoning.TransferZone;
+import org.locationtech.jts.geom.Envelope;
+import org.locationtech.jts.geom.Point;
+import org.locationtech.jts.index.strtree.STRtree;
+import org.opengis.referencing.crs.CoordinateReferenceSystem;
+
+import java.util.*;
+import java.util.logging.Logger;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+/**
+ * Spatial query facade over the GTFS stops mapped by the {@link GtfsZoningReader}, each with its PLANit transfer zone and (pre-existing) service node.
+ * Supports range (within distance) and k-nearest queries in metres for locations in the CRS of the PLANit network, both individually and in bulk.
+ * <p>
+ *   The index is immutable once created, queries are thread safe and bulk queries are conducted in parallel.
+ * </p>
+ *
+ * @author markr
+ */
+public class GtfsMappedStopsSpatialIndex {
+
+  /** Logger to use */
+  private static final Logger LOGGER = Logger.getLogger(GtfsMappedStopsSpatialIndex.class.getCanonicalName());
+
+  /** initial search radius for k-nearest queries, doubled until sufficient stops are found */
+  public static final double INITIAL_NEAREST_SEARCH_RADIUS_METERS = 250;
+
+  /** maximum search radius for k-nearest queries (approximately half the circumference of the earth) */
+  public static final double MAX_NEAREST_SEARCH_RADIUS_METERS = 2.0e7;
+
+  /**
+   * A mapped GTFS stop
+   */
+  public static final class MappedStop {
+
+    /** GTFS stop id */
+    private final String gtfsStopId;
+
+    /** location of the GTFS stop in the CRS of the PLANit network */
+    private final Point location;
+
+    /** transfer zone the GTFS stop is mapped to */
+    private final TransferZone transferZone;
+
+    /** service node of the GTFS stop, may be null */
+    private final ServiceNode serviceNode;
+
+    /**
+     * Constructor
+     *
+     * @param gtfsStopId GTFS stop id
+     * @param location of the stop (network CRS)
+     * @param transferZone mapped to
+     * @param serviceNode of the stop, may be null
+     */
+    private MappedStop(String gtfsStopId, Point location, TransferZone transferZone, ServiceNode serviceNode) {
+      this.gtfsStopId = gtfsStopId;
+      this.location = location;
+      this.transferZone = transferZone;
+      this.serviceNode = serviceNode;
+    }
+
+    /**
+     * @return GTFS stop id
+     */
+    public String getGtfsStopId() {
+      return gtfsStopId;
+    }
+
+    /**
+     * @return location of the GTFS stop in the CRS of the PLANit network
+     */
+    public Point getLocation() {
+      return location;
+    }
+
+    /**
+     * @return transfer zone the GTFS stop is mapped to
+     */
+    public TransferZone getTransferZone() {
+      return transferZone;
+    }
+
+    /**
+     * @return service node of the GTFS stop, null if not available
+     */
+    public ServiceNode getServiceNode() {
+      return serviceNode;
+    }
+  }
+
+  /** bulk-loaded index of mapped stops */
+  private final STRtree index;
+
+  /** number of mapped stops */
+  private final int size;
+
+  /** bounds of all mapped stops */
+  private final Envelope bounds;
+
+  /** geo tools are not thread safe, each querying thread uses its own */
+  private final ThreadLocal<PlanitJtsCrsUtils> geoTools;
+
+  /**
+   * Find all mapped stops within the search envelope and the given distance of the location
+   *
+   * @param location to search around (network CRS)
+   * @param searchEnvelope to query index with
+   * @param radiusMeters to search within
+   * @return found stops and their distance in metres, sorted by increasing distance
+   */
+  @SuppressWarnings("unchecked")
+  private List<Pair<MappedStop, Double>> findWithinMetres(Point location, Envelope searchEnvelope, double radiusMeters){
+    var threadGeoTools = geoTools.get();
+    List<Pair<MappedStop, Double>> result = new ArrayList<>();
+    for(var mappedStop : (List<MappedStop>) index.query(searchEnvelope)){
+      double distance = threadGeoTools.getDistanceInMetres(location.getCoordinate(), mappedStop.getLocation().getCoordinate());
+      if(distance <= radiusMeters){
+        result.add(Pair.of(mappedStop, distance));
+      }
+    }
+    result.sort(Comparator.comparingDouble((Pair<MappedStop, Double> p) -> p.second()).thenComparing(p -> p.first().getGtfsStopId()));
+    return result;
+  }
+
+  /**
+   * Constructor
+   *
+   * @param mappedStops to index
+   * @param crs of the locations
+   */
+  private GtfsMappedStopsSpatialIndex(Collection<MappedStop> mappedStops, CoordinateReferenceSystem crs) {
+    this.index = new STRtree();
+    this.bounds = new Envelope();
+    for(var mappedStop : mappedStops){
+      var envelope = mappedStop.getLocation().getEnvelopeInternal();
+      index.insert(envelope, mappedStop);
+      bounds.expandToInclude(envelope);
+    }
+    /* build explicitly, lazy building on first query is not thread safe */
+    index.build();
+    this.size = mappedStops.size();
+    this.geoTools = ThreadLocal.withInitial(() -> new PlanitJtsCrsUtils(crs));
+  }
+
+  /**
+   * Create the index for all GTFS stops mapped to a transfer zone so far
+   *
+   * @param data to extract mapped GTFS stops from
+   * @return created index
+   */
+  static GtfsMappedStopsSpatialIndex create(GtfsZoningHandlerData data){
+    List<MappedStop> mappedStops = new ArrayList<>();
+    for(var gtfsStop : data.getMappedGtfsStops()){
+      var transferZone = data.getMappedTransferZone(gtfsStop);
+      if(transferZone == null){
+        continue;
+      }
+      mappedStops.add(new MappedStop(gtfsStop.getStopId(), data.getProjectedLocation(gtfsStop), transferZone, data.getServiceNode(gtfsStop.getStopId())));
+    }
+    LOGGER.fine(String.format("Created spatial index over %d mapped GTFS stops", mappedStops.size()));
+    return new GtfsMappedStopsSpatialIndex(mappedStops, data.getGeoTools().getCoordinateReferenceSystem());
+  }
+
+  /**
+   * Find all mapped stops within the given distance of the location
+   *
+   * @param location to search around (network CRS)
+   * @param radiusMeters to search within
+   * @return found stops and their distance in metres, sorted by increasing distance
+   */
+  public List<Pair<MappedStop, Double>> findWithinMetres(Point location, double radiusMeters){
+    PlanItRunTimeException.throwIfNull(location, "Location to find mapped GTFS stops around is null");
+    return findWithinMetres(location, geoTools.get().createBoundingBox(location.getX(), location.getY(), radiusMeters), radiusMeters);
+  }
+
+  /**
+   * Find the k nearest mapped stops to the location. The search radius is expanded until at least k stops are found within it, such that the result is
+   * exact in terms of distance in metres
+   *
+   * @param location to search around (network CRS)
+   * @param k number of stops to find
+   * @return found stops and their distance in metres, sorted by increasing distance, fewer than k if fewer stops are mapped
+   */
+  public List<Pair<MappedStop, Double>> findNearest(Point location, int k){
+    PlanItRunTimeException.throwIf(k <= 0, String.format("Number of nearest mapped GTFS stops to find must be positive, found %d", k));
+    int numToFind = Math.min(k, size);
+    if(numToFind == 0){
+      return new ArrayList<>();
+    }
+
+    double radiusMeters = INITIAL_NEAREST_SEARCH_RADIUS_METERS;
+    while(true) {
+      var result = findWithinMetres(location, radiusMeters);
+      if(result.size() >= numToFind){
+        return new ArrayList<>(result.subList(0, numToFind));
+      }
+      /* once the search envelope covers all stops, rank all of them */
+      if(radiusMeters >= MAX_NEAREST_SEARCH_RADIUS_METERS ||
+          geoTools.get().createBoundingBox(location.getX(), location.getY(), radiusMeters).covers(bounds)){
+        result = findWithinMetres(location, bounds, Double.POSITIVE_INFINITY);
+        return new ArrayList<>(result.subList(0, Math.min(numToFind, result.size())));
+      }
+      radiusMeters *= 2;
+    }
+  }
+
+  /**
+   * Find all mapped stops within the given distance of each of the locations, conducted in parallel
+   *
+   * @param locations to search around (network CRS)
+   * @param radiusMeters to search within
+   * @return per location (in the same order) the found stops and their distance in metres, sorted by increasing distance
+   */
+  public List<List<Pair<MappedStop, Double>>> findWithinMetres(List<Point> locations, double radiusMeters){
+    return IntStream.range(0, locations.size()).parallel().mapToObj(i -> findWithinMetres(locations.get(i), radiusMeters)).collect(Collectors.toList());
+  }
+
+  /**
+   * Find the k nearest mapped stops to each of the locations, conducted in parallel
+   *
+   * @param locations to search around (network CRS)
+   * @param k number of stops to find per location
+   * @return per location (in the same order) the found stops and their distance in metres, sorted by increasing distance
+   */
+  public List<List<Pair<MappedStop, Double>>> findNearest(List<Point> locations, int k){
+    return IntStream.range(0, locations.size()).parallel().mapToObj(i -> findNearest(locations.get(i), k)).collect(Collectors.toList());
+  }
+
+  /**
+   * Number of mapped stops in the index
+   *
+   * @return number of mapped stops
+   */
+  public int size(){
+    return size;
+  }
+}
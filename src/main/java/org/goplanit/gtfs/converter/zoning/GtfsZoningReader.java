@@ -3,11 +3,14 @@ package org.goplanit.gtfs.converter.zoning;
 import org.goplanit.converter.zoning.ZoningReader;
 import org.goplanit.graph.modifier.event.handler.SyncXmlIdToIdBreakEdgeHandler;
 import org.goplanit.graph.directed.modifier.event.handler.SyncXmlIdToIdBreakEdgeSegmentHandler;
+import org.goplanit.gtfs.converter.GtfsConverterPhaseMetrics;
 import org.goplanit.gtfs.converter.zoning.handler.GtfsPlanitFileHandlerStops;
 import org.goplanit.gtfs.converter.zoning.handler.GtfsZoningHandlerData;
 import org.goplanit.gtfs.converter.zoning.handler.GtfsZoningHandlerProfiler;
+import org.goplanit.gtfs.entity.GtfsStop;
 import org.goplanit.gtfs.enums.GtfsFileType;
 import org.goplanit.gtfs.enums.GtfsKeyType;
+import org.goplanit.gtfs.handler.GtfsFileHandlerStops;
 import org.goplanit.gtfs.reader.GtfsFileReaderStops;
 import org.goplanit.gtfs.reader.GtfsReaderFactory;
 import org.goplanit.gtfs.scheme.GtfsFileSchemeFactory;
@@ -20,8 +23,13 @@ import org.goplanit.utils.network.layer.MacroscopicNetworkLayer;
 import org.goplanit.utils.zoning.TransferZone;
 import org.goplanit.zoning.Zoning;
 import org.goplanit.zoning.ZoningModifierUtils;
+import org.locationtech.jts.geom.Point;
 
 import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.function.Function;
 import java.util.logging.Logger;
 
@@ -53,9 +61,18 @@ public class GtfsZoningReader implements ZoningReader {
   /** function that allows user to map a GTFS stop id to the underlying transfer zone (after {@link #read()} has been invoked) */
   private Function<String, TransferZone> gtfsStopIdToTransferZoneMapping;
 
+  /** function that maps a GTFS stop id to its location in the network CRS, only for mapped GTFS stops (after {@link #read()} has been invoked) */
+  private Function<String, Point> gtfsStopIdToLocationMapping;
+
+  /** spatial index over mapped GTFS stops, available after read */
+  private GtfsMappedStopsSpatialIndex mappedGtfsStopsSpatialIndex;
+
   /** flag whether {@link #read()} has been invoked, false after {@link #reset()}  */
   private boolean readInvoked;
 
+  /** phase metrics of the most recent read */
+  private GtfsConverterPhaseMetrics phaseMetrics;
+
   /**
    * Log some information about this reader's configuration
    */
@@ -113,24 +130,37 @@ public class GtfsZoningReader implements ZoningReader {
 
     // initialise data
     readInvoked = false;
+    var profiler = new GtfsZoningHandlerProfiler();
+    var phase = profiler.getPhaseMetrics().startPhase("initialisation");
     syncIdsAndinitialiseEventListeners();
-    return new GtfsZoningHandlerData(getSettings(), zoning, serviceNetwork, routedServices, new GtfsZoningHandlerProfiler());
+    var zoningHandlerData = new GtfsZoningHandlerData(getSettings(), zoning, serviceNetwork, routedServices, profiler);
+    phase.complete();
+    return zoningHandlerData;
   }
 
   /**
-   * Process the GTFS stops
+   * Process the GTFS stops. All stops are read first, such that their locations can be projected to the network CRS in a single batch, after which
+   * they are matched in file order
    *
    * @param gtfsZoningHandlerData to use
    */
   private void processStops(GtfsZoningHandlerData gtfsZoningHandlerData) {
     LOGGER.info("Processing: mapping GTFS Stops...");
-    /* PLANit specific handler */
-    var stopsHandler = new GtfsPlanitFileHandlerStops(gtfsZoningHandlerData);
+    var phase = gtfsZoningHandlerData.getProfiler().getPhaseMetrics().startPhase(GtfsFileType.STOPS.value());
+
+    /* collect all stops before matching, so they can be projected in one go */
+    final List<GtfsStop> gtfsStops = new ArrayList<>();
+    var collectingHandler = new GtfsFileHandlerStops(){
+      @Override
+      public void handle(GtfsStop gtfsStop) {
+        gtfsStops.add(gtfsStop);
+      }
+    };
 
     /* GTFS file reader that parses the raw GTFS data and applies the handler to each stop found */
     GtfsFileReaderStops stopsFileReader = (GtfsFileReaderStops) GtfsReaderFactory.createFileReader(
         GtfsFileSchemeFactory.create(GtfsFileType.STOPS), getSettings().getInputSource());
-    stopsFileReader.addHandler(stopsHandler);
+    stopsFileReader.addHandler(collectingHandler);
 
     /* configuration of reader */
     stopsFileReader.getSettings().excludeColumns(GtfsKeyType.STOP_CODE);
@@ -140,6 +170,29 @@ public class GtfsZoningReader implements ZoningReader {
 
     /* execute */
     stopsFileReader.read(StandardCharsets.UTF_8);
+
+    /* project all stop locations to the network CRS in a single batch */
+    int numProjected = gtfsZoningHandlerData.projectGtfsStops(gtfsStops);
+    LOGGER.fine(String.format("Projected %d of %d GTFS stop locations to PLANit network CRS", numProjected, gtfsStops.size()));
+
+    /* PLANit specific handler, applied to each stop in file order, optionally finding candidates for all stops in parallel first */
+    var stopsHandler = new GtfsPlanitFileHandlerStops(gtfsZoningHandlerData);
+    if(getSettings().isStationGroupedStopMatching()){
+      stopsHandler.prepareStationNeighbourhoods(gtfsStops);
+    }
+    if(getSettings().getParallelStopMatchingThreads() > 1){
+      stopsHandler.handleInParallel(gtfsStops, getSettings().getParallelStopMatchingThreads());
+    }else {
+      gtfsStops.forEach(stopsHandler::handle);
+    }
+    stopsHandler.handleComplete();
+
+    /* persist mappings of this run for replay in later runs */
+    if(gtfsZoningHandlerData.getStopMappingCache() != null){
+      gtfsZoningHandlerData.getStopMappingCache().save(getSettings().getStopMappingCacheFile());
+    }
+
+    phase.complete(stopsFileReader.getNumberOfRecordsRead(), stopsFileReader.getNumberOfBytesRead());
   }
 
 
@@ -202,8 +255,18 @@ public class GtfsZoningReader implements ZoningReader {
     /* log stats */
     zoningHandlerData.getProfiler().logProcessingStats(zoning);
 
+    /* timing and throughput of the read, optionally dumped for external tracking */
+    phaseMetrics = zoningHandlerData.getProfiler().getPhaseMetrics();
+    if(getSettings().getPhaseMetricsJsonFile() != null){
+      phaseMetrics.writeJson(getSettings().getPhaseMetricsJsonFile());
+    }
+
     /* generate mapping function now that mapping is known, for third parties to use if needed */
     gtfsStopIdToTransferZoneMapping = zoningHandlerData.createGtfsStopToTransferZoneMappingFunction();
+    Map<String, Point> locationByGtfsStopId = new HashMap<>();
+    zoningHandlerData.getMappedGtfsStops().forEach(gtfsStop -> locationByGtfsStopId.put(gtfsStop.getStopId(), zoningHandlerData.getProjectedLocation(gtfsStop)));
+    gtfsStopIdToLocationMapping = locationByGtfsStopId::get;
+    mappedGtfsStopsSpatialIndex = GtfsMappedStopsSpatialIndex.create(zoningHandlerData);
     readInvoked = true;
 
     /* return parsed/augmented zoning */
@@ -219,7 +282,19 @@ public class GtfsZoningReader implements ZoningReader {
     /* reset state */
     readInvoked = false;
     gtfsStopIdToTransferZoneMapping = null;
-  }  
+    gtfsStopIdToLocationMapping = null;
+    mappedGtfsStopsSpatialIndex = null;
+    phaseMetrics = null;
+  }
+
+  /**
+   * Timing and throughput metrics per processing phase of the most recent read
+   *
+   * @return phase metrics, null if not yet read
+   */
+  public GtfsConverterPhaseMetrics getPhaseMetrics(){
+    return phaseMetrics;
+  }
 
   /**
    * Collect the settings which can be used to configure the reader
@@ -243,5 +318,31 @@ public class GtfsZoningReader implements ZoningReader {
     return gtfsStopIdToTransferZoneMapping;
   }
 
+  /**
+   * Provide mapping between GTFS stop id and its location in the CRS of the PLANit network, only for GTFS stops mapped to a PLANit transfer zone
+   *
+   * @return function that takes a GTFS stop id (String) and produces its location (if mapped)
+   */
+  public Function<String, Point> getGtfsStopIdToLocationMapping() {
+    if(!readInvoked){
+      LOGGER.warning("Unable to provide GTFS Stop id to location mapping before read() has been invoked on reader, ignored");
+      return null;
+    }
+    return gtfsStopIdToLocationMapping;
+  }
+
+  /**
+   * Provide spatial index over the mapped GTFS stops, their PLANit transfer zones and service nodes, supporting (bulk) range and k-nearest queries
+   *
+   * @return spatial index over mapped GTFS stops
+   */
+  public GtfsMappedStopsSpatialIndex getMappedGtfsStopsSpatialIndex() {
+    if(!readInvoked){
+      LOGGER.warning("Unable to provide spatial index over mapped GTFS stops before read() has been invoked on reader, ignored");
+      return null;
+    }
+    return mappedGtfsStopsSpatialIndex;
+  }
+
 
 }
@@ -4,10 +4,12 @@ import org.goplanit.converter.idmapping.IdMapperType;
 import org.goplanit.gtfs.converter.GtfsConverterReaderSettings;
 import org.goplanit.gtfs.converter.GtfsConverterReaderSettingsWithModeMapping;
 import org.goplanit.gtfs.converter.service.GtfsServicesReaderSettings;
+import org.goplanit.utils.exceptions.PlanItRunTimeException;
 import org.goplanit.utils.misc.Pair;
 import org.goplanit.utils.network.layer.service.ServiceNode;
 import org.locationtech.jts.geom.Coordinate;
 
+import java.nio.file.Path;
 import java.util.*;
 import java.util.function.Function;
 import java.util.logging.Logger;
@@ -94,6 +96,26 @@ public class GtfsZoningReaderSettings extends GtfsConverterReaderSettingsWithMod
    */
   private boolean logCreatedGtfsZones = DEFAULT_LOG_CREATED_GTFS_ZONES;
 
+  /**
+   * number of threads used to find candidate transfer zones and links for GTFS stops before matching them in file order
+   */
+  private int parallelStopMatchingThreads = DEFAULT_PARALLEL_STOP_MATCHING_THREADS;
+
+  /**
+   * when true, distances between GTFS stops and candidate links/transfer zones are approximated with planar math and only near-ties are computed exactly
+   */
+  private boolean fastDistanceApproximation = DEFAULT_FAST_DISTANCE_APPROXIMATION;
+
+  /**
+   * file to persist GTFS stop to transfer zone mappings to across runs, allowing unchanged GTFS stops to replay their earlier mapping, null when not used
+   */
+  private Path stopMappingCacheFile = null;
+
+  /**
+   * when true, GTFS platforms sharing a parent station are matched against a neighbourhood resolved once for the station rather than with their own spatial queries
+   */
+  private boolean stationGroupedStopMatching = DEFAULT_STATION_GROUPED_STOP_MATCHING;
+
   /** track extended logging on how particular GTFS stops are being created and/or matched to an existing PLANit transferzone */
   private Set<String> extendedLoggingByGtfsStopId = new HashSet<>();
 
@@ -122,6 +144,21 @@ public class GtfsZoningReaderSettings extends GtfsConverterReaderSettingsWithMod
    */
   public static final boolean DEFAULT_LOG_CREATED_GTFS_ZONES = false;
 
+  /**
+   * default number of threads used for finding candidates when matching GTFS stops, one means stops are matched sequentially
+   */
+  public static final int DEFAULT_PARALLEL_STOP_MATCHING_THREADS = 1;
+
+  /**
+   * default for approximating distances with planar math when matching GTFS stops, false by default, i.e., all distances are computed exactly
+   */
+  public static final boolean DEFAULT_FAST_DISTANCE_APPROXIMATION = false;
+
+  /**
+   * default for matching GTFS platforms grouped by their parent station, false by default
+   */
+  public static final boolean DEFAULT_STATION_GROUPED_STOP_MATCHING = false;
+
 
   /**
    * The default buffer distance when looking for links within a distance of the closest link to a GTFS stop to create connectoids (stop_locations).
@@ -228,6 +265,15 @@ public class GtfsZoningReaderSettings extends GtfsConverterReaderSettingsWithMod
     return overwriteGtfsStopTransferZoneExternalIdMapping.get(gtfsStopId);
   }
 
+  /**
+   * Collect all explicitly mapped transfer zone ids and their types across all GTFS stops
+   *
+   * @return all mapped transfer zone id(s) and the type(s)
+   */
+  public Collection<Pair<Object, IdMapperType>> getOverwrittenGtfsStopTransferZoneMappings() {
+    return overwriteGtfsStopTransferZoneExternalIdMapping.values().stream().flatMap(List::stream).collect(Collectors.toUnmodifiableList());
+  }
+
   /**
    * Provide explicit mapping for GTFS stop id to an alternative location. USeful in case the original location is slightly off compared
    * to underlying network making finding an automated mapping to the network problematic. Often, moving the location slghty further away from the road
@@ -330,6 +376,79 @@ public class GtfsZoningReaderSettings extends GtfsConverterReaderSettingsWithMod
     this.removeUnusedTransferZones = removeUnusedTransferZones;
   }
 
+  /**
+   * @return number of threads used to find candidate transfer zones and links for GTFS stops
+   */
+  public int getParallelStopMatchingThreads() {
+    return parallelStopMatchingThreads;
+  }
+
+  /**
+   * Set number of threads used to find candidate transfer zones and links for GTFS stops. When more than one, the (read-only) candidate search
+   * is conducted in parallel for all stops first, after which stops are matched and committed to the zoning sequentially in file order
+   *
+   * @param parallelStopMatchingThreads to use (must be positive)
+   */
+  public void setParallelStopMatchingThreads(int parallelStopMatchingThreads) {
+    PlanItRunTimeException.throwIf(parallelStopMatchingThreads <= 0,
+        String.format("Number of GTFS stop matching threads must be positive, found %d", parallelStopMatchingThreads));
+    this.parallelStopMatchingThreads = parallelStopMatchingThreads;
+  }
+
+  /**
+   * @return true when distances are approximated with planar math when matching GTFS stops, false otherwise
+   */
+  public boolean isFastDistanceApproximation() {
+    return fastDistanceApproximation;
+  }
+
+  /**
+   * Set whether to approximate distances with planar math when matching GTFS stops. The approximation is calibrated locally against the exact (geodesic)
+   * distance and is only used where its error bound cannot change the outcome, near-ties are still resolved exactly
+   *
+   * @param fastDistanceApproximation flag to set
+   */
+  public void setFastDistanceApproximation(boolean fastDistanceApproximation) {
+    this.fastDistanceApproximation = fastDistanceApproximation;
+  }
+
+  /**
+   * File used to persist GTFS stop to transfer zone mappings across runs, if any
+   *
+   * @return file, null if not set
+   */
+  public Path getStopMappingCacheFile() {
+    return stopMappingCacheFile;
+  }
+
+  /**
+   * Set file used to persist GTFS stop to transfer zone mappings across runs. When the file exists, GTFS stops with the same id, location, modes,
+   * and an unchanged fingerprint of nearby links and transfer zones replay their cached mapping rather than being matched from scratch. After reading,
+   * the mappings of this run are written to the file
+   *
+   * @param stopMappingCacheFile to use, null to not use a cache
+   */
+  public void setStopMappingCacheFile(Path stopMappingCacheFile) {
+    this.stopMappingCacheFile = stopMappingCacheFile;
+  }
+
+  /**
+   * @return true when GTFS platforms are matched grouped by their parent station, false otherwise
+   */
+  public boolean isStationGroupedStopMatching() {
+    return stationGroupedStopMatching;
+  }
+
+  /**
+   * Set whether GTFS platforms sharing a parent station are matched grouped by station. When active, the nearby transfer zones and links of all platforms of a
+   * station are resolved once, after which each platform is matched against this neighbourhood. Results are the same as matching each platform individually
+   *
+   * @param stationGroupedStopMatching flag to set
+   */
+  public void setStationGroupedStopMatching(boolean stationGroupedStopMatching) {
+    this.stationGroupedStopMatching = stationGroupedStopMatching;
+  }
+
   /**
    * {@inheritDoc}
    */
@@ -339,6 +458,18 @@ public class GtfsZoningReaderSettings extends GtfsConverterReaderSettingsWithMod
     LOGGER.info(String.format("GTFS stop-to-transfer zone search radius (m): %.1f", getGtfsStopToTransferZoneSearchRadiusMeters()));
     LOGGER.info(String.format("GTFS stop-to-link search radius (m): %.1f", getGtfsStopToLinkSearchRadiusMeters()));
     LOGGER.info(String.format("GTFS remove unused transfer zones (stops): %s", isRemoveUnusedTransferZones()));
+    if(getParallelStopMatchingThreads() > 1) {
+      LOGGER.info(String.format("Parallel GTFS stop candidate search activated (threads: %d)", getParallelStopMatchingThreads()));
+    }
+    if(isFastDistanceApproximation()) {
+      LOGGER.info("Fast (planar) distance approximation for GTFS stop matching activated");
+    }
+    if(isStationGroupedStopMatching()) {
+      LOGGER.info("GTFS platforms matched grouped by parent station");
+    }
+    if(getStopMappingCacheFile() != null) {
+      LOGGER.info(String.format("GTFS stop mapping cache: %s", getStopMappingCacheFile()));
+    }
   }
 
   /**
@@ -349,6 +480,10 @@ public class GtfsZoningReaderSettings extends GtfsConverterReaderSettingsWithMod
     setGtfsStopToTransferZoneSearchRadiusMeters(DEFAULT_GTFSSTOP_TRANSFERZONE_SEARCH_METERS);
     setGtfsStopToLinkSearchRadiusMeters(DEFAULT_GTFSSTOP_LINK_SEARCH_METERS);
     setRemoveUnusedTransferZones(DEFAULT_REMOVE_UNUSED_TRANSFER_ZONES);
+    setParallelStopMatchingThreads(DEFAULT_PARALLEL_STOP_MATCHING_THREADS);
+    setFastDistanceApproximation(DEFAULT_FAST_DISTANCE_APPROXIMATION);
+    setStopMappingCacheFile(null);
+    setStationGroupedStopMatching(DEFAULT_STATION_GROUPED_STOP_MATCHING);
     excludeGtfsStopsById.clear();
     overwriteGtfsStop2LinkMapping.clear();
     disallowGtfsTop2TransferZoneJointMapping.clear();
@@ -431,6 +566,15 @@ public class GtfsZoningReaderSettings extends GtfsConverterReaderSettingsWithMod
     return overwriteGtfsStop2LinkMapping.get(gtfsStopId);
   }
 
+  /**
+   * Collect all overwritten link id information across all GTFS stops
+   *
+   * @return all overwritten link ids and their types (unmodifiable)
+   */
+  public Collection<Pair<Object, IdMapperType>> getOverwrittenGtfsStopToLinkMappings() {
+    return Collections.unmodifiableCollection(overwriteGtfsStop2LinkMapping.values());
+  }
+
   /**
    * Log the chosen PLANit link (and its ids) to the user for the given GTFS stop, so it can be manually verified what
    * the algorithm has chosen from the logs
@@ -0,0 +1,235 @@
+package org.goplanit.gtfs.converter.zoning.handler;
+
+import org.goplanit.utils.geo.PlanitEntityGeoUtils;
+import org.goplanit.utils.geo.PlanitJtsCrsUtils;
+import org.goplanit.utils.network.layer.macroscopic.MacroscopicLink;
+import org.locationtech.jts.geom.Coordinate;
+import org.locationtech.jts.geom.LineString;
+import org.locationtech.jts.geom.Point;
+import org.opengis.referencing.crs.CoordinateReferenceSystem;
+import org.opengis.referencing.crs.GeographicCRS;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Collectors;
+
+/**
+ * Fast approximation of distances in metres between locations in the network CRS, based on planar math in a local metric frame. Per area (grid cell)
+ * the number of metres per CRS unit along each axis is calibrated once with the exact (geodesic) distance, after which all distances within that area are
+ * computed with planar math. Within the search radii used for matching GTFS stops, the relative error is far below {@link #MAX_RELATIVE_ERROR},
+ * so only near-ties, i.e., distances that are within the error bound of a decision threshold, fall back to the exact geodesic distance. Decisions
+ * are therefore identical to using the exact distance.
+ * <p>
+ *   Instances are thread safe, exact fallbacks use the geo tools provided by the caller.
+ * </p>
+ *
+ * @author markr
+ */
+public class GtfsPlanarDistanceApproximation {
+
+  /** relative error bound of approximated distances (conservative, covers scale variation within a calibration cell) */
+  public static final double MAX_RELATIVE_ERROR = 1e-3;
+
+  /** absolute error bound of approximated distances in metres */
+  public static final double MAX_ABSOLUTE_ERROR_METERS = 0.01;
+
+  /** size of a calibration cell in degrees for geographic CRSs */
+  private static final double GEOGRAPHIC_CELL_SIZE = 0.01;
+
+  /** size of a calibration cell in CRS units for projected CRSs */
+  private static final double PROJECTED_CELL_SIZE = 1000;
+
+  /** calibration cell size in CRS units */
+  private final double cellSize;
+
+  /** displacement used for calibration in CRS units */
+  private final double calibrationOffset;
+
+  /** metres per CRS unit along x and y axis by calibration cell */
+  private final Map<Long, double[]> metresPerUnitByCell = new ConcurrentHashMap<>();
+
+  /**
+   * Collect (calibrate if needed) the metres per CRS unit along both axes for the area the coordinate resides in
+   *
+   * @param coordinate to collect scale for
+   * @param geoTools to use for calibration
+   * @return metres per unit along x and y axis
+   */
+  private double[] getMetresPerUnit(Coordinate coordinate, PlanitJtsCrsUtils geoTools){
+    long cellX = (long) Math.floor(coordinate.x / cellSize);
+    long cellY = (long) Math.floor(coordinate.y / cellSize);
+    return metresPerUnitByCell.computeIfAbsent((cellX << 32) ^ (cellY & 0xFFFFFFFFL), key -> {
+      var centre = new Coordinate((cellX + 0.5) * cellSize, (cellY + 0.5) * cellSize);
+      double metresX = geoTools.getDistanceInMetres(centre, new Coordinate(centre.x + calibrationOffset, centre.y));
+      double metresY = geoTools.getDistanceInMetres(centre, new Coordinate(centre.x, centre.y + calibrationOffset));
+      return new double[]{metresX / calibrationOffset, metresY / calibrationOffset};
+    });
+  }
+
+  /**
+   * Approximated distance between two coordinates in metres
+   *
+   * @param from coordinate
+   * @param to coordinate
+   * @param geoTools to use for calibration
+   * @return approximated distance
+   */
+  private double approximateDistance(Coordinate from, Coordinate to, PlanitJtsCrsUtils geoTools){
+    var scale = getMetresPerUnit(from, geoTools);
+    double dx = (to.x - from.x) * scale[0];
+    double dy = (to.y - from.y) * scale[1];
+    return Math.sqrt(dx * dx + dy * dy);
+  }
+
+  /**
+   * Approximated distance between a coordinate and a line string in metres
+   *
+   * @param from coordinate
+   * @param lineString to compute distance to
+   * @param geoTools to use for calibration
+   * @return approximated distance
+   */
+  private double approximateDistance(Coordinate from, LineString lineString, PlanitJtsCrsUtils geoTools){
+    var scale = getMetresPerUnit(from, geoTools);
+    double minDistanceSquared = Double.POSITIVE_INFINITY;
+    int numCoordinates = lineString.getNumPoints();
+    /* local metric frame with origin at the from coordinate */
+    double prevX = (lineString.getCoordinateN(0).x - from.x) * scale[0];
+    double prevY = (lineString.getCoordinateN(0).y - from.y) * scale[1];
+    if(numCoordinates == 1){
+      return Math.sqrt(prevX * prevX + prevY * prevY);
+    }
+    for(int index = 1; index < numCoordinates; ++index){
+      double currX = (lineString.getCoordinateN(index).x - from.x) * scale[0];
+      double currY = (lineString.getCoordinateN(index).y - from.y) * scale[1];
+      double segX = currX - prevX;
+      double segY = currY - prevY;
+      double segLengthSquared = segX * segX + segY * segY;
+      double fraction = segLengthSquared <= 0 ? 0 : Math.max(0, Math.min(1, -(prevX * segX + prevY * segY) / segLengthSquared));
+      double closestX = prevX + fraction * segX;
+      double closestY = prevY + fraction * segY;
+      minDistanceSquared = Math.min(minDistanceSquared, closestX * closestX + closestY * closestY);
+      prevX = currX;
+      prevY = currY;
+    }
+    return Math.sqrt(minDistanceSquared);
+  }
+
+  /**
+   * Error bound on an approximated distance
+   *
+   * @param approximateDistance to get bound for
+   * @return error bound in metres
+   */
+  private static double errorBound(double approximateDistance){
+    return approximateDistance * MAX_RELATIVE_ERROR + MAX_ABSOLUTE_ERROR_METERS;
+  }
+
+  /**
+   * Exact distance between coordinate and link
+   *
+   * @param coordinate to use
+   * @param link to use
+   * @param geoTools to use
+   * @return exact distance in metres
+   */
+  private static double exactDistance(Coordinate coordinate, MacroscopicLink link, PlanitJtsCrsUtils geoTools){
+    return PlanitEntityGeoUtils.findPlanitEntityClosest(coordinate, List.of(link), true, geoTools).second();
+  }
+
+  /**
+   * Constructor
+   *
+   * @param crs of the network
+   */
+  public GtfsPlanarDistanceApproximation(CoordinateReferenceSystem crs){
+    boolean geographic = crs instanceof GeographicCRS;
+    this.cellSize = geographic ? GEOGRAPHIC_CELL_SIZE : PROJECTED_CELL_SIZE;
+    this.calibrationOffset = geographic ? 1e-4 : 10;
+  }
+
+  /**
+   * Verify if distance between two points is within the given distance, only computes the exact distance when the approximation is too close to call
+   *
+   * @param from point
+   * @param to point
+   * @param distanceMetres to verify against
+   * @param geoTools to use
+   * @return true when within distance, false otherwise
+   */
+  public boolean isDistanceWithinMetres(Point from, Point to, double distanceMetres, PlanitJtsCrsUtils geoTools){
+    double approximate = approximateDistance(from.getCoordinate(), to.getCoordinate(), geoTools);
+    double bound = errorBound(approximate);
+    if(approximate + bound < distanceMetres){
+      return true;
+    }
+    if(approximate - bound > distanceMetres){
+      return false;
+    }
+    return geoTools.isDistanceWithinMetres(from, to, distanceMetres);
+  }
+
+  /**
+   * Find the closest link to the coordinate. Links whose approximated distance ties with the closest approximated distance within the error bounds are
+   * resolved with the exact distance. The distance of the closest link is always exact
+   *
+   * @param coordinate to find closest link for
+   * @param links to choose from
+   * @param suppressLogging when true, do not log when resolving near-ties exactly
+   * @param geoTools to use
+   * @return closest link and its exact distance, null if no links are provided
+   */
+  public Map.Entry<MacroscopicLink, Double> findClosestLink(
+      Coordinate coordinate, Collection<? extends MacroscopicLink> links, boolean suppressLogging, PlanitJtsCrsUtils geoTools){
+    if(links == null || links.isEmpty()){
+      return null;
+    }
+    Map<MacroscopicLink, Double> approximateDistances = new LinkedHashMap<>();
+    double minApproximate = Double.POSITIVE_INFINITY;
+    for(var link : links){
+      double approximate = approximateDistance(coordinate, link.getGeometry(), geoTools);
+      approximateDistances.put(link, approximate);
+      minApproximate = Math.min(minApproximate, approximate);
+    }
+
+    /* near-ties with the closest, i.e., links that might be closer given the error bounds of both, are resolved exactly */
+    final double tieThreshold = minApproximate + errorBound(minApproximate);
+    var nearTies = approximateDistances.entrySet().stream().filter(e -> e.getValue() - errorBound(e.getValue()) <= tieThreshold).collect(Collectors.toList());
+    if(nearTies.size() == 1){
+      var closest = nearTies.get(0).getKey();
+      return new AbstractMap.SimpleImmutableEntry<>(closest, exactDistance(coordinate, closest, geoTools));
+    }
+    var exactClosest = PlanitEntityGeoUtils.findPlanitEntityClosest(
+        coordinate, nearTies.stream().map(Map.Entry::getKey).collect(Collectors.toList()), suppressLogging, geoTools);
+    return new AbstractMap.SimpleImmutableEntry<>(exactClosest.first(), exactClosest.second());
+  }
+
+  /**
+   * Find all links within the given delta of the closest link's (exact) distance to the coordinate. Links whose approximated distance is too close to the
+   * threshold to call are resolved with the exact distance
+   *
+   * @param coordinate to use
+   * @param links to choose from
+   * @param deltaMetres allowed beyond the closest distance
+   * @param geoTools to use
+   * @return links within delta of closest link
+   */
+  public Set<MacroscopicLink> findLinksWithinClosestDistanceDelta(
+      Coordinate coordinate, Collection<? extends MacroscopicLink> links, double deltaMetres, PlanitJtsCrsUtils geoTools){
+    Set<MacroscopicLink> result = new HashSet<>();
+    var closest = findClosestLink(coordinate, links, true, geoTools);
+    if(closest == null){
+      return result;
+    }
+    /* closest distance is exact, so the threshold carries no approximation error */
+    final double threshold = closest.getValue() + deltaMetres;
+    for(var link : links){
+      double approximate = approximateDistance(coordinate, link.getGeometry(), geoTools);
+      double bound = errorBound(approximate);
+      if(approximate + bound <= threshold || (approximate - bound <= threshold && exactDistance(coordinate, link, geoTools) <= threshold)){
+        result.add(link);
+      }
+    }
+    return result;
+  }
+}
@@ -6,6 +6,7 @@ import org.goplanit.converter.zoning.ZoningConverterUtils;
 import org.goplanit.gtfs.converter.zoning.GtfsZoningReaderSettings;
 import org.goplanit.gtfs.entity.GtfsStop;
 import org.goplanit.gtfs.enums.GtfsObjectType;
+import org.goplanit.gtfs.enums.StopLocationType;
 import org.goplanit.gtfs.handler.GtfsFileHandlerStops;
 import org.goplanit.gtfs.util.GtfsDirectedConnectoidHelper;
 import org.goplanit.gtfs.util.GtfsLinkHelper;
@@ -25,9 +26,13 @@ import org.goplanit.utils.network.layer.physical.Node;
 import org.goplanit.utils.zoning.DirectedConnectoid;
 import org.goplanit.utils.zoning.TransferZone;
 import org.goplanit.utils.zoning.TransferZoneType;
+import org.locationtech.jts.geom.Envelope;
 import org.locationtech.jts.geom.Point;
 
 import java.util.*;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.function.Function;
 import java.util.logging.Logger;
 import java.util.stream.Collectors;
@@ -49,6 +54,155 @@ public class GtfsPlanitFileHandlerStops extends GtfsFileHandlerStops {
   /** data tracking during parsing */
   private final GtfsZoningHandlerData data;
 
+  /** candidates found upfront for the GTFS stop currently being handled (if any), only used when matching in parallel */
+  private GtfsStopMatchingCandidates currentCandidates;
+
+  /** number of GTFS stops for which upfront found link candidates were reused */
+  private long numReusedLinkCandidates = 0;
+
+  /** number of GTFS stops for which upfront found link candidates had to be found again due to earlier link modifications nearby */
+  private long numInvalidatedLinkCandidates = 0;
+
+  /** neighbourhoods of parent stations by their stop id, only populated when matching is grouped by station */
+  private final Map<String, GtfsStationNeighbourhood> stationNeighbourhoods = new HashMap<>();
+
+  /** GTFS stop for which nearby links were last queried, so repeated queries for the same stop reuse the result */
+  private GtfsStop lastNearbyLinksStop;
+
+  /** number of link index modifications at the time of the last nearby links query */
+  private int lastNearbyLinksModification;
+
+  /** result of the last nearby links query */
+  private Collection<MacroscopicLink> lastNearbyLinks;
+
+  /**
+   * Find the station neighbourhood covering the given search envelopes of the GTFS stop (if any)
+   *
+   * @param gtfsStop to find neighbourhood for
+   * @param transferZoneSearchEnvelope of the GTFS stop
+   * @param linkSearchEnvelope of the GTFS stop
+   * @return neighbourhood, null if not available or not covering the search envelopes
+   */
+  private GtfsStationNeighbourhood findStationNeighbourhood(GtfsStop gtfsStop, Envelope transferZoneSearchEnvelope, Envelope linkSearchEnvelope){
+    if(stationNeighbourhoods.isEmpty() || !gtfsStop.hasParentStation()){
+      return null;
+    }
+    var stationNeighbourhood = stationNeighbourhoods.get(gtfsStop.getParentStation());
+    if(stationNeighbourhood == null || !stationNeighbourhood.covers(transferZoneSearchEnvelope, linkSearchEnvelope)){
+      return null;
+    }
+    return stationNeighbourhood;
+  }
+
+  /**
+   * Create the transfer zone search envelope of the GTFS stop
+   *
+   * @param gtfsStop to use
+   * @return search envelope
+   */
+  private Envelope createTransferZoneSearchEnvelope(GtfsStop gtfsStop){
+    return GtfsTransferZoneHelper.createTransferZoneSearchEnvelope(
+        gtfsStop.getLocationAsPoint(), data.getSettings().getGtfsStopToTransferZoneSearchRadiusMeters(), data.getGeoTools(), data);
+  }
+
+  /**
+   * Create the link search envelope of the GTFS stop
+   *
+   * @param gtfsStop to use
+   * @return search envelope
+   */
+  private Envelope createLinkSearchEnvelope(GtfsStop gtfsStop){
+    return GtfsLinkHelper.createLinkSearchEnvelope(
+        gtfsStop.getLocationAsPoint(), data.getSettings().getGtfsStopToLinkSearchRadiusMeters(), data.getGeoTools(), data);
+  }
+
+  /**
+   * Verify if valid upfront found link candidates exist for the given GTFS stop
+   *
+   * @param gtfsStop to verify for
+   * @return true when present and valid, false otherwise
+   */
+  private boolean hasValidLinkCandidates(GtfsStop gtfsStop){
+    return currentCandidates != null && currentCandidates.isFor(gtfsStop) && currentCandidates.isLinkCandidatesValid(data);
+  }
+
+  /**
+   * Find nearby links for the GTFS stop, reuse upfront found candidates if still valid
+   *
+   * @param gtfsStop to find nearby links for
+   * @return nearby links (modifiable)
+   */
+  private Collection<MacroscopicLink> findNearbyLinks(GtfsStop gtfsStop){
+    if(hasValidLinkCandidates(gtfsStop)){
+      return currentCandidates.getNearbyLinks();
+    }
+    int numberOfModifications = data.getGeoIndexedLinks().getNumberOfModifications();
+    if(lastNearbyLinksStop == gtfsStop && lastNearbyLinksModification == numberOfModifications){
+      return new ArrayList<>(lastNearbyLinks);
+    }
+
+    Collection<MacroscopicLink> nearbyLinks = null;
+    var linkSearchEnvelope = createLinkSearchEnvelope(gtfsStop);
+    if(!stationNeighbourhoods.isEmpty()){
+      var stationNeighbourhood = findStationNeighbourhood(gtfsStop, createTransferZoneSearchEnvelope(gtfsStop), linkSearchEnvelope);
+      if(stationNeighbourhood != null){
+        nearbyLinks = stationNeighbourhood.findNearbyLinks(linkSearchEnvelope, data);
+      }
+    }
+    if(nearbyLinks == null){
+      nearbyLinks = data.findGeoIndexedLinks(linkSearchEnvelope);
+    }
+    lastNearbyLinksStop = gtfsStop;
+    lastNearbyLinksModification = numberOfModifications;
+    lastNearbyLinks = new ArrayList<>(nearbyLinks);
+    return nearbyLinks;
+  }
+
+  /**
+   * Find nearby pre-existing transfer zones for the GTFS stop, reuse upfront found candidates if present
+   *
+   * @param gtfsStop to find nearby transfer zones for
+   * @return nearby transfer zones (modifiable)
+   */
+  private Collection<TransferZone> findNearbyTransferZones(GtfsStop gtfsStop){
+    if(currentCandidates != null && currentCandidates.isFor(gtfsStop)){
+      return currentCandidates.getNearbyTransferZones();
+    }
+    if(!stationNeighbourhoods.isEmpty()){
+      var transferZoneSearchEnvelope = createTransferZoneSearchEnvelope(gtfsStop);
+      var stationNeighbourhood = findStationNeighbourhood(gtfsStop, transferZoneSearchEnvelope, createLinkSearchEnvelope(gtfsStop));
+      if(stationNeighbourhood != null){
+        return stationNeighbourhood.findNearbyTransferZones(transferZoneSearchEnvelope, data);
+      }
+    }
+    return GtfsTransferZoneHelper.findNearbyTransferZones(
+        gtfsStop.getLocationAsPoint(), data.getSettings().getGtfsStopToTransferZoneSearchRadiusMeters(), data);
+  }
+
+  /**
+   * Create the mapping from each primary mode of a GTFS stop to all eligible modes, i.e., the primary mode expanded with its compatible modes
+   *
+   * @param primaryGtfsStopModes primary PLANit modes associated with GTFS stop
+   * @param data to use
+   * @return eligible modes by primary mode
+   */
+  static SortedMap<Mode, SortedSet<Mode>> createMode2EligibleModesMapping(Collection<Mode> primaryGtfsStopModes, GtfsZoningHandlerData data){
+    SortedMap<Mode, SortedSet<Mode>> mode2EligibleModesMapping = new TreeMap<>();
+    primaryGtfsStopModes.forEach( m -> mode2EligibleModesMapping.put(m, data.expandWithCompatibleModes(m)));
+    return mode2EligibleModesMapping;
+  }
+
+  /**
+   * Verify if link is compatible with any of the eligible modes across all primary modes
+   *
+   * @param link to verify
+   * @param mode2EligibleModesMapping to consider
+   * @return true when compatible, false otherwise
+   */
+  static boolean isModeCompatibleLink(MacroscopicLink link, SortedMap<Mode, SortedSet<Mode>> mode2EligibleModesMapping){
+    return mode2EligibleModesMapping.values().stream().flatMap(v -> v.stream()).anyMatch(m -> link.isModeAllowedOnAnySegment(m));
+  }
+
   /**
    * Based on GTFS stop provide eligible links for mapping based on proximity or manually overwritten alternative(s)
    *
@@ -67,15 +221,12 @@ public class GtfsPlanitFileHandlerStops extends GtfsFileHandlerStops {
     boolean suppressLogging = false;
     if(data.getSettings().hasOverwrittenGtfsStopToLinkMapping(gtfsStop.getStopId())){
       var linkIdMapping = data.getSettings().getOverwrittenGtfsStopToLinkMapping(gtfsStop.getStopId());
-      var chosenLinkId = linkIdMapping.first();
-      var idMapper = IdMapperFunctionFactory.createLinkIdMappingFunction(linkIdMapping.second());
 
       /* check mode compatible layers for existence of the link */
       for(var gtfsStopModeEntry : mode2EligibleModesMapping.entrySet()) {
         SortedSet<Mode> allEligibleModes = gtfsStopModeEntry.getValue();
         for(var eligibleMode : allEligibleModes){
-          var foundLink = data.getServiceNetwork().getParentNetwork().getLayerByMode(eligibleMode).getLinks().firstMatch(
-              l -> chosenLinkId.equals(idMapper.apply(l)));
+          var foundLink = data.findOverwrittenLink(data.getServiceNetwork().getParentNetwork().getLayerByMode(eligibleMode), linkIdMapping);
           if(foundLink != null){
             closestOfNearbyLinks = foundLink;
             nearbyLinks = Collections.singleton(closestOfNearbyLinks);
@@ -93,14 +244,24 @@ public class GtfsPlanitFileHandlerStops extends GtfsFileHandlerStops {
     /* REGULAR - BASED ON PROXIMITY ONLY */
     if(closestOfNearbyLinks == null){
       // nearby links that are mode compatible with any of the eligible modes across all primary modes
-      nearbyLinks = GtfsLinkHelper.findNearbyLinks(
-          gtfsStop.getLocationAsPoint(), data.getSettings().getGtfsStopToLinkSearchRadiusMeters(), data);
-      nearbyLinks.removeIf(l -> !mode2EligibleModesMapping.values().stream().flatMap(v -> v.stream()).anyMatch(m -> l.isModeAllowedOnAnySegment(m)));
+      boolean validLinkCandidates = hasValidLinkCandidates(gtfsStop);
+      if(currentCandidates != null && currentCandidates.isFor(gtfsStop)){
+        if(validLinkCandidates) {
+          ++numReusedLinkCandidates;
+        }else{
+          ++numInvalidatedLinkCandidates;
+        }
+      }
+
+      nearbyLinks = findNearbyLinks(gtfsStop);
+      nearbyLinks.removeIf(l -> !isModeCompatibleLink(l, mode2EligibleModesMapping));
       if (nearbyLinks.isEmpty() || nearbyLinks == null) {
         return null;
       }
-      closestOfNearbyLinks = PlanitEntityGeoUtils.findPlanitEntityClosest(
-          projectedGtfsStopLocation.getCoordinate(), nearbyLinks, suppressLogging, data.getGeoTools()).first();
+      closestOfNearbyLinks = validLinkCandidates ? currentCandidates.getClosestLink() : null;
+      if(closestOfNearbyLinks == null) {
+        closestOfNearbyLinks = data.findClosestLink(projectedGtfsStopLocation.getCoordinate(), nearbyLinks, suppressLogging);
+      }
     }
 
     return Pair.of(nearbyLinks, closestOfNearbyLinks);
@@ -123,9 +284,8 @@ public class GtfsPlanitFileHandlerStops extends GtfsFileHandlerStops {
       return null;
     }
 
-    //todo: if we get a lot of overrides this gets slow as it performs a linear search on all links in the network per override
-    final var overwrittenAccessLink = data.getServiceNetwork().getParentNetwork().getLayerByMode(mode).getLinks().firstMatch(
-        link -> overwrittenLinkWithIdMapper.first().equals(linkToSourceId.apply(link)));
+    final var overwrittenAccessLink = data.findOverwrittenLink(
+        data.getServiceNetwork().getParentNetwork().getLayerByMode(mode), overwrittenLinkWithIdMapper);
     /* supply overwritten link's source id in functional form*/
     return (gtfsStopId) -> linkToSourceId.apply(overwrittenAccessLink);
   }
@@ -153,7 +313,7 @@ public class GtfsPlanitFileHandlerStops extends GtfsFileHandlerStops {
       final Collection<Mode> eligibleAccessModes,
       final Set<MacroscopicLinkSegment> potentialLinkSegments) {
 
-    final Point projectedGtfsStopLocation = (Point) PlanitJtsUtils.transformGeometry(gtfsStop.getLocationAsPoint(), data.getCrsTransform());
+    final Point projectedGtfsStopLocation = data.getProjectedLocation(gtfsStop);
 
     var linkToSourceId = createAccessLinkToSourceIdFunctionByGtfsStop(gtfsStop, DEFAULT_LINK_TO_SOURCE_ID_MAPPING_FUNCTION);
     final var linkWithIdMapper = data.getSettings().getOverwrittenGtfsStopToLinkMapping(gtfsStop.getStopId());
@@ -201,9 +361,8 @@ public class GtfsPlanitFileHandlerStops extends GtfsFileHandlerStops {
     }
 
     /* 3) all proper candidates so  reduce options further based on proximity to closest viable link, while removing options outside the closest distance buffer */
-    final var finalFilteredLinks =
-        PlanitGraphGeoUtils.findEdgesWithinClosestDistanceDeltaToGeometry(
-            projectedGtfsStopLocation, filteredLinks, GtfsZoningReaderSettings.DEFAULT_CLOSEST_LINK_SEARCH_BUFFER_DISTANCE_M, data.getGeoTools()).keySet();
+    final var finalFilteredLinks = data.findLinksWithinClosestDistanceDelta(
+        projectedGtfsStopLocation, filteredLinks, GtfsZoningReaderSettings.DEFAULT_CLOSEST_LINK_SEARCH_BUFFER_DISTANCE_M);
     linkSegmentsWithConnectoidLocation.removeIf( ls -> !finalFilteredLinks.contains(ls.getParent())); // sync
 
     if(finalFilteredLinks.size()==1){
@@ -227,7 +386,7 @@ public class GtfsPlanitFileHandlerStops extends GtfsFileHandlerStops {
     filteredLinks = linkSegmentsWithConnectoidLocation.stream().map(ls -> ls.getParentLink()).collect(Collectors.toSet()); //sync again
     MacroscopicLink finalSelectedAccessLink = filteredLinks.iterator().next();
     if(filteredLinks.size()>1) {
-      finalSelectedAccessLink = (MacroscopicLink) PlanitGraphGeoUtils.findEdgeClosest(projectedGtfsStopLocation, filteredLinks, data.getGeoTools());
+      finalSelectedAccessLink = data.findClosestLink(projectedGtfsStopLocation.getCoordinate(), filteredLinks, true);
     }
     final var dummy = finalSelectedAccessLink;
     linkSegmentsWithConnectoidLocation.removeIf(ls -> !ls.getParent().equals(dummy)); // sync
@@ -249,7 +408,7 @@ public class GtfsPlanitFileHandlerStops extends GtfsFileHandlerStops {
    */
   private Pair<MacroscopicLink, Set<MacroscopicLinkSegment>> findMostAppropriateStopLocationLinkFromLinks(
       final GtfsStop gtfsStop, final Collection<Mode> eligibleAccessModes, final Collection<MacroscopicLink> eligibleLinks) {
-    final Point projectedGtfsStopLocation = (Point) PlanitJtsUtils.transformGeometry(gtfsStop.getLocationAsPoint(), data.getCrsTransform());
+    final Point projectedGtfsStopLocation = data.getProjectedLocation(gtfsStop);
 
     var linkToSourceId = createAccessLinkToSourceIdFunctionByGtfsStop(gtfsStop, DEFAULT_LINK_TO_SOURCE_ID_MAPPING_FUNCTION);
     final var linkWithIdMapper = data.getSettings().getOverwrittenGtfsStopToLinkMapping(gtfsStop.getStopId());
@@ -335,12 +494,12 @@ public class GtfsPlanitFileHandlerStops extends GtfsFileHandlerStops {
       for (var cn : directedConnectoids) {
         /* match on link segment */
         if(preferredAccessLinkSegments.contains(cn.getAccessLinkSegment())) {
-          var projectedGtfsStopLocation = (Point)PlanitJtsUtils.transformGeometry(gtfsStop.getLocationAsPoint(), data.getCrsTransform());
+          var projectedGtfsStopLocation = data.getProjectedLocation(gtfsStop);
 
           /* ensure that actual access node is within acceptable distance as well, e.g., if too far away the access link segment is too long and
            * transfer zone considered not close enough, given it is a match on the link segment, we allow for a little more distance, namely the allowed distance to a transfer zone + the allowed distance from transfer zone(stop) to the road*/
           final var maxStopToAccessNodeDistanceForMatchedTransferZonesWithEqualAccessLinkSegment = data.getSettings().getGtfsStopToTransferZoneSearchRadiusMeters() + data.getSettings().getGtfsStopToLinkSearchRadiusMeters();
-          if(data.getGeoTools().isDistanceWithinMetres(projectedGtfsStopLocation, cn.getAccessNode().getPosition(), maxStopToAccessNodeDistanceForMatchedTransferZonesWithEqualAccessLinkSegment)) {
+          if(data.isDistanceWithinMetres(projectedGtfsStopLocation, cn.getAccessNode().getPosition(), maxStopToAccessNodeDistanceForMatchedTransferZonesWithEqualAccessLinkSegment)) {
             if (match != null) {
               var options = List.of(match, transferZone);
               var closestMatch = PlanitEntityGeoUtils.findPlanitEntityClosest(
@@ -385,7 +544,7 @@ public class GtfsPlanitFileHandlerStops extends GtfsFileHandlerStops {
   private TransferZone matchByClosestWithAcceptableAccessAngle(
       GtfsStop gtfsStop, Mode gtfsStopMode, Collection<? extends LinkSegment> gtfsAccessSegments, Collection<TransferZone> nearbyTransferZones, final double maxAngleDegrees, final double maxStopToAccessNodeDistanceMeters) {
     TransferZone matchedTransferZone = null;
-    final Point projectedGtfsStopLocation = (Point) PlanitJtsUtils.transformGeometry(gtfsStop.getLocationAsPoint(), data.getCrsTransform());
+    final Point projectedGtfsStopLocation = data.getProjectedLocation(gtfsStop);
 
     final boolean allowUTurn = false;
     boolean adjacentMatch = false;
@@ -405,7 +564,7 @@ public class GtfsPlanitFileHandlerStops extends GtfsFileHandlerStops {
       for (var cn : directedConnectoids) {
 
         // check if connectoid within acceptable distance
-        if(!data.getGeoTools().isDistanceWithinMetres(projectedGtfsStopLocation, cn.getAccessNode().getPosition(),maxStopToAccessNodeDistanceMeters)) {
+        if(!data.isDistanceWithinMetres(projectedGtfsStopLocation, cn.getAccessNode().getPosition(),maxStopToAccessNodeDistanceMeters)) {
           continue;
         }
 
@@ -541,7 +700,7 @@ public class GtfsPlanitFileHandlerStops extends GtfsFileHandlerStops {
     }
 
     /* identify preferred access link (segments) for GTFS stop as if there were no existing transfer zones to map to, to use for matching */
-    var nearbyLinks = GtfsLinkHelper.findNearbyLinks(gtfsStop.getLocationAsPoint(), data.getSettings().getGtfsStopToLinkSearchRadiusMeters(), data);
+    var nearbyLinks = findNearbyLinks(gtfsStop);
     if(nearbyLinks == null || nearbyLinks.isEmpty()){
       LOGGER.warning(String.format("No nearby links found for GTFS stop %s within search radius of %.2fm, consider expanding search radius, or override to attach to any of transfer zones: %s",
           gtfsStop.getStopId(), data.getSettings().getGtfsStopToLinkSearchRadiusMeters(), nearbyTransferZones.stream().map(tz -> "[" + tz.getXmlId() + ", name: " + tz.getName() + ", ext id: " + tz.getExternalId() + "]").collect(Collectors.joining())));
@@ -621,13 +780,13 @@ public class GtfsPlanitFileHandlerStops extends GtfsFileHandlerStops {
     PlanItRunTimeException.throwIfNull(primaryGtfsStopModes,"GTFS stop's associated PLANit mode(s) is/are null, this is not allowed");
 
     /* check if within network bounding box, only GTFS stops within the network area are considered */
-    var projectedGtfsStopLocation = (Point) PlanitJtsUtils.transformGeometry(gtfsStop.getLocationAsPoint(),data.getCrsTransform());
+    var projectedGtfsStopLocation = data.getProjectedLocation(gtfsStop);
     if(!data.getReferenceNetworkBoundingBox().contains(projectedGtfsStopLocation.getCoordinate())){
       return null;
     }
 
-    SortedMap<Mode, SortedSet<Mode>> mode2EligibleModesMapping = new TreeMap<>();
-    primaryGtfsStopModes.forEach( m -> mode2EligibleModesMapping.put(m, data.expandWithCompatibleModes(m)));
+    var mode2EligibleModesMapping = (currentCandidates != null && currentCandidates.isFor(gtfsStop)) ?
+        currentCandidates.getMode2EligibleModesMapping() : createMode2EligibleModesMapping(primaryGtfsStopModes, data);
 
     var eligibleLinksAndClosest = findEligibleLinkMappings(gtfsStop, projectedGtfsStopLocation, mode2EligibleModesMapping);
     if(eligibleLinksAndClosest == null){
@@ -845,11 +1004,31 @@ public class GtfsPlanitFileHandlerStops extends GtfsFileHandlerStops {
       int bla = 4;
     }
 
-    var nearbyTransferZones = GtfsTransferZoneHelper.findNearbyTransferZones(
-        gtfsStop.getLocationAsPoint(), data.getSettings().getGtfsStopToTransferZoneSearchRadiusMeters(), data);
+    var nearbyTransferZones = findNearbyTransferZones(gtfsStop);
+
+    /* replay outcome of matching against existing transfer zones when nothing changed since an earlier run */
+    var stopMappingCache = data.getStopMappingCache();
+    String cacheKey = null;
+    long cacheFingerprint = 0;
+    GtfsStopMappingCache.Entry cachedEntry = null;
+    if(stopMappingCache != null){
+      cacheKey = GtfsStopMappingCache.createKey(gtfsStop, primaryGtfsStopModes);
+      cacheFingerprint = GtfsStopMappingCache.createFingerprint(gtfsStop, nearbyTransferZones, findNearbyLinks(gtfsStop), data);
+      cachedEntry = stopMappingCache.find(cacheKey, cacheFingerprint);
+    }
+
+    if(cachedEntry != null && cachedEntry.getOutcome() == GtfsStopMappingCache.Outcome.DISCARDED){
+      stopMappingCache.register(cacheKey, cacheFingerprint, null, false);
+      return;
+    }
 
     TransferZone theTransferZone = null;
-    if(!nearbyTransferZones.isEmpty() &&
+    if(cachedEntry != null && cachedEntry.getOutcome() == GtfsStopMappingCache.Outcome.MATCHED){
+      final var cachedTransferZoneXmlId = cachedEntry.getTransferZoneXmlId();
+      theTransferZone = nearbyTransferZones.stream().filter(tz -> tz.getXmlId().equals(cachedTransferZoneXmlId)).findFirst().orElse(null);
+    }
+    if(theTransferZone == null && (cachedEntry == null || cachedEntry.getOutcome() != GtfsStopMappingCache.Outcome.CREATED) &&
+        !nearbyTransferZones.isEmpty() &&
         !data.getSettings().isForceCreateNewTransferZoneForGtfsStop(gtfsStop.getStopId())) {
 
       theTransferZone = findMatchFromExistingTransferZone(gtfsStop, primaryGtfsStopModes, nearbyTransferZones);
@@ -882,11 +1061,17 @@ public class GtfsPlanitFileHandlerStops extends GtfsFileHandlerStops {
       if(!createNewTransferZone){
         data.getProfiler().incrementAugmentedTransferZones();
       }
+    }else if(cachedEntry != null && cachedEntry.getOutcome() != GtfsStopMappingCache.Outcome.DISCARDED){
+      LOGGER.warning(String.format("DISCARD: Unable to replay cached mapping (%s) of GTFS stop %s %s %s, verify correctness",
+          cachedEntry.getOutcome(), gtfsStop.getStopId(), gtfsStop.getStopName(), gtfsStop.getLocationAsCoord()));
     }else if(!nearbyTransferZones.isEmpty()){
       LOGGER.warning(String.format("DISCARD: Unable to add TransferZone for GTFS stop %s %s %s despite nearby transfer zones [%s], verify correctness",
           gtfsStop.getStopId(), gtfsStop.getStopName(), gtfsStop.getLocationAsCoord(), nearbyTransferZones.stream().map( tz -> "(" + tz.getIdsAsString() + ")").collect(Collectors.joining(","))));
     }
 
+    if(stopMappingCache != null){
+      stopMappingCache.register(cacheKey, cacheFingerprint, theTransferZone, createNewTransferZone);
+    }
   }
 
   /**
@@ -904,7 +1089,11 @@ public class GtfsPlanitFileHandlerStops extends GtfsFileHandlerStops {
       } else if (transferZoneIdAndTypePair.second() == IdMapperType.ID) {
         transferZone = data.getZoning().getTransferZones().get((Integer) transferZoneIdAndTypePair.first());
       } else if (transferZoneIdAndTypePair.second() == IdMapperType.XML) {
-        transferZone = data.getZoning().getTransferZones().getByXmlId((String) transferZoneIdAndTypePair.first());
+        transferZone = data.findOverwrittenTransferZoneByXmlId((String) transferZoneIdAndTypePair.first());
+        if(transferZone == null) {
+          /* not pre-existing, but possibly created while matching earlier GTFS stops */
+          transferZone = data.getZoning().getTransferZones().getByXmlId((String) transferZoneIdAndTypePair.first());
+        }
       }
 
       if (transferZone == null) {
@@ -937,11 +1126,148 @@ public class GtfsPlanitFileHandlerStops extends GtfsFileHandlerStops {
 
   }
 
+  /**
+   * Group the given GTFS platforms by their parent station, such that the spatial neighbourhood of each station with multiple platforms is resolved
+   * once (on first use) and all its platforms are matched against this neighbourhood rather than with their own spatial queries. To be invoked before
+   * handling the stops
+   *
+   * @param gtfsStops to group
+   * @return number of stations with multiple platforms for which a neighbourhood is prepared
+   */
+  public int prepareStationNeighbourhoods(Collection<GtfsStop> gtfsStops) {
+    Map<String, Pair<Envelope, Envelope>> searchEnvelopesByStation = new HashMap<>();
+    Map<String, Integer> numPlatformsByStation = new HashMap<>();
+    for(var gtfsStop : gtfsStops){
+      if(gtfsStop.getLocationType() != StopLocationType.STOP_PLATFORM || !gtfsStop.hasParentStation()){
+        continue;
+      }
+      var transferZoneSearchEnvelope = createTransferZoneSearchEnvelope(gtfsStop);
+      var linkSearchEnvelope = createLinkSearchEnvelope(gtfsStop);
+      var stationEnvelopes = searchEnvelopesByStation.get(gtfsStop.getParentStation());
+      if(stationEnvelopes == null){
+        searchEnvelopesByStation.put(gtfsStop.getParentStation(), Pair.of(transferZoneSearchEnvelope, linkSearchEnvelope));
+      }else{
+        stationEnvelopes.first().expandToInclude(transferZoneSearchEnvelope);
+        stationEnvelopes.second().expandToInclude(linkSearchEnvelope);
+      }
+      numPlatformsByStation.merge(gtfsStop.getParentStation(), 1, Integer::sum);
+    }
+
+    searchEnvelopesByStation.forEach( (station, envelopes) -> {
+      if(numPlatformsByStation.get(station) > 1){
+        stationNeighbourhoods.put(station, new GtfsStationNeighbourhood(envelopes.first(), envelopes.second(), numPlatformsByStation.get(station)));
+      }
+    });
+    LOGGER.fine(String.format("Prepared neighbourhoods for %d GTFS parent stations with multiple platforms", stationNeighbourhoods.size()));
+    return stationNeighbourhoods.size();
+  }
+
+  /**
+   * Handle all GTFS stops in two phases. First, candidates (nearby transfer zones and links) are found for all stops in parallel without
+   * modifying the network or zoning. Second, each stop is matched and committed sequentially in the given order, reusing its candidates unless
+   * links nearby were modified by the matching of an earlier stop, in which case the candidates are found again. Results are identical to handling
+   * the stops one by one via {@link #handle(GtfsStop)}
+   *
+   * @param gtfsStops to handle in order
+   * @param numberOfThreads to use for finding candidates
+   */
+  public void handleInParallel(List<GtfsStop> gtfsStops, int numberOfThreads) {
+    PlanItRunTimeException.throwIf(numberOfThreads <= 0, String.format("Number of GTFS stop matching threads must be positive, found %d", numberOfThreads));
+
+    var executor = Executors.newFixedThreadPool(numberOfThreads, r -> {
+      var thread = new Thread(r, "gtfs-stop-matching");
+      thread.setDaemon(true);
+      return thread;
+    });
+    try {
+      /* PHASE 1 - find candidates in parallel, geo tools are not thread safe, so each thread uses its own */
+      final var crs = data.getGeoTools().getCoordinateReferenceSystem();
+      final ThreadLocal<PlanitJtsCrsUtils> threadGeoTools = ThreadLocal.withInitial(() -> new PlanitJtsCrsUtils(crs));
+      List<Future<GtfsStopMatchingCandidates>> futureCandidates = new ArrayList<>(gtfsStops.size());
+      for(var gtfsStop : gtfsStops){
+        futureCandidates.add(executor.submit(() -> GtfsStopMatchingCandidates.find(gtfsStop, threadGeoTools.get(), data)));
+      }
+      /* all candidates must be found before committing, since committing modifies the spatial index that is queried */
+      List<GtfsStopMatchingCandidates> candidates = new ArrayList<>(gtfsStops.size());
+      for(var futureCandidate : futureCandidates){
+        candidates.add(futureCandidate.get());
+      }
+
+      /* PHASE 2 - commit sequentially in order, track link modifications to invalidate candidates of later stops where needed */
+      data.getGeoIndexedLinks().startTrackingModifications();
+      for(int index = 0; index < gtfsStops.size(); ++index){
+        currentCandidates = candidates.get(index);
+        handle(gtfsStops.get(index));
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new PlanItRunTimeException("Interrupted while matching GTFS stops", e);
+    } catch (ExecutionException e) {
+      throw new PlanItRunTimeException(String.format("Unable to find candidates for GTFS stop: %s", e.getCause().getMessage()), e.getCause());
+    } finally {
+      currentCandidates = null;
+      data.getGeoIndexedLinks().stopTrackingModifications();
+      executor.shutdownNow();
+    }
+
+    LOGGER.fine(String.format("GTFS stop link candidates found upfront reused %d times, invalidated by earlier matches %d times",
+        numReusedLinkCandidates, numInvalidatedLinkCandidates));
+  }
+
+  /**
+   * Register the GTFS stop as matched with the neighbourhood of its parent station (if any), removing the neighbourhood once all its platforms are matched
+   *
+   * @param gtfsStop that is matched (or skipped)
+   */
+  private void releaseStationNeighbourhood(GtfsStop gtfsStop){
+    if(stationNeighbourhoods.isEmpty() || gtfsStop.getLocationType() != StopLocationType.STOP_PLATFORM || !gtfsStop.hasParentStation()){
+      return;
+    }
+    var stationNeighbourhood = stationNeighbourhoods.get(gtfsStop.getParentStation());
+    if(stationNeighbourhood != null && stationNeighbourhood.platformMatched(data)){
+      stationNeighbourhoods.remove(gtfsStop.getParentStation());
+    }
+  }
+
   /**
    * Handle a GTFS stop
    */
   @Override
   public void handle(GtfsStop gtfsStop) {
+    try {
+      handleStop(gtfsStop);
+    } finally {
+      releaseStationNeighbourhood(gtfsStop);
+    }
+  }
+
+  /**
+   * Close the neighbourhoods of stations of which not all platforms were handled, so the spatial link index no longer logs modifications on their behalf
+   */
+  @Override
+  public void handleComplete() {
+    if(!stationNeighbourhoods.isEmpty()){
+      LOGGER.fine(String.format("Closing %d GTFS station neighbourhoods of which not all platforms were handled", stationNeighbourhoods.size()));
+      stationNeighbourhoods.values().forEach(stationNeighbourhood -> stationNeighbourhood.close(data));
+      stationNeighbourhoods.clear();
+    }
+  }
+
+  /**
+   * Reset the handler, closing any remaining station neighbourhoods
+   */
+  @Override
+  public void reset() {
+    stationNeighbourhoods.values().forEach(stationNeighbourhood -> stationNeighbourhood.close(data));
+    stationNeighbourhoods.clear();
+  }
+
+  /**
+   * Handle a GTFS stop, see {@link #handle(GtfsStop)}
+   *
+   * @param gtfsStop to handle
+   */
+  private void handleStop(GtfsStop gtfsStop) {
 
     if(this.data.getSettings().isExcludedGtfsStop(gtfsStop.getStopId())){
       return;
@@ -0,0 +1,154 @@
+package org.goplanit.gtfs.converter.zoning.handler;
+
+import org.goplanit.utils.geo.GeoContainerUtils;
+import org.goplanit.utils.network.layer.macroscopic.MacroscopicLink;
+import org.goplanit.utils.zoning.TransferZone;
+import org.locationtech.jts.geom.Envelope;
+import org.locationtech.jts.index.quadtree.Quadtree;
+
+import java.util.*;
+
+/**
+ * Spatial neighbourhood of a GTFS parent station, i.e., the pre-existing transfer zones and links within the union of the search envelopes of all its child
+ * platforms. The neighbourhood is resolved once with a single query per index, after which the child platforms are matched against it by filtering
+ * on their own search envelope, yielding the same candidates as querying the spatial indices directly. Links are kept in sync with the spatial link index
+ * by replaying its modifications (e.g. links broken while matching earlier platforms) rather than querying again. Once all child platforms are matched, the
+ * neighbourhood is to be closed so the spatial link index no longer logs modifications on its behalf.
+ *
+ * @author markr
+ */
+class GtfsStationNeighbourhood {
+
+  /** union of the transfer zone search envelopes of all child platforms */
+  private final Envelope transferZoneSearchEnvelope;
+
+  /** union of the link search envelopes of all child platforms */
+  private final Envelope linkSearchEnvelope;
+
+  /** pre-existing transfer zones within the transfer zone search envelope, indexed on the search envelope so filtering is delegated to the regular zone query */
+  private Quadtree transferZones = null;
+
+  /** links within the link search envelope */
+  private Set<MacroscopicLink> links = null;
+
+  /** number of child platforms not yet matched */
+  private int numberOfUnmatchedPlatforms;
+
+  /**
+   * Resolve the neighbourhood using the current state of the spatial indices
+   *
+   * @param data to use
+   */
+  private void resolve(GtfsZoningHandlerData data){
+    this.transferZones = new Quadtree();
+    Collection<TransferZone> preExistingTransferZones =
+        GeoContainerUtils.queryZoneQuadtree(data.getGeoIndexedPreExistingTransferZones(), transferZoneSearchEnvelope);
+    for(var transferZone : preExistingTransferZones){
+      transferZones.insert(transferZoneSearchEnvelope, transferZone);
+    }
+    this.links = new LinkedHashSet<>(data.findGeoIndexedLinks(linkSearchEnvelope));
+    data.getGeoIndexedLinks().registerModificationLogConsumer(this);
+  }
+
+  /**
+   * Bring links in sync with the spatial link index by replaying its modifications since the last sync
+   *
+   * @param data to use
+   */
+  private void syncLinks(GtfsZoningHandlerData data){
+    data.getGeoIndexedLinks().forEachModificationSinceLastReplay(this, (link, added) -> {
+      if(added && link.createEnvelope().intersects(linkSearchEnvelope)){
+        links.add(link);
+      }else if(!added){
+        links.remove(link);
+      }
+    });
+  }
+
+  /**
+   * Constructor
+   *
+   * @param transferZoneSearchEnvelope union of transfer zone search envelopes of child platforms
+   * @param linkSearchEnvelope union of link search envelopes of child platforms
+   * @param numberOfPlatforms number of child platforms
+   */
+  GtfsStationNeighbourhood(Envelope transferZoneSearchEnvelope, Envelope linkSearchEnvelope, int numberOfPlatforms) {
+    this.transferZoneSearchEnvelope = transferZoneSearchEnvelope;
+    this.linkSearchEnvelope = linkSearchEnvelope;
+    this.numberOfUnmatchedPlatforms = numberOfPlatforms;
+  }
+
+  /**
+   * Register a child platform as matched (or skipped). When all child platforms are matched, the neighbourhood is closed
+   *
+   * @param data to use
+   * @return true when all child platforms are matched and the neighbourhood is closed, false otherwise
+   */
+  boolean platformMatched(GtfsZoningHandlerData data){
+    if(--numberOfUnmatchedPlatforms > 0){
+      return false;
+    }
+    close(data);
+    return true;
+  }
+
+  /**
+   * Close the neighbourhood, releasing its resolved transfer zones and links and no longer tracking modifications of the spatial link index
+   *
+   * @param data to use
+   */
+  void close(GtfsZoningHandlerData data){
+    if(links != null){
+      data.getGeoIndexedLinks().unregisterModificationLogConsumer(this);
+    }
+    transferZones = null;
+    links = null;
+  }
+
+  /**
+   * Verify if the neighbourhood covers the given search envelopes of a child platform, e.g. not the case when its location was overwritten
+   *
+   * @param platformTransferZoneSearchEnvelope to verify
+   * @param platformLinkSearchEnvelope to verify
+   * @return true when covered, false otherwise
+   */
+  boolean covers(Envelope platformTransferZoneSearchEnvelope, Envelope platformLinkSearchEnvelope){
+    return transferZoneSearchEnvelope.covers(platformTransferZoneSearchEnvelope) && linkSearchEnvelope.covers(platformLinkSearchEnvelope);
+  }
+
+  /**
+   * Find nearby pre-existing transfer zones for a child platform, resolving the neighbourhood on first use
+   *
+   * @param platformSearchEnvelope of the child platform
+   * @param data to use
+   * @return found transfer zones (modifiable)
+   */
+  Collection<TransferZone> findNearbyTransferZones(Envelope platformSearchEnvelope, GtfsZoningHandlerData data){
+    if(transferZones == null){
+      resolve(data);
+    }
+    return GeoContainerUtils.queryZoneQuadtree(transferZones, platformSearchEnvelope);
+  }
+
+  /**
+   * Find nearby links for a child platform, resolving the neighbourhood on first use
+   *
+   * @param platformSearchEnvelope of the child platform
+   * @param data to use
+   * @return found links (modifiable)
+   */
+  Collection<MacroscopicLink> findNearbyLinks(Envelope platformSearchEnvelope, GtfsZoningHandlerData data){
+    if(links == null){
+      resolve(data);
+    }else{
+      syncLinks(data);
+    }
+    var result = new ArrayList<MacroscopicLink>();
+    for(var link : links){
+      if(link.createEnvelope().intersects(platformSearchEnvelope)){
+        result.add(link);
+      }
+    }
+    return result;
+  }
+}
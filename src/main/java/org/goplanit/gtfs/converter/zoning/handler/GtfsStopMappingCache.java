@@ -0,0 +1,290 @@
+package org.goplanit.gtfs.converter.zoning.handler;
+
+import org.goplanit.gtfs.entity.GtfsStop;
+import org.goplanit.gtfs.util.GtfsPersistedCacheUtils;
+import org.goplanit.utils.mode.Mode;
+import org.goplanit.utils.network.layer.macroscopic.MacroscopicLink;
+import org.goplanit.utils.network.layer.macroscopic.MacroscopicLinkSegment;
+import org.goplanit.utils.zoning.TransferZone;
+
+import java.nio.file.Path;
+import java.util.*;
+import java.util.logging.Logger;
+import java.util.stream.Collectors;
+
+import static org.goplanit.gtfs.util.GtfsPersistedCacheUtils.FNV_OFFSET_BASIS;
+import static org.goplanit.gtfs.util.GtfsPersistedCacheUtils.fold;
+
+/**
+ * Persisted cache of GTFS stop to transfer zone mappings across zoning runs. Each entry is keyed by the GTFS stop id, its rounded location and its
+ * modes, and holds a fingerprint of the matching context (nearby links and transfer zones, relevant settings) at the time it was matched, as well
+ * as the outcome, i.e., the chosen transfer zone or whether a new transfer zone was created.
+ * <p>
+ *   When a stop is processed with the same key and fingerprint, only the decision of the matching against existing transfer zones is replayed, i.e.,
+ *   matched stops are attached to the cached transfer zone and discarded stops are skipped directly. Stops for which a transfer zone was created skip the
+ *   matching, but the transfer zone and its connectoids are still created from scratch since links broken in an earlier run no longer exist (under
+ *   the same ids) in the network of this run. The chosen access link segments and connectoid locations are therefore not persisted, and such entries
+ *   are not counted as hits but as partial hits, since only the matching is avoided. Only entries encountered during a run are persisted again, so stops
+ *   that disappear from the feed are dropped from the cache.
+ * </p>
+ *
+ * @author markr
+ */
+public class GtfsStopMappingCache {
+
+  /** Logger to use */
+  private static final Logger LOGGER = Logger.getLogger(GtfsStopMappingCache.class.getCanonicalName());
+
+  /** number of decimals GTFS stop locations (WGS84) are rounded to in the key, approximately 0.1 m */
+  public static final int LOCATION_DECIMALS = 6;
+
+  /** columns of the persisted cache */
+  private static final String[] COLUMNS =
+      {"key", "fingerprint", "outcome", "transfer_zone_xml_id"};
+
+  /** separator used for multi-valued columns */
+  private static final String VALUE_SEPARATOR = "|";
+
+  /** outcome of matching a GTFS stop */
+  public enum Outcome {
+    /** matched to a pre-existing transfer zone */
+    MATCHED,
+    /** new transfer zone was created */
+    CREATED,
+    /** no transfer zone could be matched or created */
+    DISCARDED
+  }
+
+  /**
+   * Cached mapping of a single GTFS stop
+   */
+  public static final class Entry {
+
+    /** fingerprint of the matching context */
+    private final long fingerprint;
+
+    /** outcome */
+    private final Outcome outcome;
+
+    /** XML id of the transfer zone, null when discarded */
+    private final String transferZoneXmlId;
+
+    /**
+     * Constructor
+     *
+     * @param fingerprint of matching context
+     * @param outcome of matching
+     * @param transferZoneXmlId of chosen transfer zone
+     */
+    private Entry(long fingerprint, Outcome outcome, String transferZoneXmlId) {
+      this.fingerprint = fingerprint;
+      this.outcome = outcome;
+      this.transferZoneXmlId = transferZoneXmlId;
+    }
+
+    /**
+     * @return fingerprint of the matching context
+     */
+    public long getFingerprint() {
+      return fingerprint;
+    }
+
+    /**
+     * @return outcome of the matching
+     */
+    public Outcome getOutcome() {
+      return outcome;
+    }
+
+    /**
+     * @return XML id of the chosen transfer zone, null when discarded
+     */
+    public String getTransferZoneXmlId() {
+      return transferZoneXmlId;
+    }
+  }
+
+  /** entries loaded from a previous run */
+  private final Map<String, Entry> loadedEntries = new HashMap<>();
+
+  /** entries registered during this run, these are persisted */
+  private final Map<String, Entry> registeredEntries = new LinkedHashMap<>();
+
+  /** number of cache hits, i.e., matched or discarded stops of which the outcome is replayed */
+  private long numHits = 0;
+
+  /** number of partial cache hits, i.e., stops for which a transfer zone was created of which only the matching is skipped */
+  private long numPartialHits = 0;
+
+  /** number of cache misses, including changed fingerprints */
+  private long numMisses = 0;
+
+  /**
+   * Create key for a GTFS stop
+   *
+   * @param gtfsStop to create key for
+   * @param modes of the GTFS stop
+   * @return key
+   */
+  public static String createKey(GtfsStop gtfsStop, Collection<Mode> modes){
+    var location = gtfsStop.getLocationAsCoord();
+    return String.join(VALUE_SEPARATOR,
+        gtfsStop.getStopId(),
+        String.format(Locale.ROOT, "%." + LOCATION_DECIMALS + "f", location.y),
+        String.format(Locale.ROOT, "%." + LOCATION_DECIMALS + "f", location.x),
+        modes.stream().map(Mode::getXmlId).sorted().collect(Collectors.joining(",")));
+  }
+
+  /**
+   * Create fingerprint of the context in which a GTFS stop is matched, i.e., the nearby pre-existing transfer zones (their location, access link
+   * segments and whether they are mapped already), the nearby links (their geometry, link segments and supported activated modes), and the settings
+   * that affect the matching of this stop. The fingerprint is independent of the order of the provided collections
+   *
+   * @param gtfsStop to create fingerprint for
+   * @param nearbyTransferZones of the stop
+   * @param nearbyLinks of the stop
+   * @param data to use
+   * @return fingerprint
+   */
+  public static long createFingerprint(
+      GtfsStop gtfsStop, Collection<TransferZone> nearbyTransferZones, Collection<MacroscopicLink> nearbyLinks, GtfsZoningHandlerData data){
+    var settings = data.getSettings();
+    long hash = FNV_OFFSET_BASIS;
+    hash = fold(hash, Double.doubleToLongBits(settings.getGtfsStopToTransferZoneSearchRadiusMeters()));
+    hash = fold(hash, Double.doubleToLongBits(settings.getGtfsStopToLinkSearchRadiusMeters()));
+    hash = fold(hash, settings.isForceCreateNewTransferZoneForGtfsStop(gtfsStop.getStopId()) ? 1 : 0);
+    hash = fold(hash, settings.isDisallowGtfsStopToTransferZoneJointMapping(gtfsStop.getStopId()) ? 1 : 0);
+    hash = fold(hash, gtfsStop.hasPlatformCode() ? gtfsStop.getPlatformCode() : null);
+
+    var sortedTransferZones = new ArrayList<>(nearbyTransferZones);
+    sortedTransferZones.sort(Comparator.comparing(TransferZone::getXmlId));
+    for(var transferZone : sortedTransferZones){
+      hash = fold(hash, transferZone.getXmlId());
+      if(transferZone.getGeometry() != null) {
+        hash = fold(hash, transferZone.getGeometry().getCoordinates());
+      }
+      hash = fold(hash, transferZone.hasPlatformNames() ? transferZone.getTransferZonePlatformNames().stream().sorted().collect(Collectors.joining(",")) : null);
+      hash = fold(hash, data.hasMappedGtfsStop(transferZone) ? 1 : 0);
+      var connectoids = data.getTransferZoneConnectoids(transferZone);
+      if(connectoids != null) {
+        for (var accessLinkSegmentXmlId : connectoids.stream().map(c -> c.getAccessLinkSegment().getXmlId()).sorted().collect(Collectors.toList())) {
+          hash = fold(hash, accessLinkSegmentXmlId);
+        }
+      }
+    }
+
+    var activatedModes = data.getActivatedPlanitModesByGtfsMode().stream().sorted(Comparator.comparing(Mode::getXmlId)).collect(Collectors.toList());
+    var sortedLinks = new ArrayList<>(nearbyLinks);
+    sortedLinks.sort(Comparator.comparing(MacroscopicLink::getXmlId));
+    for(var link : sortedLinks){
+      hash = fold(hash, link.getXmlId());
+      hash = fold(hash, link.getGeometry().getCoordinates());
+      for(var linkSegment : new MacroscopicLinkSegment[]{link.getLinkSegmentAb(), link.getLinkSegmentBa()}){
+        if(linkSegment == null){
+          continue;
+        }
+        hash = fold(hash, linkSegment.getXmlId());
+        long allowedModes = 0;
+        for(int index = 0; index < activatedModes.size() && index < Long.SIZE; ++index){
+          allowedModes |= linkSegment.isModeAllowed(activatedModes.get(index)) ? (1L << index) : 0;
+        }
+        hash = fold(hash, allowedModes);
+      }
+    }
+    return hash;
+  }
+
+  /**
+   * Load cache from file, when the file does not exist, an empty cache is created
+   *
+   * @param cacheFile to load from
+   * @return loaded cache
+   */
+  public static GtfsStopMappingCache load(Path cacheFile){
+    var cache = new GtfsStopMappingCache();
+    boolean loaded = GtfsPersistedCacheUtils.readCsv(cacheFile, record -> cache.loadedEntries.put(record.get("key"), new Entry(
+        Long.parseUnsignedLong(record.get("fingerprint"), 16),
+        Outcome.valueOf(record.get("outcome")),
+        record.get("transfer_zone_xml_id").isEmpty() ? null : record.get("transfer_zone_xml_id"))), "GTFS stop mapping cache");
+    if(!loaded){
+      cache.loadedEntries.clear();
+    }
+    LOGGER.info(String.format("Loaded %d cached GTFS stop mappings from %s", cache.loadedEntries.size(), cacheFile));
+    return cache;
+  }
+
+  /**
+   * Find the cached entry for the given key, only when its fingerprint matches. Entries for which a transfer zone was created are counted as partial hits
+   *
+   * @param key to find
+   * @param fingerprint that must match
+   * @return entry, null if not present or fingerprint changed
+   */
+  public Entry find(String key, long fingerprint){
+    var entry = loadedEntries.get(key);
+    if(entry == null || entry.getFingerprint() != fingerprint){
+      ++numMisses;
+      return null;
+    }
+    if(entry.getOutcome() == Outcome.CREATED){
+      ++numPartialHits;
+    }else {
+      ++numHits;
+    }
+    return entry;
+  }
+
+  /**
+   * Register the outcome of matching a GTFS stop
+   *
+   * @param key of the GTFS stop
+   * @param fingerprint of the matching context
+   * @param transferZone chosen, null if discarded
+   * @param createdTransferZone true when the transfer zone was newly created, false otherwise
+   */
+  public void register(String key, long fingerprint, TransferZone transferZone, boolean createdTransferZone){
+    var outcome = transferZone == null ? Outcome.DISCARDED : (createdTransferZone ? Outcome.CREATED : Outcome.MATCHED);
+    registeredEntries.put(key, new Entry(fingerprint, outcome, transferZone != null ? transferZone.getXmlId() : null));
+  }
+
+  /**
+   * Persist all entries registered during this run to file
+   *
+   * @param cacheFile to save to
+   */
+  public void save(Path cacheFile){
+    GtfsPersistedCacheUtils.writeCsv(cacheFile, COLUMNS, csvPrinter -> {
+      for(var entry : registeredEntries.entrySet()){
+        var value = entry.getValue();
+        csvPrinter.printRecord(
+            entry.getKey(),
+            Long.toHexString(value.getFingerprint()),
+            value.getOutcome().name(),
+            value.getTransferZoneXmlId() != null ? value.getTransferZoneXmlId() : "");
+      }
+    }, "GTFS stop mapping cache");
+    LOGGER.info(String.format("Saved %d GTFS stop mappings to cache %s (hits: %d, partial hits (created transfer zones, matching skipped only): %d, misses: %d)",
+        registeredEntries.size(), cacheFile, numHits, numPartialHits, numMisses));
+  }
+
+  /**
+   * @return number of cache hits so far, i.e., replayed matched or discarded stops
+   */
+  public long getNumberOfHits() {
+    return numHits;
+  }
+
+  /**
+   * @return number of partial cache hits so far, i.e., created transfer zones of which only the matching was skipped
+   */
+  public long getNumberOfPartialHits() {
+    return numPartialHits;
+  }
+
+  /**
+   * @return number of cache misses so far
+   */
+  public long getNumberOfMisses() {
+    return numMisses;
+  }
+}
@@ -0,0 +1,170 @@
+package org.goplanit.gtfs.converter.zoning.handler;
+
+import org.goplanit.gtfs.entity.GtfsStop;
+import org.goplanit.gtfs.enums.StopLocationType;
+import org.goplanit.gtfs.util.GtfsLinkHelper;
+import org.goplanit.gtfs.util.GtfsTransferZoneHelper;
+import org.goplanit.utils.geo.PlanitJtsCrsUtils;
+import org.goplanit.utils.mode.Mode;
+import org.goplanit.utils.network.layer.macroscopic.MacroscopicLink;
+import org.goplanit.utils.zoning.TransferZone;
+import org.locationtech.jts.geom.Envelope;
+
+import java.util.*;
+import java.util.stream.Collectors;
+
+/**
+ * Candidates for matching a single GTFS stop, i.e., nearby pre-existing transfer zones, nearby links and the closest of those links, found without
+ * modifying the network or zoning. This allows the candidate search to be conducted in parallel for all stops (against the state before any
+ * stop is matched), while the actual matching is committed sequentially in file order. Since matching may break links, the link candidates are only
+ * valid as long as no links were added or removed within their search envelope in the meantime; pre-existing transfer zones do not change while matching.
+ *
+ * @author markr
+ */
+class GtfsStopMatchingCandidates {
+
+  /** the GTFS stop the candidates are for */
+  private final GtfsStop gtfsStop;
+
+  /** eligible modes by primary mode of the stop, as used by the stops handler */
+  private final SortedMap<Mode, SortedSet<Mode>> mode2EligibleModesMapping;
+
+  /** nearby pre-existing transfer zones */
+  private final Collection<TransferZone> nearbyTransferZones;
+
+  /** envelope used to find nearby links */
+  private final Envelope linkSearchEnvelope;
+
+  /** nearby links */
+  private final Collection<MacroscopicLink> nearbyLinks;
+
+  /** closest of the nearby links compatible with the eligible modes of the stop, null if none */
+  private final MacroscopicLink closestLink;
+
+  /**
+   * Constructor
+   *
+   * @param gtfsStop the candidates are for
+   * @param mode2EligibleModesMapping eligible modes by primary mode of the stop
+   * @param nearbyTransferZones nearby pre-existing transfer zones
+   * @param linkSearchEnvelope used to find nearby links
+   * @param nearbyLinks found
+   * @param closestLink compatible closest link
+   */
+  private GtfsStopMatchingCandidates(
+      GtfsStop gtfsStop, SortedMap<Mode, SortedSet<Mode>> mode2EligibleModesMapping, Collection<TransferZone> nearbyTransferZones, Envelope linkSearchEnvelope, Collection<MacroscopicLink> nearbyLinks, MacroscopicLink closestLink) {
+    this.gtfsStop = gtfsStop;
+    this.mode2EligibleModesMapping = mode2EligibleModesMapping;
+    this.nearbyTransferZones = nearbyTransferZones;
+    this.linkSearchEnvelope = linkSearchEnvelope;
+    this.nearbyLinks = nearbyLinks;
+    this.closestLink = closestLink;
+  }
+
+  /**
+   * Find the candidates for a GTFS stop without modifying any state other than the cached locations of the stop itself. Stops that are not
+   * matched by proximity (excluded, overwritten, non-platform, incompatible modes) have no candidates.
+   *
+   * @param gtfsStop to find candidates for
+   * @param geoTools to use, not to be shared between threads
+   * @param data to use (read only)
+   * @return candidates, null when the stop is not matched by proximity
+   */
+  static GtfsStopMatchingCandidates find(GtfsStop gtfsStop, PlanitJtsCrsUtils geoTools, GtfsZoningHandlerData data){
+    var settings = data.getSettings();
+    var stopId = gtfsStop.getStopId();
+    if(settings.isExcludedGtfsStop(stopId) || settings.isOverwrittenGtfsStopTransferZoneMapping(stopId) || settings.isOverwrittenGtfsStopLocation(stopId)){
+      return null;
+    }
+    if(gtfsStop.getLocationType() != StopLocationType.STOP_PLATFORM){
+      return null;
+    }
+
+    /* same mode filtering as the stops handler, but on a copy */
+    var supportedModes = data.getSupportedPtModes(gtfsStop);
+    if(supportedModes == null){
+      return null;
+    }
+    var activatedModes = data.getActivatedPlanitModesByGtfsMode();
+    var primaryGtfsStopModes = supportedModes.stream().filter(activatedModes::contains).collect(Collectors.toList());
+    if(primaryGtfsStopModes.isEmpty()){
+      return null;
+    }
+    var mode2EligibleModesMapping = GtfsPlanitFileHandlerStops.createMode2EligibleModesMapping(primaryGtfsStopModes, data);
+
+    var nearbyTransferZones = GtfsTransferZoneHelper.findNearbyTransferZones(
+        gtfsStop.getLocationAsPoint(), settings.getGtfsStopToTransferZoneSearchRadiusMeters(), geoTools, data);
+
+    var linkSearchEnvelope = GtfsLinkHelper.createLinkSearchEnvelope(
+        gtfsStop.getLocationAsPoint(), settings.getGtfsStopToLinkSearchRadiusMeters(), geoTools, data);
+    var nearbyLinks = data.findGeoIndexedLinks(linkSearchEnvelope);
+
+    MacroscopicLink closestLink = null;
+    var compatibleNearbyLinks = new ArrayList<>(nearbyLinks);
+    compatibleNearbyLinks.removeIf(l -> !GtfsPlanitFileHandlerStops.isModeCompatibleLink(l, mode2EligibleModesMapping));
+    if(!compatibleNearbyLinks.isEmpty()){
+      closestLink = data.findClosestLink(data.getProjectedLocation(gtfsStop).getCoordinate(), compatibleNearbyLinks, false, geoTools);
+    }
+
+    return new GtfsStopMatchingCandidates(
+        gtfsStop, mode2EligibleModesMapping, Collections.unmodifiableCollection(nearbyTransferZones), linkSearchEnvelope, Collections.unmodifiableCollection(nearbyLinks), closestLink);
+  }
+
+  /**
+   * Verify candidates belong to the given stop
+   *
+   * @param gtfsStop to verify
+   * @return true when candidates are for this stop, false otherwise
+   */
+  boolean isFor(GtfsStop gtfsStop){
+    return this.gtfsStop == gtfsStop;
+  }
+
+  /**
+   * Verify the link candidates are still valid, i.e., no links have been added or removed within the link search envelope since the candidates were found
+   * and modification tracking started
+   *
+   * @param data to use
+   * @return true when valid, false otherwise
+   */
+  boolean isLinkCandidatesValid(GtfsZoningHandlerData data){
+    return !data.getGeoIndexedLinks().isModifiedWithin(linkSearchEnvelope);
+  }
+
+  /**
+   * Eligible modes by primary mode of the stop, identical to what the stops handler creates for this stop. The handler may modify the
+   * eligible modes while matching, so this is to be used for matching the stop only once
+   *
+   * @return eligible modes by primary mode
+   */
+  SortedMap<Mode, SortedSet<Mode>> getMode2EligibleModesMapping() {
+    return mode2EligibleModesMapping;
+  }
+
+  /**
+   * Nearby pre-existing transfer zones
+   *
+   * @return modifiable copy of nearby transfer zones
+   */
+  Collection<TransferZone> getNearbyTransferZones() {
+    return new ArrayList<>(nearbyTransferZones);
+  }
+
+  /**
+   * Nearby links, only valid when {@link #isLinkCandidatesValid(GtfsZoningHandlerData)} holds
+   *
+   * @return modifiable copy of nearby links
+   */
+  Collection<MacroscopicLink> getNearbyLinks() {
+    return new ArrayList<>(nearbyLinks);
+  }
+
+  /**
+   * Closest mode compatible nearby link, only valid when {@link #isLinkCandidatesValid(GtfsZoningHandlerData)} holds
+   *
+   * @return closest link, null if none
+   */
+  MacroscopicLink getClosestLink() {
+    return closestLink;
+  }
+}
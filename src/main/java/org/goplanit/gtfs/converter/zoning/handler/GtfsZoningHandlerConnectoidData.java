@@ -6,12 +6,16 @@ import org.goplanit.utils.network.layer.NetworkLayer;
 import org.goplanit.utils.zoning.DirectedConnectoid;
 import org.goplanit.zoning.Zoning;
 import org.locationtech.jts.geom.Point;
+import org.opengis.referencing.crs.CoordinateReferenceSystem;
+import org.opengis.referencing.crs.GeographicCRS;
 
 import java.util.*;
 import java.util.logging.Logger;
 
 /**
- * Zoning handler data specifically tailored towards connectoids
+ * Zoning handler data specifically tailored towards connectoids. Connectoids are tracked by the location of their access node in a spatial hash keyed
+ * on quantized coordinates (packed in a long) per layer, rather than by JTS point. Locations within a small tolerance of each other are considered the
+ * same location, so lookups do not depend on bit-exact coordinates, and probes by coordinate do not require any allocation.
  *
  * @author markr
  */
@@ -20,8 +24,131 @@ public class GtfsZoningHandlerConnectoidData {
   /** Logger to use */
   private static final Logger LOGGER = Logger.getLogger(GtfsZoningHandlerConnectoidData.class.getCanonicalName());
 
-  /** track created connectoids by their location and layer they reside on, needed to avoid creating duplicates when dealing with multiple modes/layers */
-  private final Map<MacroscopicNetworkLayer,Map<Point, List<DirectedConnectoid>>> directedConnectoidsByLocation;
+  /** tolerance within which locations are considered the same for projected (metric) coordinate reference systems */
+  public static final double LOCATION_TOLERANCE_METERS = 0.01;
+
+  /** tolerance within which locations are considered the same for geographic coordinate reference systems (approximately 1 cm) */
+  public static final double LOCATION_TOLERANCE_DEGREES = 1e-7;
+
+  /** a tracked connectoid and the coordinates it is registered at */
+  private static class LocatedConnectoid {
+
+    /** x coordinate */
+    final double x;
+
+    /** y coordinate */
+    final double y;
+
+    /** the connectoid */
+    final DirectedConnectoid connectoid;
+
+    /**
+     * Constructor
+     *
+     * @param x coordinate
+     * @param y coordinate
+     * @param connectoid the connectoid
+     */
+    LocatedConnectoid(double x, double y, DirectedConnectoid connectoid) {
+      this.x = x;
+      this.y = y;
+      this.connectoid = connectoid;
+    }
+  }
+
+  /** tolerance (and cell size of the spatial hash) in units of the network CRS */
+  private final double tolerance;
+
+  /** track created connectoids by their (quantized) location and layer they reside on, needed to avoid creating duplicates when dealing with multiple modes/layers */
+  private final Map<NetworkLayer, Map<Long, List<LocatedConnectoid>>> directedConnectoidsByLocation = new HashMap<>();
+
+  /** track created connectoids by their (quantized) location across all layers */
+  private final Map<Long, List<LocatedConnectoid>> allDirectedConnectoidsByLocation = new HashMap<>();
+
+  /**
+   * Pack quantized cell coordinates into a single key
+   *
+   * @param cellX quantized x
+   * @param cellY quantized y
+   * @return key
+   */
+  private static long toKey(long cellX, long cellY){
+    /* cells beyond the 32 bit range may collide, this only results in additional candidates that are filtered on distance */
+    return (cellX << 32) ^ (cellY & 0xFFFFFFFFL);
+  }
+
+  /**
+   * Quantize a coordinate value to its cell
+   *
+   * @param value to quantize
+   * @return cell
+   */
+  private long toCell(double value){
+    return (long) Math.floor(value / tolerance);
+  }
+
+  /**
+   * Verify if location is within tolerance of the given coordinates
+   *
+   * @param located to verify
+   * @param x coordinate
+   * @param y coordinate
+   * @return true when within tolerance, false otherwise
+   */
+  private boolean isWithinTolerance(LocatedConnectoid located, double x, double y){
+    double dx = located.x - x;
+    double dy = located.y - y;
+    return dx * dx + dy * dy <= tolerance * tolerance;
+  }
+
+  /**
+   * Probe the spatial hash for connectoids within tolerance of the given coordinates, i.e., the cell of the coordinates and its neighbours
+   *
+   * @param hash to probe
+   * @param x coordinate
+   * @param y coordinate
+   * @param result to add found connectoids to, when null, the probe stops at the first found connectoid
+   * @return true when any connectoid is found, false otherwise
+   */
+  private boolean probe(Map<Long, List<LocatedConnectoid>> hash, double x, double y, Collection<DirectedConnectoid> result){
+    if(hash == null || hash.isEmpty()){
+      return false;
+    }
+    boolean found = false;
+    long cellX = toCell(x);
+    long cellY = toCell(y);
+    for(long probeX = cellX - 1; probeX <= cellX + 1; ++probeX){
+      for(long probeY = cellY - 1; probeY <= cellY + 1; ++probeY){
+        var locatedConnectoids = hash.get(toKey(probeX, probeY));
+        if(locatedConnectoids == null){
+          continue;
+        }
+        for(var located : locatedConnectoids){
+          if(!isWithinTolerance(located, x, y)){
+            continue;
+          }
+          if(result == null){
+            return true;
+          }
+          found = true;
+          if(!result.contains(located.connectoid)) {
+            result.add(located.connectoid);
+          }
+        }
+      }
+    }
+    return found;
+  }
+
+  /**
+   * Register connectoid in the spatial hash
+   *
+   * @param hash to register in
+   * @param located to register
+   */
+  private void register(Map<Long, List<LocatedConnectoid>> hash, LocatedConnectoid located){
+    hash.computeIfAbsent(toKey(toCell(located.x), toCell(located.y)), k -> new ArrayList<>(1)).add(located);
+  }
 
   /**
    * Constructor
@@ -31,9 +158,14 @@ public class GtfsZoningHandlerConnectoidData {
   public GtfsZoningHandlerConnectoidData(ServiceNetwork serviceNetwork, Zoning referenceZoning){
     //TODO: no support yet for OD connectoids, meaning that if links are broken the connectoid is potentially moved for OD zones
 
+    CoordinateReferenceSystem crs = serviceNetwork.getParentNetwork().getCoordinateReferenceSystem();
+    this.tolerance = crs instanceof GeographicCRS ? LOCATION_TOLERANCE_DEGREES : LOCATION_TOLERANCE_METERS;
+
     /* locate by position (point) so we can use it even if the entities/ids change */
-    directedConnectoidsByLocation = referenceZoning.getTransferConnectoids().groupByPhysicalLayerAndCustomKey(
+    var preExistingConnectoidsByLocation = referenceZoning.getTransferConnectoids().groupByPhysicalLayerAndCustomKey(
         serviceNetwork.getParentNetwork().getTransportLayers(), d -> d.getAccessNode().getPosition());
+    preExistingConnectoidsByLocation.forEach( (layer, connectoidsByLocation) ->
+        connectoidsByLocation.forEach( (location, connectoids) -> connectoids.forEach(c -> addDirectedConnectoidByLocation(layer, location, c))));
   }
 
   /**
@@ -41,29 +173,45 @@ public class GtfsZoningHandlerConnectoidData {
    */
   public void reset() {
     directedConnectoidsByLocation.clear();
+    allDirectedConnectoidsByLocation.clear();
   }
 
-  /** collect the registered connectoids indexed by their locations for a given network layer (unmodifiable)
+  /** Collect the registered connectoids residing at (or within tolerance of) any of the given locations for a given network layer, indexed by the location
+   * they were registered at
    *
    * @param networkLayer to use
+   * @param locations to collect connectoids for
    * @return registered directed connectoids indexed by location
    */
-  public Map<Point, List<DirectedConnectoid>> getDirectedConnectoidsByLocation(MacroscopicNetworkLayer networkLayer) {
-    directedConnectoidsByLocation.putIfAbsent(networkLayer, new HashMap<>());
-    return Collections.unmodifiableMap(directedConnectoidsByLocation.get(networkLayer));
+  public Map<Point, List<DirectedConnectoid>> getDirectedConnectoidsByLocation(MacroscopicNetworkLayer networkLayer, Point... locations) {
+    Map<Point, List<DirectedConnectoid>> result = new HashMap<>();
+    for(var location : locations){
+      var connectoids = getDirectedConnectoidsByLocation(location, networkLayer);
+      if(connectoids == null){
+        continue;
+      }
+      for(var connectoid : connectoids){
+        var connectoidsAtLocation = result.computeIfAbsent(connectoid.getAccessNode().getPosition(), p -> new ArrayList<>(1));
+        if(!connectoidsAtLocation.contains(connectoid)){
+          connectoidsAtLocation.add(connectoid);
+        }
+      }
+    }
+    return result;
   }
 
-  /** Collect the registered connectoids by given locations and network layer (unmodifiable)
+  /** Collect the registered connectoids by given locations and network layer
    *
    * @param nodeLocation to verify
    * @param networkLayer to extract from
-   * @return found connectoids (if any), otherwise null or empty set
+   * @return found connectoids (if any), otherwise null
    */
   public List<DirectedConnectoid> getDirectedConnectoidsByLocation(Point nodeLocation, MacroscopicNetworkLayer networkLayer) {
-    return getDirectedConnectoidsByLocation(networkLayer).get(nodeLocation);
+    var result = new ArrayList<DirectedConnectoid>(1);
+    return probe(directedConnectoidsByLocation.get(networkLayer), nodeLocation.getX(), nodeLocation.getY(), result) ? result : null;
   }
 
-  /** Add a connectoid to the registered connectoids indexed by their OSM id
+  /** Add a connectoid to the registered connectoids indexed by their location
    *
    * @param networkLayer to register for
    * @param connectoidLocation this connectoid relates to
@@ -71,14 +219,15 @@ public class GtfsZoningHandlerConnectoidData {
    * @return true when successful, false otherwise
    */
   public boolean addDirectedConnectoidByLocation(MacroscopicNetworkLayer networkLayer, Point connectoidLocation , DirectedConnectoid connectoid) {
-    directedConnectoidsByLocation.putIfAbsent(networkLayer, new HashMap<>());
-    Map<Point, List<DirectedConnectoid>> connectoidsForLayer = directedConnectoidsByLocation.get(networkLayer);
-    connectoidsForLayer.putIfAbsent(connectoidLocation, new ArrayList<>(1));
-    List<DirectedConnectoid> connectoids = connectoidsForLayer.get(connectoidLocation);
-    if(!connectoids.contains(connectoid)) {
-      return connectoids.add(connectoid);
+    var layerHash = directedConnectoidsByLocation.computeIfAbsent(networkLayer, l -> new HashMap<>());
+    var existing = new ArrayList<DirectedConnectoid>(1);
+    if(probe(layerHash, connectoidLocation.getX(), connectoidLocation.getY(), existing) && existing.contains(connectoid)){
+      return false;
     }
-    return false;
+    var located = new LocatedConnectoid(connectoidLocation.getX(), connectoidLocation.getY(), connectoid);
+    register(layerHash, located);
+    register(allDirectedConnectoidsByLocation, located);
+    return true;
   }
 
   /** Check if any connectoids have been registered for the given location on any layer
@@ -87,12 +236,17 @@ public class GtfsZoningHandlerConnectoidData {
    * @return true when present, false otherwise
    */
   public boolean hasAnyDirectedConnectoidsForLocation(Point location) {
-    for( var entry : directedConnectoidsByLocation.entrySet()) {
-      if(hasDirectedConnectoidForLocation(entry.getKey(), location)) {
-        return true;
-      }
-    }
-    return false;
+    return hasAnyDirectedConnectoidsForLocation(location.getX(), location.getY());
+  }
+
+  /** Check if any connectoids have been registered for the given coordinates on any layer
+   *
+   * @param x coordinate
+   * @param y coordinate
+   * @return true when present, false otherwise
+   */
+  public boolean hasAnyDirectedConnectoidsForLocation(double x, double y) {
+    return probe(allDirectedConnectoidsByLocation, x, y, null);
   }
 
   /** Check if any connectoid has been registered for the given location for this layer
@@ -102,7 +256,17 @@ public class GtfsZoningHandlerConnectoidData {
    * @return true when present, false otherwise
    */
   public boolean hasDirectedConnectoidForLocation(NetworkLayer networkLayer, Point point) {
-    Map<Point, List<DirectedConnectoid>>  connectoidsForLayer = directedConnectoidsByLocation.get(networkLayer);
-    return connectoidsForLayer != null && connectoidsForLayer.get(point) != null && !connectoidsForLayer.get(point).isEmpty();
+    return hasDirectedConnectoidForLocation(networkLayer, point.getX(), point.getY());
+  }
+
+  /** Check if any connectoid has been registered for the given coordinates for this layer
+   *
+   * @param networkLayer to check for
+   * @param x coordinate
+   * @param y coordinate
+   * @return true when present, false otherwise
+   */
+  public boolean hasDirectedConnectoidForLocation(NetworkLayer networkLayer, double x, double y) {
+    return probe(directedConnectoidsByLocation.get(networkLayer), x, y, null);
   }
 }
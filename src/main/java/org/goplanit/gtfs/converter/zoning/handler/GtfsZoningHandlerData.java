@@ -1,11 +1,13 @@
 package org.goplanit.gtfs.converter.zoning.handler;
 
+import org.goplanit.converter.idmapping.IdMapperType;
 import org.goplanit.gtfs.converter.GtfsConverterHandlerData;
 import org.goplanit.gtfs.converter.zoning.GtfsZoningReaderSettings;
 import org.goplanit.gtfs.entity.GtfsStop;
 import org.goplanit.network.ServiceNetwork;
 import org.goplanit.service.routed.RoutedServices;
-import org.goplanit.utils.geo.GeoContainerUtils;
+import org.goplanit.utils.geo.PlanitEntityGeoUtils;
+import org.goplanit.utils.geo.PlanitGraphGeoUtils;
 import org.goplanit.utils.geo.PlanitJtsCrsUtils;
 import org.goplanit.utils.geo.PlanitJtsUtils;
 import org.goplanit.utils.misc.Pair;
@@ -18,10 +20,12 @@ import org.goplanit.utils.network.layer.service.ServiceNode;
 import org.goplanit.utils.zoning.DirectedConnectoid;
 import org.goplanit.utils.zoning.TransferZone;
 import org.goplanit.zoning.Zoning;
+import org.locationtech.jts.geom.Coordinate;
 import org.locationtech.jts.geom.Envelope;
 import org.locationtech.jts.geom.Point;
 import org.locationtech.jts.index.quadtree.Quadtree;
 import org.opengis.referencing.operation.MathTransform;
+import org.opengis.referencing.operation.TransformException;
 
 import java.util.*;
 import java.util.function.Function;
@@ -58,8 +62,14 @@ public class GtfsZoningHandlerData extends GtfsConverterHandlerData {
   /** track transfer zone data */
   private GtfsZoningHandlerTransferZoneData transferZoneData;
 
+  /** track user overwritten mapping targets */
+  private GtfsZoningHandlerOverrideData overrideData;
+
+  /** persisted GTFS stop mappings of earlier runs, null when not used */
+  private GtfsStopMappingCache stopMappingCache;
+
   /** track link geospatially to identify nearby links for GTFS Stops and be able to discern if a matched transfer zone (its access link segment) is appropriate */
-  private Quadtree geoIndexedLinks;
+  private GtfsZoningHandlerLinkData geoIndexedLinks;
 
   // STATIC INFORMATION DURING PROCESSING
 
@@ -72,6 +82,9 @@ public class GtfsZoningHandlerData extends GtfsConverterHandlerData {
   /** apply this transformation to all coordinates so they are consistent with the underlying PLANit entities */
   private MathTransform crsTransform;
 
+  /** planar distance approximation, only present when fast distance approximation is activated */
+  private GtfsPlanarDistanceApproximation distanceApproximation;
+
   // TO POPULATE
 
   /** Zoning to populate (further) */
@@ -83,15 +96,24 @@ public class GtfsZoningHandlerData extends GtfsConverterHandlerData {
   protected void initialise(){
     this.serviceNodeModesByGtfsStopId = new HashMap<>();
 
-    /* all links across all used layers for activated modes in geoindexed format */
-    Set<MacroscopicNetworkLayer> usedLayers = new HashSet<>();
-    getActivatedPlanitModesByGtfsMode().forEach(m -> usedLayers.add(getServiceNetwork().getParentNetwork().getLayerByMode(m)));
+    /* all links across all used layers for activated modes in geoindexed format, layers are visited in network order so the index is deterministic.
+     * Links of different layers share the index, each mode resides on a single layer and candidate links are filtered by mode, so layers remain separated */
+    var activatedModes = getActivatedPlanitModesByGtfsMode();
     Collection<MacroscopicLinks> linksCollection = new ArrayList<>();
-    usedLayers.forEach( l -> linksCollection.add(l.getLinks()));
-    this.geoIndexedLinks = GeoContainerUtils.toGeoIndexed(linksCollection);
+    for(var layer : getServiceNetwork().getParentNetwork().getTransportLayers()){
+      if(activatedModes.stream().anyMatch(layer::supports)){
+        linksCollection.add(layer.getLinks());
+      }
+    }
+    this.geoIndexedLinks = new GtfsZoningHandlerLinkData(linksCollection);
+    if(linksCollection.size() > 1){
+      LOGGER.info(String.format("Spatially indexed links of %d physical network layers for GTFS stop matching", linksCollection.size()));
+    }
 
     this.geoTools = new PlanitJtsCrsUtils(getServiceNetwork().getParentNetwork().getCoordinateReferenceSystem());
     this.crsTransform = PlanitJtsUtils.findMathTransform(PlanitJtsCrsUtils.DEFAULT_GEOGRAPHIC_CRS, geoTools.getCoordinateReferenceSystem());
+    this.distanceApproximation = getSettings().isFastDistanceApproximation() ?
+        new GtfsPlanarDistanceApproximation(geoTools.getCoordinateReferenceSystem()) : null;
 
     /* index: MODE -> (pre-existing) SERVICE NODE */
     for(var routedServiceLayer : getRoutedServices().getLayers()){
@@ -152,6 +174,8 @@ public class GtfsZoningHandlerData extends GtfsConverterHandlerData {
     initialise();
     this.connectoidData = new GtfsZoningHandlerConnectoidData(serviceNetwork, zoningToPopulate);
     this.transferZoneData = new GtfsZoningHandlerTransferZoneData(serviceNetwork, settings, zoningToPopulate);
+    this.overrideData = new GtfsZoningHandlerOverrideData(settings, serviceNetwork, zoningToPopulate);
+    this.stopMappingCache = settings.getStopMappingCacheFile() != null ? GtfsStopMappingCache.load(settings.getStopMappingCacheFile()) : null;
   }
 
   /**
@@ -165,6 +189,17 @@ public class GtfsZoningHandlerData extends GtfsConverterHandlerData {
     return resultPair!=null ? resultPair.second() : null;
   }
 
+  /**
+   * Collect the pre-existing service node of a GTFS stop
+   *
+   * @param gtfsStopId to collect service node for
+   * @return found service node, or null if none is found
+   */
+  public ServiceNode getServiceNode(String gtfsStopId){
+    var resultPair = this.serviceNodeModesByGtfsStopId.get(gtfsStopId);
+    return resultPair!=null ? resultPair.first() : null;
+  }
+
   /**
    * Access to the zoning to populate
    * @return zoning to populate (further)
@@ -218,22 +253,89 @@ public class GtfsZoningHandlerData extends GtfsConverterHandlerData {
   }
 
   /**
-   * Get all the geo indexed links as a quad tree
+   * Project the locations of the given GTFS stops to the network CRS in a single batch transformation and cache the result on each stop.
+   * Stops without a valid location are skipped, they remain unprojected
+   *
+   * @param gtfsStops to project
+   * @return number of stops projected
+   */
+  public int projectGtfsStops(Collection<GtfsStop> gtfsStops) {
+    List<GtfsStop> validStops = new ArrayList<>(gtfsStops.size());
+    double[] packedCoordinates = new double[2 * gtfsStops.size()];
+    for(var gtfsStop : gtfsStops){
+      Coordinate coordinate;
+      try {
+        coordinate = gtfsStop.getLocationAsCoord();
+      }catch(Exception e){
+        continue;
+      }
+      packedCoordinates[2 * validStops.size()] = coordinate.x;
+      packedCoordinates[2 * validStops.size() + 1] = coordinate.y;
+      validStops.add(gtfsStop);
+    }
+
+    try {
+      crsTransform.transform(packedCoordinates, 0, packedCoordinates, 0, validStops.size());
+    } catch (TransformException e) {
+      LOGGER.warning(String.format("Unable to batch project GTFS stop locations to PLANit network CRS (%s), projecting on demand instead", e.getMessage()));
+      return 0;
+    }
+
+    for(int index = 0; index < validStops.size(); ++index){
+      validStops.get(index).setProjectedLocation(
+          PlanitJtsUtils.createPoint(new Coordinate(packedCoordinates[2 * index], packedCoordinates[2 * index + 1])));
+    }
+    return validStops.size();
+  }
+
+  /**
+   * Collect the location of the GTFS stop in the network CRS. Uses the cached projected location when available, otherwise it is projected
+   * and cached on the stop
+   *
+   * @param gtfsStop to collect projected location for
+   * @return projected location
+   */
+  public Point getProjectedLocation(GtfsStop gtfsStop) {
+    if(!gtfsStop.hasProjectedLocation()){
+      gtfsStop.setProjectedLocation((Point) PlanitJtsUtils.transformGeometry(gtfsStop.getLocationAsPoint(), crsTransform));
+    }
+    return gtfsStop.getProjectedLocation();
+  }
+
+  /**
+   * Access to the persisted GTFS stop mappings of earlier runs
+   *
+   * @return stop mapping cache, null when not used
+   */
+  public GtfsStopMappingCache getStopMappingCache() {
+    return stopMappingCache;
+  }
+
+  /**
+   * Get all the geo indexed links
    *
    * @return registered geo indexed links
    */
-  public Quadtree getGeoIndexedLinks() {
+  public GtfsZoningHandlerLinkData getGeoIndexedLinks() {
     return this.geoIndexedLinks;
   }
 
+  /**
+   * Find geo indexed links with a bounding box intersecting the given envelope
+   *
+   * @param searchEnvelope to use (in network CRS)
+   * @return found links
+   */
+  public Collection<MacroscopicLink> findGeoIndexedLinks(Envelope searchEnvelope) {
+    return geoIndexedLinks.query(searchEnvelope);
+  }
+
   /** Remove link from local spatial index based on links
    *
    * @param link to remove
    */
   public void removeGeoIndexedLink(MacroscopicLink link) {
-    if(link != null) {
-      geoIndexedLinks.remove(link.createEnvelope(), link);
-    }
+    geoIndexedLinks.remove(link);
   }
 
   /** Add provided link to local spatial index based on their bounding box
@@ -241,9 +343,7 @@ public class GtfsZoningHandlerData extends GtfsConverterHandlerData {
    * @param link to add
    */
   public void addGeoIndexedLink(MacroscopicLink link) {
-    if(link != null) {
-      geoIndexedLinks.insert(link.createEnvelope(), link);
-    }
+    geoIndexedLinks.add(link);
   }
 
   /** Add provided link to local spatial index based on their bounding box
@@ -253,11 +353,119 @@ public class GtfsZoningHandlerData extends GtfsConverterHandlerData {
   public void addGeoIndexedLinks(MacroscopicLink... links) {
     if(links != null) {
       for(var link : links) {
-        geoIndexedLinks.insert(link.createEnvelope(), link);
+        geoIndexedLinks.add(link);
       }
     }
   }
 
+  // DISTANCE METHODS
+
+  /**
+   * Verify if two points are within the given distance of each other, using the fast distance approximation when activated
+   *
+   * @param from point
+   * @param to point
+   * @param distanceMetres to verify against
+   * @param geoTools to use, allows callers on other threads to provide their own
+   * @return true when within distance, false otherwise
+   */
+  public boolean isDistanceWithinMetres(Point from, Point to, double distanceMetres, PlanitJtsCrsUtils geoTools) {
+    if(distanceApproximation == null){
+      return geoTools.isDistanceWithinMetres(from, to, distanceMetres);
+    }
+    return distanceApproximation.isDistanceWithinMetres(from, to, distanceMetres, geoTools);
+  }
+
+  /**
+   * Verify if two points are within the given distance of each other, using the fast distance approximation when activated
+   *
+   * @param from point
+   * @param to point
+   * @param distanceMetres to verify against
+   * @return true when within distance, false otherwise
+   */
+  public boolean isDistanceWithinMetres(Point from, Point to, double distanceMetres) {
+    return isDistanceWithinMetres(from, to, distanceMetres, geoTools);
+  }
+
+  /**
+   * Find the closest link to the given location, using the fast distance approximation when activated
+   *
+   * @param location to find closest link for
+   * @param links to choose from
+   * @param suppressLogging when true, do not log
+   * @param geoTools to use, allows callers on other threads to provide their own
+   * @return closest link, null if none
+   */
+  public MacroscopicLink findClosestLink(Coordinate location, Collection<? extends MacroscopicLink> links, boolean suppressLogging, PlanitJtsCrsUtils geoTools) {
+    if(distanceApproximation == null){
+      var result = PlanitEntityGeoUtils.findPlanitEntityClosest(location, links, suppressLogging, geoTools);
+      return result != null ? result.first() : null;
+    }
+    var result = distanceApproximation.findClosestLink(location, links, suppressLogging, geoTools);
+    return result != null ? result.getKey() : null;
+  }
+
+  /**
+   * Find the closest link to the given location, using the fast distance approximation when activated
+   *
+   * @param location to find closest link for
+   * @param links to choose from
+   * @param suppressLogging when true, do not log
+   * @return closest link, null if none
+   */
+  public MacroscopicLink findClosestLink(Coordinate location, Collection<? extends MacroscopicLink> links, boolean suppressLogging) {
+    return findClosestLink(location, links, suppressLogging, geoTools);
+  }
+
+  /**
+   * Find the links within the given delta of the distance of the closest link to the given location, using the fast distance approximation when activated
+   *
+   * @param location to use
+   * @param links to choose from
+   * @param deltaMetres allowed beyond the closest distance
+   * @return found links
+   */
+  public Set<MacroscopicLink> findLinksWithinClosestDistanceDelta(Point location, Collection<? extends MacroscopicLink> links, double deltaMetres) {
+    if(distanceApproximation == null){
+      return new HashSet<>(PlanitGraphGeoUtils.findEdgesWithinClosestDistanceDeltaToGeometry(location, links, deltaMetres, geoTools).keySet());
+    }
+    return distanceApproximation.findLinksWithinClosestDistanceDelta(location.getCoordinate(), links, deltaMetres, geoTools);
+  }
+
+  // OVERRIDE METHODS
+
+  /**
+   * Find the link on the given layer that is the target of a user overwritten GTFS stop to link mapping
+   *
+   * @param networkLayer to find link on
+   * @param linkIdAndType the overwritten link id and its type
+   * @return found link, null if not present
+   */
+  public MacroscopicLink findOverwrittenLink(MacroscopicNetworkLayer networkLayer, Pair<Object, IdMapperType> linkIdAndType) {
+    return overrideData.findOverwrittenLink(networkLayer, linkIdAndType);
+  }
+
+  /**
+   * Update the tracking of links that are the target of user overwritten GTFS stop to link mappings, e.g., after breaking a link
+   *
+   * @param networkLayer the links reside on
+   * @param links to update
+   */
+  public void updateOverwrittenLinks(MacroscopicNetworkLayer networkLayer, MacroscopicLink... links) {
+    overrideData.updateOverwrittenLinks(networkLayer, links);
+  }
+
+  /**
+   * Find pre-existing transfer zone that is the target of a user overwritten GTFS stop to transfer zone mapping by its XML id
+   *
+   * @param xmlId to find
+   * @return found transfer zone, null if not present
+   */
+  public TransferZone findOverwrittenTransferZoneByXmlId(String xmlId) {
+    return overrideData.findOverwrittenTransferZoneByXmlId(xmlId);
+  }
+
   // CONNECTOID METHODS
 
   /**
@@ -266,20 +474,22 @@ public class GtfsZoningHandlerData extends GtfsConverterHandlerData {
     return referenceNetworkBoundingBox;
   }
 
-  /** collect the registered connectoids indexed by their locations for a given network layer (unmodifiable)
+  /** collect the registered connectoids residing at (or within a small tolerance of) any of the given locations for a given network layer,
+   * indexed by the location they were registered at
    *
    * @param networkLayer to use
+   * @param locations to collect connectoids for
    * @return registered directed connectoids indexed by location
    */
-  public Map<Point, List<DirectedConnectoid>> getDirectedConnectoidsByLocation(MacroscopicNetworkLayer networkLayer) {
-    return connectoidData.getDirectedConnectoidsByLocation(networkLayer);
+  public Map<Point, List<DirectedConnectoid>> getDirectedConnectoidsByLocation(MacroscopicNetworkLayer networkLayer, Point... locations) {
+    return connectoidData.getDirectedConnectoidsByLocation(networkLayer, locations);
   }
 
   /** Collect the registered connectoids by given locations and network layer (unmodifiable)
    *
    * @param nodeLocation to verify
    * @param networkLayer to extract from
-   * @return found connectoids (if any), otherwise null or empty set
+   * @return found connectoids (if any), otherwise null
    */
   public List<DirectedConnectoid> getDirectedConnectoidsByLocation(Point nodeLocation, MacroscopicNetworkLayer networkLayer) {
     return connectoidData.getDirectedConnectoidsByLocation(nodeLocation, networkLayer);
@@ -338,6 +548,15 @@ public class GtfsZoningHandlerData extends GtfsConverterHandlerData {
     return transferZoneData.getMappedTransferZone(gtfsStop);
   }
 
+  /**
+   * All GTFS stops that have been mapped to a PLANit transfer zone
+   *
+   * @return mapped GTFS stops (unmodifiable)
+   */
+  public Collection<GtfsStop> getMappedGtfsStops() {
+    return transferZoneData.getMappedGtfsStops();
+  }
+
   /**
    * Check if transfer zone already has a mapped GTFS stop
    * @param transferZone to check
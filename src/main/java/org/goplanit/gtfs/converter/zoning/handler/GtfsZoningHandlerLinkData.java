@@ -0,0 +1,336 @@
+package org.goplanit.gtfs.converter.zoning.handler;
+
+import org.goplanit.utils.exceptions.PlanItRunTimeException;
+import org.goplanit.utils.network.layer.macroscopic.MacroscopicLink;
+import org.goplanit.utils.network.layer.macroscopic.MacroscopicLinks;
+import org.locationtech.jts.geom.Envelope;
+import org.locationtech.jts.index.quadtree.Quadtree;
+import org.locationtech.jts.index.strtree.STRtree;
+
+import java.util.*;
+import java.util.function.BiConsumer;
+import java.util.logging.Logger;
+
+/**
+ * Zoning handler data specifically tailored towards the spatial index of links. The bulk of the links is stored in a packed (bulk-loaded) STR tree
+ * which is built once and cannot be modified afterwards. Since links are broken while matching GTFS stops, links that are removed are tracked separately
+ * and links that are (re-)added are stored in a small dynamic overlay. Once the overlay and/or removed links grow beyond a fraction of the packed tree,
+ * they are merged into a newly packed tree.
+ * <p>
+ *   Querying does not modify the index, so concurrent queries are allowed as long as no links are added or removed at the same time
+ * </p>
+ * <p>
+ *   Modifications are only logged while at least one consumer of the modification log is registered, and logged modifications are discarded
+ *   once all registered consumers have replayed them, so the log does not grow for the duration of the entire run
+ * </p>
+ *
+ * @author markr
+ */
+public class GtfsZoningHandlerLinkData {
+
+  /** Logger to use */
+  private static final Logger LOGGER = Logger.getLogger(GtfsZoningHandlerLinkData.class.getCanonicalName());
+
+  /** minimum number of pending changes (overlay plus removed links) before merging them into the packed tree */
+  public static final int MIN_PENDING_CHANGES_BEFORE_MERGE = 1024;
+
+  /** fraction of the packed tree size that pending changes (overlay plus removed links) may reach before merging them into the packed tree */
+  public static final double MAX_PENDING_CHANGES_FRACTION = 0.05;
+
+  /** links present in the packed tree */
+  private List<MacroscopicLink> packedLinks;
+
+  /** packed tree, bulk-loaded, no longer modifiable */
+  private STRtree packedTree;
+
+  /** links removed since the packed tree was built that are still present in the packed tree */
+  private final Set<MacroscopicLink> removedPackedLinks = Collections.newSetFromMap(new IdentityHashMap<>());
+
+  /** links added since the packed tree was built */
+  private Quadtree overlay = new Quadtree();
+
+  /** envelopes of links added or removed since modification tracking started, null when not tracking */
+  private Quadtree modifiedEnvelopes = null;
+
+  /** number of merges conducted */
+  private int numberOfMerges = 0;
+
+  /** number of modifications (additions and removals of links) so far */
+  private int numberOfModifications = 0;
+
+  /** links added or removed that are not yet replayed by all registered consumers, in order of modification */
+  private List<MacroscopicLink> modificationLog = new ArrayList<>();
+
+  /** flags indicating which entries of the modification log are additions (set) rather than removals */
+  private BitSet modificationLogAdditions = new BitSet();
+
+  /** number of modifications preceding the first entry of the modification log, i.e., those discarded */
+  private int modificationLogOffset = 0;
+
+  /** number of modifications each registered consumer of the modification log has replayed */
+  private final Map<Object, Integer> modificationLogPositionByConsumer = new IdentityHashMap<>();
+
+  /**
+   * Log a modified link and register its envelope when tracking modifications
+   *
+   * @param link that is added or removed
+   * @param addition true when added, false when removed
+   */
+  private void trackModification(MacroscopicLink link, boolean addition){
+    ++numberOfModifications;
+    if(modificationLogPositionByConsumer.isEmpty()){
+      modificationLogOffset = numberOfModifications;
+    }else{
+      modificationLogAdditions.set(modificationLog.size(), addition);
+      modificationLog.add(link);
+    }
+    if(modifiedEnvelopes != null){
+      var envelope = link.createEnvelope();
+      modifiedEnvelopes.insert(envelope, envelope);
+    }
+  }
+
+  /**
+   * Discard the entries of the modification log that have been replayed by all registered consumers. To avoid shifting the log on each replay,
+   * this is only done when all entries can be discarded or at least half of them
+   */
+  private void truncateModificationLog(){
+    int position = modificationLogPositionByConsumer.values().stream().mapToInt(Integer::intValue).min().orElse(numberOfModifications);
+    int numberToDiscard = position - modificationLogOffset;
+    if(numberToDiscard == modificationLog.size()){
+      modificationLog.clear();
+      modificationLogAdditions.clear();
+    }else if(numberToDiscard >= modificationLog.size() / 2){
+      modificationLogAdditions = modificationLogAdditions.get(numberToDiscard, modificationLog.size());
+      modificationLog = new ArrayList<>(modificationLog.subList(numberToDiscard, modificationLog.size()));
+    }else{
+      return;
+    }
+    modificationLogOffset = position;
+  }
+
+  /**
+   * Bulk-load the packed tree with the given links
+   *
+   * @param links to bulk-load
+   */
+  private void buildPackedTree(List<MacroscopicLink> links){
+    this.packedLinks = links;
+    this.packedTree = new STRtree();
+    for(var link : links) {
+      packedTree.insert(link.createEnvelope(), link);
+    }
+    /* build explicitly, otherwise the first query builds it lazily which is not thread safe */
+    packedTree.build();
+  }
+
+  /**
+   * Merge pending changes into a newly packed tree when the pending changes exceed the allowed threshold
+   */
+  private void mergeIfNeeded(){
+    int pendingChanges = overlay.size() + removedPackedLinks.size();
+    if(pendingChanges < Math.max(MIN_PENDING_CHANGES_BEFORE_MERGE, MAX_PENDING_CHANGES_FRACTION * packedLinks.size())){
+      return;
+    }
+    merge();
+  }
+
+  /**
+   * Constructor
+   *
+   * @param linksCollection links to bulk-load into the index
+   */
+  public GtfsZoningHandlerLinkData(Collection<MacroscopicLinks> linksCollection){
+    List<MacroscopicLink> links = new ArrayList<>();
+    linksCollection.forEach(layerLinks -> layerLinks.forEach(links::add));
+    buildPackedTree(links);
+  }
+
+  /**
+   * Merge all pending changes (overlay and removed links) into a newly packed tree
+   */
+  public void merge(){
+    List<MacroscopicLink> links = new ArrayList<>(packedLinks.size() - removedPackedLinks.size() + overlay.size());
+    for(var link : packedLinks){
+      if(!removedPackedLinks.contains(link)){
+        links.add(link);
+      }
+    }
+    for(var overlayLink : overlay.queryAll()){
+      links.add((MacroscopicLink) overlayLink);
+    }
+    LOGGER.fine(String.format("Merging %d overlay links and %d removed links into packed spatial link index", overlay.size(), removedPackedLinks.size()));
+
+    buildPackedTree(links);
+    removedPackedLinks.clear();
+    overlay = new Quadtree();
+    ++numberOfMerges;
+  }
+
+  /**
+   * Find all links with a bounding box intersecting the given envelope
+   *
+   * @param searchEnvelope to use
+   * @return found links
+   */
+  @SuppressWarnings("unchecked")
+  public Collection<MacroscopicLink> query(Envelope searchEnvelope){
+    var result = new ArrayList<MacroscopicLink>();
+    for(var link : (List<MacroscopicLink>) packedTree.query(searchEnvelope)){
+      if(removedPackedLinks.isEmpty() || !removedPackedLinks.contains(link)){
+        result.add(link);
+      }
+    }
+    /* overlay query may be over-approximated, so filter explicitly */
+    for(var link : (List<MacroscopicLink>) overlay.query(searchEnvelope)){
+      if(link.createEnvelope().intersects(searchEnvelope)){
+        result.add(link);
+      }
+    }
+    return result;
+  }
+
+  /** Remove link from spatial index
+   *
+   * @param link to remove
+   */
+  public void remove(MacroscopicLink link){
+    if(link == null){
+      return;
+    }
+    if(!overlay.remove(link.createEnvelope(), link)){
+      removedPackedLinks.add(link);
+    }
+    trackModification(link, false);
+  }
+
+  /** Add link to spatial index
+   *
+   * @param link to add
+   */
+  public void add(MacroscopicLink link){
+    if(link == null){
+      return;
+    }
+    overlay.insert(link.createEnvelope(), link);
+    trackModification(link, true);
+    mergeIfNeeded();
+  }
+
+  /**
+   * Start tracking the envelopes of links that are added or removed from now on, discarding any earlier tracked modifications. Allows one to
+   * verify if query results obtained before this call are still valid afterwards
+   */
+  public void startTrackingModifications(){
+    modifiedEnvelopes = new Quadtree();
+  }
+
+  /**
+   * Stop tracking modifications
+   */
+  public void stopTrackingModifications(){
+    modifiedEnvelopes = null;
+  }
+
+  /**
+   * Verify if any link intersecting the given envelope has been added or removed since modification tracking started
+   *
+   * @param searchEnvelope to verify
+   * @return true when modified (or not tracking), false otherwise
+   */
+  @SuppressWarnings("unchecked")
+  public boolean isModifiedWithin(Envelope searchEnvelope){
+    if(modifiedEnvelopes == null){
+      return true;
+    }
+    return ((List<Envelope>) modifiedEnvelopes.query(searchEnvelope)).stream().anyMatch(e -> e.intersects(searchEnvelope));
+  }
+
+  /**
+   * Number of modifications (additions and removals of links) so far, can be used as a version of the index
+   *
+   * @return number of modifications
+   */
+  public int getNumberOfModifications(){
+    return numberOfModifications;
+  }
+
+  /**
+   * Register a consumer of the modification log, all modifications from now on are logged until replayed by the consumer or it is unregistered
+   *
+   * @param logConsumer to register, identified by reference
+   */
+  public void registerModificationLogConsumer(Object logConsumer){
+    modificationLogPositionByConsumer.put(logConsumer, numberOfModifications);
+  }
+
+  /**
+   * Unregister a consumer of the modification log, discarding the modifications no other registered consumer still has to replay
+   *
+   * @param logConsumer to unregister
+   */
+  public void unregisterModificationLogConsumer(Object logConsumer){
+    if(modificationLogPositionByConsumer.remove(logConsumer) != null){
+      truncateModificationLog();
+    }
+  }
+
+  /**
+   * Apply the consumer to all modifications the registered log consumer has not replayed yet, in order of modification
+   *
+   * @param logConsumer registered consumer of the modification log, see {@link #registerModificationLogConsumer(Object)}
+   * @param consumer to apply, taking the modified link and a flag that is true for additions and false for removals
+   */
+  public void forEachModificationSinceLastReplay(Object logConsumer, BiConsumer<MacroscopicLink, Boolean> consumer){
+    Integer position = modificationLogPositionByConsumer.get(logConsumer);
+    PlanItRunTimeException.throwIfNull(position, "Consumer of link index modification log not registered, unable to replay modifications");
+    for(int index = position - modificationLogOffset; index < modificationLog.size(); ++index){
+      consumer.accept(modificationLog.get(index), modificationLogAdditions.get(index));
+    }
+    modificationLogPositionByConsumer.put(logConsumer, numberOfModifications);
+    truncateModificationLog();
+  }
+
+  /**
+   * Number of modifications currently held by the modification log, i.e., not yet replayed by all registered consumers
+   *
+   * @return number of logged modifications
+   */
+  public int getModificationLogSize(){
+    return modificationLog.size();
+  }
+
+  /**
+   * Number of links in the index
+   *
+   * @return number of links
+   */
+  public int size(){
+    return packedLinks.size() - removedPackedLinks.size() + overlay.size();
+  }
+
+  /**
+   * Number of merges of pending changes into the packed tree conducted so far
+   *
+   * @return number of merges
+   */
+  public int getNumberOfMerges(){
+    return numberOfMerges;
+  }
+
+  /**
+   * Reset the spatial index, removing all links
+   */
+  public void reset(){
+    buildPackedTree(new ArrayList<>());
+    removedPackedLinks.clear();
+    overlay = new Quadtree();
+    modifiedEnvelopes = null;
+    numberOfMerges = 0;
+    numberOfModifications = 0;
+    modificationLog.clear();
+    modificationLogAdditions.clear();
+    modificationLogOffset = 0;
+    modificationLogPositionByConsumer.clear();
+  }
+}
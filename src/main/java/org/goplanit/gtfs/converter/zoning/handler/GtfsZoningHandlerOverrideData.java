@@ -0,0 +1,167 @@
+package org.goplanit.gtfs.converter.zoning.handler;
+
+import org.goplanit.converter.idmapping.IdMapperFunctionFactory;
+import org.goplanit.converter.idmapping.IdMapperType;
+import org.goplanit.gtfs.converter.zoning.GtfsZoningReaderSettings;
+import org.goplanit.network.ServiceNetwork;
+import org.goplanit.utils.misc.Pair;
+import org.goplanit.utils.network.layer.MacroscopicNetworkLayer;
+import org.goplanit.utils.network.layer.macroscopic.MacroscopicLink;
+import org.goplanit.utils.network.layer.physical.Link;
+import org.goplanit.utils.zoning.TransferZone;
+import org.goplanit.zoning.Zoning;
+
+import java.util.*;
+import java.util.function.Function;
+import java.util.logging.Logger;
+
+/**
+ * Zoning handler data specifically tailored towards user overwritten mappings of GTFS stops to links and transfer zones. All overwritten ids are
+ * resolved upfront in a single pass over the links of the network and the transfer zones of the zoning, indexed per id type, such that each
+ * lookup afterwards is constant time rather than a search over all links. Links that are broken afterwards are re-indexed via
+ * {@link #updateOverwrittenLinks(MacroscopicNetworkLayer, MacroscopicLink...)}.
+ *
+ * @author markr
+ */
+public class GtfsZoningHandlerOverrideData {
+
+  /** Logger to use */
+  private static final Logger LOGGER = Logger.getLogger(GtfsZoningHandlerOverrideData.class.getCanonicalName());
+
+  /** overwritten link ids per id type */
+  private final Map<IdMapperType, Set<Object>> overwrittenLinkIdsByType = new EnumMap<>(IdMapperType.class);
+
+  /** id mapping functions for links per id type used by overrides */
+  private final Map<IdMapperType, Function<Link, String>> linkIdMappersByType = new EnumMap<>(IdMapperType.class);
+
+  /** links that are overwrite targets, by layer, id type, and id */
+  private final Map<MacroscopicNetworkLayer, Map<IdMapperType, Map<Object, MacroscopicLink>>> overwrittenLinks = new HashMap<>();
+
+  /** pre-existing transfer zones that are overwrite targets by their XML id */
+  private final Map<String, TransferZone> overwrittenTransferZonesByXmlId = new HashMap<>();
+
+  /**
+   * Register link as overwrite target for all id types it matches, in case multiple links match the same id, the one with the lowest id is kept, which
+   * is consistent with the original link when links are broken
+   *
+   * @param layerIndex to register on
+   * @param link to register
+   */
+  private void indexLink(Map<IdMapperType, Map<Object, MacroscopicLink>> layerIndex, MacroscopicLink link){
+    for(var entry : overwrittenLinkIdsByType.entrySet()){
+      var linkId = linkIdMappersByType.get(entry.getKey()).apply(link);
+      if(linkId == null || !entry.getValue().contains(linkId)){
+        continue;
+      }
+      var linksById = layerIndex.computeIfAbsent(entry.getKey(), t -> new HashMap<>());
+      var existing = linksById.get(linkId);
+      if(existing == null || link.getId() < existing.getId()){
+        linksById.put(linkId, link);
+      }
+    }
+  }
+
+  /**
+   * Constructor
+   *
+   * @param settings containing the overrides
+   * @param serviceNetwork to use
+   * @param zoning to use
+   */
+  public GtfsZoningHandlerOverrideData(GtfsZoningReaderSettings settings, ServiceNetwork serviceNetwork, Zoning zoning){
+
+    /* LINKS */
+    for(var linkOverride : settings.getOverwrittenGtfsStopToLinkMappings()){
+      if(linkOverride == null || !linkOverride.bothNotNull()){
+        continue;
+      }
+      overwrittenLinkIdsByType.computeIfAbsent(linkOverride.second(), t -> new HashSet<>()).add(linkOverride.first());
+      linkIdMappersByType.computeIfAbsent(linkOverride.second(), IdMapperFunctionFactory::createLinkIdMappingFunction);
+    }
+    if(!overwrittenLinkIdsByType.isEmpty()) {
+      for (var layer : serviceNetwork.getParentNetwork().getTransportLayers()) {
+        var layerIndex = overwrittenLinks.computeIfAbsent(layer, l -> new EnumMap<>(IdMapperType.class));
+        for (var link : layer.getLinks()) {
+          indexLink(layerIndex, link);
+        }
+      }
+    }
+
+    /* TRANSFER ZONES - external ids are already indexed, internal ids are constant time lookups already, only XML ids remain */
+    Set<Object> overwrittenTransferZoneXmlIds = new HashSet<>();
+    for(var transferZoneOverride : settings.getOverwrittenGtfsStopTransferZoneMappings()){
+      if(transferZoneOverride.second() == IdMapperType.XML){
+        overwrittenTransferZoneXmlIds.add(transferZoneOverride.first());
+      }
+    }
+    if(!overwrittenTransferZoneXmlIds.isEmpty()){
+      for(var transferZone : zoning.getTransferZones()){
+        if(overwrittenTransferZoneXmlIds.contains(transferZone.getXmlId())){
+          overwrittenTransferZonesByXmlId.putIfAbsent(transferZone.getXmlId(), transferZone);
+        }
+      }
+    }
+
+    LOGGER.fine(String.format("Indexed overwrite targets: %d link id(s), %d transfer zone XML id(s)",
+        overwrittenLinkIdsByType.values().stream().mapToInt(Set::size).sum(), overwrittenTransferZonesByXmlId.size()));
+  }
+
+  /**
+   * Update the index for the given links (for example after breaking a link), adding them where they match an overwritten id, and removing stale
+   * entries of these links whose id no longer matches
+   *
+   * @param layer the links reside on
+   * @param links to update
+   */
+  public void updateOverwrittenLinks(MacroscopicNetworkLayer layer, MacroscopicLink... links){
+    if(overwrittenLinkIdsByType.isEmpty() || links == null){
+      return;
+    }
+    var layerIndex = overwrittenLinks.computeIfAbsent(layer, l -> new EnumMap<>(IdMapperType.class));
+    for(var link : links){
+      if(link == null){
+        continue;
+      }
+      /* remove stale */
+      layerIndex.forEach((type, linksById) ->
+          linksById.entrySet().removeIf(e -> e.getValue() == link && !e.getKey().equals(linkIdMappersByType.get(type).apply(link))));
+      indexLink(layerIndex, link);
+    }
+  }
+
+  /**
+   * Find the overwritten link on the given layer
+   *
+   * @param layer to find link on
+   * @param linkIdAndType the overwritten id and its type
+   * @return found link, null if not present
+   */
+  public MacroscopicLink findOverwrittenLink(MacroscopicNetworkLayer layer, Pair<Object, IdMapperType> linkIdAndType){
+    var layerIndex = overwrittenLinks.get(layer);
+    if(layerIndex == null || linkIdAndType == null){
+      return null;
+    }
+    var linksById = layerIndex.get(linkIdAndType.second());
+    return linksById == null ? null : linksById.get(linkIdAndType.first());
+  }
+
+  /**
+   * Find pre-existing transfer zone that is overwrite target by its XML id
+   *
+   * @param xmlId to find
+   * @return found transfer zone, null if not present
+   */
+  public TransferZone findOverwrittenTransferZoneByXmlId(String xmlId){
+    return overwrittenTransferZonesByXmlId.get(xmlId);
+  }
+
+  /**
+   * Reset the data
+   */
+  public void reset(){
+    overwrittenLinkIdsByType.clear();
+    linkIdMappersByType.clear();
+    overwrittenLinks.clear();
+    overwrittenTransferZonesByXmlId.clear();
+  }
+}
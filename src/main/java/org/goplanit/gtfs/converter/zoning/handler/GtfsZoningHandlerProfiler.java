@@ -1,5 +1,6 @@
 package org.goplanit.gtfs.converter.zoning.handler;
 
+import org.goplanit.gtfs.converter.GtfsConverterPhaseMetrics;
 import org.goplanit.gtfs.enums.GtfsObjectType;
 import org.goplanit.utils.arrays.ArrayUtils;
 import org.goplanit.utils.misc.LoggingUtils;
@@ -40,6 +41,9 @@ public class GtfsZoningHandlerProfiler {
 
   private LongAdder transferZoneMatchesByAccessLinkSegment;
 
+  /** timing and throughput metrics per processing phase */
+  private final GtfsConverterPhaseMetrics phaseMetrics = new GtfsConverterPhaseMetrics();
+
   /** Initialise the profiler */
   private void initialise(){
     Arrays.stream(GtfsObjectType.values()).forEach( type -> gtfsObjectTypeCounters.put(type, new LongAdder()));
@@ -78,6 +82,17 @@ public class GtfsZoningHandlerProfiler {
 
     /* GTFS -> transfer zones */
     zoning.logInfo(LoggingUtils.zoningPrefix(zoning.getId()).concat("[STATS]"));
+
+    phaseMetrics.logPhaseStats();
+  }
+
+  /**
+   * Timing and throughput metrics per processing phase
+   *
+   * @return phase metrics
+   */
+  public GtfsConverterPhaseMetrics getPhaseMetrics() {
+    return phaseMetrics;
   }
 
   /**
@@ -89,6 +104,7 @@ public class GtfsZoningHandlerProfiler {
     this.transferZoneMatchesByPlatformName.reset();
     this.transferZoneMatchesByAccessLinkSegment.reset();
     this.connectoidCounterPair.reset();
+    this.phaseMetrics.reset();
   }
 
   /**
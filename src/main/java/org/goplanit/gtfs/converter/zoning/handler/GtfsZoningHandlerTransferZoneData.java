@@ -164,6 +164,15 @@ public class GtfsZoningHandlerTransferZoneData extends GtfsConverterHandlerData
     return mappedTransferZoneByGtfsStopId.values().contains(transferZone);
   }
 
+  /**
+   * All GTFS stops that have been mapped to a PLANit transfer zone
+   *
+   * @return mapped GTFS stops (unmodifiable)
+   */
+  public Collection<GtfsStop> getMappedGtfsStops() {
+    return Collections.unmodifiableCollection(mappedGtfsStops.values());
+  }
+
   /**
    * Retrieve a GTFS stop that has been mapped to a pre-existing PLANit transfer zone
    *
@@ -3,6 +3,7 @@ package org.goplanit.gtfs.entity;
 import java.util.EnumSet;
 
 import org.goplanit.gtfs.enums.GtfsKeyType;
+import org.locationtech.jts.geom.Coordinate;
 
 /**
  * In memory representation of a GTFS entry in shapes.txt
@@ -18,7 +19,8 @@ public class GtfsShape extends GtfsObject {
           GtfsKeyType.SHAPE_ID,
           GtfsKeyType.SHAPE_PT_LAT,
           GtfsKeyType.SHAPE_PT_LON,
-          GtfsKeyType.SHAPE_PT_SEQUENCE);
+          GtfsKeyType.SHAPE_PT_SEQUENCE,
+          GtfsKeyType.SHAPE_DIST_TRAVELED);
 
   /**
    * {@inheritDoc}
@@ -36,6 +38,39 @@ public class GtfsShape extends GtfsObject {
     return get(GtfsKeyType.SHAPE_ID);
   }
 
+  /**
+   * Latitude of the shape point
+   * @return latitude
+   */
+  public String getShapePointLatitude(){ return get(GtfsKeyType.SHAPE_PT_LAT); }
+
+  /**
+   * Longitude of the shape point
+   * @return longitude
+   */
+  public String getShapePointLongitude(){ return get(GtfsKeyType.SHAPE_PT_LON); }
+
+  /**
+   * Sequence of the shape point within the shape
+   * @return sequence
+   */
+  public String getShapePointSequence(){ return get(GtfsKeyType.SHAPE_PT_SEQUENCE); }
+
+  /**
+   * Distance travelled along the shape up to the shape point if present
+   * @return distance travelled
+   */
+  public String getShapeDistanceTravelled(){ return get(GtfsKeyType.SHAPE_DIST_TRAVELED); }
+
+  /**
+   * Collect long (x), lat (y) of the shape point as JTS coordinate
+   *
+   * @return coordinate
+   */
+  public Coordinate getShapePointAsCoord(){
+    return new Coordinate(Double.valueOf(getShapePointLongitude()), Double.valueOf(getShapePointLatitude()));
+  }
+
   /**
    * String of all key value pairs of this GTFS entity
    * @return created string
@@ -36,6 +36,24 @@ public class GtfsStop extends GtfsObject {
           GtfsKeyType.LEVEL_ID,
           GtfsKeyType.PLATFORM_CODE);
 
+  /** cached long (x), lat (y) location as JTS Point, null when not yet created */
+  private Point locationAsPoint;
+
+  /** cached location projected to the CRS of the PLANit network the stop is matched to, null when not (yet) projected */
+  private Point projectedLocation;
+
+  /**
+   * Invalidate cached locations when the raw location changes
+   *
+   * @param key that is updated
+   */
+  private void invalidateCachedLocations(GtfsKeyType key){
+    if(key == GtfsKeyType.STOP_LAT || key == GtfsKeyType.STOP_LON){
+      locationAsPoint = null;
+      projectedLocation = null;
+    }
+  }
+
   /**
    * {@inheritDoc}
    */
@@ -70,6 +88,17 @@ public class GtfsStop extends GtfsObject {
    */
   public String getPlatformCode(){ return get(GtfsKeyType.PLATFORM_CODE); }
 
+  /** Check for populated parent station
+   * @return true when present false otherwise
+   */
+  public boolean hasParentStation(){ return !StringUtils.isNullOrBlank(getParentStation()); }
+
+  /**
+   * Collect parent station, i.e., the stop id of the station this stop belongs to
+   * @return parent station
+   */
+  public String getParentStation(){ return get(GtfsKeyType.PARENT_STATION); }
+
   /**
    * Collect as StopLocationType enum directly
    * @return extracted stop location type if valid, null otherwise
@@ -116,18 +145,59 @@ public class GtfsStop extends GtfsObject {
   }
 
   /**
-   * Collect long (x), lat (y) as JTS Point
+   * Collect long (x), lat (y) as JTS Point, created once and cached afterwards
    *
    * @return point
    */
   public Point getLocationAsPoint(){
+    if(locationAsPoint != null){
+      return locationAsPoint;
+    }
     try {
-      return PlanitJtsUtils.createPoint(getLocationAsCoord());
+      locationAsPoint = PlanitJtsUtils.createPoint(getLocationAsCoord());
+      return locationAsPoint;
     }catch(Exception e){
       throw new PlanItRunTimeException("Unable to transform geometry of GTFS stop %s to PLANit network CRS", getStopId());
     }
   }
 
+  /**
+   * Check if a projected location has been cached
+   *
+   * @return true when present, false otherwise
+   */
+  public boolean hasProjectedLocation(){
+    return projectedLocation != null;
+  }
+
+  /**
+   * Collect cached location projected to the CRS of the PLANit network the stop is matched to
+   *
+   * @return projected location, null if not (yet) projected
+   */
+  public Point getProjectedLocation(){
+    return projectedLocation;
+  }
+
+  /**
+   * Cache the location projected to the CRS of the PLANit network the stop is matched to. It is discarded whenever the
+   * latitude or longitude of the stop changes
+   *
+   * @param projectedLocation to cache
+   */
+  public void setProjectedLocation(Point projectedLocation){
+    this.projectedLocation = projectedLocation;
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public String put(GtfsKeyType key, String value) {
+    invalidateCachedLocations(key);
+    return super.put(key, value);
+  }
+
   /**
    * String of all key value pairs of this GTFS entity
    * @return string
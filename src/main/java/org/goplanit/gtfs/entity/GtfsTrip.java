@@ -58,6 +58,14 @@ public class GtfsTrip extends GtfsObject {
     return get(GtfsKeyType.ROUTE_ID);
   }
 
+  /**
+   * Get the shape id for this trip
+   * @return shape id, null if not present
+   */
+  public String getShapeId() {
+    return get(GtfsKeyType.SHAPE_ID);
+  }
+
   /**
    * String of all key value pairs of this GTFS entity
    * @return created string
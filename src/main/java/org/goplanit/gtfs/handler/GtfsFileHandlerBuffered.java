@@ -0,0 +1,148 @@
+package org.goplanit.gtfs.handler;
+
+import org.goplanit.gtfs.entity.GtfsObject;
+import org.goplanit.gtfs.scheme.GtfsFileScheme;
+import org.goplanit.utils.exceptions.PlanItRunTimeException;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.logging.Logger;
+
+/**
+ * Handler that does not process the GTFS objects itself, but places them in a bounded buffer such that the reading (inflating, tokenizing) of
+ * a GTFS file can take place on a different thread than the handling of its records. The consuming thread drains the buffer into the actual handler
+ * via {@link #drainTo(GtfsFileHandler)} once the prerequisites of that handler are met. When the buffer is full, the reading thread blocks until
+ * capacity becomes available again, so memory use is bounded by the capacity of the buffer.
+ * <p>
+ *   The reading thread must call {@link #markEndOfRecords()} once reading has ended (successfully or not), as the file reader does not signal
+ *   completion when the file is absent. Consistent with reading directly, the actual handler's {@link GtfsFileHandler#handleComplete()} is only invoked
+ *   when the file reader signalled completion, i.e., the file was actually read.
+ * </p>
+ *
+ * @param <T> GTFS object type this handler supports
+ *
+ * @author markr
+ */
+public class GtfsFileHandlerBuffered<T extends GtfsObject> extends GtfsFileHandler<T> {
+
+  /** logger to use */
+  private static final Logger LOGGER = Logger.getLogger(GtfsFileHandlerBuffered.class.getCanonicalName());
+
+  /** marker placed in the buffer to signal no more records will follow */
+  private static final Object END_OF_RECORDS = new Object();
+
+  /** bounded buffer of parsed records (and end marker) */
+  private final BlockingQueue<Object> buffer;
+
+  /** exception that caused the reading thread to fail, if any */
+  private volatile Exception readFailure;
+
+  /** flag indicating the file reader signalled completion, i.e., the file was actually read */
+  private volatile boolean readComplete = false;
+
+  /**
+   * Place entry in buffer, blocking while the buffer is full
+   *
+   * @param entry to place
+   */
+  private void put(Object entry){
+    try {
+      buffer.put(entry);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new PlanItRunTimeException("Interrupted while buffering GTFS records", e);
+    }
+  }
+
+  /**
+   * Constructor
+   *
+   * @param fileScheme supported by this handler
+   * @param capacity maximum number of records buffered before reading blocks
+   */
+  public GtfsFileHandlerBuffered(GtfsFileScheme fileScheme, int capacity) {
+    super(fileScheme);
+    PlanItRunTimeException.throwIf(capacity <= 0, String.format("Buffer capacity for GTFS records must be positive, found %d", capacity));
+    this.buffer = new ArrayBlockingQueue<>(capacity);
+  }
+
+  /**
+   * Buffer the GTFS object
+   *
+   * @param gtfsObject to buffer
+   */
+  @Override
+  public void handle(T gtfsObject) {
+    put(gtfsObject);
+  }
+
+  /**
+   * Invoked by the file reader once all records of the file are read, tracked so the actual handler is only completed when the file was read
+   */
+  @Override
+  public void handleComplete() {
+    readComplete = true;
+  }
+
+  /**
+   * Signal no more records will follow, to be called by the reading thread once reading has ended
+   */
+  public void markEndOfRecords() {
+    /* try without blocking first, so marking succeeds after a failure (cleared buffer) even when the reading thread has been interrupted */
+    if(!buffer.offer(END_OF_RECORDS)) {
+      put(END_OF_RECORDS);
+    }
+  }
+
+  /**
+   * Signal the reading of records failed, any consumer draining the buffer rethrows the failure once it reaches the end of the records. Buffered
+   * records are discarded, so the reading thread can always mark the end of records afterwards without blocking
+   *
+   * @param failure that occurred
+   */
+  public void signalReadFailure(Exception failure) {
+    this.readFailure = failure;
+    buffer.clear();
+  }
+
+  /**
+   * Drain all buffered records, including the ones still to be read, into the given handler in the order they were read. Blocks until all records
+   * have been read, after which {@link GtfsFileHandler#handleComplete()} is invoked on the given handler, unless the file was not read, e.g., absent
+   *
+   * @param handler to delegate the records to
+   * @return number of records delegated
+   */
+  public long drainTo(GtfsFileHandler<T> handler) {
+    long numRecords = 0;
+    try {
+      Object entry;
+      while ((entry = buffer.take()) != END_OF_RECORDS) {
+        handler.handleRaw((GtfsObject) entry);
+        ++numRecords;
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new PlanItRunTimeException("Interrupted while draining buffered GTFS records", e);
+    }
+
+    if(readFailure != null){
+      LOGGER.severe(String.format("Reading of buffered GTFS records (%s) failed", getFileScheme().getFileType().value()));
+      throw new PlanItRunTimeException(readFailure.getMessage(), readFailure);
+    }
+
+    if(readComplete) {
+      handler.handleComplete();
+    }
+    return numRecords;
+  }
+
+  /**
+   * Reset the buffer
+   */
+  @Override
+  public void reset() {
+    buffer.clear();
+    readFailure = null;
+    readComplete = false;
+  }
+}
@@ -1,5 +1,7 @@
 package org.goplanit.gtfs.reader;
 
+import java.io.FilterInputStream;
+import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.io.Reader;
@@ -51,6 +53,62 @@ public abstract class GtfsFileReaderBase {
   
   /** conditions regarding the presence of this file */
   private GtfsFileConditions filePresenceCondition; 
+
+  /** number of records read during most recent read */
+  private long numRecordsRead = 0;
+
+  /** number of (uncompressed) bytes read during most recent read */
+  private long numBytesRead = 0;
+
+  /**
+   * Input stream that counts the number of bytes read from the underlying stream
+   */
+  private static class ByteCountingInputStream extends FilterInputStream {
+
+    /** bytes read so far */
+    private long count = 0;
+
+    /**
+     * Constructor
+     *
+     * @param in stream to count bytes for
+     */
+    ByteCountingInputStream(InputStream in) {
+      super(in);
+    }
+
+    @Override
+    public int read() throws IOException {
+      int result = super.read();
+      if (result != -1) {
+        ++count;
+      }
+      return result;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+      int result = super.read(b, off, len);
+      if (result > 0) {
+        count += result;
+      }
+      return result;
+    }
+
+    @Override
+    public long skip(long n) throws IOException {
+      long result = super.skip(n);
+      count += result;
+      return result;
+    }
+
+    /**
+     * @return number of bytes read so far
+     */
+    long getCount() {
+      return count;
+    }
+  }
   
   /** Validate header map against supported keys for this file
    * 
@@ -225,10 +283,13 @@ public abstract class GtfsFileReaderBase {
    * @param charSetToUse the charset to use
    */
   public void read(Charset charSetToUse) {
-            
-    try (InputStream gtfsInputStream =
+    numRecordsRead = 0;
+    numBytesRead = 0;
+
+    try (InputStream rawGtfsInputStream =
              GtfsUtils.createInputStream(gtfsLocation, fileScheme, filePresenceCondition, settings.isLogGtfsFileInputStreamInfo())){
-      if(gtfsInputStream!=null) {
+      if(rawGtfsInputStream!=null) {
+        var gtfsInputStream = new ByteCountingInputStream(rawGtfsInputStream);
         Reader gtfsInputReader = new InputStreamReader(gtfsInputStream, charSetToUse);
         CSVParser csvParser = new CSVParser(gtfsInputReader, CSVFormat.DEFAULT.withHeader());
 
@@ -242,6 +303,8 @@ public abstract class GtfsFileReaderBase {
 
         // use csv header map to preserve BOM as csv parser relies on exact mapping of header to obtain column entries
         long numRecords = parseGtfsRecords(csvParser, filterExcludedColumns(mapHeadersToGtfsKeys(headerWithBom)));
+        numRecordsRead = numRecords;
+        numBytesRead = gtfsInputStream.getCount();
         if(settings.isLogGtfsFileInputStreamInfo()){
           LOGGER.info(String.format("Processed %d records from input stream", numRecords));
         }
@@ -269,6 +332,22 @@ public abstract class GtfsFileReaderBase {
     handlers.add(handler);
   }
 
+  /** Number of records read during the most recent invocation of {@link #read(Charset)}
+   *
+   * @return number of records
+   */
+  public long getNumberOfRecordsRead() {
+    return numRecordsRead;
+  }
+
+  /** Number of (uncompressed) bytes read during the most recent invocation of {@link #read(Charset)}
+   *
+   * @return number of bytes
+   */
+  public long getNumberOfBytesRead() {
+    return numBytesRead;
+  }
+
   /** The file scheme of this reader indicating what file it is operating on
    * 
    * @return file scheme
@@ -2,8 +2,8 @@ package org.goplanit.gtfs.util;
 
 import org.goplanit.gtfs.converter.zoning.handler.GtfsZoningHandlerData;
 import org.goplanit.utils.exceptions.PlanItRunTimeException;
-import org.goplanit.utils.geo.GeoContainerUtils;
 import org.goplanit.utils.geo.PlanitEntityGeoUtils;
+import org.goplanit.utils.geo.PlanitJtsCrsUtils;
 import org.goplanit.utils.geo.PlanitJtsUtils;
 import org.goplanit.utils.graph.modifier.event.GraphModifierListener;
 import org.goplanit.utils.math.Precision;
@@ -16,6 +16,7 @@ import org.goplanit.utils.zoning.ConnectoidUtils;
 import org.goplanit.utils.zoning.DirectedConnectoid;
 import org.goplanit.zoning.modifier.event.handler.UpdateDirectedConnectoidsOnBreakLinkSegmentHandler;
 import org.locationtech.jts.geom.CoordinateFilter;
+import org.locationtech.jts.geom.Envelope;
 import org.locationtech.jts.geom.LineString;
 import org.locationtech.jts.geom.Point;
 import org.locationtech.jts.linearref.LinearLocation;
@@ -31,6 +32,20 @@ import java.util.*;
  */
 public class GtfsLinkHelper {
 
+  /**
+   * Create the envelope to search for nearby links based on a given search radius
+   * @param location point location to search around (in WGS84 CRS)
+   * @param pointSearchRadiusMeters search radius to apply
+   * @param geoTools to use
+   * @param data containing state
+   * @return search envelope (in network CRS)
+   */
+  public static Envelope createLinkSearchEnvelope(Point location, double pointSearchRadiusMeters, PlanitJtsCrsUtils geoTools, GtfsZoningHandlerData data) {
+    //todo change implementation so it does not necessarily require WGS84 input locations as it is inconsistent with the utils class
+    var searchEnvelope = geoTools.createBoundingBox(location.getX(),location.getY(),pointSearchRadiusMeters);
+    return PlanitJtsUtils.transformEnvelope(searchEnvelope, data.getCrsTransform());
+  }
+
   /**
    * Find nearby links based on a given search radius
    * @param location point location to search around (in WGS84 CRS)
@@ -39,10 +54,7 @@ public class GtfsLinkHelper {
    * @return found links around this location (in network CRS)
    */
   public static Collection<MacroscopicLink> findNearbyLinks(Point location, double pointSearchRadiusMeters, GtfsZoningHandlerData data) {
-    //todo change implementation so it does not necessarily require WGS84 input locations as it is inconsistent with the utils class
-    var searchEnvelope = data.getGeoTools().createBoundingBox(location.getX(),location.getY(),pointSearchRadiusMeters);
-    searchEnvelope = PlanitJtsUtils.transformEnvelope(searchEnvelope, data.getCrsTransform());
-    return GeoContainerUtils.queryEdgeQuadtree(data.getGeoIndexedLinks(), searchEnvelope);
+    return data.findGeoIndexedLinks(createLinkSearchEnvelope(location, pointSearchRadiusMeters, data.getGeoTools(), data));
   }
 
   /** Extract/create a PLANit node based on the given location. Either it already exists as a PLANit node, or it is internal to an existing link. In the latter case
@@ -62,8 +74,8 @@ public class GtfsLinkHelper {
 
     /* prefer to use extreme node of access link which avoids breaking links, but it should be the same or extremely close to the extreme node to be eligible */
     final double extremeNodeMaxDistanceMeters = 5.0;
-    Node planitNode = data.getGeoTools().isDistanceWithinMetres(referenceLink.getNodeA().getPosition(), gtfsStopNodeLocation, extremeNodeMaxDistanceMeters) ?  referenceLink.getNodeA() : null;
-    planitNode = data.getGeoTools().isDistanceWithinMetres(referenceLink.getNodeB().getPosition(), gtfsStopNodeLocation, extremeNodeMaxDistanceMeters) ?  referenceLink.getNodeB() : planitNode;
+    Node planitNode = data.isDistanceWithinMetres(referenceLink.getNodeA().getPosition(), gtfsStopNodeLocation, extremeNodeMaxDistanceMeters) ?  referenceLink.getNodeA() : null;
+    planitNode = data.isDistanceWithinMetres(referenceLink.getNodeB().getPosition(), gtfsStopNodeLocation, extremeNodeMaxDistanceMeters) ?  referenceLink.getNodeB() : planitNode;
     if(planitNode != null) {
       return Pair.of(planitNode, Boolean.FALSE);
     }
@@ -88,8 +100,10 @@ public class GtfsLinkHelper {
     /* register additional actions on breaking link via listener for connectoid update (see above) as connectoids and their access links might be affected/invalidated when
     * breaking links, this listener accounts for that */
     /* TODO: refactor this so it does not require this whole preparing of data. Ideally this is handled more elegantly than now */
+    /* connectoids referencing the link have their access node at either extreme node of the link, so only those locations need to be considered */
     Map<Point, DirectedConnectoid> connectoidsAccessNodeLocationBeforeBreakLink =
-        ConnectoidUtils.findDirectedConnectoidsReferencingLinks(List.of(referenceLink), data.getDirectedConnectoidsByLocation(networkLayer));
+        ConnectoidUtils.findDirectedConnectoidsReferencingLinks(List.of(referenceLink),
+            data.getDirectedConnectoidsByLocation(networkLayer, referenceLink.getNodeA().getPosition(), referenceLink.getNodeB().getPosition()));
     GraphModifierListener listener = new UpdateDirectedConnectoidsOnBreakLinkSegmentHandler(connectoidsAccessNodeLocationBeforeBreakLink);
 
     /* now perform the breaking of links at the given node and update related tracking/reference information to broken link(segment)(s) where needed */
@@ -135,6 +149,9 @@ public class GtfsLinkHelper {
       {
         /* insert created/updated links and their geometries to spatial index instead */
         newlyBrokenLinks.forEach( (id, linkPair) -> data.addGeoIndexedLinks(linkPair.first(), linkPair.second()));
+
+        /* broken links may be (or no longer be) the target of user overwritten link mappings */
+        newlyBrokenLinks.forEach( (id, linkPair) -> data.updateOverwrittenLinks(networkLayer, linkPair.first(), linkPair.second()));
       }
     }
 
@@ -0,0 +1,139 @@
+package org.goplanit.gtfs.util;
+
+import org.apache.commons.csv.CSVFormat;
+import org.apache.commons.csv.CSVParser;
+import org.apache.commons.csv.CSVPrinter;
+import org.apache.commons.csv.CSVRecord;
+import org.goplanit.utils.exceptions.PlanItRunTimeException;
+import org.locationtech.jts.geom.Coordinate;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.function.Consumer;
+import java.util.logging.Logger;
+
+/**
+ * Utilities shared by caches that are persisted across runs as CSV files and validated by means of (FNV-1a style) fingerprints
+ *
+ * @author markr
+ */
+public class GtfsPersistedCacheUtils {
+
+  /** Logger to use */
+  private static final Logger LOGGER = Logger.getLogger(GtfsPersistedCacheUtils.class.getCanonicalName());
+
+  /** initial hash value to fold into */
+  public static final long FNV_OFFSET_BASIS = 0xCBF29CE484222325L;
+
+  /** prime to multiply with when folding */
+  private static final long FNV_PRIME = 0x100000001B3L;
+
+  /**
+   * Writes records to a CSV printer
+   */
+  @FunctionalInterface
+  public interface CsvRecordsWriter {
+
+    /**
+     * Write the records
+     *
+     * @param csvPrinter to write to
+     * @throws IOException when writing fails
+     */
+    void write(CSVPrinter csvPrinter) throws IOException;
+  }
+
+  /**
+   * Fold a long value into the hash (FNV-1a style)
+   *
+   * @param hash so far
+   * @param value to fold in
+   * @return updated hash
+   */
+  public static long fold(long hash, long value){
+    for(int index = 0; index < 8; ++index){
+      hash ^= (value >>> (8 * index)) & 0xFF;
+      hash *= FNV_PRIME;
+    }
+    return hash;
+  }
+
+  /**
+   * Fold a string into the hash
+   *
+   * @param hash so far
+   * @param value to fold in, null allowed
+   * @return updated hash
+   */
+  public static long fold(long hash, String value){
+    if(value == null){
+      return fold(hash, 0L);
+    }
+    for(int index = 0; index < value.length(); ++index){
+      hash ^= value.charAt(index);
+      hash *= FNV_PRIME;
+    }
+    return fold(hash, value.length());
+  }
+
+  /**
+   * Fold coordinates into the hash
+   *
+   * @param hash so far
+   * @param coordinates to fold in
+   * @return updated hash
+   */
+  public static long fold(long hash, Coordinate[] coordinates){
+    for(var coordinate : coordinates){
+      hash = fold(hash, Double.doubleToLongBits(coordinate.x));
+      hash = fold(hash, Double.doubleToLongBits(coordinate.y));
+    }
+    return hash;
+  }
+
+  /**
+   * Read all records of a persisted cache file with a header. When the file is absent nothing is read. When the file cannot be read
+   * a warning is logged and false is returned, in which case the caller should discard what was read so far.
+   *
+   * @param cacheFile to read, may be null
+   * @param recordConsumer to apply to each record, may throw IllegalArgumentException for malformed records
+   * @param description of the cache for logging purposes
+   * @return true when the file is absent or read successfully, false otherwise
+   */
+  public static boolean readCsv(Path cacheFile, Consumer<CSVRecord> recordConsumer, String description){
+    if(cacheFile == null || !Files.exists(cacheFile)){
+      return true;
+    }
+
+    try(var reader = Files.newBufferedReader(cacheFile, StandardCharsets.UTF_8);
+        var csvParser = new CSVParser(reader, CSVFormat.DEFAULT.withHeader())){
+      for(CSVRecord record : csvParser){
+        recordConsumer.accept(record);
+      }
+    } catch (IOException | IllegalArgumentException e) {
+      LOGGER.warning(String.format("Unable to load %s from %s (%s), ignoring its contents", description, cacheFile, e.getMessage()));
+      return false;
+    }
+    return true;
+  }
+
+  /**
+   * Write a persisted cache file with the given header
+   *
+   * @param cacheFile to write to
+   * @param columns of the header
+   * @param recordsWriter writing the records
+   * @param description of the cache for logging purposes
+   */
+  public static void writeCsv(Path cacheFile, String[] columns, CsvRecordsWriter recordsWriter, String description){
+    try(var writer = Files.newBufferedWriter(cacheFile, StandardCharsets.UTF_8);
+        var csvPrinter = new CSVPrinter(writer, CSVFormat.DEFAULT.withHeader(columns))){
+      recordsWriter.write(csvPrinter);
+    } catch (IOException e) {
+      throw new PlanItRunTimeException(String.format("Unable to write %s to %s", description, cacheFile), e);
+    }
+  }
+
+}
@@ -4,6 +4,7 @@ import org.goplanit.gtfs.converter.zoning.handler.GtfsZoningHandlerData;
 import org.goplanit.gtfs.entity.GtfsStop;
 import org.goplanit.utils.geo.GeoContainerUtils;
 import org.goplanit.utils.geo.PlanitEntityGeoUtils;
+import org.goplanit.utils.geo.PlanitJtsCrsUtils;
 import org.goplanit.utils.geo.PlanitJtsUtils;
 import org.goplanit.utils.misc.CharacterUtils;
 import org.goplanit.utils.misc.Pair;
@@ -11,6 +12,7 @@ import org.goplanit.utils.mode.Mode;
 import org.goplanit.utils.zoning.TransferZone;
 import org.goplanit.utils.zoning.TransferZoneType;
 import org.locationtech.jts.geom.Coordinate;
+import org.locationtech.jts.geom.Envelope;
 import org.locationtech.jts.geom.Point;
 
 import java.util.Collection;
@@ -95,7 +97,7 @@ public class GtfsTransferZoneHelper {
     boolean success = false;
     for (var connectoid : connectoids) {
       var accessSegment = connectoid.getAccessLinkSegment();
-      var localProjection = PlanitJtsUtils.transformGeometry(gtfsStop.getLocationAsPoint(), data.getCrsTransform());
+      var localProjection = data.getProjectedLocation(gtfsStop);
       success = success ||
           localProjection!=null && GtfsLinkSegmentHelper.isGeometryOnCorrectSideOfLinkSegment(localProjection, accessSegment, leftHandDrive, data.getGeoTools());
       if(allConnectoidsMustMatch && !success) {
@@ -157,9 +159,33 @@ public class GtfsTransferZoneHelper {
    * @return found transfer zones around this location (in network CRS)
    */
   public static Collection<TransferZone> findNearbyTransferZones(Point location, double pointSearchRadiusMeters, GtfsZoningHandlerData data) {
+    return findNearbyTransferZones(location, pointSearchRadiusMeters, data.getGeoTools(), data);
+  }
+
+  /**
+   * Find nearby zones based on a given search radius
+   * @param location point location to search around (in WGS84 CRS)
+   * @param pointSearchRadiusMeters search radius to apply
+   * @param geoTools to use
+   * @param data containing state
+   * @return found transfer zones around this location (in network CRS)
+   */
+  public static Collection<TransferZone> findNearbyTransferZones(Point location, double pointSearchRadiusMeters, PlanitJtsCrsUtils geoTools, GtfsZoningHandlerData data) {
+    return GeoContainerUtils.queryZoneQuadtree(
+        data.getGeoIndexedPreExistingTransferZones(), createTransferZoneSearchEnvelope(location, pointSearchRadiusMeters, geoTools, data));
+  }
+
+  /**
+   * Create the search envelope used to find nearby transfer zones based on a given search radius
+   * @param location point location to search around (in WGS84 CRS)
+   * @param pointSearchRadiusMeters search radius to apply
+   * @param geoTools to use
+   * @param data containing state
+   * @return search envelope (in network CRS)
+   */
+  public static Envelope createTransferZoneSearchEnvelope(Point location, double pointSearchRadiusMeters, PlanitJtsCrsUtils geoTools, GtfsZoningHandlerData data) {
     //todo change implementation so it does not necessarily require WGS84 input locations as it is inconsistent with the utils class
-    var searchEnvelope = data.getGeoTools().createBoundingBox(location.getX(),location.getY(),pointSearchRadiusMeters);
-    searchEnvelope = PlanitJtsUtils.transformEnvelope(searchEnvelope, data.getCrsTransform());
-    return GeoContainerUtils.queryZoneQuadtree(data.getGeoIndexedPreExistingTransferZones(), searchEnvelope);
+    var searchEnvelope = geoTools.createBoundingBox(location.getX(),location.getY(),pointSearchRadiusMeters);
+    return PlanitJtsUtils.transformEnvelope(searchEnvelope, data.getCrsTransform());
   }
 }
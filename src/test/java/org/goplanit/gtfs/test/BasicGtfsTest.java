@@ -1,5 +1,6 @@
 package org.goplanit.gtfs.test;
 
+import org.goplanit.gtfs.entity.GtfsStopTime;
 import org.goplanit.gtfs.enums.GtfsFileType;
 import org.goplanit.gtfs.enums.GtfsKeyType;
 import org.goplanit.gtfs.handler.*;
@@ -119,5 +120,31 @@ public class BasicGtfsTest {
     System.gc();
   }
 
+  /**
+   * Test that draining a buffered handler only completes the actual handler when the file was read, consistent with reading the file directly
+   */
+  @Test
+  public void testBufferedHandlerCompletesOnlyWhenFileRead() {
+    final int[] numberOfCompletions = {0};
+    var handler = new GtfsFileHandlerStopTimes(){
+      @Override
+      public void handleComplete() {
+        ++numberOfCompletions[0];
+      }
+    };
+    var bufferedHandler = new GtfsFileHandlerBuffered<GtfsStopTime>(GtfsFileSchemeFactory.create(GtfsFileType.STOP_TIMES), 8);
+
+    /* absent file, the file reader does not signal completion */
+    bufferedHandler.markEndOfRecords();
+    assertEquals(0, bufferedHandler.drainTo(handler));
+    assertEquals(0, numberOfCompletions[0]);
+
+    /* read file, the file reader signals completion */
+    bufferedHandler.reset();
+    bufferedHandler.handleComplete();
+    bufferedHandler.markEndOfRecords();
+    assertEquals(0, bufferedHandler.drainTo(handler));
+    assertEquals(1, numberOfCompletions[0]);
+  }
 
 }
@@ -0,0 +1,605 @@
+package org.goplanit.gtfs.test;
+
+import org.goplanit.algorithms.shortest.ShortestPathAStar;
+import org.goplanit.gtfs.converter.intermodal.GtfsContractionHierarchy;
+import org.goplanit.gtfs.converter.intermodal.GtfsLandmarkPathSearch;
+import org.goplanit.gtfs.converter.intermodal.GtfsPersistedPathCache;
+import org.goplanit.gtfs.converter.intermodal.GtfsServicesAndZoningReaderIntegrator;
+import org.goplanit.io.converter.intermodal.PlanitIntermodalReaderFactory;
+import org.goplanit.io.converter.intermodal.PlanitIntermodalReaderSettings;
+import org.goplanit.logging.Logging;
+import org.goplanit.path.SimpleDirectedPathFactoryImpl;
+import org.goplanit.utils.graph.directed.DirectedVertex;
+import org.goplanit.utils.graph.directed.EdgeSegment;
+import org.goplanit.utils.id.IdGenerator;
+import org.goplanit.utils.network.layer.MacroscopicNetworkLayer;
+import org.goplanit.utils.network.layer.physical.Node;
+import org.goplanit.utils.path.SimpleDirectedPath;
+import org.goplanit.utils.resource.ResourceUtils;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.opengis.referencing.crs.CoordinateReferenceSystem;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Executors;
+import java.util.function.BiFunction;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit tests for the point-to-point path searches used when mapping service legs to the physical network, verified against a plain Dijkstra search
+ * on the Sydney PLANit network
+ *
+ * @author markr
+ */
+public class GtfsPathSearchTest {
+
+  private static Logger LOGGER;
+
+  private static final String PLANIT_SYDNEY_INTERMODAL_NETWORK_DIR = Path.of("planit","sydney").toString();
+
+  /** tolerance when comparing path costs */
+  private static final double COST_EPSILON = 1e-9;
+
+  /** number of origins (and destinations per origin) to verify */
+  private static final int NUMBER_OF_OD_NODES = 12;
+
+  /** number of landmarks to use in ALT searches */
+  private static final int NUMBER_OF_LANDMARKS = 8;
+
+  private static CoordinateReferenceSystem networkCrs;
+
+  private static MacroscopicNetworkLayer layer;
+
+  private static List<DirectedVertex> nodes;
+
+  @BeforeAll
+  public static void setUp() throws Exception {
+    if (LOGGER == null) {
+      LOGGER = Logging.createLogger(GtfsPathSearchTest.class);
+    }
+    LOGGER.setLevel(Level.SEVERE);
+
+    var planitInputPath = Path.of(ResourceUtils.getResourceUri(PLANIT_SYDNEY_INTERMODAL_NETWORK_DIR)).toAbsolutePath().toString();
+    var planitReader = PlanitIntermodalReaderFactory.create(new PlanitIntermodalReaderSettings(planitInputPath));
+    var network = planitReader.read().first();
+    networkCrs = network.getCoordinateReferenceSystem();
+    layer = network.getTransportLayers().getFirst();
+    nodes = new ArrayList<>();
+    layer.getNodes().forEach(nodes::add);
+    LOGGER.setLevel(Level.INFO);
+  }
+
+  @AfterAll
+  public static void tearDown() {
+    Logging.closeLogger(LOGGER);
+    IdGenerator.reset();
+  }
+
+  /**
+   * Deterministic, varying, positive costs by link segment id
+   *
+   * @return costs by link segment id
+   */
+  private static double[] createLinkSegmentCosts(){
+    long maxId = 0;
+    for(var linkSegment : layer.getLinkSegments()){
+      maxId = Math.max(maxId, linkSegment.getId());
+    }
+    double[] costs = new double[(int) maxId + 1];
+    Arrays.fill(costs, Double.POSITIVE_INFINITY);
+    for(var linkSegment : layer.getLinkSegments()){
+      costs[(int) linkSegment.getId()] = 1 + ((linkSegment.getId() * 7919) % 100) / 10.0;
+    }
+    return costs;
+  }
+
+  /**
+   * Reference Dijkstra search from the origin to all reachable vertices
+   *
+   * @param origin to search from
+   * @param costs by link segment id
+   * @return cost by reached vertex
+   */
+  private static Map<DirectedVertex, Double> dijkstra(DirectedVertex origin, double[] costs){
+    Map<DirectedVertex, Double> costByVertex = new HashMap<>();
+    Set<DirectedVertex> settled = new HashSet<>();
+    PriorityQueue<Map.Entry<DirectedVertex, Double>> queue = new PriorityQueue<>(Map.Entry.comparingByValue());
+    costByVertex.put(origin, 0.0);
+    queue.add(Map.entry(origin, 0.0));
+    while(!queue.isEmpty()){
+      var entry = queue.poll();
+      if(!settled.add(entry.getKey())){
+        continue;
+      }
+      for(var edgeSegment : entry.getKey().getExitEdgeSegments()){
+        double edgeSegmentCost = costs[(int) edgeSegment.getId()];
+        if(edgeSegmentCost == Double.POSITIVE_INFINITY){
+          continue;
+        }
+        double cost = entry.getValue() + edgeSegmentCost;
+        var current = costByVertex.get(edgeSegment.getDownstreamVertex());
+        if(current == null || cost < current){
+          costByVertex.put(edgeSegment.getDownstreamVertex(), cost);
+          queue.add(Map.entry(edgeSegment.getDownstreamVertex(), cost));
+        }
+      }
+    }
+    return costByVertex;
+  }
+
+  /**
+   * Verify the path is connected from origin to destination and collect its cost
+   *
+   * @param path to verify
+   * @param origin of the path
+   * @param destination of the path
+   * @param costs by link segment id
+   * @return cost of the path
+   */
+  private static double collectPathCost(SimpleDirectedPath path, DirectedVertex origin, DirectedVertex destination, double[] costs){
+    double cost = 0;
+    DirectedVertex vertex = origin;
+    for(EdgeSegment edgeSegment : path){
+      assertSame(vertex, edgeSegment.getUpstreamVertex());
+      cost += costs[(int) edgeSegment.getId()];
+      vertex = edgeSegment.getDownstreamVertex();
+    }
+    assertSame(destination, vertex);
+    return cost;
+  }
+
+  /**
+   * Verify the path found for each OD pair against the reference Dijkstra cost, i.e., same cost when reachable and no path otherwise
+   *
+   * @param costs by link segment id
+   * @param pathSearch finding path between origin and destination
+   * @return number of verified reachable OD pairs
+   */
+  private static int verifyAgainstDijkstra(double[] costs, BiFunction<DirectedVertex, DirectedVertex, SimpleDirectedPath> pathSearch){
+    int numberOfReachable = 0;
+    int step = Math.max(1, nodes.size() / NUMBER_OF_OD_NODES);
+    for(int originIndex = 0; originIndex < nodes.size(); originIndex += step){
+      var origin = nodes.get(originIndex);
+      var referenceCosts = dijkstra(origin, costs);
+      for(int destinationIndex = step / 2; destinationIndex < nodes.size(); destinationIndex += step){
+        var destination = nodes.get(destinationIndex);
+        var path = pathSearch.apply(origin, destination);
+        var referenceCost = referenceCosts.get(destination);
+        if(referenceCost == null){
+          assertNull(path);
+          continue;
+        }
+        assertNotNull(path);
+        assertEquals(referenceCost, collectPathCost(path, origin, destination, costs), COST_EPSILON);
+        ++numberOfReachable;
+      }
+    }
+    return numberOfReachable;
+  }
+
+  /**
+   * Verify the path found for each reachable OD pair has the same cost as the path found by PLANit's A*. The A* heuristic multiplier is zero, since the
+   * synthetic costs are unrelated to distance and any positive multiplier might overestimate the remaining cost
+   *
+   * @param costs by link segment id
+   * @param pathSearch finding path between origin and destination
+   */
+  private static void verifyAgainstAStar(double[] costs, BiFunction<DirectedVertex, DirectedVertex, SimpleDirectedPath> pathSearch){
+    long maxVertexId = 0;
+    for(var node : nodes){
+      maxVertexId = Math.max(maxVertexId, node.getId());
+    }
+    var aStar = new ShortestPathAStar(costs, (int) maxVertexId + 1, networkCrs, 0.0);
+    int step = Math.max(1, nodes.size() / NUMBER_OF_OD_NODES);
+    for(int originIndex = 0; originIndex < nodes.size(); originIndex += step){
+      var origin = nodes.get(originIndex);
+      var reachable = dijkstra(origin, costs).keySet();
+      for(int destinationIndex = step / 2; destinationIndex < nodes.size(); destinationIndex += step){
+        var destination = nodes.get(destinationIndex);
+        if(!reachable.contains(destination)){
+          continue;
+        }
+        var aStarPath = aStar.executeOneToOne(origin, destination, Set.of()).createPath(new SimpleDirectedPathFactoryImpl(), origin, destination);
+        var path = pathSearch.apply(origin, destination);
+        assertNotNull(path);
+        assertEquals(
+            collectPathCost(aStarPath, origin, destination, costs), collectPathCost(path, origin, destination, costs), COST_EPSILON);
+      }
+    }
+  }
+
+  /**
+   * Find a link segment that has an opposite direction, so the link can be made one-way
+   *
+   * @return link segment with opposite direction
+   */
+  private static EdgeSegment findBidirectionalLinkSegment(){
+    for(var linkSegment : layer.getLinkSegments()){
+      if(linkSegment.getOppositeDirectionSegment() != null && linkSegment.getUpstreamVertex() != linkSegment.getDownstreamVertex()){
+        return linkSegment;
+      }
+    }
+    return null;
+  }
+
+  /**
+   * Make the vertex unreachable by assigning infinite costs to all link segments entering it
+   *
+   * @param vertex to make unreachable
+   * @param costs to update
+   */
+  private static void makeUnreachable(DirectedVertex vertex, double[] costs){
+    for(var linkSegment : layer.getLinkSegments()){
+      if(linkSegment.getDownstreamVertex() == vertex){
+        costs[(int) linkSegment.getId()] = Double.POSITIVE_INFINITY;
+      }
+    }
+  }
+
+  /**
+   * Test that contraction hierarchy queries yield the same costs as Dijkstra for several OD pairs
+   */
+  @Test
+  public void testContractionHierarchyMatchesDijkstra() {
+    var costs = createLinkSegmentCosts();
+    var hierarchy = GtfsContractionHierarchy.create(layer, costs, null);
+
+    int numberOfReachable = verifyAgainstDijkstra(costs, (origin, destination) -> hierarchy.findPath(origin, destination, Set.of()));
+    assertTrue(numberOfReachable > 0);
+  }
+
+  /**
+   * Test that contraction hierarchy queries respect one-way link segments and yield no path when the destination cannot be reached
+   */
+  @Test
+  public void testContractionHierarchyOneWayAndUnreachable() {
+    var costs = createLinkSegmentCosts();
+
+    /* one-way: opposite direction not permitted, so travelling against it requires a detour (or is impossible) */
+    var oneWayLinkSegment = findBidirectionalLinkSegment();
+    assertNotNull(oneWayLinkSegment);
+    costs[(int) oneWayLinkSegment.getOppositeDirectionSegment().getId()] = Double.POSITIVE_INFINITY;
+
+    /* unreachable: no link segment enters the vertex */
+    var unreachableVertex = nodes.get(nodes.size() / 2);
+    if(unreachableVertex == oneWayLinkSegment.getUpstreamVertex() || unreachableVertex == oneWayLinkSegment.getDownstreamVertex()){
+      unreachableVertex = nodes.get(nodes.size() / 2 + 1);
+    }
+    makeUnreachable(unreachableVertex, costs);
+
+    var hierarchy = GtfsContractionHierarchy.create(layer, costs, null);
+
+    var upstream = oneWayLinkSegment.getUpstreamVertex();
+    var downstream = oneWayLinkSegment.getDownstreamVertex();
+    var againstOneWay = hierarchy.findPath(downstream, upstream, Set.of());
+    var againstOneWayReferenceCost = dijkstra(downstream, costs).get(upstream);
+    if(againstOneWayReferenceCost == null){
+      assertNull(againstOneWay);
+    }else{
+      assertNotNull(againstOneWay);
+      assertFalse(toList(againstOneWay).contains(oneWayLinkSegment.getOppositeDirectionSegment()));
+      assertEquals(againstOneWayReferenceCost, collectPathCost(againstOneWay, downstream, upstream, costs), COST_EPSILON);
+    }
+    var withOneWay = hierarchy.findPath(upstream, downstream, Set.of());
+    assertNotNull(withOneWay);
+    assertEquals(dijkstra(upstream, costs).get(downstream), collectPathCost(withOneWay, upstream, downstream, costs), COST_EPSILON);
+
+    assertNull(hierarchy.findPath(nodes.get(0) == unreachableVertex ? nodes.get(1) : nodes.get(0), unreachableVertex, Set.of()));
+
+    int numberOfReachable = verifyAgainstDijkstra(costs, (origin, destination) -> hierarchy.findPath(origin, destination, Set.of()));
+    assertTrue(numberOfReachable > 0);
+  }
+
+  /**
+   * Test that contraction hierarchy queries honour banned link segments leaving the origin and entering the destination, e.g., banned initial u-turns,
+   * within the query. For each OD pair the first and last link segment of its unrestricted path are banned, which the unrestricted query can therefore
+   * never answer
+   */
+  @Test
+  public void testContractionHierarchyHonoursBannedLinkSegments() {
+    var costs = createLinkSegmentCosts();
+    var hierarchy = GtfsContractionHierarchy.create(layer, costs, null);
+
+    int numberOfReachable = 0;
+    int numberOfAnswered = 0;
+    int step = Math.max(1, nodes.size() / NUMBER_OF_OD_NODES);
+    for(int originIndex = 0; originIndex < nodes.size(); originIndex += step){
+      var origin = nodes.get(originIndex);
+      for(int destinationIndex = step / 2; destinationIndex < nodes.size(); destinationIndex += step){
+        var destination = nodes.get(destinationIndex);
+        var unrestrictedPath = hierarchy.findPath(origin, destination, Set.of());
+        if(unrestrictedPath == null || origin == destination){
+          continue;
+        }
+        var unrestrictedEdgeSegments = toList(unrestrictedPath);
+        Set<EdgeSegment> bannedEdgeSegments = new HashSet<>(
+            List.of(unrestrictedEdgeSegments.get(0), unrestrictedEdgeSegments.get(unrestrictedEdgeSegments.size() - 1)));
+        var bannedCosts = costs.clone();
+        bannedEdgeSegments.forEach(edgeSegment -> bannedCosts[(int) edgeSegment.getId()] = Double.POSITIVE_INFINITY);
+
+        var path = hierarchy.findPath(origin, destination, bannedEdgeSegments);
+        var referenceCost = dijkstra(origin, bannedCosts).get(destination);
+        if(referenceCost == null){
+          assertNull(path);
+          continue;
+        }
+        ++numberOfReachable;
+        if(path == null){
+          /* only when the cheapest alternative would return to the origin (destination) to use a banned link segment */
+          continue;
+        }
+        ++numberOfAnswered;
+        assertTrue(toList(path).stream().noneMatch(bannedEdgeSegments::contains));
+        assertEquals(referenceCost, collectPathCost(path, origin, destination, costs), COST_EPSILON);
+      }
+    }
+    assertTrue(numberOfReachable > 0);
+    assertTrue(2 * numberOfAnswered > numberOfReachable,
+        String.format("Contraction hierarchy answered only %d of %d OD pairs with banned link segments", numberOfAnswered, numberOfReachable));
+  }
+
+  /**
+   * Test that unidirectional and bidirectional ALT searches yield the same costs as Dijkstra and A* for several OD pairs
+   */
+  @Test
+  public void testLandmarkPathSearchMatchesDijkstraAndAStar() {
+    var costs = createLinkSegmentCosts();
+    var pathSearch = GtfsLandmarkPathSearch.create(layer, costs, NUMBER_OF_LANDMARKS);
+    assertEquals(NUMBER_OF_LANDMARKS, pathSearch.getNumberOfLandmarks());
+
+    for(boolean bidirectional : new boolean[]{false, true}) {
+      int numberOfReachable = verifyAgainstDijkstra(costs, (origin, destination) -> pathSearch.findPath(origin, destination, Set.of(), bidirectional));
+      assertTrue(numberOfReachable > 0);
+      verifyAgainstAStar(costs, (origin, destination) -> pathSearch.findPath(origin, destination, Set.of(), bidirectional));
+    }
+  }
+
+  /**
+   * Test that ALT searches conducted concurrently on several threads, each with its own search state, yield the same paths as the same searches
+   * conducted on a single thread
+   */
+  @Test
+  public void testLandmarkPathSearchConcurrentMatchesSequential() throws Exception {
+    var costs = createLinkSegmentCosts();
+    var pathSearch = GtfsLandmarkPathSearch.create(layer, costs, NUMBER_OF_LANDMARKS);
+
+    int step = Math.max(1, nodes.size() / NUMBER_OF_OD_NODES);
+    List<Callable<List<EdgeSegment>>> searches = new ArrayList<>();
+    for(int originIndex = 0; originIndex < nodes.size(); originIndex += step){
+      for(int destinationIndex = step / 2; destinationIndex < nodes.size(); destinationIndex += step){
+        var origin = nodes.get(originIndex);
+        var destination = nodes.get(destinationIndex);
+        for(boolean bidirectional : new boolean[]{false, true}) {
+          searches.add(() -> {
+            var path = pathSearch.findPath(origin, destination, Set.of(), bidirectional);
+            return path != null ? toList(path) : null;
+          });
+        }
+      }
+    }
+
+    List<List<EdgeSegment>> sequentialPaths = new ArrayList<>();
+    for(var search : searches){
+      sequentialPaths.add(search.call());
+    }
+    var executor = Executors.newFixedThreadPool(4);
+    try {
+      var futurePaths = executor.invokeAll(searches);
+      for(int index = 0; index < searches.size(); ++index){
+        assertEquals(sequentialPaths.get(index), futurePaths.get(index).get());
+      }
+    }finally {
+      executor.shutdownNow();
+    }
+    assertTrue(sequentialPaths.stream().anyMatch(Objects::nonNull));
+  }
+
+  /**
+   * Test that ALT searches, unidirectional and bidirectional, settle fewer nodes than the same searches without landmarks, i.e., Dijkstra, for the
+   * same OD pairs
+   */
+  @Test
+  public void testLandmarkPathSearchSettlesFewerNodes() {
+    var costs = createLinkSegmentCosts();
+    var withoutLandmarks = GtfsLandmarkPathSearch.create(layer, costs, 0);
+    var withLandmarks = GtfsLandmarkPathSearch.create(layer, costs, NUMBER_OF_LANDMARKS);
+
+    for(boolean bidirectional : new boolean[]{false, true}) {
+      long exploredWithoutLandmarks = withoutLandmarks.getNumberOfExploredNodes();
+      long exploredWithLandmarks = withLandmarks.getNumberOfExploredNodes();
+      verifyAgainstDijkstra(costs, (origin, destination) -> withoutLandmarks.findPath(origin, destination, Set.of(), bidirectional));
+      verifyAgainstDijkstra(costs, (origin, destination) -> withLandmarks.findPath(origin, destination, Set.of(), bidirectional));
+      exploredWithoutLandmarks = withoutLandmarks.getNumberOfExploredNodes() - exploredWithoutLandmarks;
+      exploredWithLandmarks = withLandmarks.getNumberOfExploredNodes() - exploredWithLandmarks;
+
+      assertTrue(exploredWithoutLandmarks > 0);
+      assertTrue(exploredWithLandmarks < exploredWithoutLandmarks,
+          String.format("ALT (bidirectional: %s) settled %d nodes, not fewer than %d without landmarks", bidirectional, exploredWithLandmarks, exploredWithoutLandmarks));
+    }
+  }
+
+  /**
+   * Walk the network from the first node that allows it, following the first exit link segment towards an unvisited node
+   *
+   * @param length number of link segments to walk
+   * @return walked link segments in order, null if no walk of the given length is found
+   */
+  private static List<EdgeSegment> walk(int length){
+    for(var start : nodes){
+      List<EdgeSegment> walked = new ArrayList<>();
+      Set<DirectedVertex> visited = new HashSet<>(List.of(start));
+      DirectedVertex vertex = start;
+      while(walked.size() < length){
+        EdgeSegment next = null;
+        for(var edgeSegment : vertex.getExitEdgeSegments()){
+          if(!visited.contains(edgeSegment.getDownstreamVertex())){
+            next = edgeSegment;
+            break;
+          }
+        }
+        if(next == null){
+          break;
+        }
+        walked.add(next);
+        vertex = next.getDownstreamVertex();
+        visited.add(vertex);
+      }
+      if(walked.size() == length){
+        return walked;
+      }
+    }
+    return null;
+  }
+
+  /**
+   * Create path from consecutive link segments of a walk
+   *
+   * @param walk to take link segments from
+   * @param from index (inclusive)
+   * @param to index (exclusive)
+   * @return created path
+   */
+  private static SimpleDirectedPath createPath(List<EdgeSegment> walk, int from, int to){
+    return new SimpleDirectedPathFactoryImpl().createNew(new ArrayDeque<>(walk.subList(from, to)));
+  }
+
+  /**
+   * Reference pruning of redundant paths by comparing all pairs of paths, i.e., a path is removed when it contains any other remaining path
+   *
+   * @param paths to prune
+   */
+  private static void removeRedundantPathsPairwise(Set<SimpleDirectedPath> paths){
+    var iter = paths.iterator();
+    while(iter.hasNext()){
+      var currOption = iter.next();
+      if(paths.stream().anyMatch(o -> o!=currOption && currOption.containsSubPath(o.iterator()))){
+        iter.remove();
+      }
+    }
+  }
+
+  /**
+   * Verify pruning of redundant paths retains the same paths as the pairwise reference, for the given paths in the given order
+   *
+   * @param paths to prune in order
+   * @return retained paths in order
+   */
+  private static List<SimpleDirectedPath> verifyRemoveRedundantPaths(List<SimpleDirectedPath> paths){
+    Set<SimpleDirectedPath> reference = new LinkedHashSet<>(paths);
+    removeRedundantPathsPairwise(reference);
+
+    Set<SimpleDirectedPath> pruned = new LinkedHashSet<>(paths);
+    GtfsServicesAndZoningReaderIntegrator.removeRedundantPaths(pruned);
+
+    List<SimpleDirectedPath> referenceRetained = new ArrayList<>(reference);
+    List<SimpleDirectedPath> retained = new ArrayList<>(pruned);
+    assertEquals(referenceRetained.size(), retained.size());
+    for(int index = 0; index < retained.size(); ++index){
+      assertSame(referenceRetained.get(index), retained.get(index));
+    }
+    return retained;
+  }
+
+  /**
+   * Test that pruning redundant access node paths with nested and overlapping paths retains the same paths as comparing all pairs of paths
+   */
+  @Test
+  public void testRemoveRedundantPathsMatchesPairwise() {
+    var walk = walk(8);
+    assertNotNull(walk);
+
+    var full = createPath(walk, 0, 8);          // contains all others
+    var middle = createPath(walk, 2, 6);        // nested in full, contains inner
+    var tail = createPath(walk, 4, 8);          // overlaps middle, contains end
+    var inner = createPath(walk, 3, 5);         // nested in full and middle
+    var head = createPath(walk, 1, 4);          // overlaps inner partially, nothing nested
+    var end = createPath(walk, 5, 7);           // nested in full and tail
+    var single = createPath(walk, 7, 8);        // last link segment only, nested in full and tail
+    var innerDuplicate = createPath(walk, 3, 5); // same link segments as inner
+
+    var retained = verifyRemoveRedundantPaths(List.of(full, middle, tail, inner, head, end));
+    assertEquals(3, retained.size());
+    assertSame(inner, retained.get(0));
+    assertSame(head, retained.get(1));
+    assertSame(end, retained.get(2));
+
+    /* reversed order: paths are visited in iteration order, so outcome depends on it */
+    verifyRemoveRedundantPaths(List.of(end, head, inner, tail, middle, full));
+
+    /* single link segment nested at the end, and duplicate paths of which only one may survive */
+    verifyRemoveRedundantPaths(List.of(full, tail, single, inner, innerDuplicate, head));
+    verifyRemoveRedundantPaths(List.of(single, innerDuplicate, full, inner, middle));
+
+    /* trivial cases */
+    assertSame(full, verifyRemoveRedundantPaths(List.of(full)).get(0));
+    assertTrue(verifyRemoveRedundantPaths(List.of()).isEmpty());
+  }
+
+  /**
+   * Test that a persisted path is reused in a next run on an unchanged layer, and discarded once the layer changes, even when the change does
+   * not affect the path itself
+   */
+  @Test
+  public void testPersistedPathCacheDiscardedOnLayerChange() throws Exception {
+    var walk = walk(4);
+    assertNotNull(walk);
+    var path = createPath(walk, 0, 4);
+    var upstreamAccessNode = (Node) walk.get(0).getUpstreamVertex();
+    var upstreamAccessLinkSegment = walk.get(0);
+    var downstreamAccessLinkSegment = walk.get(3);
+    var mode = layer.getSupportedModes().iterator().next();
+    var costs = createLinkSegmentCosts();
+    var cacheFile = Files.createTempDirectory("gtfs_path_cache").resolve("paths.csv");
+
+    /* first run: miss, register and persist */
+    var cache = GtfsPersistedPathCache.load(cacheFile);
+    assertNull(cache.find(upstreamAccessNode, upstreamAccessLinkSegment, downstreamAccessLinkSegment, mode, false, Set.of(), layer, costs));
+    cache.register(upstreamAccessNode, upstreamAccessLinkSegment, downstreamAccessLinkSegment, mode, false, path, layer, costs);
+    cache.save(cacheFile);
+
+    /* unchanged layer: reused */
+    cache = GtfsPersistedPathCache.load(cacheFile);
+    var cachedPath = cache.find(upstreamAccessNode, upstreamAccessLinkSegment, downstreamAccessLinkSegment, mode, false, Set.of(), layer, costs);
+    assertNotNull(cachedPath);
+    assertEquals(walk, toList(cachedPath));
+    assertEquals(1, cache.getNumberOfHits());
+
+    /* cost change of a link segment not on the path: layer changed, so discarded */
+    var changedCosts = costs.clone();
+    EdgeSegment changedLinkSegment = null;
+    for(var linkSegment : layer.getLinkSegments()){
+      if(!walk.contains(linkSegment)){
+        changedLinkSegment = linkSegment;
+        break;
+      }
+    }
+    assertNotNull(changedLinkSegment);
+    changedCosts[(int) changedLinkSegment.getId()] += 1;
+    cache = GtfsPersistedPathCache.load(cacheFile);
+    assertNull(cache.find(
+        upstreamAccessNode, upstreamAccessLinkSegment, downstreamAccessLinkSegment, mode, false, Set.of(), layer, changedCosts));
+    assertEquals(0, cache.getNumberOfHits());
+
+    Files.deleteIfExists(cacheFile);
+    Files.deleteIfExists(cacheFile.getParent());
+  }
+
+  /**
+   * Collect the edge segments of a path
+   *
+   * @param path to collect from
+   * @return edge segments in order
+   */
+  private static List<EdgeSegment> toList(SimpleDirectedPath path){
+    List<EdgeSegment> edgeSegments = new ArrayList<>();
+    path.forEach(edgeSegments::add);
+    return edgeSegments;
+  }
+}
@@ -26,11 +26,18 @@ import org.junit.jupiter.api.*;
 import java.nio.file.Path;
 import java.time.DayOfWeek;
 import java.time.LocalTime;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
 import java.util.logging.Level;
 import java.util.logging.Logger;
+import java.util.stream.Collectors;
 
 import static org.goplanit.utils.mode.PredefinedModeType.*;
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 import static org.junit.jupiter.api.Assertions.fail;
 
 /**
@@ -281,4 +288,128 @@ public class GtfsToPlanitSydneyTest {
 
     System.gc();
   }
+
+  /**
+   * Map the service leg segments of the Sydney fixture to the physical network using the given number of path mapping threads
+   *
+   * @param numberOfThreads to use
+   * @param oneToManyPathSearch when true paths are extracted from one-to-many path trees
+   * @return physical link segment XML ids of each service leg segment by its XML id
+   */
+  private static Map<String, List<String>> mapServiceLegSegmentsToPhysicalLinkSegments(int numberOfThreads, boolean oneToManyPathSearch){
+    IdGenerator.reset();
+    var gtfsIntermodalReader = GtfsIntermodalReaderFactory.create(
+        GTFS_NSW_NO_SHAPES.toString(), CountryNames.AUSTRALIA, DayOfWeek.THURSDAY, macroscopicNetwork.deepClone(), RouteTypeChoice.EXTENDED);
+    gtfsIntermodalReader.getSettings().getServiceSettings().addTimePeriodFilter(LocalTime.of(6,0,0), LocalTime.of(9, 59,59));
+    gtfsIntermodalReader.getSettings().setParallelPathMappingThreads(numberOfThreads);
+    gtfsIntermodalReader.getSettings().setOneToManyPathSearch(oneToManyPathSearch);
+    SydneyGtfsZoningSettingsUtils.minimiseVerifiedWarnings(gtfsIntermodalReader.getSettings().getZoningSettings(), false);
+    SydneyGtfsServicesSettingsUtils.minimiseVerifiedWarnings(gtfsIntermodalReader.getSettings().getServiceSettings());
+
+    var serviceNetwork = gtfsIntermodalReader.readWithServices().third();
+    var result = new TreeMap<String, List<String>>();
+    serviceNetwork.getTransportLayers().forEach(l -> l.getLegSegments().forEach(legSegment -> result.put(
+        legSegment.getXmlId(),
+        legSegment.hasPhysicalParentSegments() ?
+            legSegment.getPhysicalParentSegments().stream().map(ls -> ls.getXmlId()).collect(Collectors.toList()) : List.of())));
+    return result;
+  }
+
+  /**
+   * Test that parallel mapping of service leg segments to the physical network yields the same paths as the sequential mapping
+   */
+  @Test
+  public void testGtfsIntermodalReaderParallelPathMappingMatchesSequential() {
+
+    try {
+      var sequentialPaths = mapServiceLegSegmentsToPhysicalLinkSegments(1, false);
+      var parallelPaths = mapServiceLegSegmentsToPhysicalLinkSegments(4, false);
+
+      assertFalse(sequentialPaths.isEmpty());
+      assertTrue(sequentialPaths.values().stream().anyMatch(path -> !path.isEmpty()));
+      assertEquals(sequentialPaths, parallelPaths);
+
+    } catch (Exception e) {
+      LOGGER.severe(e.getMessage());
+      e.printStackTrace();
+      fail("testGtfsIntermodalReaderParallelPathMappingMatchesSequential");
+    }
+
+    System.gc();
+  }
+
+  /**
+   * Test that parallel mapping of service leg segments to the physical network with one-to-many path search, where each thread grows its own path trees,
+   * yields the same paths as the sequential mapping with one-to-many path search
+   */
+  @Test
+  public void testGtfsIntermodalReaderParallelOneToManyPathMappingMatchesSequential() {
+
+    try {
+      var sequentialPaths = mapServiceLegSegmentsToPhysicalLinkSegments(1, true);
+      var parallelPaths = mapServiceLegSegmentsToPhysicalLinkSegments(4, true);
+
+      assertFalse(sequentialPaths.isEmpty());
+      assertTrue(sequentialPaths.values().stream().anyMatch(path -> !path.isEmpty()));
+      assertEquals(sequentialPaths, parallelPaths);
+
+    } catch (Exception e) {
+      LOGGER.severe(e.getMessage());
+      e.printStackTrace();
+      fail("testGtfsIntermodalReaderParallelOneToManyPathMappingMatchesSequential");
+    }
+
+    System.gc();
+  }
+
+  /**
+   * Match the GTFS stops of the Sydney fixture to the pre-existing PLANit transfer zones and network using the given number of stop matching threads
+   *
+   * @param numberOfThreads to use
+   * @return transfer zone external id, name and access link segment XML ids of its connectoids by transfer zone XML id
+   */
+  private static Map<String, String> matchGtfsStopsToTransferZones(int numberOfThreads){
+    IdGenerator.reset();
+    var planitReader = PlanitIntermodalReaderFactory.create(new PlanitIntermodalReaderSettings(PLANIT_INPUT_PATH));
+    var gtfsSettings =  new GtfsIntermodalReaderSettings(GTFS_NSW_NO_SHAPES.toString(), CountryNames.AUSTRALIA, RouteTypeChoice.EXTENDED);
+    gtfsSettings.getServiceSettings().setDayOfWeek(DayOfWeek.THURSDAY);
+    gtfsSettings.getServiceSettings().addTimePeriodFilter(LocalTime.of(6,0,0), LocalTime.of(9, 59,59));
+    gtfsSettings.getZoningSettings().setParallelStopMatchingThreads(numberOfThreads);
+
+    var gtfsIntermodalReader = GtfsIntermodalReaderFactory.create(gtfsSettings, planitReader);
+    SydneyGtfsZoningSettingsUtils.minimiseVerifiedWarnings(gtfsIntermodalReader.getSettings().getZoningSettings(), true);
+    SydneyGtfsServicesSettingsUtils.minimiseVerifiedWarnings(gtfsIntermodalReader.getSettings().getServiceSettings());
+
+    var resultZoning = gtfsIntermodalReader.readWithServices().second();
+    var connectoidsByAccessZone = resultZoning.getTransferConnectoids().createIndexByAccessZone();
+
+    var result = new TreeMap<String, String>();
+    resultZoning.getTransferZones().forEach(tz -> result.put(tz.getXmlId(), String.join(";",
+        tz.getExternalId(),
+        tz.getName(),
+        connectoidsByAccessZone.getOrDefault(tz, Set.of()).stream().map(c -> c.getAccessLinkSegment().getXmlId()).sorted().collect(Collectors.joining(",")))));
+    return result;
+  }
+
+  /**
+   * Test that matching GTFS stops with candidates found in parallel yields the same transfer zones and connectoids as matching the stops one by one
+   */
+  @Test
+  public void testGtfsIntermodalReaderParallelStopMatchingMatchesSequential() {
+
+    try {
+      var sequentialMatches = matchGtfsStopsToTransferZones(1);
+      var parallelMatches = matchGtfsStopsToTransferZones(4);
+
+      assertFalse(sequentialMatches.isEmpty());
+      assertEquals(sequentialMatches, parallelMatches);
+
+    } catch (Exception e) {
+      LOGGER.severe(e.getMessage());
+      e.printStackTrace();
+      fail("testGtfsIntermodalReaderParallelStopMatchingMatchesSequential");
+    }
+
+    System.gc();
+  }
 }
@@ -3,8 +3,13 @@ package org.goplanit.gtfs.test;
 import org.goplanit.gtfs.converter.service.GtfsServicesHandlerProfiler;
 import org.goplanit.gtfs.converter.service.GtfsServicesReaderSettings;
 import org.goplanit.gtfs.converter.service.handler.GtfsServicesHandlerData;
+import org.goplanit.gtfs.entity.GtfsCalendar;
+import org.goplanit.gtfs.entity.GtfsObjectFactory;
+import org.goplanit.gtfs.enums.GtfsKeyType;
+import org.goplanit.gtfs.enums.GtfsObjectType;
 import org.goplanit.gtfs.enums.RouteType;
 import org.goplanit.gtfs.enums.RouteTypeChoice;
+import org.goplanit.gtfs.util.GtfsUtils;
 import org.goplanit.network.MacroscopicNetwork;
 import org.goplanit.network.MacroscopicNetworkLayerConfigurator;
 import org.goplanit.network.ServiceNetwork;
@@ -18,6 +23,8 @@ import org.junit.jupiter.api.Test;
 
 import java.time.DayOfWeek;
 import java.time.LocalTime;
+import java.util.Arrays;
+import java.util.EnumSet;
 import java.util.List;
 
 import static org.junit.jupiter.api.Assertions.*;
@@ -95,4 +102,61 @@ public class ServicesReaderSettingsAndDataTest {
     assertEquals(settings.getTimePeriodFilters().size(), 2);
 
   }
+
+  /**
+   * Create a GTFS calendar active on the given days only
+   *
+   * @param serviceId to use
+   * @param activeDays of the calendar
+   * @return created calendar
+   */
+  private static GtfsCalendar createCalendar(String serviceId, DayOfWeek... activeDays){
+    var gtfsCalendar = (GtfsCalendar) GtfsObjectFactory.create(GtfsObjectType.CALENDAR);
+    gtfsCalendar.put(GtfsKeyType.SERVICE_ID, serviceId);
+    var activeDaySet = activeDays.length == 0 ? EnumSet.noneOf(DayOfWeek.class) : EnumSet.copyOf(Arrays.asList(activeDays));
+    for(var dayOfWeek : DayOfWeek.values()){
+      gtfsCalendar.put(GtfsCalendar.asGtfsKeyType(dayOfWeek), activeDaySet.contains(dayOfWeek) ? "1" : "0");
+    }
+    return gtfsCalendar;
+  }
+
+  @Test
+  public void multipleDaysOfWeekTest(){
+
+    /* multiple days, extracted in single pass */
+    settings.setDaysOfWeek(DayOfWeek.TUESDAY);
+    assertFalse(settings.hasMultipleDaysOfWeek());
+    settings.addDayOfWeek(DayOfWeek.MONDAY);
+    assertTrue(settings.hasMultipleDaysOfWeek());
+    assertEquals(settings.getDaysOfWeek(), EnumSet.of(DayOfWeek.MONDAY, DayOfWeek.TUESDAY));
+    settings.setDaysOfWeek(DayOfWeek.TUESDAY);
+    assertFalse(settings.hasMultipleDaysOfWeek());
+    assertEquals(settings.getDaysOfWeek(), EnumSet.of(DayOfWeek.TUESDAY));
+
+    /* Monday and Tuesday extracted in a single pass, morning peak plus early hours */
+    settings.setDaysOfWeek(DayOfWeek.MONDAY, DayOfWeek.TUESDAY);
+    settings.addTimePeriodFilter(LocalTime.of(0,0,0), LocalTime.of(1,59,59));
+    settings.addTimePeriodFilter(LocalTime.of(6,0,0), LocalTime.of(9,59,59));
+    data = new GtfsServicesHandlerData(settings, serviceNetwork, routedServices, new GtfsServicesHandlerProfiler());
+
+    data.registerServiceIdCalendarAsActive(createCalendar("monday", DayOfWeek.MONDAY));
+    data.registerServiceIdCalendarAsActive(createCalendar("weekdays",
+        DayOfWeek.MONDAY, DayOfWeek.TUESDAY, DayOfWeek.WEDNESDAY, DayOfWeek.THURSDAY, DayOfWeek.FRIDAY));
+    data.registerServiceIdCalendarAsActive(createCalendar("sunday", DayOfWeek.SUNDAY));
+
+    /* departure within period is tagged with each chosen day its calendar is active on */
+    assertEquals(EnumSet.of(DayOfWeek.MONDAY), data.getEligibleDaysOfWeekForDeparture("monday", GtfsUtils.parseGtfsTime("07:30:00")));
+    assertEquals(EnumSet.of(DayOfWeek.MONDAY, DayOfWeek.TUESDAY), data.getEligibleDaysOfWeekForDeparture("weekdays", GtfsUtils.parseGtfsTime("07:30:00")));
+
+    /* departure outside any period is not eligible on any day */
+    assertTrue(data.getEligibleDaysOfWeekForDeparture("weekdays", GtfsUtils.parseGtfsTime("12:00:00")).isEmpty());
+
+    /* departure beyond midnight belongs to the day after its calendar's active day */
+    assertEquals(EnumSet.of(DayOfWeek.MONDAY), data.getEligibleDaysOfWeekForDeparture("sunday", GtfsUtils.parseGtfsTime("25:30:00")));
+    assertEquals(EnumSet.of(DayOfWeek.TUESDAY), data.getEligibleDaysOfWeekForDeparture("monday", GtfsUtils.parseGtfsTime("24:30:00")));
+    assertEquals(EnumSet.of(DayOfWeek.TUESDAY), data.getEligibleDaysOfWeekForDeparture("weekdays", GtfsUtils.parseGtfsTime("24:30:00")));
+
+    /* service ids not activated are never eligible */
+    assertTrue(data.getEligibleDaysOfWeekForDeparture("unknown", GtfsUtils.parseGtfsTime("07:30:00")).isEmpty());
+  }
 }